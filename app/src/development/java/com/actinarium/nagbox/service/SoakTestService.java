@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.service;
+
+import android.app.IntentService;
+import android.content.Intent;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.text.format.DateUtils;
+import android.util.Log;
+import com.actinarium.nagbox.R;
+import com.actinarium.nagbox.common.Clock;
+import com.actinarium.nagbox.database.NagboxContract;
+import com.actinarium.nagbox.database.NagboxContract.BuildingBlocks;
+import com.actinarium.nagbox.database.NagboxContract.TasksTable;
+import com.actinarium.nagbox.database.NagboxDbHelper;
+import com.actinarium.nagbox.database.NagboxDbOps;
+import com.actinarium.nagbox.model.ActiveWindow;
+import com.actinarium.nagbox.model.Task;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Load generator for {@link NagboxService}. Fires a configurable mix of intents at a given rate against the real
+ * database for a given time, then reports throughput, handler latency, database file growth and heap growth, and
+ * checks them against the thresholds from <code>soak_*</code> resources. Development builds only, and it does mess with
+ * your tasks and notifications, so don't run it on the device you actually use.
+ * <p/>
+ * The service requires the <code>DUMP</code> permission, which other apps can't get but adb shell has. Start with:
+ * <pre>
+ * adb shell am startservice --user 0 -n com.actinarium.nagbox/.service.SoakTestService \
+ *         --ei duration 600 --ei rate 50 --es mix create=2,status=6,delete=1,restore=1,alarm=1,dismiss=1
+ * </pre>
+ * The verdict is logged with tag "SoakTestService" (<code>SOAK PASSED</code> or <code>SOAK FAILED</code>), and the
+ * report is written to <code>soak-report.txt</code> in the app's files dir. The <code>soakTest</code> Gradle task
+ * does all of the above on a connected device and fails unless the report says the soak test passed. The same
+ * thresholds are checked on every build by <code>NagboxServiceSoakTest</code>, so this is only needed for the numbers
+ * of a real device.
+ *
+ * @author Paul Danyliuk
+ */
+public class SoakTestService extends IntentService {
+
+    private static final String TAG = "SoakTestService";
+
+    static final String EXTRA_DURATION = "duration";
+    static final String EXTRA_RATE = "rate";
+    static final String EXTRA_MIX = "mix";
+    static final String EXTRA_SEED = "seed";
+
+    private static final int DEFAULT_DURATION = 60;
+    private static final int DEFAULT_RATE = 50;
+    private static final String DEFAULT_MIX = "create=2,status=6,delete=1,restore=1,alarm=1,dismiss=1";
+
+    private static final int OP_CREATE = 0;
+    private static final int OP_STATUS = 1;
+    private static final int OP_DELETE = 2;
+    private static final int OP_RESTORE = 3;
+    private static final int OP_ALARM = 4;
+    private static final int OP_DISMISS = 5;
+    private static final String[] OP_NAMES = {"create", "status", "delete", "restore", "alarm", "dismiss"};
+
+    private static final long SAMPLE_INTERVAL = 10 * DateUtils.SECOND_IN_MILLIS;
+    private static final long DRAIN_TIMEOUT = DateUtils.MINUTE_IN_MILLIS;
+    private static final String REPORT_FILE_NAME = "soak-report.txt";
+
+    private SQLiteDatabase mDatabase;
+    private Random mRandom;
+    private final List<Long> mTaskIds = new ArrayList<>();
+    private final List<Task> mDeletedTasks = new ArrayList<>();
+    private final int[] mSentCounts = new int[OP_NAMES.length];
+
+    public SoakTestService() {
+        super(TAG);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mDatabase = NagboxDbHelper.getInstance(this).getReadableDatabase();
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        final long duration = intent.getIntExtra(EXTRA_DURATION, DEFAULT_DURATION) * DateUtils.SECOND_IN_MILLIS;
+        final int rate = Math.max(1, intent.getIntExtra(EXTRA_RATE, DEFAULT_RATE));
+        final String mix = intent.hasExtra(EXTRA_MIX) ? intent.getStringExtra(EXTRA_MIX) : DEFAULT_MIX;
+        final int[] weights = parseMix(mix);
+        mRandom = new Random(intent.getLongExtra(EXTRA_SEED, 42));
+        // Whoever waits for the report must not pick up the verdict of the previous run
+        new File(getFilesDir(), REPORT_FILE_NAME).delete();
+        Log.i(TAG, "Starting soak test: " + duration / 1000 + "s at " + rate + " intents/s, mix " + mix);
+
+        final ServiceMetrics metrics = ServiceMetrics.getInstance();
+        final File databaseFile = new File(mDatabase.getPath());
+        final long startDatabaseSize = getDatabaseSize(databaseFile);
+        final long startHeap = getUsedHeap();
+        long maxHeap = startHeap;
+        metrics.reset();
+        refreshTaskIds();
+
+        final long period = 1000 / rate;
+        final long startedAt = SystemClock.elapsedRealtime();
+        final long endAt = startedAt + duration;
+        long nextSampleAt = startedAt + SAMPLE_INTERVAL;
+        long nextSendAt = startedAt;
+        int sentCount = 0;
+        while (SystemClock.elapsedRealtime() < endAt) {
+            sendIntent(pickOperation(weights));
+            sentCount++;
+
+            final long now = SystemClock.elapsedRealtime();
+            if (now >= nextSampleAt) {
+                // Tasks are created and deleted by the service asynchronously, so only resync the IDs once in a while
+                refreshTaskIds();
+                maxHeap = Math.max(maxHeap, getUsedHeap());
+                Log.i(TAG, String.format(Locale.US, "%ds: sent %d, handled %d, pending %d, db %dKB, heap %dKB",
+                        (now - startedAt) / 1000, sentCount, metrics.getHandledCount(), metrics.getPendingIntents(),
+                        getDatabaseSize(databaseFile) / 1024, getUsedHeap() / 1024));
+                nextSampleAt += SAMPLE_INTERVAL;
+            }
+
+            nextSendAt += period;
+            if (nextSendAt > now) {
+                SystemClock.sleep(nextSendAt - now);
+            }
+        }
+
+        // Let the service catch up, so that the numbers are for handled intents and not just sent ones
+        final long drainUntil = SystemClock.elapsedRealtime() + DRAIN_TIMEOUT;
+        while (metrics.getPendingIntents() > 0 && SystemClock.elapsedRealtime() < drainUntil) {
+            SystemClock.sleep(100);
+        }
+        final long elapsed = SystemClock.elapsedRealtime() - startedAt;
+        maxHeap = Math.max(maxHeap, getUsedHeap());
+
+        report(sentCount, metrics.getHandledCount(), elapsed, metrics.getMaxPendingIntents(),
+                metrics.getHandlerTimeAtPercentile(99), getDatabaseSize(databaseFile) - startDatabaseSize,
+                maxHeap - startHeap);
+    }
+
+    private void sendIntent(int operation) {
+        mSentCounts[operation]++;
+        switch (operation) {
+            case OP_CREATE: {
+                Task task = new Task();
+                task.title = "Soak #" + mRandom.nextInt(1000000);
+                task.interval = 1 + mRandom.nextInt(60);
+                NagboxService.createTask(this, task);
+                break;
+            }
+            case OP_STATUS: {
+                Task task = getRandomTask();
+                if (task != null) {
+                    // Same as MainActivity#onSetTaskStatus
+                    task.setStatus(!task.isActive(), Clock.getInstance().currentTimeMillis(),
+                            ActiveWindow.getEffective(this, task));
+                    NagboxService.updateTaskStatus(this, task);
+                }
+                break;
+            }
+            case OP_DELETE: {
+                Task task = getRandomTask();
+                if (task != null) {
+                    mTaskIds.remove(task.id);
+                    mDeletedTasks.add(task);
+                    NagboxService.deleteTask(this, task.id);
+                }
+                break;
+            }
+            case OP_RESTORE: {
+                if (!mDeletedTasks.isEmpty()) {
+                    Task task = mDeletedTasks.remove(mDeletedTasks.size() - 1);
+                    mTaskIds.add(task.id);
+                    NagboxService.restoreTask(this, task.id);
+                }
+                break;
+            }
+            case OP_ALARM: {
+                Intent intent = new Intent(this, NagboxService.class);
+                intent.setAction(NagboxService.ACTION_ON_ALARM_FIRED);
+                startService(intent);
+                break;
+            }
+            case OP_DISMISS: {
+                Intent intent = new Intent(this, NagboxService.class);
+                intent.setAction(NagboxService.ACTION_ON_NOTIFICATION_DISMISSED);
+                intent.putExtra(NagboxService.EXTRA_TASK_ID, Task.NO_ID);
+                startService(intent);
+                break;
+            }
+        }
+    }
+
+    private Task getRandomTask() {
+        if (mTaskIds.isEmpty()) {
+            return null;
+        }
+        final long id = mTaskIds.get(mRandom.nextInt(mTaskIds.size()));
+        return NagboxDbOps.getTaskStatusById(mDatabase, id, NagboxContract.TASK_FULL_PROJECTION);
+    }
+
+    private void refreshTaskIds() {
+        mTaskIds.clear();
+        Cursor cursor = mDatabase.query(
+                TasksTable.TABLE_NAME, new String[]{TasksTable._ID}, BuildingBlocks.SELECTION_TASK_NOT_DELETED,
+                null, null, null, null
+        );
+        while (cursor.moveToNext()) {
+            mTaskIds.add(cursor.getLong(0));
+        }
+        cursor.close();
+    }
+
+    private int pickOperation(int[] weights) {
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        int value = mRandom.nextInt(total);
+        for (int i = 0; i < weights.length; i++) {
+            value -= weights[i];
+            if (value < 0) {
+                return i;
+            }
+        }
+        return OP_CREATE;
+    }
+
+    private static int[] parseMix(String mix) {
+        final int[] weights = new int[OP_NAMES.length];
+        int total = 0;
+        for (String entry : mix.split(",")) {
+            final String[] pair = entry.trim().split("=");
+            for (int i = 0; i < OP_NAMES.length; i++) {
+                if (OP_NAMES[i].equals(pair[0])) {
+                    weights[i] = Math.max(0, Integer.parseInt(pair[1]));
+                    total += weights[i];
+                }
+            }
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("Mix must have at least one operation with positive weight: " + mix);
+        }
+        return weights;
+    }
+
+    private void report(int sentCount, long handledCount, long elapsed, int maxPending, long p99Micros,
+                        long databaseGrowth, long heapGrowth) {
+        final Resources res = getResources();
+        final double throughput = handledCount * 1000.0 / elapsed;
+        final double p99 = p99Micros / 1000.0;
+
+        final StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "Soak test: %d intents sent, %d handled in %.1fs\n",
+                sentCount, handledCount, elapsed / 1000.0));
+        for (int i = 0; i < OP_NAMES.length; i++) {
+            report.append("  ").append(OP_NAMES[i]).append(": ").append(mSentCounts[i]).append('\n');
+        }
+        report.append(String.format(Locale.US, "Throughput:   %.1f intents/s (max pending %d)\n", throughput, maxPending));
+        report.append(String.format(Locale.US, "Handler p99:  %.2fms\n", p99));
+        report.append(String.format(Locale.US, "DB growth:    %dKB\n", databaseGrowth / 1024));
+        report.append(String.format(Locale.US, "Heap growth:  %dKB\n", heapGrowth / 1024));
+
+        boolean isPassed = true;
+        isPassed &= check(report, "throughput", throughput >= res.getInteger(R.integer.soak_min_throughput));
+        isPassed &= check(report, "handler p99", p99 <= res.getInteger(R.integer.soak_max_handler_p99_ms));
+        isPassed &= check(report, "DB growth", databaseGrowth / 1024 <= res.getInteger(R.integer.soak_max_db_growth_kb));
+        isPassed &= check(report, "heap growth", heapGrowth / 1024 <= res.getInteger(R.integer.soak_max_heap_growth_kb));
+        report.append(isPassed ? "SOAK PASSED" : "SOAK FAILED");
+
+        final String reportText = report.toString();
+        for (String line : reportText.split("\n")) {
+            if (isPassed) {
+                Log.i(TAG, line);
+            } else {
+                Log.e(TAG, line);
+            }
+        }
+
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(new File(getFilesDir(), REPORT_FILE_NAME));
+            writer.write(reportText);
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't write soak test report", e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // Nothing we can do here
+                }
+            }
+        }
+    }
+
+    private static boolean check(StringBuilder report, String name, boolean isWithinThreshold) {
+        if (!isWithinThreshold) {
+            report.append("Threshold exceeded: ").append(name).append('\n');
+        }
+        return isWithinThreshold;
+    }
+
+    private static long getDatabaseSize(File databaseFile) {
+        // Include the rollback journal or write-ahead log, whichever is there
+        final File journal = new File(databaseFile.getPath() + "-journal");
+        final File wal = new File(databaseFile.getPath() + "-wal");
+        return databaseFile.length() + journal.length() + wal.length();
+    }
+
+    private static long getUsedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.ui;
+
+import android.content.Context;
+import android.databinding.DataBindingUtil;
+import android.os.Bundle;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.AsyncTaskLoader;
+import android.support.v4.content.Loader;
+import android.support.v7.app.AppCompatActivity;
+import android.text.format.DateUtils;
+import com.actinarium.nagbox.R;
+import com.actinarium.nagbox.common.ViewUtils;
+import com.actinarium.nagbox.database.NagboxDbHelper;
+import com.actinarium.nagbox.database.NagboxDbOps;
+import com.actinarium.nagbox.databinding.LatenessStatsActivityBinding;
+import com.actinarium.nagbox.model.LatenessHistogram;
+
+/**
+ * Developer screen that shows how late alarms fire compared to their schedule, globally and per task. Only in
+ * development builds.
+ *
+ * @author Paul Danyliuk
+ */
+public class LatenessStatsActivity extends AppCompatActivity
+        implements LoaderManager.LoaderCallbacks<LatenessHistogram[]> {
+
+    private static final int LOADER_HISTOGRAMS = 1;
+
+    private LatenessStatsActivityBinding mBinding;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        mBinding = DataBindingUtil.setContentView(this, R.layout.activity_lateness_stats);
+        ViewUtils.setupToolbar(this, mBinding.getRoot(), R.string.dev_lateness_stats, R.dimen.action_bar_elevation);
+
+        getSupportLoaderManager().initLoader(LOADER_HISTOGRAMS, null, this);
+    }
+
+    @Override
+    public Loader<LatenessHistogram[]> onCreateLoader(int id, Bundle args) {
+        return new HistogramsLoader(this);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<LatenessHistogram[]> loader, LatenessHistogram[] data) {
+        if (data.length == 0) {
+            mBinding.stats.setText(R.string.dev_lateness_empty);
+            return;
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (LatenessHistogram histogram : data) {
+            if (histogram.taskId == LatenessHistogram.GLOBAL_TASK_ID) {
+                builder.append(getString(R.string.dev_lateness_all_tasks));
+            } else if (histogram.taskTitle == null) {
+                builder.append(getString(R.string.dev_lateness_deleted_task, histogram.taskId));
+            } else {
+                builder.append(histogram.taskTitle);
+            }
+            builder.append("\n  n=").append(histogram.getTotalCount())
+                    .append("  p50≤").append(formatLateness(histogram.getValueAtPercentile(50)))
+                    .append("  p95≤").append(formatLateness(histogram.getValueAtPercentile(95)))
+                    .append("  p99≤").append(formatLateness(histogram.getValueAtPercentile(99)))
+                    .append("\n\n");
+        }
+        mBinding.stats.setText(builder);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<LatenessHistogram[]> loader) {
+        mBinding.stats.setText(null);
+    }
+
+    private static String formatLateness(long millis) {
+        if (millis == Long.MAX_VALUE) {
+            return "∞";
+        } else if (millis < DateUtils.MINUTE_IN_MILLIS) {
+            return millis / DateUtils.SECOND_IN_MILLIS + "s";
+        } else if (millis < DateUtils.HOUR_IN_MILLIS) {
+            return millis / DateUtils.MINUTE_IN_MILLIS + "m";
+        } else {
+            return millis / DateUtils.HOUR_IN_MILLIS + "h";
+        }
+    }
+
+    /**
+     * Loads all lateness histograms on a background thread. Doesn't observe changes &mdash; reopen the screen to
+     * refresh.
+     */
+    private static class HistogramsLoader extends AsyncTaskLoader<LatenessHistogram[]> {
+
+        private LatenessHistogram[] mData;
+
+        HistogramsLoader(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onStartLoading() {
+            if (mData != null) {
+                deliverResult(mData);
+            } else {
+                forceLoad();
+            }
+        }
+
+        @Override
+        public LatenessHistogram[] loadInBackground() {
+            return NagboxDbOps.getLatenessHistograms(
+                    NagboxDbHelper.getInstance(getContext()).getReadableDatabase()
+            );
+        }
+
+        @Override
+        public void deliverResult(LatenessHistogram[] data) {
+            mData = data;
+            super.deliverResult(data);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.common;
+
+import android.os.SystemClock;
+
+/**
+ * A source of current time for everything related to scheduling. The app uses the {@link #SYSTEM} clock, but another
+ * one can be put in its place to replay scheduling deterministically, e.g. in a simulator.
+ *
+ * @author Paul Danyliuk
+ */
+public abstract class Clock {
+
+    /**
+     * The real clock, backed by {@link System#currentTimeMillis()} and {@link SystemClock#elapsedRealtime()}
+     */
+    public static final Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    private static Clock sInstance = SYSTEM;
+
+    /**
+     * Get the clock the app should use
+     *
+     * @return current clock, {@link #SYSTEM} unless replaced
+     */
+    public static Clock getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Replace the clock used by the app. Must be called before any component that uses the clock is created.
+     *
+     * @param clock clock to use, or <code>null</code> to go back to {@link #SYSTEM}
+     */
+    public static void setInstance(Clock clock) {
+        sInstance = clock != null ? clock : SYSTEM;
+    }
+
+    /**
+     * @return wall clock time in milliseconds since epoch
+     */
+    public abstract long currentTimeMillis();
+
+    /**
+     * @return milliseconds since boot, including time spent in sleep
+     */
+    public abstract long elapsedRealtime();
+}
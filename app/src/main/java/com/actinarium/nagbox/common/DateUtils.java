@@ -101,4 +101,42 @@ public final class DateUtils {
         }
     }
 
+    /**
+     * Pretty prints a duration in the two most significant units, e.g. "2d 5h", "1h 30m", or "45s" for under a minute.
+     *
+     * @param context  context
+     * @param duration duration (msec) to render
+     * @return pretty printed duration
+     */
+    public static String prettyPrintDuration(Context context, long duration) {
+        final long seconds = duration / android.text.format.DateUtils.SECOND_IN_MILLIS;
+        final long minutes = duration / android.text.format.DateUtils.MINUTE_IN_MILLIS;
+        final long hours = duration / android.text.format.DateUtils.HOUR_IN_MILLIS;
+        final long days = duration / android.text.format.DateUtils.DAY_IN_MILLIS;
+        if (days != 0) {
+            return context.getString(R.string.duration_days_hours, days, hours % 24);
+        } else if (hours != 0) {
+            return context.getString(R.string.duration_hours_minutes, hours, minutes % 60);
+        } else if (minutes != 0) {
+            return context.getString(R.string.duration_minutes, minutes);
+        } else {
+            return context.getString(R.string.duration_seconds, seconds);
+        }
+    }
+
+    /**
+     * Pretty prints how soon an active task nags next, e.g. "Next nag in 5m", or "Nagging now" if it's due.
+     *
+     * @param context     context
+     * @param minutesLeft whole minutes until the next nag, rounded up
+     * @return pretty printed time to the next nag
+     */
+    public static String prettyPrintTimeToNag(Context context, int minutesLeft) {
+        if (minutesLeft <= 0) {
+            return context.getString(R.string.status_nagging_now);
+        }
+        return context.getString(R.string.status_next_nag_in,
+                prettyPrintDuration(context, minutesLeft * android.text.format.DateUtils.MINUTE_IN_MILLIS));
+    }
+
 }
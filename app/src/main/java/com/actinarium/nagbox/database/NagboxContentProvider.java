@@ -17,15 +17,37 @@
 package com.actinarium.nagbox.database;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.net.Uri;
 import android.support.annotation.NonNull;
+import android.text.TextUtils;
+import android.text.format.DateUtils;
+import com.actinarium.nagbox.common.Clock;
+import com.actinarium.nagbox.database.NagboxContract.BuildingBlocks;
+import com.actinarium.nagbox.database.NagboxContract.TaskChangesTable;
+import com.actinarium.nagbox.database.NagboxContract.TaskGroupsTable;
+import com.actinarium.nagbox.database.NagboxContract.TaskStatsTable;
 import com.actinarium.nagbox.database.NagboxContract.TasksTable;
+import com.actinarium.nagbox.model.ActiveWindow;
+import com.actinarium.nagbox.model.Task;
+import com.actinarium.nagbox.service.NagboxService;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
 
 /**
- * A content provider for Nagbox app database, configured to only work for querying data
+ * A content provider for Nagbox app database. Mostly for querying data, but tasks can also be created, updated and
+ * deleted in bulk, e.g. when importing them. Each call (including {@link #applyBatch(ArrayList)}) is a single
+ * transaction, and results in a single change notification and a single alarm reschedule.
  *
  * @author Paul Danyliuk
  */
@@ -33,8 +55,50 @@ public class NagboxContentProvider extends ContentProvider {
 
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private static final int ALL_TASKS = 0;
+    private static final int ALL_TASK_GROUPS = 1;
+    private static final int ALL_TASK_STATS = 2;
+    private static final int TASK_CHANGES_SINCE = 3;
+    private static final int UPCOMING_TASKS = 4;
+    private static final int OVERDUE_TASKS = 5;
+    private static final int UNSEEN_TASKS = 6;
+    private static final int TASK_ITEM = 7;
+
+    private static final String NO_LIMIT = "-1";
+
+    /**
+     * The latest change of each task, among the changes with sequence numbers greater than the one appended. SQLite
+     * takes the other columns from the row where <code>MAX()</code> is found. Grouping is done by <code>+task_id</code>
+     * so that SQLite doesn't pick the index on task ID and scan the whole log, but reads the requested range only.
+     */
+    private static final String TASK_CHANGES_SINCE_TABLE = "(SELECT MAX(" + TaskChangesTable.COL_SEQ + ") AS "
+            + TaskChangesTable.COL_SEQ + ", " + TaskChangesTable.COL_TASK_ID + ", " + TaskChangesTable.COL_TYPE
+            + " FROM " + TaskChangesTable.TABLE_NAME + " WHERE " + TaskChangesTable.COL_SEQ + " > ";
+
+    /**
+     * One flags value worth of active tasks firing within a range, in the order they fire, up to a limit. Each is read
+     * as a range of the index, and stops as soon as the limit is reached.
+     */
+    private static final String SELECT_TASKS_DUE_SQL = "SELECT * FROM (SELECT "
+            + TextUtils.join(", ", NagboxContract.TASK_DUE_PROJECTION.getColumns())
+            + " FROM " + TasksTable.TABLE_NAME
+            + " WHERE " + BuildingBlocks.SELECTION_TASK_FLAGS_FIRE_AT_BETWEEN
+            + " ORDER BY " + BuildingBlocks.ORDER_BY_TASK_FIRE_AT_ASC + " LIMIT ?)";
+
+    /**
+     * Active tasks firing after the time bound to the first <code>?</code> and on or before the second, in the order
+     * they fire, up to the limit bound to the third. Both values of flags an active task can have are read separately
+     * and then merged, so at most twice the limit rows are touched, however many tasks there are. The query is the
+     * same every time, so SQLite doesn't have to compile it again.
+     */
+    private static final String SELECT_ACTIVE_TASKS_DUE_SQL = SELECT_TASKS_DUE_SQL + " UNION ALL "
+            + SELECT_TASKS_DUE_SQL + " ORDER BY " + BuildingBlocks.ORDER_BY_TASK_FIRE_AT_ASC + " LIMIT ?";
 
     private NagboxDbHelper mDbHelper;
+    /**
+     * Batch being applied on the current thread, which the operations of {@link #applyBatch(ArrayList)} join. Binder
+     * calls come on different threads, so concurrent batches don't see each other's.
+     */
+    private final ThreadLocal<TaskBatch> mBatch = new ThreadLocal<>();
 
     @Override
     public boolean onCreate() {
@@ -42,11 +106,31 @@ public class NagboxContentProvider extends ContentProvider {
         return true;
     }
 
+    /**
+     * Print {@link NagboxService} metrics, since the service is hardly ever running when dumped. API 18+ only.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        NagboxService.dumpMetrics(writer);
+    }
+
     @Override
     public String getType(@NonNull Uri uri) {
         switch (sUriMatcher.match(uri)) {
             case ALL_TASKS:
                 return TasksTable.CONTENT_TYPE_DIR;
+            case TASK_ITEM:
+                return TasksTable.CONTENT_TYPE_ITEM;
+            case ALL_TASK_GROUPS:
+                return TaskGroupsTable.CONTENT_TYPE_DIR;
+            case ALL_TASK_STATS:
+                return TaskStatsTable.CONTENT_TYPE_DIR;
+            case TASK_CHANGES_SINCE:
+                return TaskChangesTable.CONTENT_TYPE_DIR;
+            case UPCOMING_TASKS:
+            case OVERDUE_TASKS:
+            case UNSEEN_TASKS:
+                return TasksTable.CONTENT_TYPE_DIR;
             default:
                 throw new IllegalArgumentException("Cannot resolve given URI: " + uri);
         }
@@ -56,30 +140,241 @@ public class NagboxContentProvider extends ContentProvider {
     public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
         switch (sUriMatcher.match(uri)) {
             case ALL_TASKS:
+                // Deleted tasks are only kept for undo and must not show up anywhere
                 final Cursor cursor = mDbHelper.getReadableDatabase().query(
-                        TasksTable.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder
+                        TasksTable.TABLE_NAME, projection,
+                        DatabaseUtils.concatenateWhere(BuildingBlocks.SELECTION_TASK_NOT_DELETED, selection),
+                        selectionArgs, null, null, sortOrder
                 );
                 //noinspection ConstantConditions
                 cursor.setNotificationUri(getContext().getContentResolver(), TasksTable.CONTENT_URI);
                 return cursor;
+            case TASK_ITEM:
+                final Cursor itemCursor = mDbHelper.getReadableDatabase().query(
+                        TasksTable.TABLE_NAME, projection,
+                        DatabaseUtils.concatenateWhere(
+                                BuildingBlocks.SELECTION_TASK_NOT_DELETED + " AND " + BuildingBlocks.SELECTION_ID,
+                                selection
+                        ),
+                        DatabaseUtils.appendSelectionArgs(new String[]{uri.getLastPathSegment()}, selectionArgs),
+                        null, null, sortOrder
+                );
+                //noinspection ConstantConditions
+                itemCursor.setNotificationUri(getContext().getContentResolver(), TasksTable.CONTENT_URI);
+                return itemCursor;
+            case ALL_TASK_GROUPS:
+                final Cursor groupsCursor = mDbHelper.getReadableDatabase().query(
+                        TaskGroupsTable.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder
+                );
+                //noinspection ConstantConditions
+                groupsCursor.setNotificationUri(getContext().getContentResolver(), TaskGroupsTable.CONTENT_URI);
+                return groupsCursor;
+            case ALL_TASK_STATS:
+                // Only precomputed rollups are read, one row per task, however long the history is
+                final Cursor statsCursor = mDbHelper.getReadableDatabase().query(
+                        BuildingBlocks.TABLE_TASK_STATS_JOIN_TASKS, projection,
+                        DatabaseUtils.concatenateWhere(BuildingBlocks.SELECTION_TASK_NOT_DELETED, selection),
+                        selectionArgs, null, null, sortOrder
+                );
+                // Stats are only updated along with tasks, so the same notifications apply
+                //noinspection ConstantConditions
+                statsCursor.setNotificationUri(getContext().getContentResolver(), TasksTable.CONTENT_URI);
+                return statsCursor;
+            case TASK_CHANGES_SINCE:
+                // Only the rows past given sequence number are read, and repeated changes of a task are merged, so
+                // consumers get a delta proportional to how much has changed
+                final Cursor changesCursor = mDbHelper.getReadableDatabase().query(
+                        TASK_CHANGES_SINCE_TABLE + ContentUris.parseId(uri) + " GROUP BY +"
+                                + TaskChangesTable.COL_TASK_ID + ")",
+                        projection, selection, selectionArgs, null, null, sortOrder
+                );
+                // The log is written along with tasks, so the same notifications apply
+                //noinspection ConstantConditions
+                changesCursor.setNotificationUri(getContext().getContentResolver(), TasksTable.CONTENT_URI);
+                return changesCursor;
+            case UPCOMING_TASKS:
+                final long now = Clock.getInstance().currentTimeMillis();
+                final String within = uri.getQueryParameter(NagboxContract.QUERY_PARAM_WITHIN);
+                return queryActiveTasksDue(
+                        now,
+                        within != null ? now + Long.parseLong(within) * DateUtils.MINUTE_IN_MILLIS : Long.MAX_VALUE,
+                        getLimit(uri)
+                );
+            case OVERDUE_TASKS:
+                return queryActiveTasksDue(Long.MIN_VALUE, Clock.getInstance().currentTimeMillis(), getLimit(uri));
+            case UNSEEN_TASKS:
+                final String limit = getLimit(uri);
+                final Cursor unseenCursor = mDbHelper.getReadableDatabase().rawQuery(SELECT_TASKS_DUE_SQL, new String[]{
+                        Integer.toString(BuildingBlocks.FLAGS_ACTIVE_NOT_SEEN),
+                        Long.toString(Long.MIN_VALUE), Long.toString(Long.MAX_VALUE), limit
+                });
+                //noinspection ConstantConditions
+                unseenCursor.setNotificationUri(getContext().getContentResolver(), TasksTable.CONTENT_URI);
+                return unseenCursor;
             default:
                 throw new IllegalArgumentException("Cannot resolve given URI: " + uri);
         }
     }
 
+    /**
+     * Query active tasks firing within given range. Only changes to the tasks are notified, so consumers must query
+     * again as time passes.
+     */
+    private Cursor queryActiveTasksDue(long after, long onOrBefore, String limit) {
+        final String afterArg = Long.toString(after);
+        final String onOrBeforeArg = Long.toString(onOrBefore);
+        final Cursor cursor = mDbHelper.getReadableDatabase().rawQuery(SELECT_ACTIVE_TASKS_DUE_SQL, new String[]{
+                Integer.toString(BuildingBlocks.FLAGS_ACTIVE_SEEN), afterArg, onOrBeforeArg, limit,
+                Integer.toString(BuildingBlocks.FLAGS_ACTIVE_NOT_SEEN), afterArg, onOrBeforeArg, limit,
+                limit
+        });
+        //noinspection ConstantConditions
+        cursor.setNotificationUri(getContext().getContentResolver(), TasksTable.CONTENT_URI);
+        return cursor;
+    }
+
+    /**
+     * @return limit passed in the URI, validated as a number, or {@link #NO_LIMIT} if there's none
+     */
+    private static String getLimit(Uri uri) {
+        final String limit = uri.getQueryParameter(NagboxContract.QUERY_PARAM_LIMIT);
+        return limit != null ? Integer.toString(Integer.parseInt(limit)) : NO_LIMIT;
+    }
+
+    /**
+     * Create a task. Only description fields, flags, next fire time, last started time and group can be set, and the
+     * task is put after all others. If it's active but its next fire time isn't set, it's started now.
+     */
     @Override
     public Uri insert(@NonNull Uri uri, ContentValues values) {
-        throw new IllegalArgumentException("Insert operations not supported - use DbOps");
+        final TaskBatch batch = mBatch.get();
+        if (batch == null) {
+            // A single operation is a batch of one
+            final ContentProviderResult result = applySingle(ContentProviderOperation.newInsert(uri)
+                    .withValues(values != null ? values : new ContentValues())
+                    .build());
+            return result != null ? result.uri : null;
+        }
+
+        if (sUriMatcher.match(uri) != ALL_TASKS) {
+            throw new IllegalArgumentException("Insert operations not supported for " + uri + " - use DbOps");
+        }
+        final long id = batch.insertTask(values);
+        return id != Task.NO_ID ? TasksTable.getUriForItem(id) : null;
+    }
+
+    /**
+     * Create tasks as with {@link #insert(Uri, ContentValues)}, all or none
+     *
+     * @return number of tasks created, which is either all or 0
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        if (sUriMatcher.match(uri) != ALL_TASKS) {
+            throw new IllegalArgumentException("Insert operations not supported for " + uri + " - use DbOps");
+        }
+
+        final TaskBatch batch = new TaskBatch(mDbHelper.getWritableDatabase());
+        try {
+            for (ContentValues taskValues : values) {
+                batch.insertTask(taskValues);
+            }
+            return commit(batch) ? values.length : 0;
+        } finally {
+            batch.rollback();
+        }
     }
 
+    /**
+     * Delete a task. It's only marked as deleted, same as when deleted in the app.
+     */
     @Override
     public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
-        throw new IllegalArgumentException("Delete operations not supported - use DbOps");
+        final TaskBatch batch = mBatch.get();
+        if (batch == null) {
+            final ContentProviderResult result = applySingle(ContentProviderOperation.newDelete(uri)
+                    .withSelection(selection, selectionArgs)
+                    .build());
+            return result != null ? result.count : 0;
+        }
+
+        return batch.deleteTask(getTaskId(uri, selection));
     }
 
+    /**
+     * Update a task. Only description fields can be changed, as the status has to be changed via the service.
+     */
     @Override
     public int update(@NonNull Uri uri, ContentValues values, String selection, String[] selectionArgs) {
-        throw new IllegalArgumentException("Update operations not supported - use DbOps");
+        final TaskBatch batch = mBatch.get();
+        if (batch == null) {
+            final ContentProviderResult result = applySingle(ContentProviderOperation.newUpdate(uri)
+                    .withValues(values != null ? values : new ContentValues())
+                    .withSelection(selection, selectionArgs)
+                    .build());
+            return result != null ? result.count : 0;
+        }
+
+        return batch.updateTask(getTaskId(uri, selection), values);
+    }
+
+    /**
+     * Apply the operations as a single transaction: either all of them take effect, or none
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final TaskBatch batch = new TaskBatch(mDbHelper.getWritableDatabase());
+        mBatch.set(batch);
+        try {
+            final ContentProviderResult[] results = super.applyBatch(operations);
+            if (!commit(batch)) {
+                throw new OperationApplicationException("Couldn't apply the batch");
+            }
+            return results;
+        } finally {
+            mBatch.remove();
+            batch.rollback();
+        }
+    }
+
+    /**
+     * Commit the batch, then notify the observers and let the service reschedule the alarm if the batch has started or
+     * deleted any tasks
+     *
+     * @return whether the batch was committed successfully
+     */
+    private boolean commit(TaskBatch batch) {
+        final Context context = getContext();
+        if (!batch.commit(ActiveWindow.getGlobal(context))) {
+            return false;
+        }
+
+        if (batch.hasChanges()) {
+            context.getContentResolver().notifyChange(TasksTable.CONTENT_URI, null);
+        }
+        if (batch.hasScheduleChanges()) {
+            NagboxService.onTasksChanged(context);
+        }
+        return true;
+    }
+
+    private ContentProviderResult applySingle(ContentProviderOperation operation) {
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>(1);
+        operations.add(operation);
+        try {
+            return applyBatch(operations)[0];
+        } catch (OperationApplicationException e) {
+            return null;
+        }
+    }
+
+    private static long getTaskId(Uri uri, String selection) {
+        if (sUriMatcher.match(uri) != TASK_ITEM || selection != null) {
+            throw new IllegalArgumentException("Only single tasks can be changed, without selection, was " + uri);
+        }
+        return ContentUris.parseId(uri);
     }
 
     private static UriMatcher buildUriMatcher() {
@@ -89,6 +384,41 @@ public class NagboxContentProvider extends ContentProvider {
                 NagboxContract.PATH_TASKS,
                 ALL_TASKS
         );
+        uriMatcher.addURI(
+                NagboxContract.CONTENT_AUTHORITY,
+                NagboxContract.PATH_TASKS + "/#",
+                TASK_ITEM
+        );
+        uriMatcher.addURI(
+                NagboxContract.CONTENT_AUTHORITY,
+                NagboxContract.PATH_TASK_GROUPS,
+                ALL_TASK_GROUPS
+        );
+        uriMatcher.addURI(
+                NagboxContract.CONTENT_AUTHORITY,
+                NagboxContract.PATH_TASK_STATS,
+                ALL_TASK_STATS
+        );
+        uriMatcher.addURI(
+                NagboxContract.CONTENT_AUTHORITY,
+                NagboxContract.PATH_TASK_CHANGES + "/#",
+                TASK_CHANGES_SINCE
+        );
+        uriMatcher.addURI(
+                NagboxContract.CONTENT_AUTHORITY,
+                NagboxContract.PATH_TASKS + "/" + NagboxContract.PATH_UPCOMING,
+                UPCOMING_TASKS
+        );
+        uriMatcher.addURI(
+                NagboxContract.CONTENT_AUTHORITY,
+                NagboxContract.PATH_TASKS + "/" + NagboxContract.PATH_OVERDUE,
+                OVERDUE_TASKS
+        );
+        uriMatcher.addURI(
+                NagboxContract.CONTENT_AUTHORITY,
+                NagboxContract.PATH_TASKS + "/" + NagboxContract.PATH_UNSEEN,
+                UNSEEN_TASKS
+        );
         return uriMatcher;
     }
 }
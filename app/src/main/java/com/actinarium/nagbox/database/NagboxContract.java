@@ -21,7 +21,14 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.provider.BaseColumns;
 import android.support.annotation.Nullable;
+import android.text.format.DateUtils;
+import com.actinarium.nagbox.model.ActiveWindow;
+import com.actinarium.nagbox.model.Recurrence;
+import com.actinarium.nagbox.model.SyncRecord;
 import com.actinarium.nagbox.model.Task;
+import com.actinarium.nagbox.model.TaskChange;
+import com.actinarium.nagbox.model.TaskGroup;
+import com.actinarium.nagbox.model.TaskStats;
 
 /**
  * Nagbox database contract class
@@ -34,6 +41,21 @@ public final class NagboxContract {
     public static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
 
     public static final String PATH_TASKS = "tasks";
+    public static final String PATH_TASK_GROUPS = "task_groups";
+    public static final String PATH_TASK_STATS = "task_stats";
+    public static final String PATH_TASK_CHANGES = "task_changes";
+    public static final String PATH_UPCOMING = "upcoming";
+    public static final String PATH_OVERDUE = "overdue";
+    public static final String PATH_UNSEEN = "unseen";
+
+    /**
+     * Query parameter for the max number of rows to return. Only honored by the paths that document it.
+     */
+    public static final String QUERY_PARAM_LIMIT = "limit";
+    /**
+     * Query parameter for how far ahead to look, in minutes. Only honored by the paths that document it.
+     */
+    public static final String QUERY_PARAM_WITHIN = "within";
 
     // Table mappings ------------------------------------
 
@@ -48,14 +70,232 @@ public final class NagboxContract {
         public static final String COL_NEXT_FIRE_AT = "next_fire_at";
         public static final String COL_LAST_STARTED_AT = "last_started_at";
         public static final String COL_DISPLAY_ORDER = "display_order";
+        public static final String COL_ACTIVE_FROM = "active_from";
+        public static final String COL_ACTIVE_TO = "active_to";
+        public static final String COL_ACTIVE_DAYS = "active_days";
+        public static final String COL_ESCALATION_STEP = "escalation_step";
+        public static final String COL_MIN_INTERVAL = "min_interval";
+        public static final String COL_JITTER = "jitter";
+        public static final String COL_GROUP_ID = "group_id";
+        /**
+         * When the task was deleted, or <code>NULL</code> if it's not. Deleted tasks are kept for a while so that
+         * deletion can be undone, and are invisible to everything else.
+         */
+        public static final String COL_DELETED_AT = "deleted_at";
+        /**
+         * Random ID the task is known by on all synced devices, since row IDs are local
+         */
+        public static final String COL_SYNC_ID = "sync_id";
+        /**
+         * When the description (title, interval, active window, recurrence) was last changed by the user, to resolve
+         * conflicts when syncing. So are the two below, for the status and for deletion. 0 if never.
+         */
+        public static final String COL_DESCRIPTION_CHANGED_AT = "description_changed_at";
+        public static final String COL_STATUS_CHANGED_AT = "status_changed_at";
+        public static final String COL_DELETION_CHANGED_AT = "deletion_changed_at";
 
         // Content provider stuff
         public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon().appendPath(PATH_TASKS).build();
         public static final String CONTENT_TYPE_DIR = "vnd.android.cursor.dir/" + CONTENT_AUTHORITY + '.' + PATH_TASKS;
+        public static final String CONTENT_TYPE_ITEM = "vnd.android.cursor.item/" + CONTENT_AUTHORITY + '.'
+                + PATH_TASKS;
 
         public static Uri getUriForItem(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        /**
+         * Get the URI to read active tasks that will fire within given number of minutes from now, soonest first, in
+         * {@link NagboxContract#TASK_DUE_PROJECTION}. Projection, selection and sort order passed to the query are
+         * ignored.
+         *
+         * @param withinMinutes how far ahead to look, or 0 to get all upcoming tasks
+         * @param limit         max number of tasks to return, or 0 for no limit
+         * @return URI to query
+         */
+        public static Uri getUriForUpcoming(int withinMinutes, int limit) {
+            Uri.Builder builder = CONTENT_URI.buildUpon().appendPath(PATH_UPCOMING);
+            if (withinMinutes > 0) {
+                builder.appendQueryParameter(QUERY_PARAM_WITHIN, Integer.toString(withinMinutes));
+            }
+            return appendLimit(builder, limit);
+        }
+
+        /**
+         * Get the URI to read active tasks that were due to fire by now, most overdue first, in {@link
+         * NagboxContract#TASK_DUE_PROJECTION}. Projection, selection and sort order passed to the query are ignored.
+         *
+         * @param limit max number of tasks to return, or 0 for no limit
+         * @return URI to query
+         */
+        public static Uri getUriForOverdue(int limit) {
+            return appendLimit(CONTENT_URI.buildUpon().appendPath(PATH_OVERDUE), limit);
+        }
+
+        /**
+         * Get the URI to read active tasks that fired but whose notification wasn't dismissed yet, in the order they
+         * fire next, in {@link NagboxContract#TASK_DUE_PROJECTION}. Projection, selection and sort order passed to the
+         * query are ignored.
+         *
+         * @param limit max number of tasks to return, or 0 for no limit
+         * @return URI to query
+         */
+        public static Uri getUriForUnseen(int limit) {
+            return appendLimit(CONTENT_URI.buildUpon().appendPath(PATH_UNSEEN), limit);
+        }
+
+        private static Uri appendLimit(Uri.Builder builder, int limit) {
+            if (limit > 0) {
+                builder.appendQueryParameter(QUERY_PARAM_LIMIT, Integer.toString(limit));
+            }
+            return builder.build();
+        }
+    }
+
+    public static class TaskGroupsTable implements BaseColumns {
+
+        // Database stuff
+        public static final String TABLE_NAME = "task_groups";
+
+        public static final String COL_TITLE = "title";
+
+        // Content provider stuff
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon().appendPath(PATH_TASK_GROUPS).build();
+        public static final String CONTENT_TYPE_DIR = "vnd.android.cursor.dir/" + CONTENT_AUTHORITY + '.'
+                + PATH_TASK_GROUPS;
+    }
+
+    public static class LatenessTable {
+
+        public static final String TABLE_NAME = "alarm_lateness";
+
+        public static final String COL_TASK_ID = "task_id";
+        public static final String COL_BUCKET = "bucket";
+        public static final String COL_COUNT = "count";
+    }
+
+    public static class NagEventsTable implements BaseColumns {
+
+        public static final String TABLE_NAME = "nag_events";
+
+        public static final String COL_TASK_ID = "task_id";
+        public static final String COL_TYPE = "type";
+        public static final String COL_TIMESTAMP = "timestamp";
+    }
+
+    public static class NagDailyStatsTable {
+
+        public static final String TABLE_NAME = "nag_daily_stats";
+
+        public static final String COL_TASK_ID = "task_id";
+        /**
+         * Number of the day since the epoch, in UTC
+         */
+        public static final String COL_DAY = "day";
+        public static final String COL_TYPE = "type";
+        public static final String COL_COUNT = "count";
+    }
+
+    /**
+     * Rollups of nag history, one row per task, updated incrementally along with task status
+     *
+     * @see TaskStats
+     */
+    public static class TaskStatsTable {
+
+        // Database stuff
+        public static final String TABLE_NAME = "task_stats";
+
+        public static final String COL_TASK_ID = "task_id";
+        public static final String COL_NAG_COUNT = "nag_count";
+        public static final String COL_ACTIVE_TIME = "active_time";
+        public static final String COL_DISMISS_COUNT = "dismiss_count";
+        public static final String COL_DISMISS_TIME = "dismiss_time";
+        /**
+         * When the oldest nag the user hasn't responded to yet fired, or <code>NULL</code> if there's none
+         */
+        public static final String COL_UNSEEN_SINCE = "unseen_since";
+        public static final String COL_CURRENT_STREAK = "current_streak";
+        public static final String COL_BEST_STREAK = "best_streak";
+        /**
+         * Local day number of the last nag, see {@link TaskStats#getLocalDay(long, java.util.TimeZone)}
+         */
+        public static final String COL_LAST_NAG_DAY = "last_nag_day";
+
+        // Content provider stuff
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon().appendPath(PATH_TASK_STATS).build();
+        public static final String CONTENT_TYPE_DIR = "vnd.android.cursor.dir/" + CONTENT_AUTHORITY + '.'
+                + PATH_TASK_STATS;
+    }
+
+    /**
+     * Log of changes to task rows, written by triggers so that no change is missed
+     *
+     * @see TaskChange
+     */
+    public static class TaskChangesTable {
+
+        // Database stuff
+        public static final String TABLE_NAME = "task_changes";
+
+        /**
+         * Sequence number of the change, only ever growing
+         */
+        public static final String COL_SEQ = "seq";
+        public static final String COL_TASK_ID = "task_id";
+        public static final String COL_TYPE = "type";
+
+        /**
+         * Triggers that log every change of a task row into this table, within the same transaction. They can't go
+         * into a migration file, since their bodies contain semicolons, so {@link NagboxDbHelper} creates them right
+         * after the migration to v11, which adds this table.
+         */
+        public static final String[] TRIGGERS = {
+                "CREATE TRIGGER tasks_log_insert AFTER INSERT ON tasks BEGIN"
+                        + " INSERT INTO task_changes (task_id, type) VALUES (NEW._id, " + TaskChange.TYPE_CREATED + ");"
+                        + " END",
+                "CREATE TRIGGER tasks_log_update AFTER UPDATE ON tasks BEGIN"
+                        + " INSERT INTO task_changes (task_id, type) VALUES (NEW._id, CASE WHEN NEW.deleted_at IS NULL"
+                        + " THEN " + TaskChange.TYPE_UPDATED + " ELSE " + TaskChange.TYPE_DELETED + " END);"
+                        + " END",
+                "CREATE TRIGGER tasks_log_delete AFTER DELETE ON tasks BEGIN"
+                        + " INSERT INTO task_changes (task_id, type) VALUES (OLD._id, " + TaskChange.TYPE_DELETED + ");"
+                        + " END"
+        };
+
+        // Content provider stuff
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon().appendPath(PATH_TASK_CHANGES).build();
+        public static final String CONTENT_TYPE_DIR = "vnd.android.cursor.dir/" + CONTENT_AUTHORITY + '.'
+                + PATH_TASK_CHANGES;
+
+        /**
+         * Get the URI to read the latest change of each task that changed after the change with given sequence number
+         *
+         * @param seq sequence number of the last change the consumer has seen, or 0 to get all tasks
+         * @return URI to query
+         */
+        public static Uri getUriForChangesSince(long seq) {
+            return ContentUris.withAppendedId(CONTENT_URI, seq);
+        }
+    }
+
+    /**
+     * Devices or servers this one syncs tasks with, and how far the changes were exchanged with each of them
+     */
+    public static class SyncPeersTable {
+
+        // Database stuff
+        public static final String TABLE_NAME = "sync_peers";
+
+        public static final String COL_PEER = "peer";
+        /**
+         * Sequence number of the last {@link TaskChangesTable task change} sent to the peer
+         */
+        public static final String COL_SENT_SEQ = "sent_seq";
+        /**
+         * Watermark of the last peer's change received from it, in the peer's own terms
+         */
+        public static final String COL_RECEIVED_SEQ = "received_seq";
     }
 
     // Building blocks -----------------------------------
@@ -67,15 +307,82 @@ public final class NagboxContract {
     public interface BuildingBlocks {
 
         String SELECTION_ID = BaseColumns._ID + " = ?";
-        String SELECTION_TASK_ACTIVE = TasksTable.COL_FLAGS + " & " + Task.FLAG_ACTIVE;
+        /**
+         * Leading column of the <code>tasks_deleted_at</code> index, so that tombstones are skipped without a scan
+         */
+        String SELECTION_TASK_NOT_DELETED = TasksTable.COL_DELETED_AT + " IS NULL";
+        String SELECTION_TASK_DELETED = TasksTable.COL_DELETED_AT + " IS NOT NULL";
+        String SELECTION_TASK_DELETED_ON_OR_BEFORE = TasksTable.COL_DELETED_AT + " <= ?";
+        /**
+         * Same as {@link #SELECTION_TASK_NOT_DELETED}, but the unary plus keeps SQLite from picking the
+         * <code>tasks_deleted_at</code> index, which would walk every live row, over a narrower one
+         */
+        String SELECTION_TASK_NOT_DELETED_UNINDEXED = "+" + TasksTable.COL_DELETED_AT + " IS NULL";
+        /**
+         * The only values of <code>flags</code> an active task can have, to be matched by equality
+         */
+        int FLAGS_ACTIVE_SEEN = Task.FLAG_ACTIVE;
+        int FLAGS_ACTIVE_NOT_SEEN = Task.FLAG_ACTIVE | Task.FLAG_NOT_SEEN;
+        /**
+         * Matches flags by equality rather than a bitmask test, so that this and the selections built on it are ranges
+         * of the <code>tasks_flags_next_fire_at</code> index
+         */
+        String SELECTION_TASK_ACTIVE = TasksTable.COL_FLAGS + " IN (" + FLAGS_ACTIVE_SEEN + ", "
+                + FLAGS_ACTIVE_NOT_SEEN + ") AND " + SELECTION_TASK_NOT_DELETED_UNINDEXED;
         String SELECTION_TASK_NOT_SEEN = TasksTable.COL_FLAGS + " & " + Task.FLAG_NOT_SEEN;
         String SELECTION_TASK_FIRE_AT_ON_OR_BEFORE = TasksTable.COL_NEXT_FIRE_AT + " <= ?";
-
+        /**
+         * Active tasks with the exact flags value bound to the first <code>?</code>, firing after the second and on or
+         * before the third. Unlike bitmask tests, this is a range of the <code>tasks_flags_next_fire_at</code> index.
+         *
+         * @see #FLAGS_ACTIVE_SEEN
+         * @see #FLAGS_ACTIVE_NOT_SEEN
+         */
+        String SELECTION_TASK_FLAGS_FIRE_AT_BETWEEN = TasksTable.COL_FLAGS + " = ? AND "
+                + TasksTable.COL_NEXT_FIRE_AT + " > ? AND " + TasksTable.COL_NEXT_FIRE_AT + " <= ? AND "
+                + SELECTION_TASK_NOT_DELETED_UNINDEXED;
+
+        String SELECTION_TASK_TO_REMIND = SELECTION_TASK_ACTIVE
+                + " AND (" + SELECTION_TASK_NOT_SEEN + " OR " + SELECTION_TASK_FIRE_AT_ON_OR_BEFORE + ")";
+        String SELECTION_TASK_DUE = SELECTION_TASK_ACTIVE + " AND " + SELECTION_TASK_FIRE_AT_ON_OR_BEFORE;
+        String SELECTION_TASK_FIXED_INTERVAL = TasksTable.COL_MIN_INTERVAL + " IS NULL";
+        String SELECTION_TASK_IN_GROUP = TasksTable.COL_GROUP_ID + " = ?";
+        String SELECTION_TASK_GLOBAL_WINDOW = TasksTable.COL_ACTIVE_DAYS + " IS NULL";
+        String SELECTION_TASK_STATS_UNSEEN = TaskStatsTable.COL_UNSEEN_SINCE + " IS NOT NULL";
+        String SELECTION_TASK_SYNC_ID = TasksTable.COL_SYNC_ID + " = ?";
+        String SELECTION_SYNC_PEER = SyncPeersTable.COL_PEER + " = ?";
+        String SELECTION_TASK_OWN_WINDOW = TasksTable.COL_ACTIVE_FROM + " = ? AND " + TasksTable.COL_ACTIVE_TO
+                + " = ? AND " + TasksTable.COL_ACTIVE_DAYS + " = ?";
+
+        /**
+         * The smallest <code>next_fire_at</code> strictly after the timestamp bound to <code>?</code>, computed in
+         * closed form so that tasks that missed a lot of cycles (e.g. while the device was off) don't need a loop
+         */
+        String EXPR_NEXT_FIRE_AT_AFTER = TasksTable.COL_NEXT_FIRE_AT + " + ((? - " + TasksTable.COL_NEXT_FIRE_AT
+                + ") / (" + TasksTable.COL_INTERVAL + " * " + DateUtils.MINUTE_IN_MILLIS + ") + 1) * ("
+                + TasksTable.COL_INTERVAL + " * " + DateUtils.MINUTE_IN_MILLIS + ")";
+
+        /**
+         * Task stats with the task they belong to. Column names don't clash, so they don't need to be qualified
+         */
+        String TABLE_TASK_STATS_JOIN_TASKS = TaskStatsTable.TABLE_NAME + " JOIN " + TasksTable.TABLE_NAME
+                + " ON " + TasksTable._ID + " = " + TaskStatsTable.COL_TASK_ID;
+
+        String AGGR_COL_COUNT = "COUNT(*)";
         String AGGR_COL_MIN_NEXT_FIRE_AT = "MIN(" + TasksTable.COL_NEXT_FIRE_AT + ")";
+        String AGGR_COL_MAX_INTERVAL = "MAX(" + TasksTable.COL_INTERVAL + ")";
         String AGGR_COL_MAX_DISPLAY_ORDER = "MAX(" + TasksTable.COL_DISPLAY_ORDER + ")";
+        String AGGR_COL_MAX_SEQ = "MAX(" + TaskChangesTable.COL_SEQ + ")";
 
         String ORDER_BY_DISPLAY_ORDER_ASC = TasksTable.COL_DISPLAY_ORDER + " ASC";
+        /**
+         * Ungrouped tasks first (nulls go first in SQLite), then tasks of each group in the order groups were created
+         */
+        String ORDER_BY_GROUP_AND_DISPLAY_ORDER_ASC = TasksTable.COL_GROUP_ID + " ASC, " + ORDER_BY_DISPLAY_ORDER_ASC;
+        String ORDER_BY_ID_ASC = BaseColumns._ID + " ASC";
+        String ORDER_BY_TASK_DELETED_AT_ASC = TasksTable.COL_DELETED_AT + " ASC";
         String ORDER_BY_TASK_FIRE_AT_ASC = TasksTable.COL_NEXT_FIRE_AT + " ASC";
+        String ORDER_BY_SEQ_ASC = TaskChangesTable.COL_SEQ + " ASC";
 
     }
 
@@ -83,6 +390,11 @@ public final class NagboxContract {
 
     public static final TaskFullProjection TASK_FULL_PROJECTION = new TaskFullProjection();
     public static final TaskStatusProjection TASK_STATUS_PROJECTION = new TaskStatusProjection();
+    public static final TaskGroupProjection TASK_GROUP_PROJECTION = new TaskGroupProjection();
+    public static final TaskStatsProjection TASK_STATS_PROJECTION = new TaskStatsProjection();
+    public static final TaskChangeProjection TASK_CHANGE_PROJECTION = new TaskChangeProjection();
+    public static final SyncRecordProjection SYNC_RECORD_PROJECTION = new SyncRecordProjection();
+    public static final TaskDueProjection TASK_DUE_PROJECTION = new TaskDueProjection();
 
     /**
      * A projection to get all Task fields.
@@ -96,7 +408,14 @@ public final class NagboxContract {
                 TasksTable.COL_FLAGS,
                 TasksTable.COL_NEXT_FIRE_AT,
                 TasksTable.COL_LAST_STARTED_AT,
-                TasksTable.COL_DISPLAY_ORDER
+                TasksTable.COL_DISPLAY_ORDER,
+                TasksTable.COL_ACTIVE_FROM,
+                TasksTable.COL_ACTIVE_TO,
+                TasksTable.COL_ACTIVE_DAYS,
+                TasksTable.COL_ESCALATION_STEP,
+                TasksTable.COL_MIN_INTERVAL,
+                TasksTable.COL_JITTER,
+                TasksTable.COL_GROUP_ID
         };
 
         @Override
@@ -117,6 +436,13 @@ public final class NagboxContract {
             task.nextFireAt = cursor.getLong(4);
             task.lastStartedAt = cursor.getLong(5);
             task.displayOrder = cursor.getInt(6);
+            task.activeWindow = cursor.isNull(9)
+                    ? null
+                    : new ActiveWindow(cursor.getInt(7), cursor.getInt(8), cursor.getInt(9));
+            task.recurrence = cursor.isNull(11)
+                    ? null
+                    : new Recurrence(cursor.getInt(10), cursor.getInt(11), cursor.getInt(12));
+            task.groupId = cursor.isNull(13) ? TaskGroup.NO_ID : cursor.getLong(13);
 
             return task;
         }
@@ -164,4 +490,224 @@ public final class NagboxContract {
         }
     }
 
+    /**
+     * A projection to get all TaskGroup fields.
+     */
+    public static final class TaskGroupProjection implements Projection<TaskGroup> {
+
+        private static final String[] COLUMNS = {
+                TaskGroupsTable._ID,
+                TaskGroupsTable.COL_TITLE
+        };
+
+        @Override
+        public String[] getColumns() {
+            return COLUMNS;
+        }
+
+        @Override
+        public TaskGroup mapCursorToModel(Cursor cursor, @Nullable TaskGroup group) {
+            if (group == null) {
+                group = new TaskGroup();
+            }
+
+            group.id = cursor.getLong(0);
+            group.title = cursor.getString(1);
+
+            return group;
+        }
+
+        @Override
+        public long getId(Cursor cursor) {
+            return cursor.getLong(0);
+        }
+    }
+
+    /**
+     * A projection to get all TaskStats fields, to be used with {@link TaskStatsTable#CONTENT_URI}.
+     */
+    public static final class TaskStatsProjection implements Projection<TaskStats> {
+
+        private static final String[] COLUMNS = {
+                TaskStatsTable.COL_TASK_ID,
+                TasksTable.COL_TITLE,
+                TasksTable.COL_FLAGS,
+                TasksTable.COL_LAST_STARTED_AT,
+                TaskStatsTable.COL_NAG_COUNT,
+                TaskStatsTable.COL_ACTIVE_TIME,
+                TaskStatsTable.COL_DISMISS_COUNT,
+                TaskStatsTable.COL_DISMISS_TIME,
+                TaskStatsTable.COL_CURRENT_STREAK,
+                TaskStatsTable.COL_BEST_STREAK,
+                TaskStatsTable.COL_LAST_NAG_DAY
+        };
+
+        @Override
+        public String[] getColumns() {
+            return COLUMNS;
+        }
+
+        @Override
+        public TaskStats mapCursorToModel(Cursor cursor, @Nullable TaskStats stats) {
+            if (stats == null) {
+                stats = new TaskStats();
+            }
+
+            stats.taskId = cursor.getLong(0);
+            stats.title = cursor.getString(1);
+            stats.isActive = (cursor.getInt(2) & Task.FLAG_ACTIVE) != 0;
+            stats.lastStartedAt = cursor.getLong(3);
+            stats.nagCount = cursor.getInt(4);
+            stats.activeTime = cursor.getLong(5);
+            stats.dismissCount = cursor.getInt(6);
+            stats.dismissTime = cursor.getLong(7);
+            stats.currentStreak = cursor.getInt(8);
+            stats.bestStreak = cursor.getInt(9);
+            stats.lastNagDay = cursor.isNull(10) ? -1 : cursor.getLong(10);
+
+            return stats;
+        }
+
+        @Override
+        public long getId(Cursor cursor) {
+            return cursor.getLong(0);
+        }
+    }
+
+    /**
+     * A projection to get all TaskChange fields, to be used with {@link TaskChangesTable#getUriForChangesSince(long)}.
+     */
+    public static final class TaskChangeProjection implements Projection<TaskChange> {
+
+        private static final String[] COLUMNS = {
+                TaskChangesTable.COL_SEQ,
+                TaskChangesTable.COL_TASK_ID,
+                TaskChangesTable.COL_TYPE
+        };
+
+        @Override
+        public String[] getColumns() {
+            return COLUMNS;
+        }
+
+        @Override
+        public TaskChange mapCursorToModel(Cursor cursor, @Nullable TaskChange change) {
+            if (change == null) {
+                change = new TaskChange();
+            }
+
+            change.seq = cursor.getLong(0);
+            change.taskId = cursor.isNull(1) ? Task.NO_ID : cursor.getLong(1);
+            change.type = cursor.getInt(2);
+
+            return change;
+        }
+
+        @Override
+        public long getId(Cursor cursor) {
+            return cursor.getLong(0);
+        }
+    }
+
+    /**
+     * A projection to get a task as it's synced, with its local row ID.
+     */
+    public static final class SyncRecordProjection implements Projection<SyncRecord> {
+
+        private static final String[] COLUMNS = {
+                TasksTable._ID,
+                TasksTable.COL_SYNC_ID,
+                TasksTable.COL_TITLE,
+                TasksTable.COL_INTERVAL,
+                TasksTable.COL_ACTIVE_FROM,
+                TasksTable.COL_ACTIVE_TO,
+                TasksTable.COL_ACTIVE_DAYS,
+                TasksTable.COL_ESCALATION_STEP,
+                TasksTable.COL_MIN_INTERVAL,
+                TasksTable.COL_JITTER,
+                TasksTable.COL_DESCRIPTION_CHANGED_AT,
+                TasksTable.COL_FLAGS,
+                TasksTable.COL_LAST_STARTED_AT,
+                TasksTable.COL_NEXT_FIRE_AT,
+                TasksTable.COL_STATUS_CHANGED_AT,
+                TasksTable.COL_DELETED_AT,
+                TasksTable.COL_DELETION_CHANGED_AT
+        };
+
+        @Override
+        public String[] getColumns() {
+            return COLUMNS;
+        }
+
+        @Override
+        public SyncRecord mapCursorToModel(Cursor cursor, @Nullable SyncRecord record) {
+            if (record == null) {
+                record = new SyncRecord();
+            }
+
+            record.syncId = cursor.getString(1);
+            record.title = cursor.getString(2);
+            record.interval = cursor.getInt(3);
+            record.activeWindow = cursor.isNull(6)
+                    ? null
+                    : new ActiveWindow(cursor.getInt(4), cursor.getInt(5), cursor.getInt(6));
+            record.recurrence = cursor.isNull(8)
+                    ? null
+                    : new Recurrence(cursor.getInt(7), cursor.getInt(8), cursor.getInt(9));
+            record.descriptionChangedAt = cursor.getLong(10);
+            record.isActive = (cursor.getInt(11) & Task.FLAG_ACTIVE) != 0;
+            record.lastStartedAt = cursor.getLong(12);
+            record.nextFireAt = cursor.getLong(13);
+            record.statusChangedAt = cursor.getLong(14);
+            record.isDeleted = !cursor.isNull(15);
+            record.deletionChangedAt = cursor.getLong(16);
+
+            return record;
+        }
+
+        @Override
+        public long getId(Cursor cursor) {
+            return cursor.getLong(0);
+        }
+    }
+
+
+    /**
+     * A narrow projection of what's needed to show when a task fires, returned by {@link
+     * TasksTable#getUriForUpcoming(int, int)}, {@link TasksTable#getUriForOverdue(int)}, and {@link
+     * TasksTable#getUriForUnseen(int)}. All but the title are read from the index.
+     */
+    public static final class TaskDueProjection implements Projection<Task> {
+
+        private static final String[] COLUMNS = {
+                TasksTable._ID,
+                TasksTable.COL_TITLE,
+                TasksTable.COL_FLAGS,
+                TasksTable.COL_NEXT_FIRE_AT
+        };
+
+        @Override
+        public String[] getColumns() {
+            return COLUMNS;
+        }
+
+        @Override
+        public Task mapCursorToModel(Cursor cursor, @Nullable Task task) {
+            if (task == null) {
+                task = new Task();
+            }
+
+            task.id = cursor.getLong(0);
+            task.title = cursor.getString(1);
+            task.flags = cursor.getInt(2);
+            task.nextFireAt = cursor.getLong(3);
+
+            return task;
+        }
+
+        @Override
+        public long getId(Cursor cursor) {
+            return cursor.getLong(0);
+        }
+    }
 }
@@ -24,6 +24,7 @@ import android.text.TextUtils;
 import android.util.Log;
 import com.actinarium.nagbox.R;
 import com.actinarium.nagbox.common.ReaderUtils;
+import com.actinarium.nagbox.database.NagboxContract.TaskChangesTable;
 import com.actinarium.nagbox.model.Task;
 
 /**
@@ -36,7 +37,9 @@ public class NagboxDbHelper extends SQLiteOpenHelper {
     private static final String TAG = "NagboxDbHelper";
 
     private static final String DATABASE_NAME = "nagbox.db";
-    private static final int DATABASE_VERSION = 3;
+    private static final int DATABASE_VERSION = 13;
+
+    private static final String STARTER_TASK_SYNC_ID_PREFIX = "starter";
 
     private static NagboxDbHelper sInstance;
 
@@ -57,8 +60,9 @@ public class NagboxDbHelper extends SQLiteOpenHelper {
     @Override
     public void onCreate(SQLiteDatabase db) {
         // When a few migrations have accumulated, it makes sense to update the base schema.
-        // Like, now we're shipping with v3
+        // Like, now we're shipping with v3, and the migrations since then are applied on top
         execFile(db, R.raw.schema_v3);
+        onUpgrade(db, 3, DATABASE_VERSION);
         importInitialData(db);
     }
 
@@ -72,9 +76,42 @@ public class NagboxDbHelper extends SQLiteOpenHelper {
             case 2:
                 Log.i(TAG, "Migrating DB: v2 -> v3");
                 execFile(db, R.raw.migration_v2_v3);
-//          case 3:
-//              Log.i(TAG, "Migrating DB: v3 -> v4");
-//              execFile(db, R.raw.migration_v3_v4);
+            case 3:
+                Log.i(TAG, "Migrating DB: v3 -> v4");
+                execFile(db, R.raw.migration_v3_v4);
+            case 4:
+                Log.i(TAG, "Migrating DB: v4 -> v5");
+                execFile(db, R.raw.migration_v4_v5);
+            case 5:
+                Log.i(TAG, "Migrating DB: v5 -> v6");
+                execFile(db, R.raw.migration_v5_v6);
+            case 6:
+                Log.i(TAG, "Migrating DB: v6 -> v7");
+                execFile(db, R.raw.migration_v6_v7);
+            case 7:
+                Log.i(TAG, "Migrating DB: v7 -> v8");
+                execFile(db, R.raw.migration_v7_v8);
+            case 8:
+                Log.i(TAG, "Migrating DB: v8 -> v9");
+                execFile(db, R.raw.migration_v8_v9);
+            case 9:
+                Log.i(TAG, "Migrating DB: v9 -> v10");
+                execFile(db, R.raw.migration_v9_v10);
+            case 10:
+                Log.i(TAG, "Migrating DB: v10 -> v11");
+                execFile(db, R.raw.migration_v10_v11);
+                for (String trigger : TaskChangesTable.TRIGGERS) {
+                    db.execSQL(trigger);
+                }
+            case 11:
+                Log.i(TAG, "Migrating DB: v11 -> v12");
+                execFile(db, R.raw.migration_v11_v12);
+            case 12:
+                Log.i(TAG, "Migrating DB: v12 -> v13");
+                execFile(db, R.raw.migration_v12_v13);
+//          case 13:
+//              Log.i(TAG, "Migrating DB: v13 -> v14");
+//              execFile(db, R.raw.migration_v13_v14);
 //          ...etc
         }
     }
@@ -109,7 +146,8 @@ public class NagboxDbHelper extends SQLiteOpenHelper {
             reusableTask.title = starterTaskTitles[i];
             reusableTask.interval = starterTaskIntervals[i];
             reusableTask.displayOrder = i + 1;
-            transaction.createTask(reusableTask);
+            // Same on every device, so that starter tasks don't get duplicated once devices are synced
+            transaction.createTask(reusableTask, STARTER_TASK_SYNC_ID_PREFIX + (i + 1));
         }
         transaction.commit();
     }
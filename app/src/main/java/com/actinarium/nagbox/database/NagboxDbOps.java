@@ -16,12 +16,37 @@
 
 package com.actinarium.nagbox.database;
 
+import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+import android.text.format.DateUtils;
 import com.actinarium.nagbox.database.NagboxContract.BuildingBlocks;
+import com.actinarium.nagbox.database.NagboxContract.LatenessTable;
+import com.actinarium.nagbox.database.NagboxContract.NagDailyStatsTable;
+import com.actinarium.nagbox.database.NagboxContract.NagEventsTable;
+import com.actinarium.nagbox.database.NagboxContract.SyncPeersTable;
+import com.actinarium.nagbox.database.NagboxContract.TaskChangesTable;
+import com.actinarium.nagbox.database.NagboxContract.TaskGroupsTable;
+import com.actinarium.nagbox.database.NagboxContract.TaskStatsTable;
 import com.actinarium.nagbox.database.NagboxContract.TasksTable;
+import com.actinarium.nagbox.model.ActiveWindow;
+import com.actinarium.nagbox.model.LatenessHistogram;
+import com.actinarium.nagbox.model.NagEvent;
+import com.actinarium.nagbox.model.Recurrence;
+import com.actinarium.nagbox.model.SyncRecord;
 import com.actinarium.nagbox.model.Task;
+import com.actinarium.nagbox.model.TaskChange;
+import com.actinarium.nagbox.model.TaskGroup;
+import com.actinarium.nagbox.model.TaskStats;
+import com.actinarium.nagbox.sync.SyncMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.UUID;
 
 /**
  * Database operations facade with transaction builder. Here's the place to put all insert/update/delete logic, as well
@@ -34,6 +59,37 @@ import com.actinarium.nagbox.model.Task;
  */
 public final class NagboxDbOps {
 
+    private static final String SELECT_LATENESS_SQL = "SELECT l." + LatenessTable.COL_TASK_ID
+            + ", t." + TasksTable.COL_TITLE + ", l." + LatenessTable.COL_BUCKET + ", l." + LatenessTable.COL_COUNT
+            + " FROM " + LatenessTable.TABLE_NAME + " l LEFT JOIN " + TasksTable.TABLE_NAME
+            + " t ON t." + TasksTable._ID + " = l." + LatenessTable.COL_TASK_ID;
+
+    /**
+     * Sub-query for (task_id, bucket) of all due tasks, where bucket is derived from how late the task is. Binds two
+     * arguments, both the current timestamp.
+     */
+    private static final String DUE_TASKS_LATENESS_SUBQUERY = "(SELECT " + TasksTable._ID + " AS "
+            + LatenessTable.COL_TASK_ID + ", " + buildLatenessBucketExpression("lateness") + " AS "
+            + LatenessTable.COL_BUCKET + " FROM (SELECT " + TasksTable._ID + ", ? - " + TasksTable.COL_NEXT_FIRE_AT
+            + " AS lateness FROM " + TasksTable.TABLE_NAME + " WHERE " + BuildingBlocks.SELECTION_TASK_DUE + "))";
+
+    /**
+     * The latest change of each task changed after the sent watermark of the peer bound to the first <code>?</code>,
+     * with the task as it is now, oldest first, up to the limit bound to the second <code>?</code>. Tasks removed for
+     * good and truncation marks come with <code>NULL</code>s, and still count towards the watermark.
+     */
+    private static final String SELECT_SYNC_CHANGES_SQL = "SELECT "
+            + TextUtils.join(", ", NagboxContract.SYNC_RECORD_PROJECTION.getColumns())
+            + ", c." + TaskChangesTable.COL_SEQ
+            + " FROM (SELECT MAX(" + TaskChangesTable.COL_SEQ + ") AS " + TaskChangesTable.COL_SEQ
+            + ", " + TaskChangesTable.COL_TASK_ID + " FROM " + TaskChangesTable.TABLE_NAME
+            + " WHERE " + TaskChangesTable.COL_SEQ + " > COALESCE((SELECT " + SyncPeersTable.COL_SENT_SEQ
+            + " FROM " + SyncPeersTable.TABLE_NAME + " WHERE " + BuildingBlocks.SELECTION_SYNC_PEER + "), 0)"
+            + " GROUP BY +" + TaskChangesTable.COL_TASK_ID
+            + " ORDER BY " + BuildingBlocks.ORDER_BY_SEQ_ASC + " LIMIT ?) c"
+            + " LEFT JOIN " + TasksTable.TABLE_NAME + " ON " + TasksTable._ID + " = c." + TaskChangesTable.COL_TASK_ID
+            + " ORDER BY c." + BuildingBlocks.ORDER_BY_SEQ_ASC;
+
     private NagboxDbOps() {}
 
     /**
@@ -110,26 +166,51 @@ public final class NagboxDbOps {
     }
 
     /**
-     * Query all active tasks that need to be displayed in a notification: either due to fire, or already fired but not
+     * Count all active tasks that need to be displayed in a notification: either due to fire, or already fired but not
+     * "seen" yet (notification not dismissed).
+     *
+     * @param db        Readable database
+     * @param timestamp Current timestamp to only count tasks that have to fire (whose {@link Task#nextFireAt} <= this
+     *                  timestamp)
+     * @return number of tasks to remind about
+     */
+    public static int countTasksToRemind(SQLiteDatabase db, long timestamp) {
+        Cursor cursor = db.query(
+                TasksTable.TABLE_NAME,
+                new String[]{BuildingBlocks.AGGR_COL_COUNT},
+                BuildingBlocks.SELECTION_TASK_TO_REMIND,
+                new String[]{Long.toString(timestamp)},
+                null, null, null
+        );
+        cursor.moveToFirst();
+        final int result = cursor.getInt(0);
+        cursor.close();
+        return result;
+    }
+
+    /**
+     * Query active tasks that need to be displayed in a notification: either due to fire, or already fired but not
      * "seen" yet (notification not dismissed). The tasks are ordered by nextFireAt time as it appears before updating
      * any of them (i.e. the first one would probably be the one that triggered this reminder, and the rest will be in
-     * the order of further appearance, always running in cycles.
+     * the order of further appearance, always running in cycles. Only up to <code>limit</code> rows are fetched, since
+     * the notification won't show more anyway &mdash; use {@link #countTasksToRemind(SQLiteDatabase, long)} to get the
+     * total.
      *
      * @param db        Readable database
      * @param timestamp Current timestamp to only query tasks that have to fire (whose {@link Task#nextFireAt} <= this
      *                  timestamp)
-     * @return array of tasks
+     * @param limit     Maximum number of tasks to return
+     * @return array of tasks, at most <code>limit</code> long
      */
-    public static Task[] getTasksToRemind(SQLiteDatabase db, long timestamp) {
+    public static Task[] getTasksToRemind(SQLiteDatabase db, long timestamp, int limit) {
         Cursor cursor = db.query(
                 TasksTable.TABLE_NAME,
                 NagboxContract.TASK_FULL_PROJECTION.getColumns(),
-                BuildingBlocks.SELECTION_TASK_ACTIVE
-                        + " AND (" + BuildingBlocks.SELECTION_TASK_NOT_SEEN
-                        + " OR " + BuildingBlocks.SELECTION_TASK_FIRE_AT_ON_OR_BEFORE + ")",
+                BuildingBlocks.SELECTION_TASK_TO_REMIND,
                 new String[]{Long.toString(timestamp)},
                 null, null,
-                BuildingBlocks.ORDER_BY_TASK_FIRE_AT_ASC
+                BuildingBlocks.ORDER_BY_TASK_FIRE_AT_ASC,
+                Integer.toString(limit)
         );
         final int count = cursor.getCount();
         Task[] tasks = new Task[count];
@@ -177,6 +258,210 @@ public final class NagboxDbOps {
     }
 
 
+    /**
+     * Count tasks that are deleted but not purged yet
+     *
+     * @param db readable database
+     * @return number of deleted tasks
+     */
+    public static int countDeletedTasks(SQLiteDatabase db) {
+        Cursor cursor = db.query(
+                TasksTable.TABLE_NAME,
+                new String[]{BuildingBlocks.AGGR_COL_COUNT},
+                BuildingBlocks.SELECTION_TASK_DELETED,
+                null, null, null, null
+        );
+        cursor.moveToFirst();
+        final int result = cursor.getInt(0);
+        cursor.close();
+        return result;
+    }
+
+    /**
+     * Check whether there's any nag history, raw or rolled up
+     *
+     * @param db readable database
+     * @return <code>true</code> if there's anything to compact
+     */
+    public static boolean hasNagHistory(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT EXISTS (SELECT 1 FROM " + NagEventsTable.TABLE_NAME
+                + ") OR EXISTS (SELECT 1 FROM " + NagDailyStatsTable.TABLE_NAME + ")", null);
+        cursor.moveToFirst();
+        final boolean result = cursor.getInt(0) != 0;
+        cursor.close();
+        return result;
+    }
+
+    /**
+     * Get the longest interval among active tasks, i.e. how far ahead any active task can be scheduled
+     *
+     * @param db readable database
+     * @return max interval in minutes, or 0 if there are no active tasks
+     */
+    public static int getMaxActiveTaskInterval(SQLiteDatabase db) {
+        Cursor cursor = db.query(
+                TasksTable.TABLE_NAME,
+                new String[]{BuildingBlocks.AGGR_COL_MAX_INTERVAL},
+                BuildingBlocks.SELECTION_TASK_ACTIVE,
+                null, null, null, null
+        );
+        cursor.moveToFirst();
+        final int result = cursor.isNull(0) ? 0 : cursor.getInt(0);
+        cursor.close();
+        return result;
+    }
+
+    /**
+     * Get all distinct active windows of active tasks that have their own window
+     *
+     * @param db readable database
+     * @return array of windows, can be empty
+     */
+    public static ActiveWindow[] getActiveTaskWindows(SQLiteDatabase db) {
+        Cursor cursor = db.query(
+                true,
+                TasksTable.TABLE_NAME,
+                new String[]{TasksTable.COL_ACTIVE_FROM, TasksTable.COL_ACTIVE_TO, TasksTable.COL_ACTIVE_DAYS},
+                BuildingBlocks.SELECTION_TASK_ACTIVE + " AND NOT " + BuildingBlocks.SELECTION_TASK_GLOBAL_WINDOW,
+                null, null, null, null, null
+        );
+        final int count = cursor.getCount();
+        ActiveWindow[] windows = new ActiveWindow[count];
+        for (int i = 0; i < count; i++) {
+            cursor.moveToPosition(i);
+            windows[i] = new ActiveWindow(cursor.getInt(0), cursor.getInt(1), cursor.getInt(2));
+        }
+        cursor.close();
+        return windows;
+    }
+
+    /**
+     * Query alarm lateness histograms: the global one first, then one per task that has fired at least once.
+     *
+     * @param db Readable database
+     * @return array of histograms, empty if no alarms fired since tracking started
+     */
+    public static LatenessHistogram[] getLatenessHistograms(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery(SELECT_LATENESS_SQL + " ORDER BY l." + LatenessTable.COL_TASK_ID, null);
+        List<LatenessHistogram> histograms = readLatenessHistograms(cursor);
+        cursor.close();
+        return histograms.toArray(new LatenessHistogram[histograms.size()]);
+    }
+
+    /**
+     * Query alarm lateness histogram of a single task
+     *
+     * @param db     Readable database
+     * @param taskId ID of the task, or {@link LatenessHistogram#GLOBAL_TASK_ID} for the histogram of all tasks
+     * @return lateness histogram, empty if the task never fired
+     */
+    public static LatenessHistogram getLatenessHistogram(SQLiteDatabase db, long taskId) {
+        Cursor cursor = db.rawQuery(
+                SELECT_LATENESS_SQL + " WHERE l." + LatenessTable.COL_TASK_ID + " = ?",
+                new String[]{Long.toString(taskId)}
+        );
+        List<LatenessHistogram> histograms = readLatenessHistograms(cursor);
+        cursor.close();
+        if (histograms.isEmpty()) {
+            LatenessHistogram histogram = new LatenessHistogram();
+            histogram.taskId = taskId;
+            return histogram;
+        }
+        return histograms.get(0);
+    }
+
+    /**
+     * Get the next batch of local task changes not yet sent to the sync peer: the latest state of each task changed
+     * after the peer's sent watermark, in the order of their latest changes. Since the order is by the latest change,
+     * a task that changed again after being picked for a batch is simply picked again in a later one.
+     *
+     * @param db       Readable database
+     * @param peer     Peer to sync with
+     * @param deviceId ID of this device, to put into the message
+     * @param limit    Max number of tasks in the batch
+     * @return Batch of changed tasks, with the sequence number of the last change included as the watermark
+     */
+    public static SyncMessage getSyncChanges(SQLiteDatabase db, String peer, String deviceId, int limit) {
+        // Query one extra row to tell if there are more
+        Cursor cursor = db.rawQuery(SELECT_SYNC_CHANGES_SQL, new String[]{peer, Integer.toString(limit + 1)});
+        final int count = Math.min(cursor.getCount(), limit);
+        final int seqColumn = NagboxContract.SYNC_RECORD_PROJECTION.getColumns().length;
+        List<SyncRecord> records = new ArrayList<>(count);
+        long watermark = getSyncWatermark(db, peer, SyncPeersTable.COL_SENT_SEQ);
+        for (int i = 0; i < count; i++) {
+            cursor.moveToPosition(i);
+            watermark = cursor.getLong(seqColumn);
+            if (!cursor.isNull(0)) {
+                records.add(NagboxContract.SYNC_RECORD_PROJECTION.mapCursorToModel(cursor, null));
+            }
+        }
+        final boolean hasMore = cursor.getCount() > limit;
+        cursor.close();
+        return new SyncMessage(deviceId, watermark, hasMore, records);
+    }
+
+    /**
+     * Get how far the changes of the sync peer were received from it
+     *
+     * @param db   Readable database
+     * @param peer Peer to sync with
+     * @return watermark of the peer's changes received so far, 0 if never synced with this peer
+     */
+    public static long getSyncReceivedWatermark(SQLiteDatabase db, String peer) {
+        return getSyncWatermark(db, peer, SyncPeersTable.COL_RECEIVED_SEQ);
+    }
+
+    private static long getSyncWatermark(SQLiteDatabase db, String peer, String column) {
+        Cursor cursor = db.query(
+                SyncPeersTable.TABLE_NAME,
+                new String[]{column},
+                BuildingBlocks.SELECTION_SYNC_PEER,
+                new String[]{peer},
+                null, null, null
+        );
+        final long result = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        cursor.close();
+        return result;
+    }
+
+    /**
+     * Collect lateness histogram rows (task ID, title, bucket, count), sorted by task ID, into histogram objects
+     */
+    private static List<LatenessHistogram> readLatenessHistograms(Cursor cursor) {
+        List<LatenessHistogram> histograms = new ArrayList<>();
+        LatenessHistogram current = null;
+        while (cursor.moveToNext()) {
+            final long taskId = cursor.getLong(0);
+            if (current == null || current.taskId != taskId) {
+                current = new LatenessHistogram();
+                current.taskId = taskId;
+                current.taskTitle = cursor.getString(1);
+                histograms.add(current);
+            }
+            final int bucket = cursor.getInt(2);
+            if (bucket >= 0 && bucket < LatenessHistogram.BUCKET_COUNT) {
+                current.counts[bucket] = cursor.getLong(3);
+            }
+        }
+        return histograms;
+    }
+
+    /**
+     * Build an SQL <code>CASE</code> expression that maps lateness (msec) to the index of its histogram bucket
+     *
+     * @param lateness column or expression with lateness
+     * @return SQL expression
+     */
+    private static String buildLatenessBucketExpression(String lateness) {
+        StringBuilder builder = new StringBuilder("CASE");
+        for (int i = 0; i < LatenessHistogram.BUCKET_UPPER_BOUNDS.length; i++) {
+            builder.append(" WHEN ").append(lateness).append(" < ").append(LatenessHistogram.BUCKET_UPPER_BOUNDS[i])
+                    .append(" THEN ").append(i);
+        }
+        builder.append(" ELSE ").append(LatenessHistogram.BUCKET_UPPER_BOUNDS.length).append(" END");
+        return builder.toString();
+    }
+
     /**
      * Database insert/update transaction builder and executor. <b>Note:</b> the commands are actually executed as soon
      * as called, unlike with usual action builders where everything is executed in the end. This is so to make it
@@ -185,8 +470,220 @@ public final class NagboxDbOps {
      */
     public static class Transaction {
 
+        private static final String RECORD_TASKS_LATENESS_SQL = "INSERT OR REPLACE INTO " + LatenessTable.TABLE_NAME
+                + " (" + LatenessTable.COL_TASK_ID + ", " + LatenessTable.COL_BUCKET + ", " + LatenessTable.COL_COUNT
+                + ") SELECT d." + LatenessTable.COL_TASK_ID + ", d." + LatenessTable.COL_BUCKET
+                + ", COALESCE(l." + LatenessTable.COL_COUNT + ", 0) + 1 FROM " + DUE_TASKS_LATENESS_SUBQUERY
+                + " d LEFT JOIN " + LatenessTable.TABLE_NAME + " l ON l." + LatenessTable.COL_TASK_ID + " = d."
+                + LatenessTable.COL_TASK_ID + " AND l." + LatenessTable.COL_BUCKET + " = d." + LatenessTable.COL_BUCKET;
+        private static final String RECORD_GLOBAL_LATENESS_SQL = "INSERT OR REPLACE INTO " + LatenessTable.TABLE_NAME
+                + " (" + LatenessTable.COL_TASK_ID + ", " + LatenessTable.COL_BUCKET + ", " + LatenessTable.COL_COUNT
+                + ") SELECT " + LatenessHistogram.GLOBAL_TASK_ID + ", d." + LatenessTable.COL_BUCKET
+                + ", COALESCE(l." + LatenessTable.COL_COUNT + ", 0) + COUNT(*) FROM " + DUE_TASKS_LATENESS_SUBQUERY
+                + " d LEFT JOIN " + LatenessTable.TABLE_NAME + " l ON l." + LatenessTable.COL_TASK_ID + " = "
+                + LatenessHistogram.GLOBAL_TASK_ID + " AND l." + LatenessTable.COL_BUCKET + " = d."
+                + LatenessTable.COL_BUCKET + " GROUP BY d." + LatenessTable.COL_BUCKET;
+
+        /**
+         * When the global histogram collects this many samples, all histograms are halved so that old data fades out
+         */
+        private static final int LATENESS_DECAY_THRESHOLD = 4096;
+
+        private static final String RESCHEDULE_DUE_TASKS_SQL = "UPDATE " + TasksTable.TABLE_NAME
+                + " SET " + TasksTable.COL_FLAGS + " = " + TasksTable.COL_FLAGS + " | " + Task.FLAG_NOT_SEEN
+                + ", " + TasksTable.COL_NEXT_FIRE_AT + " = " + BuildingBlocks.EXPR_NEXT_FIRE_AT_AFTER
+                + " WHERE " + BuildingBlocks.SELECTION_TASK_DUE
+                + " AND " + BuildingBlocks.SELECTION_TASK_FIXED_INTERVAL;
+        private static final String RESCHEDULE_TASK_SQL = "UPDATE " + TasksTable.TABLE_NAME
+                + " SET " + TasksTable.COL_FLAGS + " = " + TasksTable.COL_FLAGS + " | " + Task.FLAG_NOT_SEEN
+                + ", " + TasksTable.COL_NEXT_FIRE_AT + " = ?"
+                + " WHERE " + BuildingBlocks.SELECTION_ID;
+
+        private static final String POSTPONE_QUIET_TASKS_SQL = "UPDATE " + TasksTable.TABLE_NAME
+                + " SET " + TasksTable.COL_NEXT_FIRE_AT + " = ?"
+                + " WHERE " + BuildingBlocks.SELECTION_TASK_ACTIVE
+                + " AND " + TasksTable.COL_NEXT_FIRE_AT + " >= ? AND " + TasksTable.COL_NEXT_FIRE_AT + " < ?";
+        private static final String POSTPONE_GLOBAL_WINDOW_TASKS_SQL = POSTPONE_QUIET_TASKS_SQL
+                + " AND " + BuildingBlocks.SELECTION_TASK_GLOBAL_WINDOW;
+        private static final String POSTPONE_OWN_WINDOW_TASKS_SQL = POSTPONE_QUIET_TASKS_SQL
+                + " AND " + BuildingBlocks.SELECTION_TASK_OWN_WINDOW;
+
+        private static final String SHIFT_ACTIVE_TASKS_SQL = "UPDATE " + TasksTable.TABLE_NAME
+                + " SET " + TasksTable.COL_NEXT_FIRE_AT + " = " + TasksTable.COL_NEXT_FIRE_AT + " + ?"
+                + ", " + TasksTable.COL_LAST_STARTED_AT + " = " + TasksTable.COL_LAST_STARTED_AT + " + ?"
+                + " WHERE " + BuildingBlocks.SELECTION_TASK_ACTIVE;
+
+        private static final String SNOOZE_TASK_SQL = "UPDATE " + TasksTable.TABLE_NAME
+                + " SET " + TasksTable.COL_FLAGS + " = " + TasksTable.COL_FLAGS + " & ~" + Task.FLAG_NOT_SEEN
+                + ", " + TasksTable.COL_NEXT_FIRE_AT + " = ?"
+                + " WHERE " + BuildingBlocks.SELECTION_ID + " AND " + BuildingBlocks.SELECTION_TASK_ACTIVE;
+
+        private static final String START_TASK_GROUP_SQL = "UPDATE " + TasksTable.TABLE_NAME
+                + " SET " + TasksTable.COL_FLAGS + " = (" + TasksTable.COL_FLAGS + " | " + Task.FLAG_ACTIVE
+                + ") & ~" + Task.FLAG_NOT_SEEN
+                + ", " + TasksTable.COL_LAST_STARTED_AT + " = ?"
+                + ", " + TasksTable.COL_NEXT_FIRE_AT + " = ? + " + TasksTable.COL_INTERVAL + " * "
+                + DateUtils.MINUTE_IN_MILLIS
+                + ", " + TasksTable.COL_STATUS_CHANGED_AT + " = ?"
+                + " WHERE " + BuildingBlocks.SELECTION_TASK_IN_GROUP + " AND " + BuildingBlocks.SELECTION_TASK_NOT_DELETED
+                + " AND NOT (" + TasksTable.COL_FLAGS + " & " + Task.FLAG_ACTIVE + ")";
+        private static final String STOP_TASK_GROUP_SQL = "UPDATE " + TasksTable.TABLE_NAME
+                + " SET " + TasksTable.COL_FLAGS + " = " + TasksTable.COL_FLAGS
+                + " & ~" + (Task.FLAG_ACTIVE | Task.FLAG_NOT_SEEN)
+                + ", " + TasksTable.COL_STATUS_CHANGED_AT + " = ?"
+                + " WHERE " + BuildingBlocks.SELECTION_TASK_IN_GROUP + " AND " + BuildingBlocks.SELECTION_TASK_ACTIVE;
+        // Active fixed-interval tasks are kept in phase with their start time. Those with recurrence rules keep their
+        // next fire time, and pick up the new interval the next time they're rescheduled
+        private static final String SET_TASK_GROUP_INTERVAL_SQL = "UPDATE " + TasksTable.TABLE_NAME
+                + " SET " + TasksTable.COL_INTERVAL + " = ?"
+                + ", " + TasksTable.COL_DESCRIPTION_CHANGED_AT + " = ?"
+                + ", " + TasksTable.COL_NEXT_FIRE_AT + " = CASE WHEN " + BuildingBlocks.SELECTION_TASK_ACTIVE
+                + " AND " + BuildingBlocks.SELECTION_TASK_FIXED_INTERVAL
+                + " THEN " + TasksTable.COL_LAST_STARTED_AT + " + ((? - " + TasksTable.COL_LAST_STARTED_AT
+                + ") / (? * " + DateUtils.MINUTE_IN_MILLIS + ") + 1) * (? * " + DateUtils.MINUTE_IN_MILLIS + ")"
+                + " ELSE " + TasksTable.COL_NEXT_FIRE_AT + " END"
+                + " WHERE " + BuildingBlocks.SELECTION_TASK_IN_GROUP;
+
+        private static final String DELETE_TASK_SQL = "UPDATE " + TasksTable.TABLE_NAME
+                + " SET " + TasksTable.COL_DELETED_AT + " = ?"
+                + ", " + TasksTable.COL_DELETION_CHANGED_AT + " = ?"
+                + " WHERE " + BuildingBlocks.SELECTION_ID + " AND " + BuildingBlocks.SELECTION_TASK_NOT_DELETED;
+        private static final String RESTORE_TASK_SQL = "UPDATE " + TasksTable.TABLE_NAME
+                + " SET " + TasksTable.COL_DELETED_AT + " = NULL"
+                + ", " + TasksTable.COL_DELETION_CHANGED_AT + " = ?"
+                + " WHERE " + BuildingBlocks.SELECTION_ID;
+
+        /**
+         * Sub-query for IDs of the oldest tasks deleted on or before given time, whose latest change was sent to every
+         * sync peer. Binds three arguments: the time, the sent watermark to assume if there are no peers yet, and the
+         * limit.
+         */
+        private static final String EXPIRED_TASK_IDS_SUBQUERY = "(SELECT " + TasksTable._ID
+                + " FROM " + TasksTable.TABLE_NAME
+                + " WHERE " + BuildingBlocks.SELECTION_TASK_DELETED_ON_OR_BEFORE
+                + " AND COALESCE((SELECT MAX(" + TaskChangesTable.COL_SEQ + ") FROM " + TaskChangesTable.TABLE_NAME
+                + " WHERE " + TaskChangesTable.COL_TASK_ID + " = " + TasksTable.TABLE_NAME + "." + TasksTable._ID
+                + "), 0) <= COALESCE((SELECT MIN(" + SyncPeersTable.COL_SENT_SEQ + ") FROM "
+                + SyncPeersTable.TABLE_NAME + "), ?)"
+                + " ORDER BY " + BuildingBlocks.ORDER_BY_TASK_DELETED_AT_ASC + " LIMIT ?)";
+        private static final String PURGE_TASKS_LATENESS_SQL = "DELETE FROM " + LatenessTable.TABLE_NAME
+                + " WHERE " + LatenessTable.COL_TASK_ID + " IN " + EXPIRED_TASK_IDS_SUBQUERY;
+        private static final String PURGE_TASKS_NAG_EVENTS_SQL = "DELETE FROM " + NagEventsTable.TABLE_NAME
+                + " WHERE " + NagEventsTable.COL_TASK_ID + " IN " + EXPIRED_TASK_IDS_SUBQUERY;
+        private static final String PURGE_TASKS_DAILY_STATS_SQL = "DELETE FROM " + NagDailyStatsTable.TABLE_NAME
+                + " WHERE " + NagDailyStatsTable.COL_TASK_ID + " IN " + EXPIRED_TASK_IDS_SUBQUERY;
+        private static final String PURGE_TASKS_STATS_SQL = "DELETE FROM " + TaskStatsTable.TABLE_NAME
+                + " WHERE " + TaskStatsTable.COL_TASK_ID + " IN " + EXPIRED_TASK_IDS_SUBQUERY;
+        private static final String PURGE_TASKS_SQL = "DELETE FROM " + TasksTable.TABLE_NAME
+                + " WHERE " + TasksTable._ID + " IN " + EXPIRED_TASK_IDS_SUBQUERY;
+
+        private static final String APPEND_NAG_EVENT_SQL = "INSERT INTO " + NagEventsTable.TABLE_NAME
+                + " (" + NagEventsTable.COL_TASK_ID + ", " + NagEventsTable.COL_TYPE + ", "
+                + NagEventsTable.COL_TIMESTAMP + ") VALUES (?, ?, ?)";
+        private static final String RECORD_DUE_TASKS_FIRED_SQL = "INSERT INTO " + NagEventsTable.TABLE_NAME
+                + " (" + NagEventsTable.COL_TASK_ID + ", " + NagEventsTable.COL_TYPE + ", "
+                + NagEventsTable.COL_TIMESTAMP + ") SELECT " + TasksTable._ID + ", " + NagEvent.TYPE_FIRED + ", ?"
+                + " FROM " + TasksTable.TABLE_NAME + " WHERE " + BuildingBlocks.SELECTION_TASK_DUE;
+        private static final String RECORD_TASK_GROUP_STOPPED_SQL = "INSERT INTO " + NagEventsTable.TABLE_NAME
+                + " (" + NagEventsTable.COL_TASK_ID + ", " + NagEventsTable.COL_TYPE + ", "
+                + NagEventsTable.COL_TIMESTAMP + ") SELECT " + TasksTable._ID + ", " + NagEvent.TYPE_STOPPED + ", ?"
+                + " FROM " + TasksTable.TABLE_NAME + " WHERE " + BuildingBlocks.SELECTION_TASK_IN_GROUP
+                + " AND " + BuildingBlocks.SELECTION_TASK_ACTIVE;
+
+        private static final String ROLL_UP_NAG_EVENTS_SQL = "INSERT OR REPLACE INTO " + NagDailyStatsTable.TABLE_NAME
+                + " (" + NagDailyStatsTable.COL_TASK_ID + ", " + NagDailyStatsTable.COL_DAY + ", "
+                + NagDailyStatsTable.COL_TYPE + ", " + NagDailyStatsTable.COL_COUNT
+                + ") SELECT e." + NagEventsTable.COL_TASK_ID + ", e.day, e." + NagEventsTable.COL_TYPE
+                + ", COALESCE(s." + NagDailyStatsTable.COL_COUNT + ", 0) + e.count FROM (SELECT "
+                + NagEventsTable.COL_TASK_ID + ", " + NagEventsTable.COL_TIMESTAMP + " / " + DateUtils.DAY_IN_MILLIS
+                + " AS day, " + NagEventsTable.COL_TYPE + ", COUNT(*) AS count FROM " + NagEventsTable.TABLE_NAME
+                + " WHERE " + NagEventsTable.COL_TIMESTAMP + " < ? GROUP BY " + NagEventsTable.COL_TASK_ID
+                + ", day, " + NagEventsTable.COL_TYPE + ") e LEFT JOIN " + NagDailyStatsTable.TABLE_NAME
+                + " s ON s." + NagDailyStatsTable.COL_TASK_ID + " = e." + NagEventsTable.COL_TASK_ID
+                + " AND s." + NagDailyStatsTable.COL_DAY + " = e.day AND s." + NagDailyStatsTable.COL_TYPE
+                + " = e." + NagEventsTable.COL_TYPE;
+        private static final String DELETE_NAG_EVENTS_SQL = "DELETE FROM " + NagEventsTable.TABLE_NAME
+                + " WHERE " + NagEventsTable.COL_TIMESTAMP + " < ?";
+        private static final String DELETE_DAILY_STATS_SQL = "DELETE FROM " + NagDailyStatsTable.TABLE_NAME
+                + " WHERE " + NagDailyStatsTable.COL_DAY + " < ?";
+
+        /**
+         * Streak after a nag on the day bound twice to <code>?</code>: unchanged if the task already nagged that day,
+         * extended if it nagged the day before, and started anew otherwise
+         */
+        private static final String EXPR_STREAK_AFTER_NAG = "CASE WHEN " + TaskStatsTable.COL_LAST_NAG_DAY
+                + " = ? THEN " + TaskStatsTable.COL_CURRENT_STREAK + " WHEN " + TaskStatsTable.COL_LAST_NAG_DAY
+                + " = ? - 1 THEN " + TaskStatsTable.COL_CURRENT_STREAK + " + 1 ELSE 1 END";
+        /**
+         * Time from the start of the current session to the moment bound to <code>?</code>, for the task of the stats
+         * row being updated
+         */
+        private static final String EXPR_SESSION_TIME = "MAX(0, ? - (SELECT " + TasksTable.COL_LAST_STARTED_AT
+                + " FROM " + TasksTable.TABLE_NAME + " WHERE " + TasksTable._ID + " = " + TaskStatsTable.TABLE_NAME
+                + "." + TaskStatsTable.COL_TASK_ID + "))";
+        private static final String TASK_GROUP_ACTIVE_IDS_SUBQUERY = "(SELECT " + TasksTable._ID
+                + " FROM " + TasksTable.TABLE_NAME
+                + " WHERE " + BuildingBlocks.SELECTION_TASK_IN_GROUP + " AND " + BuildingBlocks.SELECTION_TASK_ACTIVE
+                + ")";
+
+        private static final String CREATE_TASK_STATS_SQL = "INSERT OR REPLACE INTO " + TaskStatsTable.TABLE_NAME
+                + " (" + TaskStatsTable.COL_TASK_ID + ") VALUES (?)";
+        private static final String RECORD_DUE_TASKS_STATS_SQL = "UPDATE " + TaskStatsTable.TABLE_NAME
+                + " SET " + TaskStatsTable.COL_NAG_COUNT + " = " + TaskStatsTable.COL_NAG_COUNT + " + 1"
+                + ", " + TaskStatsTable.COL_UNSEEN_SINCE + " = COALESCE(" + TaskStatsTable.COL_UNSEEN_SINCE + ", ?)"
+                + ", " + TaskStatsTable.COL_CURRENT_STREAK + " = " + EXPR_STREAK_AFTER_NAG
+                + ", " + TaskStatsTable.COL_BEST_STREAK + " = MAX(" + TaskStatsTable.COL_BEST_STREAK + ", "
+                + EXPR_STREAK_AFTER_NAG + ")"
+                + ", " + TaskStatsTable.COL_LAST_NAG_DAY + " = ?"
+                + " WHERE " + TaskStatsTable.COL_TASK_ID + " IN (SELECT " + TasksTable._ID
+                + " FROM " + TasksTable.TABLE_NAME + " WHERE " + BuildingBlocks.SELECTION_TASK_DUE + ")";
+        private static final String RECORD_TASK_SESSION_SQL = "UPDATE " + TaskStatsTable.TABLE_NAME
+                + " SET " + TaskStatsTable.COL_ACTIVE_TIME + " = " + TaskStatsTable.COL_ACTIVE_TIME
+                + " + " + EXPR_SESSION_TIME
+                + " WHERE " + TaskStatsTable.COL_TASK_ID + " = (SELECT " + TasksTable._ID
+                + " FROM " + TasksTable.TABLE_NAME
+                + " WHERE " + BuildingBlocks.SELECTION_ID + " AND " + BuildingBlocks.SELECTION_TASK_ACTIVE + ")";
+        private static final String RECORD_TASK_GROUP_SESSIONS_SQL = "UPDATE " + TaskStatsTable.TABLE_NAME
+                + " SET " + TaskStatsTable.COL_ACTIVE_TIME + " = " + TaskStatsTable.COL_ACTIVE_TIME
+                + " + " + EXPR_SESSION_TIME
+                + " WHERE " + TaskStatsTable.COL_TASK_ID + " IN " + TASK_GROUP_ACTIVE_IDS_SUBQUERY;
+        private static final String RECORD_DISMISSED_SQL = "UPDATE " + TaskStatsTable.TABLE_NAME
+                + " SET " + TaskStatsTable.COL_DISMISS_COUNT + " = " + TaskStatsTable.COL_DISMISS_COUNT + " + 1"
+                + ", " + TaskStatsTable.COL_DISMISS_TIME + " = " + TaskStatsTable.COL_DISMISS_TIME
+                + " + MAX(0, ? - " + TaskStatsTable.COL_UNSEEN_SINCE + ")"
+                + ", " + TaskStatsTable.COL_UNSEEN_SINCE + " = NULL"
+                + " WHERE " + BuildingBlocks.SELECTION_TASK_STATS_UNSEEN + " AND " + TaskStatsTable.COL_TASK_ID;
+        private static final String RECORD_TASK_DISMISSED_SQL = RECORD_DISMISSED_SQL + " = ?";
+        private static final String RECORD_TASK_GROUP_DISMISSED_SQL = RECORD_DISMISSED_SQL
+                + " IN " + TASK_GROUP_ACTIVE_IDS_SUBQUERY;
+        private static final String SHIFT_TASK_STATS_SQL = "UPDATE " + TaskStatsTable.TABLE_NAME
+                + " SET " + TaskStatsTable.COL_UNSEEN_SINCE + " = " + TaskStatsTable.COL_UNSEEN_SINCE + " + ?"
+                + " WHERE " + BuildingBlocks.SELECTION_TASK_STATS_UNSEEN;
+
+        private static final String DELETE_SUPERSEDED_CHANGES_SQL = "DELETE FROM " + TaskChangesTable.TABLE_NAME
+                + " WHERE " + TaskChangesTable.COL_SEQ + " NOT IN (SELECT MAX(" + TaskChangesTable.COL_SEQ + ") FROM "
+                + TaskChangesTable.TABLE_NAME + " GROUP BY " + TaskChangesTable.COL_TASK_ID + ")";
+        private static final String SELECTION_CHANGE_OF_REMOVED_TASK = TaskChangesTable.COL_TASK_ID
+                + " NOT IN (SELECT " + TasksTable._ID + " FROM " + TasksTable.TABLE_NAME + ")";
+        private static final String SELECT_LAST_REMOVED_TASK_CHANGE_SQL = "SELECT MAX(" + TaskChangesTable.COL_SEQ
+                + ") FROM " + TaskChangesTable.TABLE_NAME + " WHERE " + SELECTION_CHANGE_OF_REMOVED_TASK;
+        private static final String MARK_CHANGES_TRUNCATED_SQL = "UPDATE " + TaskChangesTable.TABLE_NAME
+                + " SET " + TaskChangesTable.COL_TASK_ID + " = NULL, " + TaskChangesTable.COL_TYPE + " = "
+                + TaskChange.TYPE_TRUNCATED
+                + " WHERE " + TaskChangesTable.COL_SEQ + " = ?";
+        private static final String DELETE_REMOVED_TASK_CHANGES_SQL = "DELETE FROM " + TaskChangesTable.TABLE_NAME
+                + " WHERE " + TaskChangesTable.COL_SEQ + " < ? AND (" + TaskChangesTable.COL_TASK_ID + " IS NULL OR "
+                + SELECTION_CHANGE_OF_REMOVED_TASK + ")";
+
+        private static final String SELECT_LAST_TASK_CHANGE_SQL = "SELECT COALESCE(MAX(" + TaskChangesTable.COL_SEQ
+                + "), 0) FROM " + TaskChangesTable.TABLE_NAME;
+        private static final String SET_SYNC_WATERMARKS_SQL = "INSERT OR REPLACE INTO " + SyncPeersTable.TABLE_NAME
+                + " (" + SyncPeersTable.COL_PEER + ", " + SyncPeersTable.COL_SENT_SEQ + ", "
+                + SyncPeersTable.COL_RECEIVED_SEQ + ") VALUES (?, ?, ?)";
+
         private final SQLiteDatabase mDatabase;
         private boolean mIsSuccess;
+        private int mRowsAffected;
 
         /**
          * Create a new transaction
@@ -210,6 +707,15 @@ public final class NagboxDbOps {
             return mIsSuccess;
         }
 
+        /**
+         * Get the number of rows inserted, updated or deleted by the actions within this transaction so far
+         *
+         * @return number of affected rows
+         */
+        public int getRowsAffected() {
+            return mRowsAffected;
+        }
+
         /**
          * Commit the transaction.
          *
@@ -228,51 +734,95 @@ public final class NagboxDbOps {
         }
 
         /**
-         * Insert the task into the database.
+         * Roll back everything done within this transaction so far, e.g. if the caller has to bail out halfway.
+         * Subsequent calls to the transaction are ignored.
+         */
+        public void rollback() {
+            if (mIsSuccess) {
+                mIsSuccess = false;
+                mDatabase.endTransaction();
+            }
+        }
+
+        /**
+         * Insert the task into the database, along with its empty {@link TaskStats stats}. The task gets a new random
+         * sync ID.
          *
          * @param task Task to insert. If the operation is successful, {@link Task#id} will be set.
          * @return this for chaining
          */
         public Transaction createTask(Task task) {
+            return createTask(task, UUID.randomUUID().toString().replace("-", ""));
+        }
+
+        /**
+         * Insert the task into the database with given sync ID, along with its empty {@link TaskStats stats}
+         *
+         * @param task   Task to insert. If the operation is successful, {@link Task#id} will be set.
+         * @param syncId ID the task is known by on all synced devices, must be unique
+         * @return this for chaining
+         */
+        public Transaction createTask(Task task, String syncId) {
             // Suppress the action if transaction is already failed
             if (!mIsSuccess) {
                 return this;
             }
 
+            ContentValues values = task.toContentValues();
+            values.put(TasksTable.COL_SYNC_ID, syncId);
+            long id = insertTask(values);
+            if (id != -1) {
+                task.id = id;
+            }
+
+            return this;
+        }
+
+        private long insertTask(ContentValues values) {
             long id = mDatabase.insert(
                     TasksTable.TABLE_NAME,
                     null,
-                    task.toContentValues()
+                    values
             );
             if (id != -1) {
-                task.id = id;
+                mRowsAffected++;
+                // Replace in case the ID was used by a task that was removed for good, but the stats weren't
+                SQLiteStatement statement = mDatabase.compileStatement(CREATE_TASK_STATS_SQL);
+                statement.bindLong(1, id);
+                statement.executeInsert();
+                statement.close();
             } else {
                 mIsSuccess = false;
                 mDatabase.endTransaction();
             }
 
-            return this;
+            return id;
         }
 
         /**
          * Update the task. Only description fields exported in {@link Task#toContentValuesOnUpdate()} will be updated.
          *
-         * @param task Task to update. Must have {@link Task#id} set.
+         * @param task      Task to update. Must have {@link Task#id} set.
+         * @param timestamp Current timestamp, i.e. when the description changed
          * @return this for chaining
-         * @see #updateTaskStatus(Task)
+         * @see #updateTaskStatus(Task, long)
          */
-        public Transaction updateTask(Task task) {
+        public Transaction updateTask(Task task, long timestamp) {
             if (!mIsSuccess) {
                 return this;
             }
 
+            ContentValues values = task.toContentValuesOnUpdate();
+            values.put(TasksTable.COL_DESCRIPTION_CHANGED_AT, timestamp);
             int rowsAffected = mDatabase.update(
                     TasksTable.TABLE_NAME,
-                    task.toContentValuesOnUpdate(),
+                    values,
                     BuildingBlocks.SELECTION_ID,
                     new String[]{Long.toString(task.id)}
             );
-            if (rowsAffected != 1) {
+            if (rowsAffected == 1) {
+                mRowsAffected++;
+            } else {
                 mIsSuccess = false;
                 mDatabase.endTransaction();
             }
@@ -281,23 +831,45 @@ public final class NagboxDbOps {
         }
 
         /**
-         * Update task status, i.e. only status fields exported in {@link Task#toContentValuesOnStatusChange()}.
+         * Update task status, i.e. only status fields exported in {@link Task#toContentValuesOnStatusChange()}. Task
+         * {@link TaskStats stats} are updated too: if the task was active, the time since it was started is added to
+         * the total once it's stopped or restarted, and if it's now seen, the response to the nag is counted.
          *
-         * @param task Task whose status to update. Must have {@link Task#id} set.
+         * @param task      Task whose status to update. Must have {@link Task#id} set.
+         * @param timestamp Current timestamp, i.e. when the status changed
          * @return this for chaining
          */
-        public Transaction updateTaskStatus(Task task) {
+        public Transaction updateTaskStatus(Task task, long timestamp) {
             if (!mIsSuccess) {
                 return this;
             }
 
+            // Must go first, while the row still holds the old status. The session ends when the task is restarted,
+            // so if it's still active and wasn't restarted, nothing is added
+            SQLiteStatement statement = mDatabase.compileStatement(RECORD_TASK_SESSION_SQL);
+            statement.bindLong(1, task.isActive() ? task.lastStartedAt : timestamp);
+            statement.bindLong(2, task.id);
+            statement.executeUpdateDelete();
+            statement.close();
+            if (task.isSeen()) {
+                statement = mDatabase.compileStatement(RECORD_TASK_DISMISSED_SQL);
+                statement.bindLong(1, timestamp);
+                statement.bindLong(2, task.id);
+                statement.executeUpdateDelete();
+                statement.close();
+            }
+
+            ContentValues values = task.toContentValuesOnStatusChange();
+            values.put(TasksTable.COL_STATUS_CHANGED_AT, timestamp);
             int rowsAffected = mDatabase.update(
                     TasksTable.TABLE_NAME,
-                    task.toContentValuesOnStatusChange(),
+                    values,
                     BuildingBlocks.SELECTION_ID,
                     new String[]{Long.toString(task.id)}
             );
-            if (rowsAffected != 1) {
+            if (rowsAffected == 1) {
+                mRowsAffected++;
+            } else {
                 mIsSuccess = false;
                 mDatabase.endTransaction();
             }
@@ -305,26 +877,795 @@ public final class NagboxDbOps {
             return this;
         }
 
+        /**
+         * Everything an alarm writes for the tasks due at given time: their lateness and the nags fired, then their next
+         * fire time, caught up to be in the future and outside of quiet hours. The alarm might've fired long ago (e.g.
+         * before system reboot), so the catch-up may skip several nags.
+         *
+         * @param globalWindow Window for the tasks that don't have their own
+         * @param timestamp    Current timestamp, i.e. when the alarm actually fired
+         * @return this for chaining
+         */
+        public Transaction fireDueTasks(ActiveWindow globalWindow, long timestamp) {
+            return recordAlarmLateness(timestamp)
+                    .recordNagsFired(timestamp)
+                    .rescheduleDueTasks(timestamp)
+                    .postponeToActiveWindows(globalWindow, timestamp);
+        }
+
+        /**
+         * Record how late each task that's due to fire at given time is into its lateness histogram and into the global
+         * one. Must be called before the tasks are rescheduled with {@link #rescheduleDueTasks(long)}. Histograms are
+         * halved once the global one fills up, so they always reflect recent behavior.
+         *
+         * @param timestamp Current timestamp, i.e. when the alarm actually fired
+         * @return this for chaining
+         */
+        public Transaction recordAlarmLateness(long timestamp) {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            final String[] args = {Long.toString(timestamp), Long.toString(timestamp)};
+            mDatabase.execSQL(RECORD_TASKS_LATENESS_SQL, args);
+            mDatabase.execSQL(RECORD_GLOBAL_LATENESS_SQL, args);
+
+            // The global histogram grows the fastest, so it's enough to check it for decay
+            Cursor cursor = mDatabase.query(
+                    LatenessTable.TABLE_NAME,
+                    new String[]{"SUM(" + LatenessTable.COL_COUNT + ")"},
+                    LatenessTable.COL_TASK_ID + " = " + LatenessHistogram.GLOBAL_TASK_ID,
+                    null, null, null, null
+            );
+            final long globalCount = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+            cursor.close();
+            if (globalCount >= LATENESS_DECAY_THRESHOLD) {
+                mDatabase.execSQL("UPDATE " + LatenessTable.TABLE_NAME
+                        + " SET " + LatenessTable.COL_COUNT + " = " + LatenessTable.COL_COUNT + " / 2");
+                mDatabase.delete(LatenessTable.TABLE_NAME, LatenessTable.COL_COUNT + " = 0", null);
+            }
+
+            return this;
+        }
+
+        /**
+         * Record a {@link NagEvent#TYPE_FIRED} event for each task that's due to fire at given time, and count the nag
+         * into their {@link TaskStats stats}. Done with one <code>INSERT</code> and one <code>UPDATE</code> statement.
+         * Just like {@link #recordAlarmLateness(long)}, must be called before the tasks are rescheduled.
+         *
+         * @param timestamp Current timestamp, i.e. when the alarm actually fired
+         * @return this for chaining
+         */
+        public Transaction recordNagsFired(long timestamp) {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            SQLiteStatement statement = mDatabase.compileStatement(RECORD_DUE_TASKS_FIRED_SQL);
+            statement.bindLong(1, timestamp);
+            statement.bindLong(2, timestamp);
+            mRowsAffected += statement.executeUpdateDelete();
+            statement.close();
+
+            // Streaks are counted in local days, so that a streak doesn't break at UTC midnight
+            final long today = TaskStats.getLocalDay(timestamp, TimeZone.getDefault());
+            statement = mDatabase.compileStatement(RECORD_DUE_TASKS_STATS_SQL);
+            statement.bindLong(1, timestamp);
+            statement.bindLong(2, today);
+            statement.bindLong(3, today);
+            statement.bindLong(4, today);
+            statement.bindLong(5, today);
+            statement.bindLong(6, today);
+            statement.bindLong(7, timestamp);
+            statement.executeUpdateDelete();
+            statement.close();
+
+            return this;
+        }
+
+        /**
+         * Append events to the nag history, all with one precompiled statement.
+         *
+         * @param events Events to append, can be empty
+         * @return this for chaining
+         */
+        public Transaction appendNagEvents(List<NagEvent> events) {
+            if (!mIsSuccess || events.isEmpty()) {
+                return this;
+            }
+
+            SQLiteStatement statement = mDatabase.compileStatement(APPEND_NAG_EVENT_SQL);
+            for (NagEvent event : events) {
+                statement.bindLong(1, event.taskId);
+                statement.bindLong(2, event.type);
+                statement.bindLong(3, event.timestamp);
+                if (statement.executeInsert() == -1) {
+                    statement.close();
+                    mIsSuccess = false;
+                    mDatabase.endTransaction();
+                    return this;
+                }
+            }
+            statement.close();
+            mRowsAffected += events.size();
+
+            return this;
+        }
+
+        /**
+         * Roll raw history events older than given time into daily counts and delete them, then delete daily counts
+         * older than given time. Days are counted in UTC. Done with three statements, regardless of the amount of
+         * history.
+         *
+         * @param eventsBefore     Raw events that happened before this time are rolled up
+         * @param dailyStatsBefore Daily counts for the days that started before this time are deleted
+         * @return this for chaining
+         */
+        public Transaction compactNagHistory(long eventsBefore, long dailyStatsBefore) {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            SQLiteStatement statement = mDatabase.compileStatement(ROLL_UP_NAG_EVENTS_SQL);
+            statement.bindLong(1, eventsBefore);
+            statement.executeUpdateDelete();
+            statement.close();
+
+            statement = mDatabase.compileStatement(DELETE_NAG_EVENTS_SQL);
+            statement.bindLong(1, eventsBefore);
+            mRowsAffected += statement.executeUpdateDelete();
+            statement.close();
+
+            statement = mDatabase.compileStatement(DELETE_DAILY_STATS_SQL);
+            statement.bindLong(1, dailyStatsBefore / DateUtils.DAY_IN_MILLIS);
+            mRowsAffected += statement.executeUpdateDelete();
+            statement.close();
+
+            return this;
+        }
+
+        /**
+         * Compact the task change log: keep only the latest change of each task, and drop the changes of tasks that
+         * were removed for good. The latter are replaced with a single {@link TaskChange#TYPE_TRUNCATED} mark at the
+         * place of the last dropped change, so that consumers that haven't seen it know they've missed something.
+         * Consumers that are past the mark lose nothing.
+         *
+         * @return this for chaining
+         */
+        public Transaction compactTaskChanges() {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            SQLiteStatement statement = mDatabase.compileStatement(DELETE_SUPERSEDED_CHANGES_SQL);
+            mRowsAffected += statement.executeUpdateDelete();
+            statement.close();
+
+            // Sequence numbers start with 1, and MAX() of nothing is NULL, read as 0
+            statement = mDatabase.compileStatement(SELECT_LAST_REMOVED_TASK_CHANGE_SQL);
+            final long truncatedSeq = statement.simpleQueryForLong();
+            statement.close();
+            if (truncatedSeq == 0) {
+                return this;
+            }
+
+            statement = mDatabase.compileStatement(MARK_CHANGES_TRUNCATED_SQL);
+            statement.bindLong(1, truncatedSeq);
+            statement.executeUpdateDelete();
+            statement.close();
+
+            statement = mDatabase.compileStatement(DELETE_REMOVED_TASK_CHANGES_SQL);
+            statement.bindLong(1, truncatedSeq);
+            mRowsAffected += statement.executeUpdateDelete();
+            statement.close();
+
+            return this;
+        }
+
+        /**
+         * Mark all active tasks that are due to fire at given time as "not seen" and move their next fire time to the
+         * closest moment in the future that's in sync with their interval or {@link Recurrence}. Tasks with fixed
+         * intervals are done with a single <code>UPDATE</code> statement, so it doesn't matter how many of them are due.
+         * Next fire time of tasks with recurrence rules is computed in closed form too, but in Java, so these take one
+         * (precompiled) statement each.
+         *
+         * @param timestamp Current timestamp. Tasks whose {@link Task#nextFireAt} <= this timestamp are updated.
+         * @return this for chaining
+         */
+        public Transaction rescheduleDueTasks(long timestamp) {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            SQLiteStatement statement = mDatabase.compileStatement(RESCHEDULE_DUE_TASKS_SQL);
+            statement.bindLong(1, timestamp);
+            statement.bindLong(2, timestamp);
+            mRowsAffected += statement.executeUpdateDelete();
+            statement.close();
+
+            Cursor cursor = mDatabase.query(
+                    TasksTable.TABLE_NAME,
+                    new String[]{
+                            TasksTable._ID,
+                            TasksTable.COL_INTERVAL,
+                            TasksTable.COL_LAST_STARTED_AT,
+                            TasksTable.COL_ESCALATION_STEP,
+                            TasksTable.COL_MIN_INTERVAL,
+                            TasksTable.COL_JITTER
+                    },
+                    BuildingBlocks.SELECTION_TASK_DUE + " AND NOT " + BuildingBlocks.SELECTION_TASK_FIXED_INTERVAL,
+                    new String[]{Long.toString(timestamp)},
+                    null, null, null
+            );
+            if (cursor.getCount() != 0) {
+                statement = mDatabase.compileStatement(RESCHEDULE_TASK_SQL);
+                while (cursor.moveToNext()) {
+                    final long id = cursor.getLong(0);
+                    final Recurrence recurrence = new Recurrence(cursor.getInt(3), cursor.getInt(4), cursor.getInt(5));
+                    statement.bindLong(1, recurrence.getNextFireTime(cursor.getInt(1), cursor.getLong(2), timestamp, id));
+                    statement.bindLong(2, id);
+                    mRowsAffected += statement.executeUpdateDelete();
+                }
+                statement.close();
+            }
+            cursor.close();
+
+            return this;
+        }
+
+        /**
+         * Postpone active tasks whose next fire time falls into their quiet hours to the moment their active window
+         * opens. Tasks are processed in sets sharing the same window, one <code>UPDATE</code> per set per quiet period,
+         * and only the quiet periods within the longest task interval from given time are considered, since no task
+         * can be scheduled further than that after being rescheduled. Call after anything that moves next fire time.
+         *
+         * @param globalWindow Window for the tasks that don't have their own
+         * @param timestamp    Current timestamp
+         * @return this for chaining
+         */
+        public Transaction postponeToActiveWindows(ActiveWindow globalWindow, long timestamp) {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            final int maxInterval = getMaxActiveTaskInterval(mDatabase);
+            if (maxInterval == 0) {
+                return this;
+            }
+            final long horizon = timestamp + maxInterval * DateUtils.MINUTE_IN_MILLIS;
+            final TimeZone timeZone = TimeZone.getDefault();
+
+            postponeToActiveWindow(globalWindow, true, timestamp, horizon, timeZone);
+            for (ActiveWindow window : getActiveTaskWindows(mDatabase)) {
+                postponeToActiveWindow(window, false, timestamp, horizon, timeZone);
+            }
+
+            return this;
+        }
+
+        private void postponeToActiveWindow(ActiveWindow window, boolean isGlobal, long from, long until,
+                                            TimeZone timeZone) {
+            long quietFrom = window.getNextQuietTime(from, timeZone);
+            while (quietFrom < until) {
+                final long quietUntil = window.getNextActiveTime(quietFrom, timeZone);
+
+                SQLiteStatement statement = mDatabase.compileStatement(isGlobal
+                        ? POSTPONE_GLOBAL_WINDOW_TASKS_SQL
+                        : POSTPONE_OWN_WINDOW_TASKS_SQL);
+                statement.bindLong(1, quietUntil);
+                statement.bindLong(2, quietFrom);
+                statement.bindLong(3, quietUntil);
+                if (!isGlobal) {
+                    statement.bindLong(4, window.activeFrom);
+                    statement.bindLong(5, window.activeTo);
+                    statement.bindLong(6, window.activeDays);
+                }
+                mRowsAffected += statement.executeUpdateDelete();
+                statement.close();
+
+                quietFrom = window.getNextQuietTime(quietUntil, timeZone);
+            }
+        }
+
+        /**
+         * Shift the schedule (next fire time and start time) of all active tasks by given amount of time, as well as
+         * the time of unanswered nags in {@link TaskStats stats}. Used to keep intervals intact when the wall clock is
+         * changed. Done with two <code>UPDATE</code> statements.
+         *
+         * @param delta Time (msec) to add to the timestamps, negative to move them back. Nothing is done if 0.
+         * @return this for chaining
+         */
+        public Transaction shiftActiveTasks(long delta) {
+            if (!mIsSuccess || delta == 0) {
+                return this;
+            }
+
+            SQLiteStatement statement = mDatabase.compileStatement(SHIFT_ACTIVE_TASKS_SQL);
+            statement.bindLong(1, delta);
+            statement.bindLong(2, delta);
+            mRowsAffected += statement.executeUpdateDelete();
+            statement.close();
+
+            statement = mDatabase.compileStatement(SHIFT_TASK_STATS_SQL);
+            statement.bindLong(1, delta);
+            statement.executeUpdateDelete();
+            statement.close();
+
+            return this;
+        }
+
+        /**
+         * Snooze the task with given ID: mark it as "seen" and move its next fire time to given timestamp, leaving all
+         * other tasks intact. Does nothing (and doesn't fail) if there's no such task or it's not active anymore, so
+         * check {@link #getRowsAffected()} to tell whether the task was snoozed. Snoozing counts as a response to the
+         * nag in task {@link TaskStats stats}.
+         *
+         * @param taskId       id of the {@link Task} to snooze
+         * @param timestamp    Current timestamp, i.e. when the task was snoozed
+         * @param snoozedUntil when the task should fire again
+         * @return this for chaining
+         */
+        public Transaction snoozeTask(long taskId, long timestamp, long snoozedUntil) {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            SQLiteStatement statement = mDatabase.compileStatement(SNOOZE_TASK_SQL);
+            statement.bindLong(1, snoozedUntil);
+            statement.bindLong(2, taskId);
+            final int rowsAffected = statement.executeUpdateDelete();
+            statement.close();
+            if (rowsAffected == 0) {
+                return this;
+            }
+            mRowsAffected += rowsAffected;
+
+            statement = mDatabase.compileStatement(RECORD_TASK_DISMISSED_SQL);
+            statement.bindLong(1, timestamp);
+            statement.bindLong(2, taskId);
+            statement.executeUpdateDelete();
+            statement.close();
+
+            return this;
+        }
+
         /**
          * Delete the task with given ID, or, to be precise, ensure that the task with given ID doesn't exist anymore.
          * This call won't fail even if there's nothing to delete (inspired by HTTP DELETE method behavior).
+         * <p/>
+         * The row is only marked as deleted, so that it can be brought back with {@link #restoreTask(long, long)} as is.
+         * It's removed for good with {@link #purgeDeletedTasks(long, boolean, int)} later.
+         *
+         * @param taskId    id of the {@link Task} to delete
+         * @param timestamp Current timestamp, to tell when the task can be purged, and which deletion wins when syncing
+         * @return this for chaining
+         */
+        public Transaction deleteTask(long taskId, long timestamp) {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            SQLiteStatement statement = mDatabase.compileStatement(DELETE_TASK_SQL);
+            statement.bindLong(1, timestamp);
+            statement.bindLong(2, timestamp);
+            statement.bindLong(3, taskId);
+            mRowsAffected += statement.executeUpdateDelete();
+            statement.close();
+
+            return this;
+        }
+
+        /**
+         * Bring back the task deleted with {@link #deleteTask(long, long)}, with the status and order it had. Fails if
+         * the task was already purged.
+         *
+         * @param taskId    id of the {@link Task} to restore
+         * @param timestamp Current timestamp, i.e. when the task was restored
+         * @return this for chaining
+         */
+        public Transaction restoreTask(long taskId, long timestamp) {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            SQLiteStatement statement = mDatabase.compileStatement(RESTORE_TASK_SQL);
+            statement.bindLong(1, timestamp);
+            statement.bindLong(2, taskId);
+            int rowsAffected = statement.executeUpdateDelete();
+            statement.close();
+            if (rowsAffected == 1) {
+                mRowsAffected++;
+            } else {
+                mIsSuccess = false;
+                mDatabase.endTransaction();
+            }
+
+            return this;
+        }
+
+        /**
+         * Remove the tasks deleted on or before given time for good, along with their lateness histograms, history and
+         * stats. Only up to
+         * <code>limit</code> oldest tasks are removed, so that the purge can be split into short transactions &mdash;
+         * repeat until {@link #getRowsAffected()} gets less than the limit.
+         * <p/>
+         * A task is only removed once its deletion was sent to every sync peer. Otherwise the peer would never learn
+         * about it, and the next sync would bring the task back, since there would be no local row to match it with.
          *
-         * @param taskId id of the {@link Task} to delete
+         * @param deletedBefore Tasks deleted at this time or earlier are removed
+         * @param isSyncEnabled Whether the device syncs with a server. If it does but hasn't synced yet, nothing is
+         *                      removed
+         * @param limit         Maximum number of tasks to remove
          * @return this for chaining
          */
-        public Transaction deleteTask(long taskId) {
+        public Transaction purgeDeletedTasks(long deletedBefore, boolean isSyncEnabled, int limit) {
             if (!mIsSuccess) {
                 return this;
             }
+            final long sentWatermark = isSyncEnabled ? 0 : Long.MAX_VALUE;
+
+            // All sub-queries pick the same rows, since nothing changes them in between
+            SQLiteStatement statement = mDatabase.compileStatement(PURGE_TASKS_LATENESS_SQL);
+            statement.bindLong(1, deletedBefore);
+            statement.bindLong(2, sentWatermark);
+            statement.bindLong(3, limit);
+            statement.executeUpdateDelete();
+            statement.close();
+
+            statement = mDatabase.compileStatement(PURGE_TASKS_NAG_EVENTS_SQL);
+            statement.bindLong(1, deletedBefore);
+            statement.bindLong(2, sentWatermark);
+            statement.bindLong(3, limit);
+            statement.executeUpdateDelete();
+            statement.close();
+
+            statement = mDatabase.compileStatement(PURGE_TASKS_DAILY_STATS_SQL);
+            statement.bindLong(1, deletedBefore);
+            statement.bindLong(2, sentWatermark);
+            statement.bindLong(3, limit);
+            statement.executeUpdateDelete();
+            statement.close();
+
+            statement = mDatabase.compileStatement(PURGE_TASKS_STATS_SQL);
+            statement.bindLong(1, deletedBefore);
+            statement.bindLong(2, sentWatermark);
+            statement.bindLong(3, limit);
+            statement.executeUpdateDelete();
+            statement.close();
+
+            statement = mDatabase.compileStatement(PURGE_TASKS_SQL);
+            statement.bindLong(1, deletedBefore);
+            statement.bindLong(2, sentWatermark);
+            statement.bindLong(3, limit);
+            mRowsAffected += statement.executeUpdateDelete();
+            statement.close();
+
+            return this;
+        }
 
-            mDatabase.delete(
+        /**
+         * Insert the task group into the database.
+         *
+         * @param group Group to insert. If the operation is successful, {@link TaskGroup#id} will be set.
+         * @return this for chaining
+         */
+        public Transaction createTaskGroup(TaskGroup group) {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            long id = mDatabase.insert(
+                    TaskGroupsTable.TABLE_NAME,
+                    null,
+                    group.toContentValues()
+            );
+            if (id != -1) {
+                group.id = id;
+                mRowsAffected++;
+            } else {
+                mIsSuccess = false;
+                mDatabase.endTransaction();
+            }
+
+            return this;
+        }
+
+        /**
+         * Update the task group description.
+         *
+         * @param group Group to update. Must have {@link TaskGroup#id} set.
+         * @return this for chaining
+         */
+        public Transaction updateTaskGroup(TaskGroup group) {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            int rowsAffected = mDatabase.update(
+                    TaskGroupsTable.TABLE_NAME,
+                    group.toContentValues(),
+                    BuildingBlocks.SELECTION_ID,
+                    new String[]{Long.toString(group.id)}
+            );
+            if (rowsAffected == 1) {
+                mRowsAffected++;
+            } else {
+                mIsSuccess = false;
+                mDatabase.endTransaction();
+            }
+
+            return this;
+        }
+
+        /**
+         * Delete the task group with given ID. Its tasks are kept and become ungrouped. Just like {@link
+         * #deleteTask(long, long)}, this call won't fail even if there's nothing to delete.
+         *
+         * @param groupId id of the {@link TaskGroup} to delete
+         * @return this for chaining
+         */
+        public Transaction deleteTaskGroup(long groupId) {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            ContentValues values = new ContentValues(1);
+            values.putNull(TasksTable.COL_GROUP_ID);
+            final String[] args = {Long.toString(groupId)};
+            mRowsAffected += mDatabase.update(TasksTable.TABLE_NAME, values, BuildingBlocks.SELECTION_TASK_IN_GROUP, args);
+            mRowsAffected += mDatabase.delete(TaskGroupsTable.TABLE_NAME, BuildingBlocks.SELECTION_ID, args);
+
+            return this;
+        }
+
+        /**
+         * Move the task with given ID into a group, or out of any group.
+         *
+         * @param taskId  id of the {@link Task} to move
+         * @param groupId id of the {@link TaskGroup} to move it to, or {@link TaskGroup#NO_ID} to ungroup the task
+         * @return this for chaining
+         */
+        public Transaction moveTaskToGroup(long taskId, long groupId) {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            ContentValues values = new ContentValues(1);
+            if (groupId != TaskGroup.NO_ID) {
+                values.put(TasksTable.COL_GROUP_ID, groupId);
+            } else {
+                values.putNull(TasksTable.COL_GROUP_ID);
+            }
+            int rowsAffected = mDatabase.update(
                     TasksTable.TABLE_NAME,
+                    values,
                     BuildingBlocks.SELECTION_ID,
                     new String[]{Long.toString(taskId)}
             );
+            if (rowsAffected == 1) {
+                mRowsAffected++;
+            } else {
+                mIsSuccess = false;
+                mDatabase.endTransaction();
+            }
+
+            return this;
+        }
+
+        /**
+         * Start all idle tasks in the group, as if each was started at given time. Done with a single
+         * <code>UPDATE</code> statement. Doesn't account for active windows, so chain {@link
+         * #postponeToActiveWindows(ActiveWindow, long)} after this one.
+         *
+         * @param groupId   id of the {@link TaskGroup} whose tasks to start
+         * @param timestamp Current timestamp, which becomes the start time of the tasks
+         * @return this for chaining
+         */
+        public Transaction startTaskGroup(long groupId, long timestamp) {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            SQLiteStatement statement = mDatabase.compileStatement(START_TASK_GROUP_SQL);
+            statement.bindLong(1, timestamp);
+            statement.bindLong(2, timestamp);
+            statement.bindLong(3, timestamp);
+            statement.bindLong(4, groupId);
+            mRowsAffected += statement.executeUpdateDelete();
+            statement.close();
+
+            return this;
+        }
+
+        /**
+         * Record a {@link NagEvent#TYPE_STOPPED} event for each active task in the group. Done with a single
+         * <code>INSERT</code> statement. Must be called before {@link #stopTaskGroup(long, long)}.
+         *
+         * @param groupId   id of the {@link TaskGroup} whose tasks are about to be stopped
+         * @param timestamp Current timestamp
+         * @return this for chaining
+         */
+        public Transaction recordTaskGroupStopped(long groupId, long timestamp) {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            SQLiteStatement statement = mDatabase.compileStatement(RECORD_TASK_GROUP_STOPPED_SQL);
+            statement.bindLong(1, timestamp);
+            statement.bindLong(2, groupId);
+            mRowsAffected += statement.executeUpdateDelete();
+            statement.close();
+
+            return this;
+        }
+
+        /**
+         * Stop all active tasks in the group. Done with a single <code>UPDATE</code> statement, plus two more to update
+         * their {@link TaskStats stats} the same way {@link #updateTaskStatus(Task, long)} does.
+         *
+         * @param groupId   id of the {@link TaskGroup} whose tasks to stop
+         * @param timestamp Current timestamp, i.e. when the tasks were stopped
+         * @return this for chaining
+         */
+        public Transaction stopTaskGroup(long groupId, long timestamp) {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            SQLiteStatement statement = mDatabase.compileStatement(RECORD_TASK_GROUP_SESSIONS_SQL);
+            statement.bindLong(1, timestamp);
+            statement.bindLong(2, groupId);
+            statement.executeUpdateDelete();
+            statement.close();
+
+            statement = mDatabase.compileStatement(RECORD_TASK_GROUP_DISMISSED_SQL);
+            statement.bindLong(1, timestamp);
+            statement.bindLong(2, groupId);
+            statement.executeUpdateDelete();
+            statement.close();
+
+            statement = mDatabase.compileStatement(STOP_TASK_GROUP_SQL);
+            statement.bindLong(1, timestamp);
+            statement.bindLong(2, groupId);
+            mRowsAffected += statement.executeUpdateDelete();
+            statement.close();
+
+            return this;
+        }
+
+        /**
+         * Set the same interval for all tasks in the group and move next fire time of the active ones accordingly. Done
+         * with a single <code>UPDATE</code> statement. Just like {@link #startTaskGroup(long, long)}, doesn't account
+         * for active windows.
+         *
+         * @param groupId   id of the {@link TaskGroup} whose tasks to update
+         * @param interval  new interval in minutes, must be positive
+         * @param timestamp Current timestamp. Active tasks will fire next time after this moment.
+         * @return this for chaining
+         */
+        public Transaction setTaskGroupInterval(long groupId, int interval, long timestamp) {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            SQLiteStatement statement = mDatabase.compileStatement(SET_TASK_GROUP_INTERVAL_SQL);
+            statement.bindLong(1, interval);
+            statement.bindLong(2, timestamp);
+            statement.bindLong(3, timestamp);
+            statement.bindLong(4, interval);
+            statement.bindLong(5, interval);
+            statement.bindLong(6, groupId);
+            mRowsAffected += statement.executeUpdateDelete();
+            statement.close();
 
             return this;
         }
+
+        /**
+         * Apply a batch of tasks received from the sync peer and advance the watermarks of that peer. Each record is
+         * merged into the local task with the same sync ID, {@link SyncRecord#mergeFrom(SyncRecord) last writer wins}
+         * per group of fields, and the task is only updated if anything was taken from the record. Records of tasks
+         * not known locally are inserted at the end of the list, unless they are deleted. If the task status is taken
+         * from the peer, task {@link TaskStats stats} are updated the same way as with {@link #updateTaskStatus(Task,
+         * long)}. Fire times are taken as is, so chain {@link #postponeToActiveWindows(ActiveWindow, long)} after this
+         * one, and reschedule the alarm after committing.
+         * <p/>
+         * Applied records are logged as task changes like any other, and would be sent back to the peer, so if all
+         * local changes were already sent, the sent watermark is moved past them too. Nothing else may write to the
+         * database between reading the batch to send and calling this.
+         *
+         * @param peer              Peer the records came from
+         * @param records           Tasks as the peer has them
+         * @param sentWatermark     Sequence number of the last local change that the peer has now received
+         * @param receivedWatermark Watermark of the peer's changes that are being applied
+         * @param timestamp         Current timestamp
+         * @return this for chaining
+         */
+        public Transaction applySyncRecords(String peer, List<SyncRecord> records, long sentWatermark,
+                                            long receivedWatermark, long timestamp) {
+            if (!mIsSuccess) {
+                return this;
+            }
+
+            SQLiteStatement lastChangeStatement = mDatabase.compileStatement(SELECT_LAST_TASK_CHANGE_SQL);
+            final boolean isAllSent = lastChangeStatement.simpleQueryForLong() <= sentWatermark;
+
+            final Projection<SyncRecord> projection = NagboxContract.SYNC_RECORD_PROJECTION;
+            final String[] selectionArgs = new String[1];
+            SyncRecord local = new SyncRecord();
+            int displayOrder = getMaxTaskOrder(mDatabase);
+            for (int i = 0, size = records.size(); i < size && mIsSuccess; i++) {
+                final SyncRecord record = records.get(i);
+                selectionArgs[0] = record.syncId;
+                Cursor cursor = mDatabase.query(
+                        TasksTable.TABLE_NAME,
+                        projection.getColumns(),
+                        BuildingBlocks.SELECTION_TASK_SYNC_ID,
+                        selectionArgs,
+                        null, null, null, "1"
+                );
+                if (cursor.moveToFirst()) {
+                    final long id = projection.getId(cursor);
+                    projection.mapCursorToModel(cursor, local);
+                    cursor.close();
+                    final int fields = local.mergeFrom(record);
+                    if (fields != 0) {
+                        updateSyncedTask(id, local, fields, timestamp);
+                    }
+                } else if (!record.isDeleted) {
+                    cursor.close();
+                    ContentValues values = record.toContentValues(SyncRecord.FIELDS_ALL);
+                    values.put(TasksTable.COL_SYNC_ID, record.syncId);
+                    values.put(TasksTable.COL_DISPLAY_ORDER, ++displayOrder);
+                    insertTask(values);
+                } else {
+                    cursor.close();
+                }
+            }
+            if (!mIsSuccess) {
+                lastChangeStatement.close();
+                return this;
+            }
+
+            SQLiteStatement statement = mDatabase.compileStatement(SET_SYNC_WATERMARKS_SQL);
+            statement.bindString(1, peer);
+            statement.bindLong(2, isAllSent ? lastChangeStatement.simpleQueryForLong() : sentWatermark);
+            statement.bindLong(3, receivedWatermark);
+            statement.executeInsert();
+            statement.close();
+            lastChangeStatement.close();
+
+            return this;
+        }
+
+        private void updateSyncedTask(long id, SyncRecord record, int fields, long timestamp) {
+            if ((fields & SyncRecord.FIELDS_STATUS) != 0) {
+                // The session ends when the task is stopped or restarted elsewhere. Nags are answered by that, too
+                SQLiteStatement statement = mDatabase.compileStatement(RECORD_TASK_SESSION_SQL);
+                statement.bindLong(1, record.isActive ? record.lastStartedAt : record.statusChangedAt);
+                statement.bindLong(2, id);
+                statement.executeUpdateDelete();
+                statement.close();
+                statement = mDatabase.compileStatement(RECORD_TASK_DISMISSED_SQL);
+                statement.bindLong(1, timestamp);
+                statement.bindLong(2, id);
+                statement.executeUpdateDelete();
+                statement.close();
+            }
+
+            int rowsAffected = mDatabase.update(
+                    TasksTable.TABLE_NAME,
+                    record.toContentValues(fields),
+                    BuildingBlocks.SELECTION_ID,
+                    new String[]{Long.toString(id)}
+            );
+            if (rowsAffected == 1) {
+                mRowsAffected++;
+            } else {
+                mIsSuccess = false;
+                mDatabase.endTransaction();
+            }
+        }
     }
 
 }
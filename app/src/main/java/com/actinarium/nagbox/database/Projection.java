@@ -19,7 +19,6 @@ package com.actinarium.nagbox.database;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.support.annotation.Nullable;
-import android.support.v7.widget.RecyclerView;
 
 /**
  * An interface for objects that handle {@link Cursor} -&gt; model object mapping. One <code>Projection</code> object
@@ -53,7 +52,7 @@ public interface Projection<T> {
     /**
      * Get row ID at current cursor position
      * @param cursor Cursor to read data from. Must be already positioned on required row.
-     * @return row ID or {@link RecyclerView#NO_ID} if current projection doesn't include IDs
+     * @return row ID or {@link android.support.v7.widget.RecyclerView#NO_ID} if current projection doesn't include IDs
      */
     long getId(Cursor cursor);
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.nagbox.database;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.format.DateUtils;
+import com.actinarium.nagbox.common.Clock;
+import com.actinarium.nagbox.database.NagboxContract.TasksTable;
+import com.actinarium.nagbox.model.ActiveWindow;
+import com.actinarium.nagbox.model.Recurrence;
+import com.actinarium.nagbox.model.Task;
+import com.actinarium.nagbox.model.TaskGroup;
+
+/**
+ * Task changes made through {@link NagboxContentProvider} within one call, committed as a single transaction. Tasks are
+ * stamped with the same time, and the rest of the app is notified once, when the whole batch is in.
+ *
+ * @author Paul Danyliuk
+ */
+final class TaskBatch {
+
+    private static final int ORDER_NOT_QUERIED = -1;
+
+    private final SQLiteDatabase mDatabase;
+    private final NagboxDbOps.Transaction mTransaction;
+    private final long mTimestamp;
+    private int mNextDisplayOrder = ORDER_NOT_QUERIED;
+    private boolean mHasStartedTasks;
+    private boolean mHasDeletedTasks;
+    private boolean mHasChanges;
+
+    TaskBatch(SQLiteDatabase database) {
+        mDatabase = database;
+        mTransaction = NagboxDbOps.startTransaction(database);
+        mTimestamp = Clock.getInstance().currentTimeMillis();
+    }
+
+    /**
+     * @return ID of the new task, or {@link Task#NO_ID} if the batch has failed
+     */
+    long insertTask(ContentValues values) {
+        final Task task = new Task();
+        readTask(values, task, true);
+
+        // Same as in the service, order = max(order) + 1, but the max is only queried once per batch
+        if (mNextDisplayOrder == ORDER_NOT_QUERIED) {
+            mNextDisplayOrder = NagboxDbOps.getMaxTaskOrder(mDatabase) + 1;
+        }
+        task.displayOrder = mNextDisplayOrder++;
+        if (task.isActive()) {
+            if (task.lastStartedAt == 0) {
+                task.lastStartedAt = mTimestamp;
+            }
+            if (task.nextFireAt == 0) {
+                // Same as Task#setStatus, except that the window is applied to the whole batch on commit
+                task.nextFireAt = task.recurrence != null
+                        ? task.recurrence.getNextFireTime(
+                                task.interval, task.lastStartedAt, task.lastStartedAt, task.id)
+                        : task.lastStartedAt + task.interval * DateUtils.MINUTE_IN_MILLIS;
+            }
+            mHasStartedTasks = true;
+        }
+
+        mTransaction.createTask(task);
+        return mTransaction.getIntermediateResult() ? task.id : Task.NO_ID;
+    }
+
+    /**
+     * @return 1 if the task was updated, or 0 if there's no such task or the batch has failed
+     */
+    int updateTask(long taskId, ContentValues values) {
+        final Task task = NagboxDbOps.getTaskStatusById(mDatabase, taskId, NagboxContract.TASK_FULL_PROJECTION);
+        if (task == null) {
+            return 0;
+        }
+        readTask(values, task, false);
+
+        mTransaction.updateTask(task, mTimestamp);
+        return mTransaction.getIntermediateResult() ? 1 : 0;
+    }
+
+    /**
+     * @return 1 if the task was deleted, or 0 if there's no such task or the batch has failed
+     */
+    int deleteTask(long taskId) {
+        final int rowsBefore = mTransaction.getRowsAffected();
+        mTransaction.deleteTask(taskId, mTimestamp);
+        final int rowsDeleted = mTransaction.getRowsAffected() - rowsBefore;
+        if (rowsDeleted != 0) {
+            mHasDeletedTasks = true;
+        }
+        return rowsDeleted;
+    }
+
+    /**
+     * Commit the batch. Started tasks are postponed out of quiet hours first, same as when started in the app.
+     *
+     * @param globalWindow Window for the tasks that don't have their own
+     * @return whether the batch was committed successfully
+     */
+    boolean commit(ActiveWindow globalWindow) {
+        if (mHasStartedTasks) {
+            mTransaction.postponeToActiveWindows(globalWindow, mTimestamp);
+        }
+        mHasChanges = mTransaction.getRowsAffected() != 0;
+        return mTransaction.commit();
+    }
+
+    /**
+     * @return whether the committed batch has changed any rows, i.e. whether the observers must be notified
+     */
+    boolean hasChanges() {
+        return mHasChanges;
+    }
+
+    /**
+     * @return whether the batch has started or deleted any tasks, i.e. whether the alarm must be rescheduled
+     */
+    boolean hasScheduleChanges() {
+        return mHasStartedTasks || mHasDeletedTasks;
+    }
+
+    /**
+     * Roll back the batch unless it's committed already
+     */
+    void rollback() {
+        mTransaction.rollback();
+    }
+
+    /**
+     * Fill the task with given values. Flags, next fire time, last started time and group can only be set on
+     * insert. Columns of the active window and the recurrence can only be set all together, since each group makes
+     * up a single field, and setting the last one (days, min interval) to <code>null</code> clears it.
+     */
+    private static void readTask(ContentValues values, Task task, boolean isInsert) {
+        if (values == null) {
+            return;
+        }
+        for (String column : values.keySet()) {
+            switch (column) {
+                case TasksTable.COL_TITLE:
+                case TasksTable.COL_INTERVAL:
+                case TasksTable.COL_ACTIVE_FROM:
+                case TasksTable.COL_ACTIVE_TO:
+                case TasksTable.COL_ACTIVE_DAYS:
+                case TasksTable.COL_ESCALATION_STEP:
+                case TasksTable.COL_MIN_INTERVAL:
+                case TasksTable.COL_JITTER:
+                    break;
+                case TasksTable.COL_FLAGS:
+                case TasksTable.COL_NEXT_FIRE_AT:
+                case TasksTable.COL_LAST_STARTED_AT:
+                case TasksTable.COL_GROUP_ID:
+                    if (isInsert) {
+                        break;
+                    }
+                    // Otherwise status and group changes have side effects only the service takes care of
+                default:
+                    throw new IllegalArgumentException("Column " + column + " can't be written via provider");
+            }
+        }
+
+        if (values.containsKey(TasksTable.COL_TITLE)) {
+            task.title = values.getAsString(TasksTable.COL_TITLE);
+        }
+        if (values.containsKey(TasksTable.COL_INTERVAL)) {
+            task.interval = getRequiredInt(values, TasksTable.COL_INTERVAL);
+            if (task.interval < 1) {
+                throw new IllegalArgumentException("Task interval must be at least 1 minute, got " + task.interval);
+            }
+        }
+        if (values.containsKey(TasksTable.COL_ACTIVE_FROM) || values.containsKey(TasksTable.COL_ACTIVE_TO)
+                || values.containsKey(TasksTable.COL_ACTIVE_DAYS)) {
+            task.activeWindow = isSetToNull(values, TasksTable.COL_ACTIVE_DAYS) ? null : new ActiveWindow(
+                    getRequiredInt(values, TasksTable.COL_ACTIVE_FROM),
+                    getRequiredInt(values, TasksTable.COL_ACTIVE_TO),
+                    getRequiredInt(values, TasksTable.COL_ACTIVE_DAYS)
+            );
+        }
+        if (values.containsKey(TasksTable.COL_ESCALATION_STEP) || values.containsKey(TasksTable.COL_MIN_INTERVAL)
+                || values.containsKey(TasksTable.COL_JITTER)) {
+            task.recurrence = isSetToNull(values, TasksTable.COL_MIN_INTERVAL) ? null : new Recurrence(
+                    getRequiredInt(values, TasksTable.COL_ESCALATION_STEP),
+                    getRequiredInt(values, TasksTable.COL_MIN_INTERVAL),
+                    getRequiredInt(values, TasksTable.COL_JITTER)
+            );
+        }
+
+        if (values.containsKey(TasksTable.COL_FLAGS)) {
+            task.flags = getRequiredInt(values, TasksTable.COL_FLAGS);
+            if ((task.flags & ~(Task.FLAG_ACTIVE | Task.FLAG_NOT_SEEN)) != 0) {
+                throw new IllegalArgumentException("Unknown task flags " + task.flags);
+            }
+        }
+        if (values.containsKey(TasksTable.COL_NEXT_FIRE_AT)) {
+            task.nextFireAt = getRequiredLong(values, TasksTable.COL_NEXT_FIRE_AT);
+        }
+        if (values.containsKey(TasksTable.COL_LAST_STARTED_AT)) {
+            task.lastStartedAt = getRequiredLong(values, TasksTable.COL_LAST_STARTED_AT);
+        }
+        if (values.containsKey(TasksTable.COL_GROUP_ID)) {
+            final Long groupId = values.getAsLong(TasksTable.COL_GROUP_ID);
+            task.groupId = groupId != null ? groupId : TaskGroup.NO_ID;
+        }
+    }
+
+    private static boolean isSetToNull(ContentValues values, String column) {
+        return values.containsKey(column) && values.get(column) == null;
+    }
+
+    private static int getRequiredInt(ContentValues values, String column) {
+        final Integer value = values.getAsInteger(column);
+        if (value == null) {
+            throw new IllegalArgumentException("Column " + column + " must be set to a number");
+        }
+        return value;
+    }
+
+    private static long getRequiredLong(ContentValues values, String column) {
+        final Long value = values.getAsLong(column);
+        if (value == null) {
+            throw new IllegalArgumentException("Column " + column + " must be set to a number");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.model;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Defines when a task is allowed to nag: a range of local time of day on selected days of week. Anything outside is
+ * quiet hours, and nags that would fall into them are postponed until the window opens again. Windows can wrap past
+ * midnight (e.g. from 22:00 to 2:00), in which case the part after midnight belongs to the day the window opened.
+ * <p/>
+ * A task can have its own window, or otherwise it follows the global one.
+ *
+ * @author Paul Danyliuk
+ */
+public final class ActiveWindow {
+
+    public static final int MINUTES_IN_DAY = 24 * 60;
+
+    /**
+     * Bit mask for days of week, with bit <code>(n - 1)</code> standing for {@link Calendar#DAY_OF_WEEK} value
+     * <code>n</code>
+     */
+    public static final int ALL_DAYS = 0x7F;
+    public static final int WEEKDAYS = ALL_DAYS
+            & ~(1 << (Calendar.SATURDAY - 1))
+            & ~(1 << (Calendar.SUNDAY - 1));
+
+    public static final ActiveWindow ALWAYS = new ActiveWindow(0, MINUTES_IN_DAY, ALL_DAYS);
+
+    // A window can't span more than a day, so a quiet period never starts further than a week from any point in time
+    private static final int MAX_DAYS_TO_SCAN = 8;
+
+    private static final String PREFS_NAME = "active_window";
+    private static final String KEY_ACTIVE_FROM = "active_from";
+    private static final String KEY_ACTIVE_TO = "active_to";
+    private static final String KEY_ACTIVE_DAYS = "active_days";
+
+    /**
+     * Minute of the day when the window opens, 0..1439
+     */
+    public final int activeFrom;
+    /**
+     * Minute of the day when the window closes, 1..1440. If less than {@link #activeFrom}, the window closes the next
+     * day, and if equal, it's open all day.
+     */
+    public final int activeTo;
+    /**
+     * Days of week when the window opens
+     *
+     * @see #ALL_DAYS
+     */
+    public final int activeDays;
+
+    public ActiveWindow(int activeFrom, int activeTo, int activeDays) {
+        if (activeFrom < 0 || activeFrom >= MINUTES_IN_DAY || activeTo < 0 || activeTo > MINUTES_IN_DAY) {
+            throw new IllegalArgumentException("Window must be within a day, was " + activeFrom + ".." + activeTo);
+        }
+        if ((activeDays & ALL_DAYS) == 0) {
+            throw new IllegalArgumentException("Window must open at least on one day of week");
+        }
+        this.activeFrom = activeFrom;
+        this.activeTo = activeTo;
+        this.activeDays = activeDays & ALL_DAYS;
+    }
+
+    /**
+     * Get the window that applies to the tasks that don't have their own
+     *
+     * @param context context
+     * @return global active window, {@link #ALWAYS} if not set
+     */
+    public static ActiveWindow getGlobal(Context context) {
+        final SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (!prefs.contains(KEY_ACTIVE_DAYS)) {
+            return ALWAYS;
+        }
+        return new ActiveWindow(
+                prefs.getInt(KEY_ACTIVE_FROM, 0),
+                prefs.getInt(KEY_ACTIVE_TO, MINUTES_IN_DAY),
+                prefs.getInt(KEY_ACTIVE_DAYS, ALL_DAYS)
+        );
+    }
+
+    /**
+     * Set the window that applies to the tasks that don't have their own. Tasks already scheduled are not affected
+     * until they fire next time.
+     *
+     * @param context context
+     * @param window  new global active window
+     */
+    public static void setGlobal(Context context, ActiveWindow window) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putInt(KEY_ACTIVE_FROM, window.activeFrom)
+                .putInt(KEY_ACTIVE_TO, window.activeTo)
+                .putInt(KEY_ACTIVE_DAYS, window.activeDays)
+                .apply();
+    }
+
+    /**
+     * Get the window that applies to given task
+     *
+     * @param context context
+     * @param task    task
+     * @return task's own window if it has one, or the global one otherwise
+     */
+    public static ActiveWindow getEffective(Context context, Task task) {
+        return task.activeWindow != null ? task.activeWindow : getGlobal(context);
+    }
+
+    /**
+     * @return <code>true</code> if there are no quiet hours at all
+     */
+    public boolean isAlwaysActive() {
+        return activeDays == ALL_DAYS && isAllDay();
+    }
+
+    /**
+     * Check whether nagging is allowed at given time
+     *
+     * @param timestamp time to check
+     * @param timeZone  time zone to interpret the window in
+     * @return <code>true</code> if the time is within the window
+     */
+    public boolean isActiveAt(long timestamp, TimeZone timeZone) {
+        final Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis(timestamp);
+        final int day = calendar.get(Calendar.DAY_OF_WEEK);
+        final int minute = calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE);
+
+        if (isAllDay()) {
+            return isActiveOn(day);
+        } else if (activeFrom < activeTo) {
+            return isActiveOn(day) && minute >= activeFrom && minute < activeTo;
+        } else {
+            // Wraps past midnight: either the window opened today, or it opened yesterday and is still open
+            return (isActiveOn(day) && minute >= activeFrom) || (isActiveOn(getPreviousDay(day)) && minute < activeTo);
+        }
+    }
+
+    /**
+     * Get the earliest time at or after given one when nagging is allowed. Computed directly, not by stepping.
+     *
+     * @param timestamp time to start from
+     * @param timeZone  time zone to interpret the window in
+     * @return <code>timestamp</code> itself if it's within the window, otherwise the time the window opens next
+     */
+    public long getNextActiveTime(long timestamp, TimeZone timeZone) {
+        if (isActiveAt(timestamp, timeZone)) {
+            return timestamp;
+        }
+        final Calendar calendar = Calendar.getInstance(timeZone);
+        for (int i = 0; i < MAX_DAYS_TO_SCAN; i++) {
+            calendar.setTimeInMillis(timestamp);
+            setToMinuteOfDay(calendar, i, activeFrom);
+            if (calendar.getTimeInMillis() >= timestamp && isActiveOn(calendar.get(Calendar.DAY_OF_WEEK))) {
+                return calendar.getTimeInMillis();
+            }
+        }
+        // Unreachable, since the window opens at least once a week
+        return timestamp;
+    }
+
+    /**
+     * Get the earliest time at or after given one when quiet hours start
+     *
+     * @param timestamp time to start from
+     * @param timeZone  time zone to interpret the window in
+     * @return <code>timestamp</code> itself if it's outside the window, otherwise the time the window closes, or
+     * {@link Long#MAX_VALUE} if there are no quiet hours at all
+     */
+    public long getNextQuietTime(long timestamp, TimeZone timeZone) {
+        if (isAlwaysActive()) {
+            return Long.MAX_VALUE;
+        }
+        long closesAt = timestamp;
+        // Windows of adjacent days may touch each other (e.g. all day on weekdays), so skip over those
+        for (int i = 0; i < MAX_DAYS_TO_SCAN && isActiveAt(closesAt, timeZone); i++) {
+            closesAt = getCurrentWindowEnd(closesAt, timeZone);
+        }
+        return closesAt;
+    }
+
+    /**
+     * @param timestamp time within the window
+     * @return time when the window that's open at given time closes
+     */
+    private long getCurrentWindowEnd(long timestamp, TimeZone timeZone) {
+        final Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis(timestamp);
+        final int day = calendar.get(Calendar.DAY_OF_WEEK);
+        final int minute = calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE);
+
+        if (isAllDay()) {
+            setToMinuteOfDay(calendar, 1, 0);
+        } else if (activeFrom < activeTo) {
+            setToMinuteOfDay(calendar, 0, activeTo);
+        } else if (isActiveOn(day) && minute >= activeFrom) {
+            // Opened today, closes tomorrow
+            setToMinuteOfDay(calendar, 1, activeTo);
+        } else {
+            // Opened yesterday, closes today
+            setToMinuteOfDay(calendar, 0, activeTo);
+        }
+        return calendar.getTimeInMillis();
+    }
+
+    private boolean isAllDay() {
+        return activeFrom == activeTo || (activeFrom == 0 && activeTo == MINUTES_IN_DAY);
+    }
+
+    private boolean isActiveOn(int dayOfWeek) {
+        return (activeDays & (1 << (dayOfWeek - 1))) != 0;
+    }
+
+    private static int getPreviousDay(int dayOfWeek) {
+        return dayOfWeek == Calendar.SUNDAY ? Calendar.SATURDAY : dayOfWeek - 1;
+    }
+
+    /**
+     * Move the calendar to given local time on a day that's given number of days later. Local time is set by fields,
+     * so DST transitions are accounted for: 9:00 is 9:00 on either side of a transition, and a time that falls into a
+     * gap (e.g. 2:30 when clocks jump from 2:00 to 3:00) is moved forward by the size of the gap.
+     */
+    private static void setToMinuteOfDay(Calendar calendar, int daysLater, int minuteOfDay) {
+        if (minuteOfDay == MINUTES_IN_DAY) {
+            daysLater++;
+            minuteOfDay = 0;
+        }
+        calendar.add(Calendar.DAY_OF_YEAR, daysLater);
+        calendar.set(Calendar.HOUR_OF_DAY, minuteOfDay / 60);
+        calendar.set(Calendar.MINUTE, minuteOfDay % 60);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+    }
+
+    // Misc (equals/hashCode/toString etc) -------------------------------
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ActiveWindow that = (ActiveWindow) o;
+        return activeFrom == that.activeFrom && activeTo == that.activeTo && activeDays == that.activeDays;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = activeFrom;
+        result = 31 * result + activeTo;
+        result = 31 * result + activeDays;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ActiveWindow{" +
+                "activeFrom=" + activeFrom +
+                ", activeTo=" + activeTo +
+                ", activeDays=" + Integer.toBinaryString(activeDays) +
+                '}';
+    }
+}
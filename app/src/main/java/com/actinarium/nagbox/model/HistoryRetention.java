@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.model;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Defines how long the nag history is kept. Raw {@link NagEvent}s are kept for a short while, then rolled up into
+ * daily counts per task and event type, which are in turn kept for longer.
+ *
+ * @author Paul Danyliuk
+ */
+public final class HistoryRetention {
+
+    public static final HistoryRetention DEFAULT = new HistoryRetention(7, 90);
+
+    private static final String PREFS_NAME = "history_retention";
+    private static final String KEY_RAW_EVENT_DAYS = "raw_event_days";
+    private static final String KEY_DAILY_STATS_DAYS = "daily_stats_days";
+
+    /**
+     * For how many days raw events are kept before being rolled up
+     */
+    public final int rawEventDays;
+    /**
+     * For how many days daily counts are kept before being deleted
+     */
+    public final int dailyStatsDays;
+
+    public HistoryRetention(int rawEventDays, int dailyStatsDays) {
+        if (rawEventDays < 0 || dailyStatsDays < rawEventDays) {
+            throw new IllegalArgumentException("Daily stats must outlive raw events, was " + rawEventDays + " and "
+                    + dailyStatsDays + " days");
+        }
+        this.rawEventDays = rawEventDays;
+        this.dailyStatsDays = dailyStatsDays;
+    }
+
+    /**
+     * Get the retention policy set for the app
+     *
+     * @param context context
+     * @return retention policy, {@link #DEFAULT} if not set
+     */
+    public static HistoryRetention get(Context context) {
+        final SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (!prefs.contains(KEY_RAW_EVENT_DAYS)) {
+            return DEFAULT;
+        }
+        return new HistoryRetention(
+                prefs.getInt(KEY_RAW_EVENT_DAYS, DEFAULT.rawEventDays),
+                prefs.getInt(KEY_DAILY_STATS_DAYS, DEFAULT.dailyStatsDays)
+        );
+    }
+
+    /**
+     * Set the retention policy for the app. Takes effect the next time the history is compacted.
+     *
+     * @param context   context
+     * @param retention new retention policy
+     */
+    public static void set(Context context, HistoryRetention retention) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putInt(KEY_RAW_EVENT_DAYS, retention.rawEventDays)
+                .putInt(KEY_DAILY_STATS_DAYS, retention.dailyStatsDays)
+                .apply();
+    }
+
+    // Misc (equals/hashCode/toString etc) -------------------------------
+
+    @Override
+    public String toString() {
+        return "HistoryRetention{" +
+                "rawEventDays=" + rawEventDays +
+                ", dailyStatsDays=" + dailyStatsDays +
+                '}';
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.model;
+
+import android.text.format.DateUtils;
+
+/**
+ * A histogram of how late nags fire compared to their scheduled time, either for a single task or for all of them.
+ * Lateness is bucketed into a few human-meaningful ranges, so the percentiles are coarse but the storage is tiny.
+ *
+ * @author Paul Danyliuk
+ */
+public class LatenessHistogram {
+
+    /**
+     * Pseudo task ID under which the histogram for all tasks together is stored
+     */
+    public static final long GLOBAL_TASK_ID = 0;
+
+    /**
+     * Exclusive upper bounds (msec) of lateness buckets. Everything above the last bound goes into an extra bucket.
+     */
+    public static final long[] BUCKET_UPPER_BOUNDS = {
+            DateUtils.SECOND_IN_MILLIS,
+            2 * DateUtils.SECOND_IN_MILLIS,
+            5 * DateUtils.SECOND_IN_MILLIS,
+            10 * DateUtils.SECOND_IN_MILLIS,
+            30 * DateUtils.SECOND_IN_MILLIS,
+            DateUtils.MINUTE_IN_MILLIS,
+            2 * DateUtils.MINUTE_IN_MILLIS,
+            5 * DateUtils.MINUTE_IN_MILLIS,
+            10 * DateUtils.MINUTE_IN_MILLIS,
+            30 * DateUtils.MINUTE_IN_MILLIS,
+            DateUtils.HOUR_IN_MILLIS,
+            6 * DateUtils.HOUR_IN_MILLIS,
+            DateUtils.DAY_IN_MILLIS
+    };
+    public static final int BUCKET_COUNT = BUCKET_UPPER_BOUNDS.length + 1;
+
+    public long taskId = GLOBAL_TASK_ID;
+    /**
+     * Title of the task, or <code>null</code> for the global histogram or if the task was deleted
+     */
+    public String taskTitle;
+    public final long[] counts = new long[BUCKET_COUNT];
+
+    public long getTotalCount() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Get lateness at given percentile, rounded up to the bucket bound
+     *
+     * @param percentile percentile, 0..100
+     * @return upper bound (msec) of the bucket where given percentile falls, {@link Long#MAX_VALUE} if it's in the last
+     * unbounded bucket, or 0 if the histogram is empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        final long total = getTotalCount();
+        if (total == 0) {
+            return 0;
+        }
+        final long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long runningCount = 0;
+        for (int i = 0; i < BUCKET_UPPER_BOUNDS.length; i++) {
+            runningCount += counts[i];
+            if (runningCount >= countAtPercentile) {
+                return BUCKET_UPPER_BOUNDS[i];
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "LatenessHistogram{" +
+                "taskId=" + taskId +
+                ", taskTitle='" + taskTitle + '\'' +
+                ", totalCount=" + getTotalCount() +
+                '}';
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.model;
+
+/**
+ * A single entry of the nag history: something that happened to a task at some point in time. Events are only ever
+ * appended, and eventually rolled up into daily counts.
+ *
+ * @author Paul Danyliuk
+ */
+public final class NagEvent {
+
+    /**
+     * The task was due and the user was nagged about it
+     */
+    public static final int TYPE_FIRED = 0;
+    /**
+     * The user dismissed the notification the task was in
+     */
+    public static final int TYPE_DISMISSED = 1;
+    /**
+     * The task was stopped, either from the app or from the notification
+     */
+    public static final int TYPE_STOPPED = 2;
+    /**
+     * The task was snoozed from the notification
+     */
+    public static final int TYPE_SNOOZED = 3;
+
+    public final long taskId;
+    public final int type;
+    /**
+     * When the event happened (msec)
+     */
+    public final long timestamp;
+
+    public NagEvent(long taskId, int type, long timestamp) {
+        this.taskId = taskId;
+        this.type = type;
+        this.timestamp = timestamp;
+    }
+
+    // Misc (equals/hashCode/toString etc) -------------------------------
+
+    @Override
+    public String toString() {
+        return "NagEvent{" +
+                "taskId=" + taskId +
+                ", type=" + type +
+                ", timestamp=" + timestamp +
+                '}';
+    }
+}
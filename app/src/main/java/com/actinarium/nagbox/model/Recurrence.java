@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.model;
+
+import android.text.format.DateUtils;
+
+/**
+ * Recurrence rule for a task that doesn't nag at a fixed interval. Starting with the task's own interval, each
+ * subsequent gap can be shorter by the escalation step, down to the minimum interval (e.g. 5, then 3, then 1 minute),
+ * and each fire time can be randomly shifted by up to a given percentage of the minimum interval.
+ * <p/>
+ * Fire times are counted from the moment the task was started, so the next one after any given time is computed in
+ * closed form, no matter how many have passed. Jitter is derived from the task ID and the occurrence number, so it's
+ * the same every time it's computed. To nag only at certain hours, combine with {@link ActiveWindow}.
+ *
+ * @author Paul Danyliuk
+ */
+public final class Recurrence {
+
+    /**
+     * Maximum jitter, so that jittered fire times never swap order
+     */
+    public static final int MAX_JITTER_PERCENT = 49;
+
+    /**
+     * By how many minutes each gap is shorter than the previous one, 0 for no escalation
+     */
+    public final int escalationStep;
+    /**
+     * Gaps never get shorter than this, minutes. Ignored if there's no escalation.
+     */
+    public final int minInterval;
+    /**
+     * Maximum random shift of each fire time, in percent of the shortest gap
+     */
+    public final int jitterPercent;
+
+    public Recurrence(int escalationStep, int minInterval, int jitterPercent) {
+        if (escalationStep < 0 || minInterval < 1 || jitterPercent < 0 || jitterPercent > MAX_JITTER_PERCENT) {
+            throw new IllegalArgumentException("Invalid recurrence: step " + escalationStep + ", min " + minInterval
+                    + ", jitter " + jitterPercent + "%");
+        }
+        this.escalationStep = escalationStep;
+        this.minInterval = minInterval;
+        this.jitterPercent = jitterPercent;
+    }
+
+    /**
+     * Get the first fire time strictly after given time
+     *
+     * @param interval  task interval (first gap), minutes
+     * @param startedAt when the task was started, i.e. the 0th occurrence
+     * @param after     time after which to look for the next occurrence
+     * @param seed      seed for jitter, usually task ID
+     * @return timestamp of the next fire
+     */
+    public long getNextFireTime(int interval, long startedAt, long after, long seed) {
+        final long first = interval * DateUtils.MINUTE_IN_MILLIS;
+        final long last = getShortestGap(interval) * DateUtils.MINUTE_IN_MILLIS;
+        final long step = escalationStep * DateUtils.MINUTE_IN_MILLIS;
+        final long jitterBound = last * jitterPercent / 100;
+
+        // Find the occurrence ignoring jitter, then adjust, since jitter can only move it by one either way
+        long index = getNextIndex(first, last, step, after - startedAt);
+        if (jitterBound != 0) {
+            if (index > 1 && getFireTime(first, last, step, startedAt, index - 1, seed, jitterBound) > after) {
+                index--;
+            } else if (getFireTime(first, last, step, startedAt, index, seed, jitterBound) <= after) {
+                index++;
+            }
+        }
+        return getFireTime(first, last, step, startedAt, index, seed, jitterBound);
+    }
+
+    private int getShortestGap(int interval) {
+        return escalationStep == 0 ? interval : Math.min(minInterval, interval);
+    }
+
+    /**
+     * @return number of gaps while escalating, i.e. before gaps become equal to the last one
+     */
+    private static long getEscalationCount(long first, long last, long step) {
+        return step == 0 ? 0 : (first - last + step - 1) / step;
+    }
+
+    /**
+     * @return time since the start till occurrence number <code>index</code>, without jitter
+     */
+    private static long getOffset(long first, long last, long step, long index) {
+        final long escalationCount = getEscalationCount(first, last, step);
+        if (index <= escalationCount) {
+            // Arithmetic progression: first + (first - step) + ... + (first - (index - 1) * step)
+            return index * first - step * index * (index - 1) / 2;
+        }
+        return getOffset(first, last, step, escalationCount) + (index - escalationCount) * last;
+    }
+
+    /**
+     * @return the smallest occurrence number (1 or more) whose offset without jitter is greater than given elapsed time
+     */
+    private static long getNextIndex(long first, long last, long step, long elapsed) {
+        if (elapsed < 0) {
+            return 1;
+        }
+        final long escalationCount = getEscalationCount(first, last, step);
+        final long escalationEnd = getOffset(first, last, step, escalationCount);
+        if (elapsed >= escalationEnd) {
+            return escalationCount + (elapsed - escalationEnd) / last + 1;
+        }
+
+        // Solve index * first - step * index * (index - 1) / 2 > elapsed for the smallest index, then fix rounding
+        final double b = first + step / 2.0;
+        final double root = (b - Math.sqrt(b * b - 2.0 * step * elapsed)) / step;
+        long index = Math.max(1, (long) Math.floor(root) + 1);
+        while (index > 1 && getOffset(first, last, step, index - 1) > elapsed) {
+            index--;
+        }
+        while (getOffset(first, last, step, index) <= elapsed) {
+            index++;
+        }
+        return index;
+    }
+
+    private static long getFireTime(long first, long last, long step, long startedAt, long index, long seed,
+                                    long jitterBound) {
+        final long time = startedAt + getOffset(first, last, step, index);
+        if (jitterBound == 0) {
+            return time;
+        }
+        return time + (mix(seed * 31 + index) >>> 1) % (2 * jitterBound + 1) - jitterBound;
+    }
+
+    /**
+     * SplitMix64 finalizer, to get well-distributed jitter from sequential inputs
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    // Misc (equals/hashCode/toString etc) -------------------------------
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Recurrence that = (Recurrence) o;
+        return escalationStep == that.escalationStep && minInterval == that.minInterval
+                && jitterPercent == that.jitterPercent;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = escalationStep;
+        result = 31 * result + minInterval;
+        result = 31 * result + jitterPercent;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Recurrence{" +
+                "escalationStep=" + escalationStep +
+                ", minInterval=" + minInterval +
+                ", jitterPercent=" + jitterPercent +
+                '}';
+    }
+}
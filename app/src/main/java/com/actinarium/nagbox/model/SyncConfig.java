@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.model;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.UUID;
+
+/**
+ * Where to sync tasks to, and the ID this device is known by there. Sync is off until the server is set.
+ *
+ * @author Paul Danyliuk
+ */
+public final class SyncConfig {
+
+    private static final String PREFS_NAME = "sync";
+    private static final String KEY_SERVER_URL = "server_url";
+    private static final String KEY_DEVICE_ID = "device_id";
+
+    /**
+     * URL to exchange changes with
+     */
+    public final String serverUrl;
+    /**
+     * Random ID of this device, generated once
+     */
+    public final String deviceId;
+
+    public SyncConfig(String serverUrl, String deviceId) {
+        this.serverUrl = serverUrl;
+        this.deviceId = deviceId;
+    }
+
+    /**
+     * Get the sync settings of the app
+     *
+     * @param context context
+     * @return sync settings, or <code>null</code> if sync is off
+     */
+    public static SyncConfig get(Context context) {
+        final SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        final String serverUrl = prefs.getString(KEY_SERVER_URL, null);
+        if (serverUrl == null) {
+            return null;
+        }
+        String deviceId = prefs.getString(KEY_DEVICE_ID, null);
+        if (deviceId == null) {
+            deviceId = UUID.randomUUID().toString().replace("-", "");
+            prefs.edit().putString(KEY_DEVICE_ID, deviceId).apply();
+        }
+        return new SyncConfig(serverUrl, deviceId);
+    }
+
+    /**
+     * Set the server to sync with, or turn sync off. The device ID is kept.
+     *
+     * @param context   context
+     * @param serverUrl URL to exchange changes with, or <code>null</code> to turn sync off
+     */
+    public static void setServerUrl(Context context, String serverUrl) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putString(KEY_SERVER_URL, serverUrl)
+                .apply();
+    }
+
+    // Misc (equals/hashCode/toString etc) -------------------------------
+
+    @Override
+    public String toString() {
+        return "SyncConfig{" +
+                "serverUrl='" + serverUrl + '\'' +
+                ", deviceId='" + deviceId + '\'' +
+                '}';
+    }
+}
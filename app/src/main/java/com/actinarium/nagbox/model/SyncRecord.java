@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.model;
+
+import android.content.ContentValues;
+import com.actinarium.nagbox.database.NagboxContract;
+
+/**
+ * A task as it's exchanged with sync peers. Tasks are matched across devices by {@link #syncId}, since row IDs are
+ * local. Fields that are always changed together form a group with its own timestamp of the last change, and groups
+ * are merged independently: the one changed later wins, so e.g. renaming a task on one device and stopping it on
+ * another both survive. If both sides changed a group at the same millisecond, the field values decide, so that every
+ * peer picks the same winner no matter in which order the changes arrive.
+ * <p/>
+ * Group membership and the unseen flag are local to the device and are not synced.
+ *
+ * @author Paul Danyliuk
+ */
+public class SyncRecord {
+
+    /**
+     * Title, interval, active window, and recurrence
+     */
+    public static final int FIELDS_DESCRIPTION = 1;
+    /**
+     * Whether the task is active, when it was last started, and when it fires next
+     */
+    public static final int FIELDS_STATUS = 2;
+    /**
+     * Whether the task is deleted
+     */
+    public static final int FIELDS_DELETION = 4;
+    public static final int FIELDS_ALL = FIELDS_DESCRIPTION | FIELDS_STATUS | FIELDS_DELETION;
+
+    public String syncId;
+
+    public String title;
+    /**
+     * Interval in minutes
+     */
+    public int interval = Task.DEFAULT_INTERVAL;
+    public ActiveWindow activeWindow;
+    public Recurrence recurrence;
+    public long descriptionChangedAt;
+
+    public boolean isActive;
+    public long lastStartedAt;
+    /**
+     * When the task fires next on the device that last changed its status. Travels with the status, but never decides
+     * which status wins, since devices reschedule tasks on their own.
+     */
+    public long nextFireAt;
+    public long statusChangedAt;
+
+    public boolean isDeleted;
+    public long deletionChangedAt;
+
+
+    public SyncRecord() {}
+
+    /**
+     * Copy constructor
+     *
+     * @param source instance to copy fields from
+     */
+    public SyncRecord(SyncRecord source) {
+        this.syncId = source.syncId;
+        copyFields(source, FIELDS_ALL);
+    }
+
+    /**
+     * Merge a copy of the same task from another peer into this one, last writer wins per group of fields
+     *
+     * @param other the same task as the other peer has it
+     * @return bit mask of groups that were taken from <code>other</code>, or 0 if this record hasn't changed
+     * @see #FIELDS_DESCRIPTION
+     * @see #FIELDS_STATUS
+     * @see #FIELDS_DELETION
+     */
+    public int mergeFrom(SyncRecord other) {
+        int fields = 0;
+        if (other.descriptionChangedAt > descriptionChangedAt || (other.descriptionChangedAt == descriptionChangedAt
+                && other.getDescriptionKey().compareTo(getDescriptionKey()) > 0)) {
+            fields |= FIELDS_DESCRIPTION;
+        }
+        if (other.statusChangedAt > statusChangedAt || (other.statusChangedAt == statusChangedAt
+                && other.getStatusKey().compareTo(getStatusKey()) > 0)) {
+            fields |= FIELDS_STATUS;
+        }
+        if (other.deletionChangedAt > deletionChangedAt
+                || (other.deletionChangedAt == deletionChangedAt && other.isDeleted && !isDeleted)) {
+            fields |= FIELDS_DELETION;
+        }
+        copyFields(other, fields);
+        return fields;
+    }
+
+    private void copyFields(SyncRecord source, int fields) {
+        if ((fields & FIELDS_DESCRIPTION) != 0) {
+            this.title = source.title;
+            this.interval = source.interval;
+            this.activeWindow = source.activeWindow;
+            this.recurrence = source.recurrence;
+            this.descriptionChangedAt = source.descriptionChangedAt;
+        }
+        if ((fields & FIELDS_STATUS) != 0) {
+            this.isActive = source.isActive;
+            this.lastStartedAt = source.lastStartedAt;
+            this.nextFireAt = source.nextFireAt;
+            this.statusChangedAt = source.statusChangedAt;
+        }
+        if ((fields & FIELDS_DELETION) != 0) {
+            this.isDeleted = source.isDeleted;
+            this.deletionChangedAt = source.deletionChangedAt;
+        }
+    }
+
+    // Export into ContentValues for insert/update ops -------------------
+
+    /**
+     * Get {@link ContentValues} with given groups of fields, to apply the record to the local task. Taking the status
+     * from a peer resets the unseen flag, and taking a deletion uses the peer's time of deletion.
+     *
+     * @param fields bit mask of groups to export
+     * @return <code>ContentValues</code> with the fields of given groups and their change timestamps
+     */
+    public ContentValues toContentValues(int fields) {
+        ContentValues values = new ContentValues(16);
+        if ((fields & FIELDS_DESCRIPTION) != 0) {
+            values.put(NagboxContract.TasksTable.COL_TITLE, title);
+            values.put(NagboxContract.TasksTable.COL_INTERVAL, interval);
+            if (activeWindow != null) {
+                values.put(NagboxContract.TasksTable.COL_ACTIVE_FROM, activeWindow.activeFrom);
+                values.put(NagboxContract.TasksTable.COL_ACTIVE_TO, activeWindow.activeTo);
+                values.put(NagboxContract.TasksTable.COL_ACTIVE_DAYS, activeWindow.activeDays);
+            } else {
+                values.putNull(NagboxContract.TasksTable.COL_ACTIVE_FROM);
+                values.putNull(NagboxContract.TasksTable.COL_ACTIVE_TO);
+                values.putNull(NagboxContract.TasksTable.COL_ACTIVE_DAYS);
+            }
+            if (recurrence != null) {
+                values.put(NagboxContract.TasksTable.COL_ESCALATION_STEP, recurrence.escalationStep);
+                values.put(NagboxContract.TasksTable.COL_MIN_INTERVAL, recurrence.minInterval);
+                values.put(NagboxContract.TasksTable.COL_JITTER, recurrence.jitterPercent);
+            } else {
+                values.putNull(NagboxContract.TasksTable.COL_ESCALATION_STEP);
+                values.putNull(NagboxContract.TasksTable.COL_MIN_INTERVAL);
+                values.putNull(NagboxContract.TasksTable.COL_JITTER);
+            }
+            values.put(NagboxContract.TasksTable.COL_DESCRIPTION_CHANGED_AT, descriptionChangedAt);
+        }
+        if ((fields & FIELDS_STATUS) != 0) {
+            values.put(NagboxContract.TasksTable.COL_FLAGS, isActive ? Task.FLAG_ACTIVE : 0);
+            values.put(NagboxContract.TasksTable.COL_LAST_STARTED_AT, lastStartedAt);
+            values.put(NagboxContract.TasksTable.COL_NEXT_FIRE_AT, nextFireAt);
+            values.put(NagboxContract.TasksTable.COL_STATUS_CHANGED_AT, statusChangedAt);
+        }
+        if ((fields & FIELDS_DELETION) != 0) {
+            if (isDeleted) {
+                values.put(NagboxContract.TasksTable.COL_DELETED_AT, deletionChangedAt);
+            } else {
+                values.putNull(NagboxContract.TasksTable.COL_DELETED_AT);
+            }
+            values.put(NagboxContract.TasksTable.COL_DELETION_CHANGED_AT, deletionChangedAt);
+        }
+        return values;
+    }
+
+    // Tie breakers, only built when both sides changed a group at the same time, which is rare
+
+    private String getDescriptionKey() {
+        return title + '\u0000' + interval + '\u0000' + activeWindow + '\u0000' + recurrence;
+    }
+
+    private String getStatusKey() {
+        return (isActive ? "1" : "0") + lastStartedAt;
+    }
+
+    // Misc (equals/hashCode/toString etc) -------------------------------
+
+    @Override
+    public String toString() {
+        return "SyncRecord{" +
+                "syncId='" + syncId + '\'' +
+                ", title='" + title + '\'' +
+                ", interval=" + interval +
+                ", activeWindow=" + activeWindow +
+                ", recurrence=" + recurrence +
+                ", descriptionChangedAt=" + descriptionChangedAt +
+                ", isActive=" + isActive +
+                ", lastStartedAt=" + lastStartedAt +
+                ", nextFireAt=" + nextFireAt +
+                ", statusChangedAt=" + statusChangedAt +
+                ", isDeleted=" + isDeleted +
+                ", deletionChangedAt=" + deletionChangedAt +
+                '}';
+    }
+}
@@ -19,8 +19,11 @@ package com.actinarium.nagbox.model;
 import android.content.ContentValues;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.text.format.DateUtils;
 import com.actinarium.nagbox.database.NagboxContract;
 
+import java.util.TimeZone;
+
 /**
  * An entity object for a task
  *
@@ -69,6 +72,20 @@ public class Task implements Parcelable {
      * be continuous (i.e. no need to recalculate order when deleting items). Will be used for drag-to-reorder.
      */
     public int displayOrder;
+    /**
+     * When this task is allowed to nag, or <code>null</code> if it follows the global window
+     *
+     * @see ActiveWindow#getEffective(android.content.Context, Task)
+     */
+    public ActiveWindow activeWindow;
+    /**
+     * How this task recurs if not at a fixed {@link #interval}, or <code>null</code> if it does
+     */
+    public Recurrence recurrence;
+    /**
+     * ID of the {@link TaskGroup} this task belongs to, or {@link TaskGroup#NO_ID} if it's not in a group
+     */
+    public long groupId = TaskGroup.NO_ID;
 
 
     public Task() {}
@@ -86,6 +103,9 @@ public class Task implements Parcelable {
         this.nextFireAt = source.nextFireAt;
         this.lastStartedAt = source.lastStartedAt;
         this.displayOrder = source.displayOrder;
+        this.activeWindow = source.activeWindow;
+        this.recurrence = source.recurrence;
+        this.groupId = source.groupId;
     }
 
     // Getters/setters for convenient flag setting -----------------------
@@ -114,6 +134,27 @@ public class Task implements Parcelable {
         }
     }
 
+    /**
+     * Start or stop the task, same as when the user toggles it. A started task fires first after its interval, or as
+     * its recurrence dictates, but not in quiet hours. Either way the task is considered seen.
+     *
+     * @param isActive  whether to start or stop the task
+     * @param timestamp current time
+     * @param window    window the task is allowed to nag in
+     * @see ActiveWindow#getEffective(android.content.Context, Task)
+     */
+    public void setStatus(boolean isActive, long timestamp, ActiveWindow window) {
+        setIsActive(isActive);
+        setIsSeen(true);
+        if (isActive) {
+            lastStartedAt = timestamp;
+            final long firstFireAt = recurrence != null
+                    ? recurrence.getNextFireTime(interval, lastStartedAt, lastStartedAt, id)
+                    : lastStartedAt + interval * DateUtils.MINUTE_IN_MILLIS;
+            nextFireAt = window.getNextActiveTime(firstFireAt, TimeZone.getDefault());
+        }
+    }
+
     // Getters/setters for 2-way data binding ----------------------------
 
     public String getTitle() {
@@ -143,25 +184,35 @@ public class Task implements Parcelable {
      * @see #toContentValuesOnUpdate()
      */
     public ContentValues toContentValues() {
-        ContentValues values = new ContentValues(6);
+        ContentValues values = new ContentValues(13);
         values.put(NagboxContract.TasksTable.COL_TITLE, title);
         values.put(NagboxContract.TasksTable.COL_INTERVAL, interval);
         values.put(NagboxContract.TasksTable.COL_FLAGS, flags);
         values.put(NagboxContract.TasksTable.COL_NEXT_FIRE_AT, nextFireAt);
         values.put(NagboxContract.TasksTable.COL_LAST_STARTED_AT, lastStartedAt);
         values.put(NagboxContract.TasksTable.COL_DISPLAY_ORDER, displayOrder);
+        putActiveWindow(values);
+        putRecurrence(values);
+        if (groupId != TaskGroup.NO_ID) {
+            values.put(NagboxContract.TasksTable.COL_GROUP_ID, groupId);
+        } else {
+            values.putNull(NagboxContract.TasksTable.COL_GROUP_ID);
+        }
         return values;
     }
 
     /**
-     * Get {@link ContentValues} for this model to feed it to update description operations
+     * Get {@link ContentValues} for this model to feed it to update description operations. Group is not included, as
+     * tasks are moved between groups with a separate operation.
      *
-     * @return <code>ContentValues</code> with title and interval
+     * @return <code>ContentValues</code> with title, interval, active window, and recurrence
      */
     public ContentValues toContentValuesOnUpdate() {
-        ContentValues values = new ContentValues(2);
+        ContentValues values = new ContentValues(8);
         values.put(NagboxContract.TasksTable.COL_TITLE, title);
         values.put(NagboxContract.TasksTable.COL_INTERVAL, interval);
+        putActiveWindow(values);
+        putRecurrence(values);
         return values;
     }
 
@@ -179,6 +230,30 @@ public class Task implements Parcelable {
         return values;
     }
 
+    private void putActiveWindow(ContentValues values) {
+        if (activeWindow != null) {
+            values.put(NagboxContract.TasksTable.COL_ACTIVE_FROM, activeWindow.activeFrom);
+            values.put(NagboxContract.TasksTable.COL_ACTIVE_TO, activeWindow.activeTo);
+            values.put(NagboxContract.TasksTable.COL_ACTIVE_DAYS, activeWindow.activeDays);
+        } else {
+            values.putNull(NagboxContract.TasksTable.COL_ACTIVE_FROM);
+            values.putNull(NagboxContract.TasksTable.COL_ACTIVE_TO);
+            values.putNull(NagboxContract.TasksTable.COL_ACTIVE_DAYS);
+        }
+    }
+
+    private void putRecurrence(ContentValues values) {
+        if (recurrence != null) {
+            values.put(NagboxContract.TasksTable.COL_ESCALATION_STEP, recurrence.escalationStep);
+            values.put(NagboxContract.TasksTable.COL_MIN_INTERVAL, recurrence.minInterval);
+            values.put(NagboxContract.TasksTable.COL_JITTER, recurrence.jitterPercent);
+        } else {
+            values.putNull(NagboxContract.TasksTable.COL_ESCALATION_STEP);
+            values.putNull(NagboxContract.TasksTable.COL_MIN_INTERVAL);
+            values.putNull(NagboxContract.TasksTable.COL_JITTER);
+        }
+    }
+
     // Misc (equals/hashCode/toString etc) -------------------------------
 
     @Override
@@ -191,6 +266,9 @@ public class Task implements Parcelable {
                 ", nextFireAt=" + nextFireAt +
                 ", lastStartedAt=" + lastStartedAt +
                 ", displayOrder=" + displayOrder +
+                ", activeWindow=" + activeWindow +
+                ", recurrence=" + recurrence +
+                ", groupId=" + groupId +
                 '}';
     }
 
@@ -204,6 +282,13 @@ public class Task implements Parcelable {
         nextFireAt = in.readLong();
         lastStartedAt = in.readLong();
         displayOrder = in.readInt();
+        if (in.readByte() != 0) {
+            activeWindow = new ActiveWindow(in.readInt(), in.readInt(), in.readInt());
+        }
+        if (in.readByte() != 0) {
+            recurrence = new Recurrence(in.readInt(), in.readInt(), in.readInt());
+        }
+        groupId = in.readLong();
     }
 
     public static final Creator<Task> CREATOR = new Creator<Task>() {
@@ -232,5 +317,22 @@ public class Task implements Parcelable {
         parcel.writeLong(nextFireAt);
         parcel.writeLong(lastStartedAt);
         parcel.writeInt(displayOrder);
+        if (activeWindow != null) {
+            parcel.writeByte((byte) 1);
+            parcel.writeInt(activeWindow.activeFrom);
+            parcel.writeInt(activeWindow.activeTo);
+            parcel.writeInt(activeWindow.activeDays);
+        } else {
+            parcel.writeByte((byte) 0);
+        }
+        if (recurrence != null) {
+            parcel.writeByte((byte) 1);
+            parcel.writeInt(recurrence.escalationStep);
+            parcel.writeInt(recurrence.minInterval);
+            parcel.writeInt(recurrence.jitterPercent);
+        } else {
+            parcel.writeByte((byte) 0);
+        }
+        parcel.writeLong(groupId);
     }
 }
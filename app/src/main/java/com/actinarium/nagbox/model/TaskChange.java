@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.model;
+
+/**
+ * An entry of the task change log. Every change to a task row gets the next sequence number, so a consumer that
+ * remembers the last number it has seen can ask for what changed since then instead of re-reading all tasks. The log
+ * only tells which task changed and how; the consumer reads the task itself if it needs the data.
+ * <p/>
+ * The log is compacted so that only the latest change of each task is kept, which is all a consumer needs to catch up.
+ *
+ * @author Paul Danyliuk
+ */
+public class TaskChange {
+
+    /**
+     * The task was created
+     */
+    public static final int TYPE_CREATED = 0;
+    /**
+     * Anything about the task was changed, including it being restored after deletion
+     */
+    public static final int TYPE_UPDATED = 1;
+    /**
+     * The task was deleted, and must not be shown anymore
+     */
+    public static final int TYPE_DELETED = 2;
+    /**
+     * Not a change of any task, but a mark that changes before this one were dropped for tasks that don't exist
+     * anymore. A consumer that gets this mark hasn't caught up in a while and must re-read all tasks.
+     */
+    public static final int TYPE_TRUNCATED = 3;
+
+    public long seq;
+    /**
+     * ID of the changed task, or {@link Task#NO_ID} for {@link #TYPE_TRUNCATED}
+     */
+    public long taskId = Task.NO_ID;
+    public int type;
+
+    // Misc (equals/hashCode/toString etc) -------------------------------
+
+    @Override
+    public String toString() {
+        return "TaskChange{" +
+                "seq=" + seq +
+                ", taskId=" + taskId +
+                ", type=" + type +
+                '}';
+    }
+}
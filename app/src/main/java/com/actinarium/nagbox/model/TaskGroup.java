@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.model;
+
+import android.content.ContentValues;
+import android.os.Parcel;
+import android.os.Parcelable;
+import com.actinarium.nagbox.database.NagboxContract;
+
+/**
+ * An entity object for a group of tasks that are displayed together and can be started, stopped, or re-timed at once
+ *
+ * @author Paul Danyliuk
+ */
+public class TaskGroup implements Parcelable {
+
+    public static final int NO_ID = -1;
+
+    public long id = NO_ID;
+    public String title;
+
+    public TaskGroup() {}
+
+    /**
+     * Copy constructor
+     *
+     * @param source instance to copy fields from
+     */
+    public TaskGroup(TaskGroup source) {
+        this.id = source.id;
+        this.title = source.title;
+    }
+
+    // Getters/setters for 2-way data binding ----------------------------
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    // Export into ContentValues for insert/update ops -------------------
+
+    /**
+     * Get {@link ContentValues} for this model to feed it to create and update operations
+     *
+     * @return <code>ContentValues</code> with all fields but ID
+     */
+    public ContentValues toContentValues() {
+        ContentValues values = new ContentValues(1);
+        values.put(NagboxContract.TaskGroupsTable.COL_TITLE, title);
+        return values;
+    }
+
+    // Misc (equals/hashCode/toString etc) -------------------------------
+
+    @Override
+    public String toString() {
+        return "TaskGroup{" +
+                "id=" + id +
+                ", title='" + title + '\'' +
+                '}';
+    }
+
+    // Auto-generated Parcelable stuff -----------------------------------
+
+    protected TaskGroup(Parcel in) {
+        id = in.readLong();
+        title = in.readString();
+    }
+
+    public static final Creator<TaskGroup> CREATOR = new Creator<TaskGroup>() {
+        @Override
+        public TaskGroup createFromParcel(Parcel in) {
+            return new TaskGroup(in);
+        }
+
+        @Override
+        public TaskGroup[] newArray(int size) {
+            return new TaskGroup[size];
+        }
+    };
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel parcel, int i) {
+        parcel.writeLong(id);
+        parcel.writeString(title);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.model;
+
+import android.text.format.DateUtils;
+
+import java.util.TimeZone;
+
+/**
+ * Lifetime statistics of a task. These are rollups kept up to date by the same transactions that change task status,
+ * so reading them costs one row per task no matter how long the history is.
+ * <p/>
+ * Time spent in the current session of an active task, as well as whether its streak is still alive, depend on the
+ * current time, so these are finished on read.
+ *
+ * @author Paul Danyliuk
+ */
+public class TaskStats {
+
+    public long taskId = Task.NO_ID;
+    public String title;
+    public boolean isActive;
+    /**
+     * When the task was last started, only meaningful if {@link #isActive}
+     */
+    public long lastStartedAt;
+    public int nagCount;
+    /**
+     * Total time (msec) the task was active during the sessions that are already over
+     */
+    public long activeTime;
+    /**
+     * Number of times the user responded to a nag, i.e. dismissed, snoozed or stopped the task
+     */
+    public int dismissCount;
+    /**
+     * Total time (msec) from the first unanswered nag to the response, over all {@link #dismissCount} responses
+     */
+    public long dismissTime;
+    /**
+     * Number of consecutive days the task nagged on, up to {@link #lastNagDay}
+     */
+    public int currentStreak;
+    public int bestStreak;
+    /**
+     * Local day (see {@link #getLocalDay(long, TimeZone)}) of the last nag, or -1 if the task never nagged
+     */
+    public long lastNagDay = -1;
+
+    /**
+     * Get the number of the day since the epoch in given time zone, so that days change at local midnight
+     *
+     * @param timestamp time to get the day of
+     * @param timeZone  time zone to count days in
+     * @return day number
+     */
+    public static long getLocalDay(long timestamp, TimeZone timeZone) {
+        return (timestamp + timeZone.getOffset(timestamp)) / DateUtils.DAY_IN_MILLIS;
+    }
+
+    /**
+     * @param now current time
+     * @return total time the task was active, including the current session
+     */
+    public long getActiveTime(long now) {
+        return isActive && now > lastStartedAt ? activeTime + now - lastStartedAt : activeTime;
+    }
+
+    /**
+     * @return average time (msec) it took to respond to a nag, or -1 if there were no responses yet
+     */
+    public long getAverageDismissTime() {
+        return dismissCount != 0 ? dismissTime / dismissCount : -1;
+    }
+
+    /**
+     * @param today current local day
+     * @return current streak, or 0 if the task didn't nag yesterday or today, meaning the streak is broken
+     */
+    public int getCurrentStreak(long today) {
+        return lastNagDay >= today - 1 ? currentStreak : 0;
+    }
+
+    // Misc (equals/hashCode/toString etc) -------------------------------
+
+    @Override
+    public String toString() {
+        return "TaskStats{" +
+                "taskId=" + taskId +
+                ", title='" + title + '\'' +
+                ", isActive=" + isActive +
+                ", lastStartedAt=" + lastStartedAt +
+                ", nagCount=" + nagCount +
+                ", activeTime=" + activeTime +
+                ", dismissCount=" + dismissCount +
+                ", dismissTime=" + dismissTime +
+                ", currentStreak=" + currentStreak +
+                ", bestStreak=" + bestStreak +
+                ", lastNagDay=" + lastNagDay +
+                '}';
+    }
+}
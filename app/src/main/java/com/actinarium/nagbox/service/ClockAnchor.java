@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.provider.Settings;
+
+/**
+ * Remembers how wall clock time related to {@link android.os.SystemClock#elapsedRealtime()} when the alarm was last
+ * set, so that when the user or the network changes the clock we can tell by how much it jumped. Also remembers when
+ * that alarm is due, so that it can be moved incrementally without querying the closest task.
+ * <p/>
+ * Elapsed time restarts from zero on boot, so an anchor saved before a reboot is useless. On API 24+ the anchor is
+ * tagged with the boot count. Older devices can only tell that the device has rebooted while the uptime is still below
+ * the anchor's, so a clock change that comes after the uptime passes it, but before the schedule is recovered after
+ * boot, is measured against the stale anchor.
+ *
+ * @author Paul Danyliuk
+ */
+final class ClockAnchor {
+
+    private static final String PREFS_NAME = "clock_anchor";
+    private static final String KEY_WALL_TIME = "wall_time";
+    private static final String KEY_ELAPSED_TIME = "elapsed_time";
+    private static final String KEY_ALARM_TIME = "alarm_time";
+    private static final String KEY_BOOT_COUNT = "boot_count";
+
+    private static final int BOOT_COUNT_UNKNOWN = -1;
+
+    /**
+     * Returned by {@link #getAlarmTime(Context, long)} if it's not known whether the alarm is set and when
+     */
+    static final long ALARM_TIME_UNKNOWN = -1;
+
+    private ClockAnchor() {}
+
+    /**
+     * Remember current relation between wall clock and elapsed time, and when the alarm is set to fire
+     *
+     * @param context     context
+     * @param wallTime    current {@link System#currentTimeMillis()}
+     * @param elapsedTime current {@link android.os.SystemClock#elapsedRealtime()}
+     * @param alarmTime   wall clock time when the alarm fires, or 0 if it's cancelled
+     */
+    static void save(Context context, long wallTime, long elapsedTime, long alarmTime) {
+        getPreferences(context).edit()
+                .putLong(KEY_WALL_TIME, wallTime)
+                .putLong(KEY_ELAPSED_TIME, elapsedTime)
+                .putLong(KEY_ALARM_TIME, alarmTime)
+                .putInt(KEY_BOOT_COUNT, getBootCount(context))
+                .apply();
+    }
+
+    /**
+     * Get when the alarm saved with the anchor is due
+     *
+     * @param context     context
+     * @param elapsedTime current {@link android.os.SystemClock#elapsedRealtime()}
+     * @return wall clock time when the alarm fires, 0 if it's cancelled, or {@link #ALARM_TIME_UNKNOWN} if the anchor
+     * was never saved or the device has rebooted since (and thus the alarm is lost)
+     */
+    static long getAlarmTime(Context context, long elapsedTime) {
+        final SharedPreferences prefs = getPreferences(context);
+        if (!isValid(context, prefs, elapsedTime)) {
+            return ALARM_TIME_UNKNOWN;
+        }
+        return prefs.getLong(KEY_ALARM_TIME, ALARM_TIME_UNKNOWN);
+    }
+
+    /**
+     * Get by how much the wall clock has jumped since the anchor was saved
+     *
+     * @param context     context
+     * @param wallTime    current {@link System#currentTimeMillis()}
+     * @param elapsedTime current {@link android.os.SystemClock#elapsedRealtime()}
+     * @return clock jump in milliseconds (positive if the clock was moved forward), or 0 if it cannot be determined,
+     * e.g. if the anchor was never saved or the device has rebooted since
+     */
+    static long getClockJump(Context context, long wallTime, long elapsedTime) {
+        final SharedPreferences prefs = getPreferences(context);
+        if (!isValid(context, prefs, elapsedTime)) {
+            return 0;
+        }
+        final long anchorElapsedTime = prefs.getLong(KEY_ELAPSED_TIME, 0);
+        final long anchorWallTime = prefs.getLong(KEY_WALL_TIME, 0);
+        return (wallTime - elapsedTime) - (anchorWallTime - anchorElapsedTime);
+    }
+
+    /**
+     * @return whether the anchor was saved since the last boot
+     */
+    private static boolean isValid(Context context, SharedPreferences prefs, long elapsedTime) {
+        final long anchorElapsedTime = prefs.getLong(KEY_ELAPSED_TIME, -1);
+        if (anchorElapsedTime < 0 || anchorElapsedTime > elapsedTime) {
+            return false;
+        }
+        final int bootCount = getBootCount(context);
+        return bootCount == BOOT_COUNT_UNKNOWN || prefs.getInt(KEY_BOOT_COUNT, BOOT_COUNT_UNKNOWN) == bootCount;
+    }
+
+    private static int getBootCount(Context context) {
+        if (Build.VERSION.SDK_INT < 24) {
+            return BOOT_COUNT_UNKNOWN;
+        }
+        return Settings.Global.getInt(context.getContentResolver(), Settings.Global.BOOT_COUNT, BOOT_COUNT_UNKNOWN);
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.service;
+
+/**
+ * A tiny HDR-style histogram for durations with fixed memory footprint and no allocations on record. Values below 8
+ * get their own buckets, and above that each power of two is split into 8 linear sub-buckets, so any reported
+ * percentile is off by at most 12.5%. Good enough to tell 2 ms from 20 ms, and it never grows.
+ * <p/>
+ * Not thread-safe &mdash; synchronize externally.
+ *
+ * @author Paul Danyliuk
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mTotalCount;
+    private long mTotalSum;
+    private long mMaxValue;
+
+    /**
+     * Record a value. Negative values (e.g. from clock weirdness) are recorded as zeros.
+     *
+     * @param value value to record, in whatever units the caller prefers (microseconds are fine)
+     */
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mCounts[getBucketIndex(value)]++;
+        mTotalCount++;
+        mTotalSum += value;
+        if (value > mMaxValue) {
+            mMaxValue = value;
+        }
+    }
+
+    /**
+     * Forget all recorded values
+     */
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] = 0;
+        }
+        mTotalCount = 0;
+        mTotalSum = 0;
+        mMaxValue = 0;
+    }
+
+    long getTotalCount() {
+        return mTotalCount;
+    }
+
+    long getMaxValue() {
+        return mMaxValue;
+    }
+
+    long getMean() {
+        return mTotalCount == 0 ? 0 : mTotalSum / mTotalCount;
+    }
+
+    /**
+     * Get the value at given percentile, i.e. the highest value that falls into the same bucket as the value below
+     * which given percentage of recorded values lie.
+     *
+     * @param percentile percentile, 0..100
+     * @return value at this percentile, or 0 if nothing was recorded
+     */
+    long getValueAtPercentile(double percentile) {
+        if (mTotalCount == 0) {
+            return 0;
+        }
+        long countAtPercentile = (long) Math.ceil(percentile / 100.0 * mTotalCount);
+        if (countAtPercentile < 1) {
+            countAtPercentile = 1;
+        }
+        long runningCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            runningCount += mCounts[i];
+            if (runningCount >= countAtPercentile) {
+                return Math.min(getBucketUpperBound(i), mMaxValue);
+            }
+        }
+        return mMaxValue;
+    }
+
+    private static int getBucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long getBucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        final int subBucket = index % SUB_BUCKET_COUNT;
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -18,6 +18,7 @@ package com.actinarium.nagbox.service;
 
 import android.content.Context;
 import android.content.Intent;
+import android.os.SystemClock;
 import android.support.v4.content.WakefulBroadcastReceiver;
 
 public class NagAlarmReceiver extends WakefulBroadcastReceiver {
@@ -26,8 +27,22 @@ public class NagAlarmReceiver extends WakefulBroadcastReceiver {
 
     @Override
     public void onReceive(Context context, Intent receivedIntent) {
+        // After boot or app update our alarm is gone, so the schedule must be recovered rather than just handled
+        final String action = receivedIntent.getAction();
+        // And if the user or the network changes the clock, schedules must be shifted accordingly
+        final String delegateAction;
+        if (Intent.ACTION_BOOT_COMPLETED.equals(action) || Intent.ACTION_MY_PACKAGE_REPLACED.equals(action)) {
+            delegateAction = NagboxService.ACTION_RECOVER_SCHEDULE;
+        } else if (Intent.ACTION_TIME_CHANGED.equals(action) || Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+            delegateAction = NagboxService.ACTION_ON_CLOCK_CHANGED;
+        } else {
+            delegateAction = NagboxService.ACTION_ON_ALARM_FIRED;
+        }
+
         Intent delegateIntent = new Intent(context, NagboxService.class);
-        delegateIntent.setAction(NagboxService.ACTION_ON_ALARM_FIRED);
+        delegateIntent.setAction(delegateAction);
+        // Stamp the time to account for how long the device is kept awake
+        delegateIntent.putExtra(NagboxService.EXTRA_WAKE_LOCK_ACQUIRED_AT, SystemClock.elapsedRealtime());
         // Acquire a lock for this service so it completes before the device goes back to sleep
         WakefulBroadcastReceiver.startWakefulService(context, delegateIntent);
     }
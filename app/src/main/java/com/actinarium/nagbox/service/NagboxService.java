@@ -24,17 +24,35 @@ import android.content.Context;
 import android.content.Intent;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
+import android.os.SystemClock;
+import android.support.v4.content.LocalBroadcastManager;
 import android.support.v4.content.WakefulBroadcastReceiver;
 import android.text.format.DateUtils;
 import android.util.Log;
+import com.actinarium.nagbox.R;
+import com.actinarium.nagbox.common.Clock;
 import com.actinarium.nagbox.database.NagboxContract;
+import com.actinarium.nagbox.database.NagboxContract.TaskGroupsTable;
 import com.actinarium.nagbox.database.NagboxContract.TasksTable;
 import com.actinarium.nagbox.database.NagboxDbHelper;
 import com.actinarium.nagbox.database.NagboxDbOps;
+import com.actinarium.nagbox.model.ActiveWindow;
+import com.actinarium.nagbox.model.HistoryRetention;
+import com.actinarium.nagbox.model.NagEvent;
+import com.actinarium.nagbox.model.SyncConfig;
 import com.actinarium.nagbox.model.Task;
+import com.actinarium.nagbox.model.TaskGroup;
+import com.actinarium.nagbox.sync.DbSyncStore;
+import com.actinarium.nagbox.sync.HttpSyncTransport;
+import com.actinarium.nagbox.sync.SyncEngine;
 
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.TimeZone;
 
 /**
  * An intent service that handles task operations and alarm management.
@@ -50,22 +68,84 @@ public class NagboxService extends IntentService {
     public static final String ACTION_UPDATE_TASK_STATUS = "com.actinarium.nagbox.intent.action.UPDATE_TASK_STATUS";
     public static final String ACTION_DELETE_TASK = "com.actinarium.nagbox.intent.action.DELETE_TASK";
     public static final String ACTION_RESTORE_TASK = "com.actinarium.nagbox.intent.action.RESTORE_TASK";
+    public static final String ACTION_MOVE_TASK_TO_GROUP = "com.actinarium.nagbox.intent.action.MOVE_TASK_TO_GROUP";
+    public static final String ACTION_CREATE_TASK_GROUP = "com.actinarium.nagbox.intent.action.CREATE_TASK_GROUP";
+    public static final String ACTION_UPDATE_TASK_GROUP = "com.actinarium.nagbox.intent.action.UPDATE_TASK_GROUP";
+    public static final String ACTION_UPDATE_TASK_GROUP_STATUS = "com.actinarium.nagbox.intent.action.UPDATE_TASK_GROUP_STATUS";
+    public static final String ACTION_DELETE_TASK_GROUP = "com.actinarium.nagbox.intent.action.DELETE_TASK_GROUP";
+    public static final String ACTION_SYNC = "com.actinarium.nagbox.intent.action.SYNC";
+    public static final String ACTION_ON_TASKS_CHANGED = "com.actinarium.nagbox.intent.action.ON_TASKS_CHANGED";
 
     // These can only be triggered within the system (have no corresponding public ways to call them)
+    /**
+     * Local broadcast sent once a status change requested with {@link #updateTaskStatus(Context, Task)} is processed.
+     * Carries {@link #EXTRA_RESULT_TASK_ID} and {@link #EXTRA_RESULT_IS_SUCCESS}.
+     */
+    public static final String BROADCAST_TASK_STATUS_RESULT = "com.actinarium.nagbox.intent.action.TASK_STATUS_RESULT";
+    public static final String EXTRA_RESULT_TASK_ID = "com.actinarium.nagbox.intent.extra.RESULT_TASK_ID";
+    public static final String EXTRA_RESULT_IS_SUCCESS = "com.actinarium.nagbox.intent.extra.RESULT_IS_SUCCESS";
+
     static final String ACTION_ON_ALARM_FIRED = "com.actinarium.nagbox.intent.action.ON_ALARM_FIRED";
+    static final String ACTION_RECOVER_SCHEDULE = "com.actinarium.nagbox.intent.action.RECOVER_SCHEDULE";
+    static final String ACTION_ON_CLOCK_CHANGED = "com.actinarium.nagbox.intent.action.ON_CLOCK_CHANGED";
     static final String ACTION_ON_NOTIFICATION_DISMISSED = "com.actinarium.nagbox.intent.action.ON_NOTIFICATION_DISMISSED";
     static final String ACTION_ON_NOTIFICATION_ACTION_STOP_TASK = "com.actinarium.nagbox.intent.action.ON_NOTIFICATION_ACTION_STOP_TASK";
+    static final String ACTION_ON_NOTIFICATION_ACTION_SNOOZE_TASK = "com.actinarium.nagbox.intent.action.ON_NOTIFICATION_ACTION_SNOOZE_TASK";
+    static final String ACTION_PURGE_DELETED_TASKS = "com.actinarium.nagbox.intent.action.PURGE_DELETED_TASKS";
+    static final String ACTION_COMPACT_HISTORY = "com.actinarium.nagbox.intent.action.COMPACT_HISTORY";
 
     static final String EXTRA_TASK = "com.actinarium.nagbox.intent.extra.TASK";
     static final String EXTRA_TASK_ID = "com.actinarium.nagbox.intent.extra.TASK_ID";
+    static final String EXTRA_TASK_GROUP = "com.actinarium.nagbox.intent.extra.TASK_GROUP";
+    static final String EXTRA_TASK_GROUP_ID = "com.actinarium.nagbox.intent.extra.TASK_GROUP_ID";
+    static final String EXTRA_INTERVAL = "com.actinarium.nagbox.intent.extra.INTERVAL";
+    static final String EXTRA_IS_ACTIVE = "com.actinarium.nagbox.intent.extra.IS_ACTIVE";
     static final String EXTRA_CANCEL_NOTIFICATION_ID = "com.actinarium.nagbox.intent.extra.EXTRA_CANCEL_NOTIFICATION_ID";
+    static final String EXTRA_SNOOZE_DURATION = "com.actinarium.nagbox.intent.extra.SNOOZE_DURATION";
+    static final String EXTRA_WAKE_LOCK_ACQUIRED_AT = "com.actinarium.nagbox.intent.extra.WAKE_LOCK_ACQUIRED_AT";
 
     private static final long ALARM_TOLERANCE = 5 * DateUtils.SECOND_IN_MILLIS;
+    /**
+     * After boot or app update, reminders for overdue tasks are postponed by this much to let the system settle
+     */
+    private static final long RECOVERY_REMINDER_DELAY = DateUtils.MINUTE_IN_MILLIS;
+    /**
+     * Wall clock corrections smaller than this are not worth rewriting the schedules
+     */
+    private static final long CLOCK_JUMP_THRESHOLD = DateUtils.SECOND_IN_MILLIS;
+    /**
+     * Deleted tasks can be restored for this long, then they are purged
+     */
+    private static final long DELETED_TASK_TTL = DateUtils.DAY_IN_MILLIS;
+    /**
+     * Deleted tasks are purged in transactions of at most this many tasks, so as not to hold the database for long
+     */
+    private static final int PURGE_BATCH_SIZE = 100;
 
     /**
      * Our writable database. Since we need it literally everywhere, it makes sense to pull it only once in onCreate().
      */
     private SQLiteDatabase mDatabase;
+    /**
+     * Source of time for all scheduling decisions. Metrics are still measured with the real clocks.
+     */
+    private Clock mClock;
+
+    private final ServiceMetrics mMetrics = ServiceMetrics.getInstance();
+    // Per-intent metrics scratch, reset before handling each intent
+    private long mNotificationNanos;
+    private long mAlarmNanos;
+    private int mRowsWritten;
+
+    /**
+     * History events of the intent being handled, which are written along with the next committed transaction
+     */
+    private final List<NagEvent> mPendingEvents = new ArrayList<>();
+
+    /**
+     * Wake lock hold time (ms) above which it's reported as an outlier
+     */
+    private long mWakeLockBudget;
 
     /**
      * Create a new unstarted task. Doesn't trigger rescheduling alarms.
@@ -97,7 +177,8 @@ public class NagboxService extends IntentService {
 
     /**
      * Update task status (flags). Use this to start or stop the task. {@link Task#id} must be set. Will result in
-     * rescheduling the alarm to closer time if needed.
+     * rescheduling the alarm to closer time if needed. Whether the change was saved is reported with a local
+     * {@link #BROADCAST_TASK_STATUS_RESULT} broadcast.
      *
      * @param context context
      * @param task    task to update its flags
@@ -110,7 +191,8 @@ public class NagboxService extends IntentService {
     }
 
     /**
-     * Delete the task entirely. Will trigger rescheduling the alarm to later time if needed, or cancelling it.
+     * Delete the task. Will trigger rescheduling the alarm to later time if needed, or cancelling it. The task can be
+     * brought back with {@link #restoreTask(Context, long)} for some time.
      *
      * @param context context
      * @param taskId  ID of the task to delete
@@ -123,19 +205,127 @@ public class NagboxService extends IntentService {
     }
 
     /**
-     * Same as {@link #createTask(Context, Task)}, but will insert the task with its old ID and trigger rescheduling the
-     * alarm.
+     * Undo {@link #deleteTask(Context, long)}: bring the task back as it was, and trigger rescheduling the alarm.
      *
      * @param context context
-     * @param task    task to restore
+     * @param taskId  ID of the task to restore
      */
-    public static void restoreTask(Context context, Task task) {
+    public static void restoreTask(Context context, long taskId) {
         Intent intent = new Intent(context, NagboxService.class);
         intent.setAction(ACTION_RESTORE_TASK);
-        intent.putExtra(EXTRA_TASK, task);
+        intent.putExtra(EXTRA_TASK_ID, taskId);
+        context.startService(intent);
+    }
+
+    /**
+     * Move the task into a group or out of it. Doesn't affect task status.
+     *
+     * @param context context
+     * @param taskId  ID of the task to move
+     * @param groupId ID of the group to move the task to, or {@link TaskGroup#NO_ID} to ungroup the task
+     */
+    public static void moveTaskToGroup(Context context, long taskId, long groupId) {
+        Intent intent = new Intent(context, NagboxService.class);
+        intent.setAction(ACTION_MOVE_TASK_TO_GROUP);
+        intent.putExtra(EXTRA_TASK_ID, taskId);
+        intent.putExtra(EXTRA_TASK_GROUP_ID, groupId);
         context.startService(intent);
     }
 
+    /**
+     * Create a new task group, optionally moving a task into it right away.
+     *
+     * @param context    context
+     * @param group      group to create
+     * @param taskToMove ID of the task to move into the new group, or {@link Task#NO_ID} if none
+     */
+    public static void createTaskGroup(Context context, TaskGroup group, long taskToMove) {
+        Intent intent = new Intent(context, NagboxService.class);
+        intent.setAction(ACTION_CREATE_TASK_GROUP);
+        intent.putExtra(EXTRA_TASK_GROUP, group);
+        intent.putExtra(EXTRA_TASK_ID, taskToMove);
+        context.startService(intent);
+    }
+
+    /**
+     * Update task group description, and optionally set the same interval for all of its tasks. Active tasks are
+     * rescheduled accordingly. {@link TaskGroup#id} must be set.
+     *
+     * @param context  context
+     * @param group    group to update
+     * @param interval interval (minutes) to set for all tasks in the group, or 0 to keep their intervals
+     */
+    public static void updateTaskGroup(Context context, TaskGroup group, int interval) {
+        Intent intent = new Intent(context, NagboxService.class);
+        intent.setAction(ACTION_UPDATE_TASK_GROUP);
+        intent.putExtra(EXTRA_TASK_GROUP, group);
+        intent.putExtra(EXTRA_INTERVAL, interval);
+        context.startService(intent);
+    }
+
+    /**
+     * Start or stop all tasks in the group at once. Will result in rescheduling the alarm if needed.
+     *
+     * @param context  context
+     * @param groupId  ID of the group whose tasks to start or stop
+     * @param isActive <code>true</code> to start the tasks, <code>false</code> to stop them
+     */
+    public static void updateTaskGroupStatus(Context context, long groupId, boolean isActive) {
+        Intent intent = new Intent(context, NagboxService.class);
+        intent.setAction(ACTION_UPDATE_TASK_GROUP_STATUS);
+        intent.putExtra(EXTRA_TASK_GROUP_ID, groupId);
+        intent.putExtra(EXTRA_IS_ACTIVE, isActive);
+        context.startService(intent);
+    }
+
+    /**
+     * Delete the task group. Its tasks are kept as ungrouped ones.
+     *
+     * @param context context
+     * @param groupId ID of the group to delete
+     */
+    public static void deleteTaskGroup(Context context, long groupId) {
+        Intent intent = new Intent(context, NagboxService.class);
+        intent.setAction(ACTION_DELETE_TASK_GROUP);
+        intent.putExtra(EXTRA_TASK_GROUP_ID, groupId);
+        context.startService(intent);
+    }
+
+    /**
+     * Exchange task changes with the sync server, if sync is on. Will result in rescheduling the alarm if anything
+     * changed.
+     *
+     * @param context context
+     * @see SyncConfig
+     */
+    public static void sync(Context context) {
+        Intent intent = new Intent(context, NagboxService.class);
+        intent.setAction(ACTION_SYNC);
+        context.startService(intent);
+    }
+
+    /**
+     * Let the service know that tasks were changed outside of it (e.g. through the content provider), so that it
+     * reschedules the alarm and maintenance jobs. Call once per batch of changes, not per task.
+     *
+     * @param context context
+     */
+    public static void onTasksChanged(Context context) {
+        Intent intent = new Intent(context, NagboxService.class);
+        intent.setAction(ACTION_ON_TASKS_CHANGED);
+        context.startService(intent);
+    }
+
+    /**
+     * Print the service metrics. The service itself can only be dumped while it's running, which it mostly isn't, so
+     * the content provider, which lives as long as the process, does it too.
+     *
+     * @param writer writer to print to
+     */
+    public static void dumpMetrics(PrintWriter writer) {
+        ServiceMetrics.getInstance().dump(writer);
+    }
+
 
     public NagboxService() {
         super(TAG);
@@ -145,17 +335,39 @@ public class NagboxService extends IntentService {
     public void onCreate() {
         super.onCreate();
         mDatabase = NagboxDbHelper.getInstance(this).getWritableDatabase();
+        mClock = Clock.getInstance();
+        mWakeLockBudget = getResources().getInteger(R.integer.wake_lock_budget_ms);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        mMetrics.onIntentQueued();
+        return super.onStartCommand(intent, flags, startId);
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        dumpMetrics(writer);
     }
 
     @Override
     protected void onHandleIntent(Intent intent) {
         if (intent == null) {
+            mMetrics.onIntentSkipped();
             return;
         }
 
+        final long startedAt = System.nanoTime();
+        final long startedAtUptime = SystemClock.elapsedRealtime();
+        mNotificationNanos = 0;
+        mAlarmNanos = 0;
+        mRowsWritten = 0;
+
         // I know that only either of those is needed, but for the sake of nice code I'm pulling these here
         final Task task = intent.getParcelableExtra(EXTRA_TASK);
         final long id = intent.getLongExtra(EXTRA_TASK_ID, Task.NO_ID);
+        final TaskGroup group = intent.getParcelableExtra(EXTRA_TASK_GROUP);
+        final long groupId = intent.getLongExtra(EXTRA_TASK_GROUP_ID, TaskGroup.NO_ID);
         switch (intent.getAction()) {
             case ACTION_UPDATE_TASK_STATUS:
                 handleUpdateTaskStatus(task);
@@ -163,6 +375,12 @@ public class NagboxService extends IntentService {
             case ACTION_ON_ALARM_FIRED:
                 handleOnAlarmFired();
                 break;
+            case ACTION_RECOVER_SCHEDULE:
+                handleRecoverSchedule();
+                break;
+            case ACTION_ON_CLOCK_CHANGED:
+                handleOnClockChanged();
+                break;
             case ACTION_ON_NOTIFICATION_DISMISSED:
                 handleOnNotificationDismissed(id);
                 break;
@@ -170,6 +388,13 @@ public class NagboxService extends IntentService {
                 int notificationIdToCancel = intent.getIntExtra(EXTRA_CANCEL_NOTIFICATION_ID, -1);
                 handleStopTaskById(id, notificationIdToCancel);
                 break;
+            case ACTION_ON_NOTIFICATION_ACTION_SNOOZE_TASK:
+                handleSnoozeTaskById(
+                        id,
+                        intent.getIntExtra(EXTRA_CANCEL_NOTIFICATION_ID, -1),
+                        intent.getLongExtra(EXTRA_SNOOZE_DURATION, 0)
+                );
+                break;
             case ACTION_CREATE_TASK:
                 handleCreateTask(task);
                 break;
@@ -180,12 +405,89 @@ public class NagboxService extends IntentService {
                 handleDeleteTask(id);
                 break;
             case ACTION_RESTORE_TASK:
-                handleRestoreTask(task);
+                handleRestoreTask(id);
+                break;
+            case ACTION_MOVE_TASK_TO_GROUP:
+                handleMoveTaskToGroup(id, groupId);
+                break;
+            case ACTION_CREATE_TASK_GROUP:
+                handleCreateTaskGroup(group, id);
+                break;
+            case ACTION_UPDATE_TASK_GROUP:
+                handleUpdateTaskGroup(group, intent.getIntExtra(EXTRA_INTERVAL, 0));
+                break;
+            case ACTION_UPDATE_TASK_GROUP_STATUS:
+                handleUpdateTaskGroupStatus(groupId, intent.getBooleanExtra(EXTRA_IS_ACTIVE, false));
+                break;
+            case ACTION_DELETE_TASK_GROUP:
+                handleDeleteTaskGroup(groupId);
+                break;
+            case ACTION_PURGE_DELETED_TASKS:
+                handlePurgeDeletedTasks();
+                break;
+            case ACTION_COMPACT_HISTORY:
+                handleCompactHistory();
+                break;
+            case ACTION_SYNC:
+                handleSync();
+                break;
+            case ACTION_ON_TASKS_CHANGED:
+                handleOnTasksChanged();
                 break;
         }
 
+        mMetrics.onIntentHandled(
+                intent.getAction(), System.nanoTime() - startedAt, mNotificationNanos, mAlarmNanos, mRowsWritten
+        );
+
+        final long handledAtUptime = SystemClock.elapsedRealtime();
+
         // Release the wake lock, if there was any.
-        WakefulBroadcastReceiver.completeWakefulIntent(intent);
+        final boolean hadWakeLock = WakefulBroadcastReceiver.completeWakefulIntent(intent);
+        final long wakeLockAcquiredAt = intent.getLongExtra(EXTRA_WAKE_LOCK_ACQUIRED_AT, 0);
+        if (hadWakeLock && wakeLockAcquiredAt != 0) {
+            accountWakeLock(intent.getAction(), wakeLockAcquiredAt, startedAtUptime, handledAtUptime);
+        }
+    }
+
+    /**
+     * Record how long the device was kept awake for this intent and where the time went. Complain in the log if it
+     * took longer than the budget.
+     *
+     * @param action     intent action
+     * @param acquiredAt when the wake lock was acquired in the receiver, in {@link SystemClock#elapsedRealtime()}
+     * @param startedAt  when the service started handling the intent
+     * @param handledAt  when the service finished handling the intent
+     */
+    private void accountWakeLock(String action, long acquiredAt, long startedAt, long handledAt) {
+        final long queueDelay = startedAt - acquiredAt;
+        final long handlerTime = handledAt - startedAt;
+        final long holdTime = SystemClock.elapsedRealtime() - acquiredAt;
+        final boolean isOverBudget = holdTime > mWakeLockBudget;
+        if (isOverBudget) {
+            Log.w(TAG, "Wake lock for " + action + " held for " + holdTime + "ms, over the budget of "
+                    + mWakeLockBudget + "ms (queue delay " + queueDelay + "ms, handler " + handlerTime + "ms)");
+        }
+        mMetrics.onWakeLockReleased(queueDelay, handlerTime, holdTime, isOverBudget);
+    }
+
+    /**
+     * Commit the transaction and count the rows it has written. Pending history events are appended to the
+     * transaction right before, so that they don't need a transaction of their own. If the transaction fails, they are
+     * dropped, as what they describe didn't happen.
+     *
+     * @param transaction transaction to commit
+     * @return whether the transaction was performed successfully
+     */
+    private boolean commit(NagboxDbOps.Transaction transaction) {
+        transaction.appendNagEvents(mPendingEvents);
+        mPendingEvents.clear();
+        final int rowsAffected = transaction.getRowsAffected();
+        boolean isSuccess = transaction.commit();
+        if (isSuccess) {
+            mRowsWritten += rowsAffected;
+        }
+        return isSuccess;
     }
 
 
@@ -196,9 +498,9 @@ public class NagboxService extends IntentService {
         task.displayOrder = maxOrder + 1;
 
         // In the end of the method we put everything into the DB using DbOps.Transaction
-        boolean isSuccess = NagboxDbOps.startTransaction(mDatabase)
+        boolean isSuccess = commit(NagboxDbOps.startTransaction(mDatabase)
                 .createTask(task)
-                .commit();
+        );
 
         // Process transaction result.
         // If successful, you still need to notify the cursor so that any loaders that listen to this data would reload
@@ -215,9 +517,9 @@ public class NagboxService extends IntentService {
             return;
         }
 
-        boolean isSuccess = NagboxDbOps.startTransaction(mDatabase)
-                .updateTask(task)
-                .commit();
+        boolean isSuccess = commit(NagboxDbOps.startTransaction(mDatabase)
+                .updateTask(task, mClock.currentTimeMillis())
+        );
 
         if (isSuccess) {
             // Even though our content provider doesn't know about a single item URI yet, won't hurt to do it right
@@ -230,24 +532,43 @@ public class NagboxService extends IntentService {
     private void handleUpdateTaskStatus(Task task) {
         if (task.id < 0) {
             Log.e(TAG, "Was trying to update flags of the task with invalid/unset ID=" + task.id);
+            sendTaskStatusResult(task.id, false);
             return;
         }
 
-        boolean isSuccess = NagboxDbOps.startTransaction(mDatabase)
-                .updateTaskStatus(task)
-                .commit();
+        final long now = mClock.currentTimeMillis();
+        if (!task.isActive()) {
+            mPendingEvents.add(new NagEvent(task.id, NagEvent.TYPE_STOPPED, now));
+        }
+        boolean isSuccess = commit(NagboxDbOps.startTransaction(mDatabase)
+                .updateTaskStatus(task, now)
+        );
 
         if (isSuccess) {
             getContentResolver().notifyChange(TasksTable.getUriForItem(task.id), null);
             rescheduleAlarm();
+            if (task.isActive()) {
+                scheduleDailyJob(ACTION_COMPACT_HISTORY);
+            }
         } else {
             Log.e(TAG, "Couldn't update status of task " + task);
         }
+        // The UI shows the new status before it's saved, so it must learn whether to keep it or roll back
+        sendTaskStatusResult(task.id, isSuccess);
+    }
+
+    private void sendTaskStatusResult(long taskId, boolean isSuccess) {
+        Intent result = new Intent(BROADCAST_TASK_STATUS_RESULT);
+        result.putExtra(EXTRA_RESULT_TASK_ID, taskId);
+        result.putExtra(EXTRA_RESULT_IS_SUCCESS, isSuccess);
+        LocalBroadcastManager.getInstance(this).sendBroadcast(result);
     }
 
     private void handleStopTaskById(long taskId, int notificationIdToCancel) {
         if (notificationIdToCancel != -1) {
+            final long notifyStartedAt = System.nanoTime();
             NotificationHelper.cancelNotification(this, notificationIdToCancel);
+            mNotificationNanos += System.nanoTime() - notifyStartedAt;
         }
 
         // Request partial task model - only status columns (id, flags, next timestamp) are needed
@@ -263,115 +584,455 @@ public class NagboxService extends IntentService {
         handleUpdateTaskStatus(task);
     }
 
+    /**
+     * Defer the next nag of a single task. Costs one row read and one row write, and the alarm is only moved if the
+     * snoozed task is now the closest one, so there's no need to look through other tasks. If the snooze would end in
+     * quiet hours, the task is deferred further, until its active window opens.
+     *
+     * @param taskId                 ID of the task to snooze
+     * @param notificationIdToCancel ID of the notification the action came from, or -1 if none
+     * @param duration               how long (ms) to snooze the task for
+     */
+    private void handleSnoozeTaskById(long taskId, int notificationIdToCancel, long duration) {
+        if (notificationIdToCancel != -1) {
+            final long notifyStartedAt = System.nanoTime();
+            NotificationHelper.cancelNotification(this, notificationIdToCancel);
+            mNotificationNanos += System.nanoTime() - notifyStartedAt;
+        }
+
+        // The full model is needed for the task's own active window, if it has one
+        Task task = NagboxDbOps.getTaskStatusById(mDatabase, taskId, NagboxContract.TASK_FULL_PROJECTION);
+        if (task == null || !task.isActive()) {
+            // The task was stopped or deleted before the user hit snooze. Nothing to update
+            return;
+        }
+
+        final long now = mClock.currentTimeMillis();
+        final long snoozedUntil = ActiveWindow.getEffective(this, task)
+                .getNextActiveTime(now + duration, TimeZone.getDefault());
+        NagboxDbOps.Transaction transaction = NagboxDbOps.startTransaction(mDatabase)
+                .snoozeTask(taskId, now, snoozedUntil);
+        final boolean isSnoozed = transaction.getRowsAffected() != 0;
+        if (isSnoozed) {
+            mPendingEvents.add(new NagEvent(taskId, NagEvent.TYPE_SNOOZED, now));
+        }
+        boolean isSuccess = commit(transaction);
+
+        if (!isSuccess) {
+            Log.e(TAG, "Couldn't snooze task with ID " + taskId);
+            return;
+        } else if (!isSnoozed) {
+            // The task was stopped or deleted before the user hit snooze. Nothing to update
+            return;
+        }
+        getContentResolver().notifyChange(TasksTable.getUriForItem(taskId), null);
+
+        // If the alarm was set for this task's old fire time, it will just fire empty and reschedule itself
+        final long alarmTime = ClockAnchor.getAlarmTime(this, mClock.elapsedRealtime());
+        if (alarmTime == ClockAnchor.ALARM_TIME_UNKNOWN) {
+            rescheduleAlarm();
+        } else if (alarmTime == 0 || snoozedUntil < alarmTime) {
+            setAlarm(snoozedUntil);
+        }
+    }
+
     private void handleDeleteTask(long taskId) {
         if (taskId < 0) {
             Log.e(TAG, "Was trying to delete task with invalid ID=" + taskId);
             return;
         }
 
-        boolean isSuccess = NagboxDbOps.startTransaction(mDatabase)
-                .deleteTask(taskId)
-                .commit();
+        boolean isSuccess = commit(NagboxDbOps.startTransaction(mDatabase)
+                .deleteTask(taskId, mClock.currentTimeMillis())
+        );
 
         if (isSuccess) {
             getContentResolver().notifyChange(TasksTable.getUriForItem(taskId), null);
             rescheduleAlarm();
+            scheduleDailyJob(ACTION_PURGE_DELETED_TASKS);
         } else {
             Log.e(TAG, "Couldn't delete task with ID " + taskId);
         }
     }
 
-    private void handleRestoreTask(Task task) {
-        // Restoring is the same as creating, and our task already has an order field set correctly, and an ID to notify
-        boolean isSuccess = NagboxDbOps.startTransaction(mDatabase)
-                .createTask(task)
-                .commit();
+    private void handleRestoreTask(long taskId) {
+        // The task is still there, only marked as deleted, so it comes back with its ID, order and status intact
+        boolean isSuccess = commit(NagboxDbOps.startTransaction(mDatabase)
+                .restoreTask(taskId, mClock.currentTimeMillis())
+        );
 
         if (isSuccess) {
-            getContentResolver().notifyChange(TasksTable.getUriForItem(task.id), null);
+            getContentResolver().notifyChange(TasksTable.getUriForItem(taskId), null);
+            rescheduleAlarm();
+        } else {
+            Log.e(TAG, "Couldn't restore task with ID " + taskId);
+        }
+    }
+
+    private void handlePurgeDeletedTasks() {
+        final long deletedBefore = mClock.currentTimeMillis() - DELETED_TASK_TTL;
+        final boolean isSyncEnabled = SyncConfig.get(this) != null;
+        int purged;
+        do {
+            NagboxDbOps.Transaction transaction = NagboxDbOps.startTransaction(mDatabase)
+                    .purgeDeletedTasks(deletedBefore, isSyncEnabled, PURGE_BATCH_SIZE);
+            purged = transaction.getRowsAffected();
+            if (!commit(transaction)) {
+                Log.e(TAG, "Couldn't purge deleted tasks");
+                return;
+            }
+        } while (purged == PURGE_BATCH_SIZE);
+
+        // Deleted tasks aren't visible, so no need to notify anyone. Just stop waking up if there's nothing left to purge
+        if (NagboxDbOps.countDeletedTasks(mDatabase) == 0) {
+            cancelDailyJob(ACTION_PURGE_DELETED_TASKS);
+        }
+    }
+
+    private void handleCompactHistory() {
+        final HistoryRetention retention = HistoryRetention.get(this);
+        // Roll up whole days only, so that today's events stay raw and don't get split between the two tables
+        final long today = mClock.currentTimeMillis() / DateUtils.DAY_IN_MILLIS * DateUtils.DAY_IN_MILLIS;
+        boolean isSuccess = commit(NagboxDbOps.startTransaction(mDatabase)
+                .compactNagHistory(
+                        today - retention.rawEventDays * DateUtils.DAY_IN_MILLIS,
+                        today - retention.dailyStatsDays * DateUtils.DAY_IN_MILLIS
+                )
+                .compactTaskChanges()
+        );
+
+        if (!isSuccess) {
+            Log.e(TAG, "Couldn't compact nag history and task changes");
+        } else if (!NagboxDbOps.hasNagHistory(mDatabase)) {
+            // Nothing will be recorded until some task is started, and that will schedule the job again
+            cancelDailyJob(ACTION_COMPACT_HISTORY);
+        }
+    }
+
+    private void handleSync() {
+        final SyncConfig config = SyncConfig.get(this);
+        if (config == null) {
+            return;
+        }
+
+        final DbSyncStore store = new DbSyncStore(mDatabase, mClock, ActiveWindow.getGlobal(this));
+        try {
+            final SyncEngine engine = new SyncEngine(store, new HttpSyncTransport(new URL(config.serverUrl)),
+                    config.serverUrl, config.deviceId, SyncEngine.DEFAULT_BATCH_SIZE);
+            final boolean isSuccess = engine.sync();
+            if (!isSuccess) {
+                Log.e(TAG, "Couldn't apply changes from " + config.serverUrl);
+            }
+        } catch (IOException e) {
+            // Whatever was applied before the failure stays, and the next sync picks up from there
+            Log.w(TAG, "Couldn't sync with " + config.serverUrl, e);
+        }
+        mRowsWritten += store.getRowsWritten();
+
+        // Each batch is committed on its own, but the alarm is only rescheduled once, when all of them are in
+        if (store.getRowsWritten() != 0) {
+            getContentResolver().notifyChange(TasksTable.CONTENT_URI, null);
+            rescheduleAlarm();
+            if (NagboxDbOps.countDeletedTasks(mDatabase) != 0) {
+                scheduleDailyJob(ACTION_PURGE_DELETED_TASKS);
+            }
+        }
+    }
+
+    private void handleOnTasksChanged() {
+        // Whoever made the changes has already notified the observers, only the schedules are left to catch up
+        rescheduleAlarm();
+        if (NagboxDbOps.countDeletedTasks(mDatabase) != 0) {
+            scheduleDailyJob(ACTION_PURGE_DELETED_TASKS);
+        }
+        if (NagboxDbOps.getClosestNagTimestamp(mDatabase) != 0) {
+            scheduleDailyJob(ACTION_COMPACT_HISTORY);
+        }
+    }
+
+    private void handleMoveTaskToGroup(long taskId, long groupId) {
+        boolean isSuccess = commit(NagboxDbOps.startTransaction(mDatabase)
+                .moveTaskToGroup(taskId, groupId)
+        );
+
+        if (isSuccess) {
+            // Sections are computed from the whole list, so notify it all
+            getContentResolver().notifyChange(TasksTable.CONTENT_URI, null);
+        } else {
+            Log.e(TAG, "Couldn't move task with ID " + taskId + " to group with ID " + groupId);
+        }
+    }
+
+    private void handleCreateTaskGroup(TaskGroup group, long taskToMove) {
+        NagboxDbOps.Transaction transaction = NagboxDbOps.startTransaction(mDatabase)
+                .createTaskGroup(group);
+        if (taskToMove != Task.NO_ID) {
+            transaction.moveTaskToGroup(taskToMove, group.id);
+        }
+        boolean isSuccess = commit(transaction);
+
+        if (isSuccess) {
+            getContentResolver().notifyChange(TaskGroupsTable.CONTENT_URI, null);
+            if (taskToMove != Task.NO_ID) {
+                getContentResolver().notifyChange(TasksTable.CONTENT_URI, null);
+            }
+        } else {
+            Log.e(TAG, "Couldn't create task group " + group);
+        }
+    }
+
+    private void handleUpdateTaskGroup(TaskGroup group, int interval) {
+        if (group.id < 0) {
+            Log.e(TAG, "Was trying to update task group with invalid/unset ID=" + group.id);
+            return;
+        }
+
+        final long now = mClock.currentTimeMillis();
+        NagboxDbOps.Transaction transaction = NagboxDbOps.startTransaction(mDatabase)
+                .updateTaskGroup(group);
+        if (interval > 0) {
+            transaction.setTaskGroupInterval(group.id, interval, now)
+                    .postponeToActiveWindows(ActiveWindow.getGlobal(this), now);
+        }
+        boolean isSuccess = commit(transaction);
+
+        if (!isSuccess) {
+            Log.e(TAG, "Couldn't update task group " + group + " with interval " + interval);
+            return;
+        }
+        getContentResolver().notifyChange(TaskGroupsTable.CONTENT_URI, null);
+        if (interval > 0) {
+            getContentResolver().notifyChange(TasksTable.CONTENT_URI, null);
+            rescheduleAlarm();
+        }
+    }
+
+    /**
+     * Start or stop all tasks in the group. Whatever the number of tasks, this is one bulk update, one notification of
+     * the list, and one alarm reschedule.
+     *
+     * @param groupId  ID of the group
+     * @param isActive whether to start or stop the tasks
+     */
+    private void handleUpdateTaskGroupStatus(long groupId, boolean isActive) {
+        if (groupId < 0) {
+            Log.e(TAG, "Was trying to update status of task group with invalid ID=" + groupId);
+            return;
+        }
+
+        final long now = mClock.currentTimeMillis();
+        NagboxDbOps.Transaction transaction = NagboxDbOps.startTransaction(mDatabase);
+        if (isActive) {
+            transaction.startTaskGroup(groupId, now)
+                    .postponeToActiveWindows(ActiveWindow.getGlobal(this), now);
+        } else {
+            transaction.recordTaskGroupStopped(groupId, now)
+                    .stopTaskGroup(groupId, now);
+        }
+        boolean isSuccess = commit(transaction);
+
+        if (isSuccess) {
+            getContentResolver().notifyChange(TasksTable.CONTENT_URI, null);
             rescheduleAlarm();
+            if (isActive) {
+                scheduleDailyJob(ACTION_COMPACT_HISTORY);
+            }
+        } else {
+            Log.e(TAG, "Couldn't " + (isActive ? "start" : "stop") + " tasks of group with ID " + groupId);
+        }
+    }
+
+    private void handleDeleteTaskGroup(long groupId) {
+        if (groupId < 0) {
+            Log.e(TAG, "Was trying to delete task group with invalid ID=" + groupId);
+            return;
+        }
+
+        boolean isSuccess = commit(NagboxDbOps.startTransaction(mDatabase)
+                .deleteTaskGroup(groupId)
+        );
+
+        if (isSuccess) {
+            getContentResolver().notifyChange(TaskGroupsTable.CONTENT_URI, null);
+            getContentResolver().notifyChange(TasksTable.CONTENT_URI, null);
         } else {
-            Log.e(TAG, "Couldn't restore task " + task);
+            Log.e(TAG, "Couldn't delete task group with ID " + groupId);
         }
     }
 
     private void rescheduleAlarm() {
+        rescheduleAlarm(0);
+    }
+
+    /**
+     * Schedule the alarm to fire when the closest task is due, or earlier if requested.
+     *
+     * @param notLaterThan timestamp when the alarm must fire even if no task is due by then, or 0 if not needed
+     */
+    private void rescheduleAlarm(long notLaterThan) {
+        long nextTimestamp = NagboxDbOps.getClosestNagTimestamp(mDatabase);
+        if (notLaterThan != 0 && (nextTimestamp == 0 || notLaterThan < nextTimestamp)) {
+            nextTimestamp = notLaterThan;
+        }
+        setAlarm(nextTimestamp);
+    }
+
+    /**
+     * Set the alarm to fire at given time, replacing the previous one. The alarm itself is set on the elapsed realtime
+     * clock, so that it isn't affected by wall clock changes, and the relation between the two clocks is remembered to
+     * detect such changes later.
+     *
+     * @param timestamp when to fire (wall clock time), or 0 to cancel the alarm
+     */
+    private void setAlarm(long timestamp) {
         AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
 
         // Prepare pending intent. Setting, updating, or cancelling the alarm - we need it in either case
         Intent intent = new Intent(this, NagAlarmReceiver.class);
         PendingIntent pendingIntent = PendingIntent.getBroadcast(this, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
 
-        long nextTimestamp = NagboxDbOps.getClosestNagTimestamp(mDatabase);
-        if (nextTimestamp == 0) {
+        final long alarmStartedAt = System.nanoTime();
+        final long wallTime = mClock.currentTimeMillis();
+        final long elapsedTime = mClock.elapsedRealtime();
+        ClockAnchor.save(this, wallTime, elapsedTime, timestamp);
+        if (timestamp == 0) {
             alarmManager.cancel(pendingIntent);
         } else {
+            final long triggerAt = elapsedTime + Math.max(timestamp - wallTime, 0);
             // todo: deal with exact/inexact reminders later
             if (Build.VERSION.SDK_INT >= 23) {
-                alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, nextTimestamp, pendingIntent);
+                alarmManager.setAndAllowWhileIdle(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAt, pendingIntent);
             } else if (Build.VERSION.SDK_INT >= 19) {
-                alarmManager.setWindow(AlarmManager.RTC_WAKEUP, nextTimestamp, ALARM_TOLERANCE, pendingIntent);
+                alarmManager.setWindow(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAt, ALARM_TOLERANCE, pendingIntent);
             } else {
-                alarmManager.set(AlarmManager.RTC_WAKEUP, nextTimestamp, pendingIntent);
+                alarmManager.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, triggerAt, pendingIntent);
             }
         }
+        mAlarmNanos += System.nanoTime() - alarmStartedAt;
     }
 
-    private void handleOnAlarmFired() {
-        final long now = System.currentTimeMillis();
-
-        Task[] tasksToRemind = NagboxDbOps.getTasksToRemind(mDatabase, now);
-        if (tasksToRemind.length == 0) {
-            Log.i(TAG, "Alarm fired/check requested, but there was nothing to remind about");
+    /**
+     * Make sure that given maintenance action (e.g. purging deleted tasks) runs about daily. Keeps the existing
+     * schedule if there is one, so that frequent calls don't postpone the job. The alarm doesn't wake the device up,
+     * since there's no rush.
+     *
+     * @param action service action to run
+     */
+    private void scheduleDailyJob(String action) {
+        Intent intent = new Intent(this, NagboxService.class).setAction(action);
+        if (PendingIntent.getService(this, 0, intent, PendingIntent.FLAG_NO_CREATE) != null) {
             return;
         }
+        PendingIntent pendingIntent = PendingIntent.getService(this, 0, intent, 0);
+        AlarmManager alarmManager = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+        alarmManager.setInexactRepeating(
+                AlarmManager.ELAPSED_REALTIME,
+                mClock.elapsedRealtime() + AlarmManager.INTERVAL_DAY,
+                AlarmManager.INTERVAL_DAY,
+                pendingIntent
+        );
+    }
 
-        NotificationHelper.fireNotification(this, tasksToRemind);
+    private void cancelDailyJob(String action) {
+        Intent intent = new Intent(this, NagboxService.class).setAction(action);
+        PendingIntent pendingIntent = PendingIntent.getService(this, 0, intent, PendingIntent.FLAG_NO_CREATE);
+        if (pendingIntent != null) {
+            ((AlarmManager) getSystemService(Context.ALARM_SERVICE)).cancel(pendingIntent);
+            pendingIntent.cancel();
+        }
+    }
 
-        // Update the status and the time of the next fire where needed.
-        List<Task> tasksToUpdate = new ArrayList<>(tasksToRemind.length);
-        for (Task task : tasksToRemind) {
-            boolean isModified = false;
-            if (task.isSeen()) {
-                task.setIsSeen(false);
-                isModified = true;
-            }
+    /**
+     * Handle the wall clock being set or time zone being changed. Since schedules are stored in wall clock time, all
+     * active tasks are shifted by the size of the jump in one go, so that a clock moved forward doesn't flood the user
+     * with overdue nags, and a clock moved back doesn't silence them. Time zone changes don't affect stored timestamps,
+     * so these only end up re-anchoring the alarm.
+     */
+    private void handleOnClockChanged() {
+        final long now = mClock.currentTimeMillis();
+        final long clockJump = ClockAnchor.getClockJump(this, now, mClock.elapsedRealtime());
 
-            // Using the loop because the alarm might've fired long ago (e.g. before system reboot),
-            // so we need to make sure that nextFireAt is indeed in the future
-            while (task.nextFireAt <= now) {
-                task.nextFireAt += task.interval * DateUtils.MINUTE_IN_MILLIS;
-                isModified = true;
-            }
+        // Active windows are in local time, so even if timestamps stay, tasks may have ended up in quiet hours
+        boolean isSuccess = commit(NagboxDbOps.startTransaction(mDatabase)
+                .shiftActiveTasks(Math.abs(clockJump) >= CLOCK_JUMP_THRESHOLD ? clockJump : 0)
+                .postponeToActiveWindows(ActiveWindow.getGlobal(this), now)
+        );
 
-            if (isModified) {
-                tasksToUpdate.add(task);
-            }
+        if (isSuccess) {
+            getContentResolver().notifyChange(TasksTable.CONTENT_URI, null);
+        } else {
+            Log.e(TAG, "Couldn't update tasks after clock change by " + clockJump + "ms");
         }
 
-        final int updateSize = tasksToUpdate.size();
-        if (updateSize == 0) {
-            Log.w(TAG, "Strangely enough, there was nothing to update when alarm fired");
-            rescheduleAlarm();
+        rescheduleAlarm();
+    }
+
+    /**
+     * Bring the schedule back in order after device boot or app update, when alarms are lost. Unlike regular alarm
+     * handling, doesn't post any notifications (these are deferred a bit to not add to the startup load) and doesn't
+     * record lateness, and all database work is a single bulk update.
+     */
+    private void handleRecoverSchedule() {
+        final long now = mClock.currentTimeMillis();
+        final long remindAt = ActiveWindow.getGlobal(this)
+                .getNextActiveTime(now + RECOVERY_REMINDER_DELAY, TimeZone.getDefault());
+
+        // Arm the alarm before touching the database, so that it fires in bounded time no matter how long the update
+        // takes or whether we get killed meanwhile. If nothing's due by then, that alarm will just reschedule itself
+        setAlarm(remindAt);
+
+        boolean isSuccess = commit(NagboxDbOps.startTransaction(mDatabase)
+                .rescheduleDueTasks(now)
+                .postponeToActiveWindows(ActiveWindow.getGlobal(this), now)
+        );
+
+        if (!isSuccess) {
+            Log.e(TAG, "Couldn't recover task schedule");
             return;
         }
+        getContentResolver().notifyChange(TasksTable.CONTENT_URI, null);
 
-        // Otherwise update the tasks that need it
-        NagboxDbOps.Transaction transaction = NagboxDbOps.startTransaction(mDatabase);
-        for (int i = 0; i < updateSize; i++) {
-            final Task task = tasksToUpdate.get(i);
-            transaction.updateTaskStatus(task);
+        // Maintenance alarms don't survive reboots either
+        if (NagboxDbOps.countDeletedTasks(mDatabase) != 0) {
+            scheduleDailyJob(ACTION_PURGE_DELETED_TASKS);
         }
-        boolean isSuccess = transaction.commit();
+        if (NagboxDbOps.hasNagHistory(mDatabase)) {
+            scheduleDailyJob(ACTION_COMPACT_HISTORY);
+        }
+
+        // Overdue tasks are now "not seen", as well as those whose notifications were lost. Remind about them later
+        final boolean hasTasksToRemind = NagboxDbOps.countTasksToRemind(mDatabase, now) != 0;
+        rescheduleAlarm(hasTasksToRemind ? remindAt : 0);
+    }
+
+    private void handleOnAlarmFired() {
+        final long now = mClock.currentTimeMillis();
+
+        // Only fetch as many tasks as the notification can show, plus the total count for the "+N more" line
+        final int tasksToRemindCount = NagboxDbOps.countTasksToRemind(mDatabase, now);
+        if (tasksToRemindCount == 0) {
+            Log.i(TAG, "Alarm fired/check requested, but there was nothing to remind about");
+            // The alarm might've been set for a task that was snoozed since, so make sure the next one is set
+            rescheduleAlarm();
+            return;
+        }
+        Task[] tasksToDisplay = NagboxDbOps.getTasksToRemind(mDatabase, now, NotificationHelper.MAX_DISPLAYED_TASKS);
+
+        final long notifyStartedAt = System.nanoTime();
+        NotificationHelper.fireNotification(this, tasksToDisplay, tasksToRemindCount);
+        mNotificationNanos += System.nanoTime() - notifyStartedAt;
+
+        // Record how late the alarm was for each due task and that it fired, then update the status and the time of the
+        // next fire of all due tasks in one go
+        boolean isSuccess = commit(NagboxDbOps.startTransaction(mDatabase)
+                .fireDueTasks(ActiveWindow.getGlobal(this), now)
+        );
 
         if (!isSuccess) {
             Log.e(TAG, "Couldn't update status of the tasks when alarm fired");
         } else {
-            // Notify all affected task items
-            final ContentResolver contentResolver = getContentResolver();
-            for (int i = 0; i < updateSize; i++) {
-                contentResolver.notifyChange(TasksTable.getUriForItem(tasksToUpdate.get(i).id), null);
-            }
+            // We don't know which items were affected without querying them, so notify the whole list
+            getContentResolver().notifyChange(TasksTable.CONTENT_URI, null);
         }
 
         // Finally, schedule the alarm to fire the next time it's ought to fire
@@ -392,12 +1053,14 @@ public class NagboxService extends IntentService {
             return;
         }
 
+        final long now = mClock.currentTimeMillis();
         NagboxDbOps.Transaction transaction = NagboxDbOps.startTransaction(mDatabase);
         for (Task task : tasksToDismiss) {
             task.setIsSeen(true);
-            transaction.updateTaskStatus(task);
+            transaction.updateTaskStatus(task, now);
+            mPendingEvents.add(new NagEvent(task.id, NagEvent.TYPE_DISMISSED, now));
         }
-        boolean isSuccess = transaction.commit();
+        boolean isSuccess = commit(transaction);
 
         if (!isSuccess) {
             Log.e(TAG, "Couldn't unset the 'not seen' flag from tasks");
@@ -28,6 +28,7 @@ import android.support.v4.app.NotificationManagerCompat;
 import android.support.v4.content.ContextCompat;
 import android.text.Html;
 import com.actinarium.nagbox.R;
+import com.actinarium.nagbox.common.Clock;
 import com.actinarium.nagbox.common.DateUtils;
 import com.actinarium.nagbox.model.Task;
 import com.actinarium.nagbox.ui.MainActivity;
@@ -39,6 +40,18 @@ import com.actinarium.nagbox.ui.MainActivity;
  */
 public final class NotificationHelper {
 
+    /**
+     * Maximum number of tasks the notification can display. If there are more, first (this - 1) are listed along with
+     * "+N more" line. There's no point in querying more tasks than this.
+     */
+    public static final int MAX_DISPLAYED_TASKS = 5;
+
+    /**
+     * Snooze options (in minutes) offered for each task. Together with "stop" that's as many actions as a notification
+     * can show.
+     */
+    private static final int[] SNOOZE_OPTIONS = {10, 60};
+
     private static final int NAG_NOTIFICATION_ID = 0;
     private static final String NAG_NOTIFICATION_GROUP = "nagbox";
 
@@ -50,19 +63,21 @@ public final class NotificationHelper {
     /**
      * Build and display a notification for provided task(s)
      *
-     * @param context Context
-     * @param tasks   Array of tasks, must contain at least one item
+     * @param context    Context
+     * @param tasks      Array of tasks to display, must contain at least one item. Only first {@link
+     *                   #MAX_DISPLAYED_TASKS} are used.
+     * @param tasksCount Total number of tasks to remind about, which can be greater than the length of the array
      */
-    public static void fireNotification(Context context, Task[] tasks) {
-        if (tasks.length == 1) {
+    public static void fireNotification(Context context, Task[] tasks, int tasksCount) {
+        if (tasksCount == 1) {
             fireForSingleTask(context, tasks[0]);
         } else {
-            fireForMultipleTasks(context, tasks);
+            fireForMultipleTasks(context, tasks, tasksCount);
         }
     }
 
     private static void fireForSingleTask(Context context, Task task) {
-        long currentTime = System.currentTimeMillis();
+        long currentTime = Clock.getInstance().currentTimeMillis();
 
         // Notification action to stop the task
         Intent stopAction = new Intent(context, NagboxService.class);
@@ -78,24 +93,26 @@ public final class NotificationHelper {
                 .build();
 
         // Create private notification
-        Notification privateNotification = makeCommonBuilder(context, currentTime, task.id)
+        NotificationCompat.Builder privateBuilder = makeCommonBuilder(context, currentTime, task.id)
                 .setPublicVersion(publicNotification)
                 .setContentTitle(task.title)
                 .setContentText(DateUtils.prettyPrintNagDuration(context, task.lastStartedAt, currentTime))
-                .addAction(R.drawable.ic_cancel, context.getString(R.string.notification_action_stop), stopActionPI)
-                .build();
+                .addAction(R.drawable.ic_cancel, context.getString(R.string.notification_action_stop), stopActionPI);
+        addSnoozeActions(context, privateBuilder, task.id, NAG_NOTIFICATION_ID);
+        Notification privateNotification = privateBuilder.build();
 
         // Fire!
         NotificationManagerCompat.from(context).notify(NAG_NOTIFICATION_ID, privateNotification);
     }
 
-    private static void fireForMultipleTasks(Context context, Task[] tasks) {
-        long currentTime = System.currentTimeMillis();
+    private static void fireForMultipleTasks(Context context, Task[] tasks, int tasksCount) {
+        long currentTime = Clock.getInstance().currentTimeMillis();
         final NotificationManagerCompat notifManager = NotificationManagerCompat.from(context);
-        final int tasksCount = tasks.length;
+        final int displayedCount = Math.min(tasks.length, MAX_DISPLAYED_TASKS);
 
-        // Create a group of stacked notifications
-        for (Task task : tasks) {
+        // Create a group of stacked notifications. Only for displayed tasks - the system would drop the excess anyway
+        for (int i = 0; i < displayedCount; i++) {
+            final Task task = tasks[i];
 
             // Notification action to stop the task
             Intent stopAction = new Intent(context, NagboxService.class);
@@ -106,15 +123,15 @@ public final class NotificationHelper {
             // Since actions are "equal" (differ in extras only), need to use a unique "request code" (task.id will do)
             PendingIntent stopActionPI = PendingIntent.getService(context, (int) task.id, stopAction, PendingIntent.FLAG_UPDATE_CURRENT);
 
-            Notification stackedItem = makeCommonBuilder(context, currentTime, task.id)
+            NotificationCompat.Builder stackedItemBuilder = makeCommonBuilder(context, currentTime, task.id)
                     .setContentTitle(task.title)
                     .setContentText(DateUtils.prettyPrintNagDuration(context, task.lastStartedAt, currentTime))
                     .setGroup(NAG_NOTIFICATION_GROUP)
-                    .addAction(R.drawable.ic_cancel, context.getString(R.string.notification_action_stop), stopActionPI)
-                    .build();
+                    .addAction(R.drawable.ic_cancel, context.getString(R.string.notification_action_stop), stopActionPI);
+            addSnoozeActions(context, stackedItemBuilder, task.id, (int) task.id);
 
             // Well, let's use task IDs for their individual notifications then
-            notifManager.notify((int) task.id, stackedItem);
+            notifManager.notify((int) task.id, stackedItemBuilder.build());
         }
 
         // Summary text, reused
@@ -135,15 +152,16 @@ public final class NotificationHelper {
         // If there are more than 5 tasks, enlist first 4 and add +x more
         NotificationCompat.InboxStyle inboxStyle = new NotificationCompat.InboxStyle();
         inboxStyle.setBigContentTitle(summary);
-        if (tasksCount <= 5) {
-            for (Task task : tasks) {
-                inboxStyle.addLine(makeInboxStyleLine(context, task, currentTime));
+        if (tasksCount <= MAX_DISPLAYED_TASKS) {
+            for (int i = 0; i < displayedCount; i++) {
+                inboxStyle.addLine(makeInboxStyleLine(context, tasks[i], currentTime));
             }
         } else {
-            for (int i = 0; i < 4; i++) {
+            final int listedCount = Math.min(displayedCount, MAX_DISPLAYED_TASKS - 1);
+            for (int i = 0; i < listedCount; i++) {
                 inboxStyle.addLine(makeInboxStyleLine(context, tasks[i], currentTime));
             }
-            inboxStyle.addLine(context.getString(R.string.notification_stack_overflow, tasksCount - 4));
+            inboxStyle.addLine(context.getString(R.string.notification_stack_overflow, tasksCount - listedCount));
         }
 
         // Create private summary notification
@@ -215,6 +233,36 @@ public final class NotificationHelper {
                 .setDefaults(NotificationCompat.DEFAULT_ALL);
     }
 
+    /**
+     * Add an action for each of the {@link #SNOOZE_OPTIONS} to the notification of a single task
+     *
+     * @param context        context
+     * @param builder        builder of the notification to add actions to
+     * @param taskId         ID of the task to snooze
+     * @param notificationId ID of the notification to cancel when the task is snoozed
+     */
+    private static void addSnoozeActions(Context context, NotificationCompat.Builder builder, long taskId,
+                                         int notificationId) {
+        for (int i = 0; i < SNOOZE_OPTIONS.length; i++) {
+            final int minutes = SNOOZE_OPTIONS[i];
+            Intent snoozeAction = new Intent(context, NagboxService.class);
+            snoozeAction.setAction(NagboxService.ACTION_ON_NOTIFICATION_ACTION_SNOOZE_TASK);
+            snoozeAction.putExtra(NagboxService.EXTRA_TASK_ID, taskId);
+            snoozeAction.putExtra(NagboxService.EXTRA_CANCEL_NOTIFICATION_ID, notificationId);
+            snoozeAction.putExtra(NagboxService.EXTRA_SNOOZE_DURATION, minutes * android.text.format.DateUtils.MINUTE_IN_MILLIS);
+
+            // Same story as with the stop action, but there are several snooze options per task
+            final int requestCode = (int) taskId * SNOOZE_OPTIONS.length + i;
+            PendingIntent snoozeActionPI = PendingIntent.getService(context, requestCode, snoozeAction, PendingIntent.FLAG_UPDATE_CURRENT);
+
+            final String label = minutes % 60 == 0
+                    ? context.getString(R.string.notification_action_snooze_hours, minutes / 60)
+                    : context.getString(R.string.notification_action_snooze_minutes, minutes);
+            // No icon: these aren't displayed since N anyway, and there's no raster snooze icon for older versions
+            builder.addAction(0, label, snoozeActionPI);
+        }
+    }
+
     private static CharSequence makeInboxStyleLine(Context context, Task task, long now) {
         final String duration = DateUtils.prettyPrintNagDuration(context, task.lastStartedAt, now);
         if (Build.VERSION.SDK_INT >= 24) {
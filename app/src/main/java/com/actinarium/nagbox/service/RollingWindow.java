@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.service;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size ring buffer of the latest samples to calculate exact percentiles over a sliding window. Recording
+ * doesn't allocate; calculating percentiles copies and sorts the window, so do it only when reporting.
+ * <p/>
+ * Not thread-safe &mdash; synchronize externally.
+ *
+ * @author Paul Danyliuk
+ */
+final class RollingWindow {
+
+    private final long[] mSamples;
+    private int mNextIndex;
+    private int mSize;
+
+    RollingWindow(int capacity) {
+        mSamples = new long[capacity];
+    }
+
+    void record(long value) {
+        mSamples[mNextIndex] = value;
+        mNextIndex = (mNextIndex + 1) % mSamples.length;
+        if (mSize < mSamples.length) {
+            mSize++;
+        }
+    }
+
+    int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Get values at given percentiles over the samples currently in the window
+     *
+     * @param percentiles percentiles to calculate, 0..100 each
+     * @return array of values at corresponding percentiles, all zeros if the window is empty
+     */
+    long[] getValuesAtPercentiles(double... percentiles) {
+        long[] result = new long[percentiles.length];
+        if (mSize == 0) {
+            return result;
+        }
+        long[] sorted = Arrays.copyOf(mSamples, mSize);
+        Arrays.sort(sorted);
+        for (int i = 0; i < percentiles.length; i++) {
+            int index = (int) Math.ceil(percentiles[i] / 100.0 * mSize) - 1;
+            result[i] = sorted[Math.max(0, Math.min(index, mSize - 1))];
+        }
+        return result;
+    }
+}
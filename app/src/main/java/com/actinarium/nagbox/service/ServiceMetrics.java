@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.service;
+
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Lightweight per-action metrics for {@link NagboxService}: how many intents of each kind were handled, how long it
+ * took, how that time split between the database, notifications and the alarm manager, and how many rows were written.
+ * Everything is preallocated, so recording doesn't allocate. Process-wide singleton, because the service itself is
+ * destroyed as soon as its queue drains.
+ * <p/>
+ * Print with <code>adb shell dumpsys activity provider com.actinarium.nagbox/.database.NagboxContentProvider</code>
+ * (API 18+), which works as long as the app process is alive. <code>adb shell dumpsys activity service
+ * NagboxService</code> prints the same, but only while the service is running, i.e. has intents in its queue.
+ *
+ * @author Paul Danyliuk
+ */
+final class ServiceMetrics {
+
+    /**
+     * Actions to keep separate stats for. Anything else goes into the last "other" slot.
+     */
+    private static final String[] ACTIONS = {
+            NagboxService.ACTION_CREATE_TASK,
+            NagboxService.ACTION_UPDATE_TASK,
+            NagboxService.ACTION_UPDATE_TASK_STATUS,
+            NagboxService.ACTION_DELETE_TASK,
+            NagboxService.ACTION_RESTORE_TASK,
+            NagboxService.ACTION_MOVE_TASK_TO_GROUP,
+            NagboxService.ACTION_CREATE_TASK_GROUP,
+            NagboxService.ACTION_UPDATE_TASK_GROUP,
+            NagboxService.ACTION_UPDATE_TASK_GROUP_STATUS,
+            NagboxService.ACTION_DELETE_TASK_GROUP,
+            NagboxService.ACTION_ON_ALARM_FIRED,
+            NagboxService.ACTION_RECOVER_SCHEDULE,
+            NagboxService.ACTION_ON_CLOCK_CHANGED,
+            NagboxService.ACTION_ON_NOTIFICATION_DISMISSED,
+            NagboxService.ACTION_ON_NOTIFICATION_ACTION_STOP_TASK,
+            NagboxService.ACTION_ON_NOTIFICATION_ACTION_SNOOZE_TASK,
+            NagboxService.ACTION_PURGE_DELETED_TASKS,
+            NagboxService.ACTION_COMPACT_HISTORY,
+            NagboxService.ACTION_SYNC,
+            NagboxService.ACTION_ON_TASKS_CHANGED
+    };
+    private static final int OTHER = ACTIONS.length;
+
+    private static final long NANOS_IN_MICRO = 1000;
+    private static final int WAKE_LOCK_WINDOW_SIZE = 256;
+
+    private static ServiceMetrics sInstance;
+
+    private long mStartedAt = SystemClock.elapsedRealtime();
+    private final ActionStats[] mStats = new ActionStats[ACTIONS.length + 1];
+    // Handler times (us) of all actions together
+    private final LatencyHistogram mAllHandlerTimes = new LatencyHistogram();
+    private int mPendingIntents;
+    private int mMaxPendingIntents;
+
+    // Wake lock accounting, times in ms, rolling over the last WAKE_LOCK_WINDOW_SIZE wakeful intents
+    private final RollingWindow mWakeLockQueueDelays = new RollingWindow(WAKE_LOCK_WINDOW_SIZE);
+    private final RollingWindow mWakeLockHandlerTimes = new RollingWindow(WAKE_LOCK_WINDOW_SIZE);
+    private final RollingWindow mWakeLockHoldTimes = new RollingWindow(WAKE_LOCK_WINDOW_SIZE);
+    private long mWakeLockCount;
+    private long mWakeLockOverBudgetCount;
+    private long mWakeLockTotalHoldTime;
+
+    static synchronized ServiceMetrics getInstance() {
+        if (sInstance == null) {
+            sInstance = new ServiceMetrics();
+        }
+        return sInstance;
+    }
+
+    private ServiceMetrics() {
+        for (int i = 0; i < mStats.length; i++) {
+            mStats[i] = new ActionStats();
+        }
+    }
+
+    /**
+     * Record that an intent was put into the service queue. Call from {@link NagboxService#onStartCommand}.
+     */
+    synchronized void onIntentQueued() {
+        mPendingIntents++;
+        if (mPendingIntents > mMaxPendingIntents) {
+            mMaxPendingIntents = mPendingIntents;
+        }
+    }
+
+    /**
+     * Record that an intent was taken from the queue but there was nothing to handle
+     */
+    synchronized void onIntentSkipped() {
+        mPendingIntents--;
+    }
+
+    /**
+     * Record the results of handling an intent
+     *
+     * @param action            intent action
+     * @param totalNanos        total time spent in the handler
+     * @param notificationNanos time spent posting or cancelling notifications
+     * @param alarmNanos        time spent in alarm manager calls
+     * @param rowsWritten       number of rows inserted, updated or deleted in committed transactions
+     */
+    synchronized void onIntentHandled(String action, long totalNanos, long notificationNanos, long alarmNanos,
+                                      int rowsWritten) {
+        mPendingIntents--;
+
+        final ActionStats stats = mStats[getActionIndex(action)];
+        stats.count++;
+        stats.rowsWritten += rowsWritten;
+        stats.total.record(totalNanos / NANOS_IN_MICRO);
+        stats.database.record((totalNanos - notificationNanos - alarmNanos) / NANOS_IN_MICRO);
+        stats.notification.record(notificationNanos / NANOS_IN_MICRO);
+        stats.alarm.record(alarmNanos / NANOS_IN_MICRO);
+        mAllHandlerTimes.record(totalNanos / NANOS_IN_MICRO);
+    }
+
+    /**
+     * Record how long the wake lock acquired by {@link NagAlarmReceiver} was held, and what it was held for
+     *
+     * @param queueDelay   time (ms) between acquiring the lock and the service picking up the intent
+     * @param handlerTime  time (ms) spent handling the intent
+     * @param holdTime     total time (ms) between acquiring and releasing the lock
+     * @param isOverBudget whether hold time exceeded the configured budget
+     */
+    synchronized void onWakeLockReleased(long queueDelay, long handlerTime, long holdTime, boolean isOverBudget) {
+        mWakeLockCount++;
+        mWakeLockTotalHoldTime += holdTime;
+        if (isOverBudget) {
+            mWakeLockOverBudgetCount++;
+        }
+        mWakeLockQueueDelays.record(queueDelay);
+        mWakeLockHandlerTimes.record(handlerTime);
+        mWakeLockHoldTimes.record(holdTime);
+    }
+
+    /**
+     * Forget per-action stats collected so far, e.g. to measure a load test in isolation. Wake lock stats are kept.
+     */
+    synchronized void reset() {
+        mStartedAt = SystemClock.elapsedRealtime();
+        mMaxPendingIntents = mPendingIntents;
+        for (ActionStats stats : mStats) {
+            stats.count = 0;
+            stats.rowsWritten = 0;
+            stats.total.reset();
+            stats.database.reset();
+            stats.notification.reset();
+            stats.alarm.reset();
+        }
+        mAllHandlerTimes.reset();
+    }
+
+    /**
+     * @return number of intents handled since start or last {@link #reset()}
+     */
+    synchronized long getHandledCount() {
+        return mAllHandlerTimes.getTotalCount();
+    }
+
+    /**
+     * @return number of intents queued but not handled yet
+     */
+    synchronized int getPendingIntents() {
+        return mPendingIntents;
+    }
+
+    /**
+     * @return maximum queue length since start or last {@link #reset()}
+     */
+    synchronized int getMaxPendingIntents() {
+        return mMaxPendingIntents;
+    }
+
+    /**
+     * Get handler time at given percentile across all actions
+     *
+     * @param percentile percentile, 0..100
+     * @return handler time in microseconds
+     */
+    synchronized long getHandlerTimeAtPercentile(double percentile) {
+        return mAllHandlerTimes.getValueAtPercentile(percentile);
+    }
+
+    synchronized void dump(PrintWriter writer) {
+        writer.println("Nagbox service metrics, last "
+                + (SystemClock.elapsedRealtime() - mStartedAt) / 1000 + "s. Times in ms: p50/p90/p99/max");
+        writer.println("  Queue: pending=" + mPendingIntents + ", max pending=" + mMaxPendingIntents);
+        for (int i = 0; i < mStats.length; i++) {
+            final ActionStats stats = mStats[i];
+            if (stats.count == 0) {
+                continue;
+            }
+            writer.println("  " + (i == OTHER ? "(other)" : ACTIONS[i]));
+            writer.println("    count=" + stats.count + ", rows written=" + stats.rowsWritten);
+            dumpHistogram(writer, "total", stats.total);
+            dumpHistogram(writer, "db", stats.database);
+            dumpHistogram(writer, "notification", stats.notification);
+            dumpHistogram(writer, "alarm", stats.alarm);
+        }
+
+        writer.println("  Wake locks: count=" + mWakeLockCount + ", total held=" + mWakeLockTotalHoldTime
+                + "ms, over budget=" + mWakeLockOverBudgetCount);
+        if (mWakeLockCount != 0) {
+            writer.println("    last " + mWakeLockHoldTimes.getSize() + ", times in ms: p50/p90/p99/max");
+            dumpWindow(writer, "queue delay", mWakeLockQueueDelays);
+            dumpWindow(writer, "handler", mWakeLockHandlerTimes);
+            dumpWindow(writer, "hold", mWakeLockHoldTimes);
+        }
+    }
+
+    private static void dumpWindow(PrintWriter writer, String label, RollingWindow window) {
+        final long[] values = window.getValuesAtPercentiles(50, 90, 99, 100);
+        writer.println(String.format(Locale.US, "    %-13s %d / %d / %d / %d", label,
+                values[0], values[1], values[2], values[3]));
+    }
+
+    private static void dumpHistogram(PrintWriter writer, String label, LatencyHistogram histogram) {
+        writer.println(String.format(Locale.US, "    %-13s %.2f / %.2f / %.2f / %.2f", label,
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getMaxValue() / 1000.0));
+    }
+
+    private static int getActionIndex(String action) {
+        for (int i = 0; i < ACTIONS.length; i++) {
+            if (ACTIONS[i].equals(action)) {
+                return i;
+            }
+        }
+        return OTHER;
+    }
+
+    /**
+     * Stats for a single action. Latencies are in microseconds, database time is whatever wasn't spent on
+     * notifications and alarms.
+     */
+    private static final class ActionStats {
+        long count;
+        long rowsWritten;
+        final LatencyHistogram total = new LatencyHistogram();
+        final LatencyHistogram database = new LatencyHistogram();
+        final LatencyHistogram notification = new LatencyHistogram();
+        final LatencyHistogram alarm = new LatencyHistogram();
+    }
+}
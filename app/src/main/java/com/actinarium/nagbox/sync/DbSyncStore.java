@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.sync;
+
+import android.database.sqlite.SQLiteDatabase;
+import com.actinarium.nagbox.common.Clock;
+import com.actinarium.nagbox.database.NagboxDbOps;
+import com.actinarium.nagbox.model.ActiveWindow;
+import com.actinarium.nagbox.model.SyncRecord;
+
+import java.util.List;
+
+/**
+ * {@link SyncStore} backed by the app database. Local changes are read from the task change log, and each batch of
+ * the peer's changes is applied in a transaction of its own, so that a sync interrupted midway keeps what it got. Must
+ * only be used from the service, since nothing else may write tasks while a sync is in progress.
+ *
+ * @author Paul Danyliuk
+ */
+public class DbSyncStore implements SyncStore {
+
+    private final SQLiteDatabase mDatabase;
+    private final Clock mClock;
+    private final ActiveWindow mGlobalWindow;
+    private int mRowsWritten;
+
+    public DbSyncStore(SQLiteDatabase writableDb, Clock clock, ActiveWindow globalWindow) {
+        mDatabase = writableDb;
+        mClock = clock;
+        mGlobalWindow = globalWindow;
+    }
+
+    @Override
+    public long getReceivedWatermark(String peer) {
+        return NagboxDbOps.getSyncReceivedWatermark(mDatabase, peer);
+    }
+
+    @Override
+    public SyncMessage getChangesToSend(String peer, String deviceId, int limit) {
+        return NagboxDbOps.getSyncChanges(mDatabase, peer, deviceId, limit);
+    }
+
+    @Override
+    public int applyChanges(String peer, List<SyncRecord> records, long sentWatermark, long receivedWatermark) {
+        final long now = mClock.currentTimeMillis();
+        NagboxDbOps.Transaction transaction = NagboxDbOps.startTransaction(mDatabase)
+                .applySyncRecords(peer, records, sentWatermark, receivedWatermark, now);
+        final int applied = transaction.getRowsAffected();
+        // Tasks started elsewhere come with fire times that don't know about local quiet hours
+        if (applied != 0) {
+            transaction.postponeToActiveWindows(mGlobalWindow, now);
+        }
+        final int rowsAffected = transaction.getRowsAffected();
+        if (!transaction.commit()) {
+            return -1;
+        }
+        mRowsWritten += rowsAffected;
+        return applied;
+    }
+
+    /**
+     * @return number of rows written by all batches applied so far
+     */
+    public int getRowsWritten() {
+        return mRowsWritten;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.sync;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Exchanges sync messages with the server over HTTP: each exchange is a POST of the encoded request, answered with the
+ * encoded response
+ *
+ * @author Paul Danyliuk
+ */
+public class HttpSyncTransport implements SyncTransport {
+
+    private static final int CONNECT_TIMEOUT = 15000;
+    private static final int READ_TIMEOUT = 30000;
+
+    private final URL mUrl;
+
+    public HttpSyncTransport(URL url) {
+        mUrl = url;
+    }
+
+    @Override
+    public SyncMessage exchange(SyncMessage request) throws IOException {
+        // Encode upfront, so that the request is sent with a known length rather than in chunks
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        SyncCodec.write(request, body);
+
+        final HttpURLConnection connection = (HttpURLConnection) mUrl.openConnection();
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", SyncCodec.CONTENT_TYPE);
+            connection.setFixedLengthStreamingMode(body.size());
+
+            final OutputStream out = connection.getOutputStream();
+            try {
+                body.writeTo(out);
+            } finally {
+                out.close();
+            }
+
+            final int responseCode = connection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Sync server responded with " + responseCode);
+            }
+            final InputStream in = connection.getInputStream();
+            try {
+                return SyncCodec.read(in);
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.sync;
+
+import com.actinarium.nagbox.model.ActiveWindow;
+import com.actinarium.nagbox.model.Recurrence;
+import com.actinarium.nagbox.model.SyncRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Wire format of {@link SyncMessage}s: fixed-order binary fields, gzipped. Records don't repeat field names the way
+ * JSON would, and sync IDs and titles of a batch are similar enough for gzip to shrink them further.
+ * <p/>
+ * Layout: magic and version, device ID, watermark, has more flag, record count, and then for each record its sync ID
+ * followed by the description, status, and deletion groups, each ending with its change timestamp. Optional parts
+ * (active window, recurrence) are prefixed with a presence flag. Strings are modified UTF-8.
+ *
+ * @author Paul Danyliuk
+ */
+public final class SyncCodec {
+
+    public static final String CONTENT_TYPE = "application/x-nagbox-sync";
+
+    private static final int MAGIC = 0x4E425331; // "NBS1"
+    private static final int BUFFER_SIZE = 8192;
+
+    private SyncCodec() {}
+
+    /**
+     * Write the message to the stream and finish the gzip stream. The stream itself is not closed.
+     *
+     * @param message message to write
+     * @param out     stream to write to
+     * @throws IOException if writing to the stream failed
+     */
+    public static void write(SyncMessage message, OutputStream out) throws IOException {
+        final GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(gzip, BUFFER_SIZE));
+        data.writeInt(MAGIC);
+        data.writeUTF(message.deviceId);
+        data.writeLong(message.watermark);
+        data.writeBoolean(message.hasMore);
+        data.writeInt(message.records.size());
+        for (int i = 0, size = message.records.size(); i < size; i++) {
+            writeRecord(data, message.records.get(i));
+        }
+        data.flush();
+        gzip.finish();
+    }
+
+    /**
+     * Read a message from the stream. The stream is not closed.
+     *
+     * @param in stream to read from
+     * @return decoded message
+     * @throws IOException if reading failed, or the stream doesn't hold a valid message
+     */
+    public static SyncMessage read(InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(
+                new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a sync message, or an unsupported version");
+        }
+        final String deviceId = data.readUTF();
+        final long watermark = data.readLong();
+        final boolean hasMore = data.readBoolean();
+        final int count = data.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid record count " + count);
+        }
+        final List<SyncRecord> records = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                records.add(readRecord(data));
+            }
+        } catch (IllegalArgumentException e) {
+            // Thrown by model constructors on values that can't be valid
+            throw new IOException("Invalid record", e);
+        }
+        return new SyncMessage(deviceId, watermark, hasMore, records);
+    }
+
+    private static void writeRecord(DataOutputStream data, SyncRecord record) throws IOException {
+        data.writeUTF(record.syncId);
+
+        data.writeUTF(record.title != null ? record.title : "");
+        data.writeInt(record.interval);
+        data.writeBoolean(record.activeWindow != null);
+        if (record.activeWindow != null) {
+            data.writeShort(record.activeWindow.activeFrom);
+            data.writeShort(record.activeWindow.activeTo);
+            data.writeByte(record.activeWindow.activeDays);
+        }
+        data.writeBoolean(record.recurrence != null);
+        if (record.recurrence != null) {
+            data.writeInt(record.recurrence.escalationStep);
+            data.writeInt(record.recurrence.minInterval);
+            data.writeByte(record.recurrence.jitterPercent);
+        }
+        data.writeLong(record.descriptionChangedAt);
+
+        data.writeBoolean(record.isActive);
+        data.writeLong(record.lastStartedAt);
+        data.writeLong(record.nextFireAt);
+        data.writeLong(record.statusChangedAt);
+
+        data.writeBoolean(record.isDeleted);
+        data.writeLong(record.deletionChangedAt);
+    }
+
+    private static SyncRecord readRecord(DataInputStream data) throws IOException {
+        final SyncRecord record = new SyncRecord();
+        record.syncId = data.readUTF();
+
+        record.title = data.readUTF();
+        record.interval = data.readInt();
+        if (data.readBoolean()) {
+            record.activeWindow = new ActiveWindow(data.readShort(), data.readShort(), data.readByte());
+        }
+        if (data.readBoolean()) {
+            record.recurrence = new Recurrence(data.readInt(), data.readInt(), data.readByte());
+        }
+        record.descriptionChangedAt = data.readLong();
+
+        record.isActive = data.readBoolean();
+        record.lastStartedAt = data.readLong();
+        record.nextFireAt = data.readLong();
+        record.statusChangedAt = data.readLong();
+
+        record.isDeleted = data.readBoolean();
+        record.deletionChangedAt = data.readLong();
+        return record;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.sync;
+
+import java.io.IOException;
+
+/**
+ * Brings a {@link SyncStore} in sync with a peer. Only the changes since the last sync go either way: each exchange
+ * sends a batch of local changes after the sent watermark, and gets a batch of the peer's changes after the received
+ * one, which are applied locally along with advancing both watermarks. Exchanges repeat until neither side has more.
+ * <p/>
+ * If an exchange fails midway, whatever was applied stays applied, and the next sync resumes from there. A batch that
+ * the peer got but whose response was lost is simply sent again, which is harmless, since merging is idempotent.
+ *
+ * @author Paul Danyliuk
+ */
+public class SyncEngine {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final SyncStore mStore;
+    private final SyncTransport mTransport;
+    private final String mPeer;
+    private final String mDeviceId;
+    private final int mBatchSize;
+
+    private int mSentCount;
+    private int mReceivedCount;
+    private int mAppliedCount;
+
+    /**
+     * @param store     local side
+     * @param transport connection to the peer
+     * @param peer      key to keep the watermarks for this peer under, e.g. server URL
+     * @param deviceId  ID of this device, which the peer uses to tell its changes from the others'
+     * @param batchSize max number of records to send at once
+     */
+    public SyncEngine(SyncStore store, SyncTransport transport, String peer, String deviceId, int batchSize) {
+        mStore = store;
+        mTransport = transport;
+        mPeer = peer;
+        mDeviceId = deviceId;
+        mBatchSize = batchSize;
+    }
+
+    /**
+     * Exchange changes with the peer until both sides are up to date. Blocks, so must not be called on the UI thread.
+     *
+     * @return <code>true</code> if done, or <code>false</code> if the store couldn't apply a batch
+     * @throws IOException if the exchange with the peer failed
+     */
+    public boolean sync() throws IOException {
+        boolean hasMore;
+        do {
+            final SyncMessage local = mStore.getChangesToSend(mPeer, mDeviceId, mBatchSize);
+            final SyncMessage request = new SyncMessage(mDeviceId, mStore.getReceivedWatermark(mPeer), local.hasMore,
+                    local.records);
+            final SyncMessage response = mTransport.exchange(request);
+
+            final int applied = mStore.applyChanges(mPeer, response.records, local.watermark, response.watermark);
+            if (applied == -1) {
+                return false;
+            }
+            mSentCount += local.records.size();
+            mReceivedCount += response.records.size();
+            mAppliedCount += applied;
+            hasMore = local.hasMore || response.hasMore;
+        } while (hasMore);
+        return true;
+    }
+
+    /**
+     * @return number of local changes sent to the peer so far
+     */
+    public int getSentCount() {
+        return mSentCount;
+    }
+
+    /**
+     * @return number of the peer's changes received so far
+     */
+    public int getReceivedCount() {
+        return mReceivedCount;
+    }
+
+    /**
+     * @return number of local tasks changed by the peer's changes so far
+     */
+    public int getAppliedCount() {
+        return mAppliedCount;
+    }
+}
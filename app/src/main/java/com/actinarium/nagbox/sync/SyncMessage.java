@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.sync;
+
+import com.actinarium.nagbox.model.SyncRecord;
+
+import java.util.List;
+
+/**
+ * One batch of a sync exchange. In a request, the device sends its changed tasks along with the watermark of the
+ * server changes it has already received. In a response, the server sends the changes made after that watermark by
+ * other devices, along with the new watermark to pass the next time.
+ *
+ * @author Paul Danyliuk
+ */
+public class SyncMessage {
+
+    /**
+     * ID of the device that sent the request. Servers don't send a device's own changes back to it.
+     */
+    public final String deviceId;
+    /**
+     * Position in the sender's change log up to which the records are included
+     */
+    public final long watermark;
+    /**
+     * Whether there are more changes after the watermark that didn't fit into this batch
+     */
+    public final boolean hasMore;
+    public final List<SyncRecord> records;
+
+    public SyncMessage(String deviceId, long watermark, boolean hasMore, List<SyncRecord> records) {
+        this.deviceId = deviceId;
+        this.watermark = watermark;
+        this.hasMore = hasMore;
+        this.records = records;
+    }
+
+    // Misc (equals/hashCode/toString etc) -------------------------------
+
+    @Override
+    public String toString() {
+        return "SyncMessage{" +
+                "deviceId='" + deviceId + '\'' +
+                ", watermark=" + watermark +
+                ", hasMore=" + hasMore +
+                ", records=" + records.size() +
+                '}';
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.sync;
+
+import com.actinarium.nagbox.model.SyncRecord;
+
+import java.util.List;
+
+/**
+ * Local side of the sync: keeps the tasks, a log of their changes, and per-peer watermarks, i.e. how far the log was
+ * sent to the peer and how far the peer's changes were received from it
+ *
+ * @author Paul Danyliuk
+ */
+public interface SyncStore {
+
+    /**
+     * @param peer peer to sync with
+     * @return watermark of the peer's changes already applied locally, 0 if never synced
+     */
+    long getReceivedWatermark(String peer);
+
+    /**
+     * Get the next batch of local changes not yet sent to the peer. Tasks changed several times are only included
+     * once, in their latest state.
+     *
+     * @param peer     peer to sync with
+     * @param deviceId ID of this device, to put into the message
+     * @param limit    max number of records
+     * @return batch of changes with the watermark of the last change included
+     */
+    SyncMessage getChangesToSend(String peer, String deviceId, int limit);
+
+    /**
+     * Apply a batch of the peer's changes and advance both watermarks, all or nothing
+     *
+     * @param peer              peer to sync with
+     * @param records           the peer's changes
+     * @param sentWatermark     watermark of the local changes that the peer has now received
+     * @param receivedWatermark watermark of the peer's changes that are being applied
+     * @return number of tasks changed locally, or -1 if the changes couldn't be applied
+     */
+    int applyChanges(String peer, List<SyncRecord> records, long sentWatermark, long receivedWatermark);
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.sync;
+
+import java.io.IOException;
+
+/**
+ * Delivers a sync request to the server and returns its response
+ *
+ * @author Paul Danyliuk
+ */
+public interface SyncTransport {
+
+    /**
+     * Send a batch of local changes and get a batch of remote ones. Blocks until the response is received.
+     *
+     * @param request local changes and the watermark of the remote changes received so far
+     * @return remote changes after that watermark
+     * @throws IOException if the exchange failed, in which case the server may or may not have got the request
+     */
+    SyncMessage exchange(SyncMessage request) throws IOException;
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.ui;
+
+import android.app.Dialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.app.DialogFragment;
+import android.support.v7.app.AlertDialog;
+import android.view.LayoutInflater;
+import android.view.View;
+import com.actinarium.nagbox.R;
+import com.actinarium.nagbox.databinding.EditTaskGroupDialogBinding;
+import com.actinarium.nagbox.model.Task;
+import com.actinarium.nagbox.model.TaskGroup;
+
+/**
+ * A popup window for creating and editing task groups. When editing, also allows setting the same interval for all
+ * tasks in the group.
+ *
+ * @author Paul Danyliuk
+ */
+@SuppressWarnings("ConstantConditions")
+public class EditTaskGroupDialogFragment extends DialogFragment {
+
+    public static final String TAG = "EditTaskGroupDialogFragment";
+
+    private static final String ARG_GROUP = "com.actinarium.nagbox.arg.TASK_GROUP";
+    private static final String ARG_TASK_ID = "com.actinarium.nagbox.arg.TASK_ID";
+
+    private Host mHost;
+    private EditTaskGroupDialogBinding mBinding;
+    /**
+     * Group bound to the form, i.e. the one to save
+     */
+    private TaskGroup mGroup;
+
+    /**
+     * Create a new instance of the dialog fragment, either to create or edit a group
+     *
+     * @param groupToEdit group to edit, or <code>null</code> to make a dialog for creating a new group
+     * @param taskToMove  ID of the task to move into the new group, or {@link Task#NO_ID}. Ignored when editing.
+     * @return dialog fragment instance
+     */
+    public static EditTaskGroupDialogFragment newInstance(@Nullable TaskGroup groupToEdit, long taskToMove) {
+        EditTaskGroupDialogFragment fragment = new EditTaskGroupDialogFragment();
+        Bundle args = new Bundle(2);
+        args.putParcelable(ARG_GROUP, groupToEdit);
+        args.putLong(ARG_TASK_ID, taskToMove);
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    @Override
+    public void onAttach(Context context) {
+        super.onAttach(context);
+        try {
+            mHost = (Host) context;
+        } catch (ClassCastException e) {
+            throw new RuntimeException("Activity " + context + " must implement EditTaskGroupDialogFragment.Host", e);
+        }
+    }
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        final TaskGroup groupToEdit = getArguments().getParcelable(ARG_GROUP);
+        final long taskToMove = getArguments().getLong(ARG_TASK_ID, Task.NO_ID);
+        final boolean isEdit = groupToEdit != null;
+
+        if (savedInstanceState != null) {
+            mGroup = savedInstanceState.getParcelable(ARG_GROUP);
+        } else if (isEdit) {
+            mGroup = new TaskGroup(groupToEdit);
+        } else {
+            mGroup = new TaskGroup();
+        }
+
+        mBinding = EditTaskGroupDialogBinding.inflate(LayoutInflater.from(getContext()), null, false);
+        mBinding.setGroup(mGroup);
+        // Tasks are moved into a new group one by one, so there's nothing to set the interval for yet
+        mBinding.groupIntervalInput.setVisibility(isEdit ? View.VISIBLE : View.GONE);
+
+        final AlertDialog dialog = new AlertDialog.Builder(getContext())
+                .setTitle(getString(isEdit ? R.string.dialog_edit_group : R.string.dialog_new_group))
+                .setView(mBinding.getRoot())
+                .setPositiveButton(R.string.dialog_save, null)
+                .setNegativeButton(R.string.dialog_cancel, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialogInterface, int i) {
+                        dialogInterface.cancel();
+                    }
+                })
+                .create();
+
+        dialog.setOnShowListener(new DialogInterface.OnShowListener() {
+            @Override
+            public void onShow(DialogInterface di) {
+                dialog.getButton(DialogInterface.BUTTON_POSITIVE).setOnClickListener(new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        final String intervalText = mBinding.groupIntervalInput.getEditText().getText().toString();
+                        final int interval = intervalText.isEmpty() ? 0 : Integer.parseInt(intervalText);
+                        if (validateForm(intervalText, interval)) {
+                            if (isEdit) {
+                                mHost.saveEditedTaskGroup(mGroup, interval);
+                            } else {
+                                mHost.saveNewTaskGroup(mGroup, taskToMove);
+                            }
+                            dismiss();
+                        }
+                    }
+                });
+            }
+        });
+
+        return dialog;
+    }
+
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelable(ARG_GROUP, mGroup);
+    }
+
+    /**
+     * Perform validation when save is clicked. Show validation errors if needed.
+     *
+     * @param intervalText interval as entered, empty if the intervals should be kept
+     * @param interval     parsed interval
+     * @return true if validation passed, false if not
+     */
+    private boolean validateForm(String intervalText, int interval) {
+        boolean isTitleError = false;
+        boolean isIntervalError = false;
+        if (mGroup.title == null || mGroup.title.trim().isEmpty()) {
+            mBinding.groupTitleInput.setError(getString(R.string.dialog_empty_group_title));
+            isTitleError = true;
+        }
+        if (!intervalText.isEmpty() && interval <= 0) {
+            mBinding.groupIntervalInput.setError(getString(R.string.dialog_invalid_interval));
+            isIntervalError = true;
+        }
+        mBinding.groupTitleInput.setErrorEnabled(isTitleError);
+        mBinding.groupIntervalInput.setErrorEnabled(isIntervalError);
+
+        return !isTitleError && !isIntervalError;
+    }
+
+    /**
+     * Callbacks to the controller (i.e. activity)
+     */
+    public interface Host {
+        void saveNewTaskGroup(TaskGroup group, long taskToMove);
+        void saveEditedTaskGroup(TaskGroup group, int interval);
+    }
+}
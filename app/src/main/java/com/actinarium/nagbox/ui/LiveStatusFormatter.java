@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.ui;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+import com.actinarium.nagbox.R;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Formats the live status of an active task, e.g. "Next nag in 5m, running for 1h 20m", into a reusable buffer. It's
+ * redone for every visible active row each minute, so unlike {@link com.actinarium.nagbox.common.DateUtils} it doesn't
+ * allocate: string resources are split at their placeholders once, and numbers are appended in place.
+ * <p/>
+ * Both durations are counted in whole minutes of the wall clock, same as the start time is shown, so they change right
+ * when the minute turns. Not thread safe.
+ *
+ * @author Paul Danyliuk
+ */
+final class LiveStatusFormatter {
+
+    private final Template mNextNagTemplate;
+    private final Template mNaggingTemplate;
+    private final Template mDaysHoursTemplate;
+    private final Template mHoursMinutesTemplate;
+    private final Template mMinutesTemplate;
+
+    private final StringBuilder mBuilder = new StringBuilder(64);
+
+    LiveStatusFormatter(Context context) {
+        mNextNagTemplate = new Template(context.getString(R.string.status_live_next_nag));
+        mNaggingTemplate = new Template(context.getString(R.string.status_live_nagging));
+        mDaysHoursTemplate = new Template(context.getString(R.string.duration_days_hours));
+        mHoursMinutesTemplate = new Template(context.getString(R.string.duration_hours_minutes));
+        mMinutesTemplate = new Template(context.getString(R.string.duration_minutes));
+    }
+
+    /**
+     * Format the live status of an active task
+     *
+     * @param nextFireAt    when the task nags next
+     * @param lastStartedAt when the task was started
+     * @param now           current time
+     * @return formatted text, valid until the next call
+     */
+    CharSequence format(long nextFireAt, long lastStartedAt, long now) {
+        final long nowMinute = now / DateUtils.MINUTE_IN_MILLIS;
+        // Next nag at 8:40:30 is "in 1m" from 8:39 till 8:40, and "now" from 8:40 on
+        final long minutesLeft = (nextFireAt + DateUtils.MINUTE_IN_MILLIS - 1) / DateUtils.MINUTE_IN_MILLIS - nowMinute;
+        final long minutesRunning = Math.max(nowMinute - lastStartedAt / DateUtils.MINUTE_IN_MILLIS, 0);
+
+        mBuilder.setLength(0);
+        if (minutesLeft > 0) {
+            appendTemplate(mNextNagTemplate, true, minutesLeft, minutesRunning);
+        } else {
+            appendTemplate(mNaggingTemplate, true, minutesRunning, 0);
+        }
+        return mBuilder;
+    }
+
+    /**
+     * Same as {@link com.actinarium.nagbox.common.DateUtils#prettyPrintDuration(Context, long)}, but only down to
+     * minutes
+     */
+    private void appendDuration(long minutes) {
+        final long hours = minutes / 60;
+        final long days = hours / 24;
+        if (days != 0) {
+            appendTemplate(mDaysHoursTemplate, false, days, hours % 24);
+        } else if (hours != 0) {
+            appendTemplate(mHoursMinutesTemplate, false, hours, minutes % 60);
+        } else {
+            appendTemplate(mMinutesTemplate, false, minutes, 0);
+        }
+    }
+
+    private void appendTemplate(Template template, boolean areDurations, long arg0, long arg1) {
+        final int placeholderCount = template.argIndices.length;
+        for (int i = 0; i < placeholderCount; i++) {
+            mBuilder.append(template.literals[i]);
+            final long arg = template.argIndices[i] == 0 ? arg0 : arg1;
+            if (areDurations) {
+                appendDuration(arg);
+            } else {
+                mBuilder.append(arg);
+            }
+        }
+        mBuilder.append(template.literals[placeholderCount]);
+    }
+
+    /**
+     * A format string split into literal text and placeholders. Supports <code>%s</code> and <code>%d</code>,
+     * positional or not, and <code>%%</code>.
+     */
+    private static final class Template {
+        /**
+         * Text before each placeholder, and one more after the last one
+         */
+        final String[] literals;
+        /**
+         * Zero-based index of the argument that goes into each placeholder
+         */
+        final int[] argIndices;
+
+        Template(String format) {
+            final List<String> literals = new ArrayList<>(3);
+            final List<Integer> argIndices = new ArrayList<>(2);
+            final StringBuilder literal = new StringBuilder();
+            int nextArgIndex = 0;
+            for (int i = 0; i < format.length(); i++) {
+                final char c = format.charAt(i);
+                if (c != '%' || i + 1 == format.length()) {
+                    literal.append(c);
+                    continue;
+                }
+                if (format.charAt(i + 1) == '%') {
+                    literal.append('%');
+                    i++;
+                    continue;
+                }
+
+                // Either %1$s or %s
+                int end = i + 1;
+                while (end < format.length() && Character.isDigit(format.charAt(end))) {
+                    end++;
+                }
+                if (end < format.length() && format.charAt(end) == '$' && end > i + 1) {
+                    argIndices.add(Integer.parseInt(format.substring(i + 1, end)) - 1);
+                    end++;
+                } else {
+                    argIndices.add(nextArgIndex++);
+                    end = i + 1;
+                }
+                literals.add(literal.toString());
+                literal.setLength(0);
+                // Skip the conversion character
+                i = end;
+            }
+            literals.add(literal.toString());
+
+            this.literals = literals.toArray(new String[literals.size()]);
+            this.argIndices = new int[argIndices.size()];
+            for (int i = 0; i < this.argIndices.length; i++) {
+                this.argIndices[i] = argIndices.get(i);
+            }
+        }
+    }
+}
@@ -16,37 +16,70 @@
 
 package com.actinarium.nagbox.ui;
 
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.database.Cursor;
 import android.databinding.DataBindingUtil;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.annotation.Nullable;
 import android.support.design.widget.Snackbar;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
+import android.support.v4.content.LocalBroadcastManager;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
 import android.text.format.DateUtils;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import com.actinarium.nagbox.R;
+import com.actinarium.nagbox.common.Clock;
 import com.actinarium.nagbox.common.ViewUtils;
 import com.actinarium.nagbox.database.NagboxContract;
 import com.actinarium.nagbox.database.NagboxContract.BuildingBlocks;
-import com.actinarium.nagbox.database.NagboxContract.TasksTable;
+import com.actinarium.nagbox.database.NagboxContract.TaskGroupsTable;
 import com.actinarium.nagbox.databinding.MainActivityBinding;
+import com.actinarium.nagbox.model.ActiveWindow;
+import com.actinarium.nagbox.model.SyncConfig;
 import com.actinarium.nagbox.model.Task;
+import com.actinarium.nagbox.model.TaskGroup;
 import com.actinarium.nagbox.service.NagboxService;
 
 public class MainActivity extends AppCompatActivity
-        implements TaskItemHolder.Host, EditTaskDialogFragment.Host, LoaderManager.LoaderCallbacks<Cursor> {
+        implements TaskItemHolder.Host, TaskGroupItemHolder.Host, EditTaskDialogFragment.Host,
+        EditTaskGroupDialogFragment.Host, MoveToGroupDialogFragment.Host, SyncServerDialogFragment.Host,
+        LoaderManager.LoaderCallbacks<Cursor> {
 
     private static final String TAG = "MainActivity";
 
     private static final int LOADER_TASKS = 1;
+    private static final int LOADER_TASK_GROUPS = 2;
 
     private MainActivityBinding mBinding;
     private TasksRVAdapter mTasksAdapter;
 
+    /**
+     * One ticker for the whole list, running while the activity is visible. It fires right after each minute turns and
+     * refreshes live statuses of the visible rows only.
+     */
+    private final Handler mTickHandler = new Handler();
+    private final Runnable mTick = new Runnable() {
+        @Override
+        public void run() {
+            final long now = Clock.getInstance().currentTimeMillis();
+            final LinearLayoutManager layoutManager = (LinearLayoutManager) mBinding.recycler.getLayoutManager();
+            mTasksAdapter.notifyLiveStatusChanged(
+                    layoutManager.findFirstVisibleItemPosition(), layoutManager.findLastVisibleItemPosition(), now
+            );
+            mTickHandler.postDelayed(this, DateUtils.MINUTE_IN_MILLIS - now % DateUtils.MINUTE_IN_MILLIS);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -55,15 +88,65 @@ public class MainActivity extends AppCompatActivity
         ViewUtils.setupToolbar(this, mBinding.getRoot(), R.string.app_name, R.dimen.action_bar_elevation);
         ViewUtils.setupRecentsIcon(this, R.color.primaryDark, R.mipmap.ic_launcher);
 
-        mTasksAdapter = new TasksRVAdapter(this, this);
+        mTasksAdapter = new TasksRVAdapter(this, this, this);
         mBinding.recycler.setAdapter(mTasksAdapter);
         mBinding.recycler.setHasFixedSize(true);
 
-        getSupportLoaderManager().initLoader(LOADER_TASKS, null, this);
+        getSupportLoaderManager().initLoader(LOADER_TASKS, null, mTasksLoaderCallbacks);
+        getSupportLoaderManager().initLoader(LOADER_TASK_GROUPS, null, this);
+
+        LocalBroadcastManager.getInstance(this).registerReceiver(
+                mTaskStatusResultReceiver, new IntentFilter(NagboxService.BROADCAST_TASK_STATUS_RESULT)
+        );
+
+        if (savedInstanceState == null) {
+            // Pick up what was changed on other devices. Does nothing if sync is off
+            NagboxService.sync(this);
+        }
 
         // todo: if the app was force closed and started again, make a check whether there are nags to deliver
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Catch up right away, since the list may have been left unattended for a while
+        mTick.run();
+    }
+
+    @Override
+    protected void onStop() {
+        mTickHandler.removeCallbacks(mTick);
+        super.onStop();
+    }
+
+    @Override
+    protected void onDestroy() {
+        LocalBroadcastManager.getInstance(this).unregisterReceiver(mTaskStatusResultReceiver);
+        super.onDestroy();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_main, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.action_stats:
+                startActivity(new Intent(this, StatsActivity.class));
+                return true;
+            case R.id.action_sync_server:
+                final SyncConfig config = SyncConfig.get(this);
+                SyncServerDialogFragment.newInstance(config != null ? config.serverUrl : null)
+                        .show(getSupportFragmentManager(), SyncServerDialogFragment.TAG);
+                return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
     @Override
     public void onSetTaskStatus(Task task, boolean isActive) {
         if (task.isActive() == isActive) {
@@ -71,13 +154,9 @@ public class MainActivity extends AppCompatActivity
             return;
         }
 
-        task.setIsActive(isActive);
-        task.setIsSeen(true);
-        if (isActive) {
-            // Schedule next fire time
-            task.lastStartedAt = System.currentTimeMillis();
-            task.nextFireAt = task.lastStartedAt + task.interval * DateUtils.MINUTE_IN_MILLIS;
-        }
+        task.setStatus(isActive, Clock.getInstance().currentTimeMillis(), ActiveWindow.getEffective(this, task));
+        // Show the new status right away, the adapter will reconcile it with the database later
+        mTasksAdapter.setPendingStatus(task);
         NagboxService.updateTaskStatus(this, task);
     }
 
@@ -104,7 +183,7 @@ public class MainActivity extends AppCompatActivity
     }
 
     public void restoreTask(Task task) {
-        NagboxService.restoreTask(this, task);
+        NagboxService.restoreTask(this, task.id);
     }
 
     @Override
@@ -117,6 +196,58 @@ public class MainActivity extends AppCompatActivity
         NagboxService.updateTask(this, task);
     }
 
+    @Override
+    public void onMoveTaskToGroup(Task task) {
+        MoveToGroupDialogFragment fragment = MoveToGroupDialogFragment.newInstance(task.id, mTasksAdapter.getGroups());
+        fragment.show(getSupportFragmentManager(), MoveToGroupDialogFragment.TAG);
+    }
+
+    @Override
+    public void moveTaskToGroup(long taskId, long groupId) {
+        NagboxService.moveTaskToGroup(this, taskId, groupId);
+    }
+
+    @Override
+    public void createTaskGroupFor(long taskId) {
+        EditTaskGroupDialogFragment fragment = EditTaskGroupDialogFragment.newInstance(null, taskId);
+        fragment.show(getSupportFragmentManager(), EditTaskGroupDialogFragment.TAG);
+    }
+
+    @Override
+    public void onSetTaskGroupStatus(long groupId, boolean isActive) {
+        // Unlike single tasks, the service takes care of start times, so there's one intent for the whole group
+        NagboxService.updateTaskGroupStatus(this, groupId, isActive);
+    }
+
+    @Override
+    public void onEditTaskGroup(TaskGroup group) {
+        EditTaskGroupDialogFragment fragment = EditTaskGroupDialogFragment.newInstance(group, Task.NO_ID);
+        fragment.show(getSupportFragmentManager(), EditTaskGroupDialogFragment.TAG);
+    }
+
+    @Override
+    public void onDeleteTaskGroup(TaskGroup group) {
+        NagboxService.deleteTaskGroup(this, group.id);
+    }
+
+    @Override
+    public void saveNewTaskGroup(TaskGroup group, long taskToMove) {
+        NagboxService.createTaskGroup(this, group, taskToMove);
+    }
+
+    @Override
+    public void saveEditedTaskGroup(TaskGroup group, int interval) {
+        NagboxService.updateTaskGroup(this, group, interval);
+    }
+
+    @Override
+    public void setSyncServer(@Nullable String serverUrl) {
+        SyncConfig.setServerUrl(this, serverUrl);
+        if (serverUrl != null) {
+            NagboxService.sync(this);
+        }
+    }
+
     /**
      * Show the edit/create task dialog. The dialog will make the appropriate service call on its submit
      *
@@ -133,21 +264,52 @@ public class MainActivity extends AppCompatActivity
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
         return new CursorLoader(
                 this,
-                TasksTable.CONTENT_URI,
-                NagboxContract.TASK_FULL_PROJECTION.getColumns(),
+                TaskGroupsTable.CONTENT_URI,
+                NagboxContract.TASK_GROUP_PROJECTION.getColumns(),
                 null, null,
-                BuildingBlocks.ORDER_BY_DISPLAY_ORDER_ASC
+                BuildingBlocks.ORDER_BY_ID_ASC
         );
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        Log.d(TAG, "Loader received new cursor");
-        mTasksAdapter.swapCursor(data, NagboxContract.TASK_FULL_PROJECTION);
+        Log.d(TAG, "Loader " + loader.getId() + " received new cursor");
+        mTasksAdapter.swapGroupsCursor(data, NagboxContract.TASK_GROUP_PROJECTION);
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
-        mTasksAdapter.swapCursor(null, null);
+        mTasksAdapter.swapGroupsCursor(null, null);
     }
+
+    private final LoaderManager.LoaderCallbacks<TaskDisplayModel[]> mTasksLoaderCallbacks
+            = new LoaderManager.LoaderCallbacks<TaskDisplayModel[]>() {
+        @Override
+        public Loader<TaskDisplayModel[]> onCreateLoader(int id, Bundle args) {
+            return new TasksLoader(MainActivity.this);
+        }
+
+        @Override
+        public void onLoadFinished(Loader<TaskDisplayModel[]> loader, TaskDisplayModel[] data) {
+            Log.d(TAG, "Loader " + loader.getId() + " received " + data.length + " tasks");
+            mTasksAdapter.setTasks(data);
+        }
+
+        @Override
+        public void onLoaderReset(Loader<TaskDisplayModel[]> loader) {
+            mTasksAdapter.setTasks(null);
+        }
+    };
+
+    private final BroadcastReceiver mTaskStatusResultReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final long taskId = intent.getLongExtra(NagboxService.EXTRA_RESULT_TASK_ID, Task.NO_ID);
+            final boolean isSuccess = intent.getBooleanExtra(NagboxService.EXTRA_RESULT_IS_SUCCESS, false);
+            mTasksAdapter.onPendingStatusResult(taskId, isSuccess);
+            if (!isSuccess) {
+                Snackbar.make(mBinding.getRoot(), R.string.status_update_failed, Snackbar.LENGTH_SHORT).show();
+            }
+        }
+    };
 }
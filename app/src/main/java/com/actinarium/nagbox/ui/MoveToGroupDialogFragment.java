@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.ui;
+
+import android.app.Dialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.support.annotation.NonNull;
+import android.support.v4.app.DialogFragment;
+import android.support.v7.app.AlertDialog;
+import com.actinarium.nagbox.R;
+import com.actinarium.nagbox.model.TaskGroup;
+
+/**
+ * A list of groups to pick from when moving a task, plus options to ungroup the task or to create a new group for it
+ *
+ * @author Paul Danyliuk
+ */
+@SuppressWarnings("ConstantConditions")
+public class MoveToGroupDialogFragment extends DialogFragment {
+
+    public static final String TAG = "MoveToGroupDialogFragment";
+
+    private static final String ARG_TASK_ID = "com.actinarium.nagbox.arg.TASK_ID";
+    private static final String ARG_GROUPS = "com.actinarium.nagbox.arg.TASK_GROUPS";
+
+    private Host mHost;
+
+    /**
+     * Create a new instance of the dialog fragment
+     *
+     * @param taskId ID of the task to move
+     * @param groups groups to choose from
+     * @return dialog fragment instance
+     */
+    public static MoveToGroupDialogFragment newInstance(long taskId, TaskGroup[] groups) {
+        MoveToGroupDialogFragment fragment = new MoveToGroupDialogFragment();
+        Bundle args = new Bundle(2);
+        args.putLong(ARG_TASK_ID, taskId);
+        args.putParcelableArray(ARG_GROUPS, groups);
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    @Override
+    public void onAttach(Context context) {
+        super.onAttach(context);
+        try {
+            mHost = (Host) context;
+        } catch (ClassCastException e) {
+            throw new RuntimeException("Activity " + context + " must implement MoveToGroupDialogFragment.Host", e);
+        }
+    }
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        final long taskId = getArguments().getLong(ARG_TASK_ID);
+        // Parcelable arrays come back as Parcelable[], not TaskGroup[]
+        final Parcelable[] groups = getArguments().getParcelableArray(ARG_GROUPS);
+
+        // "No group" first, then the groups, then "New group..."
+        final String[] items = new String[groups.length + 2];
+        items[0] = getString(R.string.dialog_no_group);
+        for (int i = 0; i < groups.length; i++) {
+            items[i + 1] = ((TaskGroup) groups[i]).title;
+        }
+        items[items.length - 1] = getString(R.string.dialog_new_group_item);
+
+        return new AlertDialog.Builder(getContext())
+                .setTitle(R.string.dialog_move_to_group)
+                .setItems(items, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialogInterface, int which) {
+                        if (which == 0) {
+                            mHost.moveTaskToGroup(taskId, TaskGroup.NO_ID);
+                        } else if (which <= groups.length) {
+                            mHost.moveTaskToGroup(taskId, ((TaskGroup) groups[which - 1]).id);
+                        } else {
+                            mHost.createTaskGroupFor(taskId);
+                        }
+                    }
+                })
+                .setNegativeButton(R.string.dialog_cancel, null)
+                .create();
+    }
+
+    /**
+     * Callbacks to the controller (i.e. activity)
+     */
+    public interface Host {
+        void moveTaskToGroup(long taskId, long groupId);
+        void createTaskGroupFor(long taskId);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.ui;
+
+import android.database.Cursor;
+import android.databinding.DataBindingUtil;
+import android.os.Bundle;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.CursorLoader;
+import android.support.v4.content.Loader;
+import android.support.v7.app.AppCompatActivity;
+import com.actinarium.nagbox.R;
+import com.actinarium.nagbox.common.ViewUtils;
+import com.actinarium.nagbox.database.NagboxContract;
+import com.actinarium.nagbox.database.NagboxContract.BuildingBlocks;
+import com.actinarium.nagbox.database.NagboxContract.TaskStatsTable;
+import com.actinarium.nagbox.databinding.StatsActivityBinding;
+
+/**
+ * Shows per-task statistics. Only the rollups maintained along with task status are read, so the screen opens equally
+ * fast regardless of how much nag history there is.
+ *
+ * @author Paul Danyliuk
+ */
+public class StatsActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+
+    private static final int LOADER_TASK_STATS = 1;
+
+    private TaskStatsRVAdapter mAdapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        StatsActivityBinding binding = DataBindingUtil.setContentView(this, R.layout.activity_stats);
+        ViewUtils.setupToolbar(this, binding.getRoot(), R.string.stats, R.dimen.action_bar_elevation)
+                .setDisplayHomeAsUpEnabled(true);
+
+        mAdapter = new TaskStatsRVAdapter(this);
+        binding.recycler.setAdapter(mAdapter);
+        binding.recycler.setHasFixedSize(true);
+
+        getSupportLoaderManager().initLoader(LOADER_TASK_STATS, null, this);
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        return new CursorLoader(
+                this,
+                TaskStatsTable.CONTENT_URI,
+                NagboxContract.TASK_STATS_PROJECTION.getColumns(),
+                null, null,
+                BuildingBlocks.ORDER_BY_GROUP_AND_DISPLAY_ORDER_ASC
+        );
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        mAdapter.swapCursor(data, NagboxContract.TASK_STATS_PROJECTION);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        mAdapter.swapCursor(null, null);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.ui;
+
+import android.app.Dialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.app.DialogFragment;
+import android.support.v7.app.AlertDialog;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.webkit.URLUtil;
+import com.actinarium.nagbox.R;
+import com.actinarium.nagbox.databinding.SyncServerDialogBinding;
+
+/**
+ * A popup window for setting the server to sync tasks with, or turning sync off
+ *
+ * @author Paul Danyliuk
+ */
+@SuppressWarnings("ConstantConditions")
+public class SyncServerDialogFragment extends DialogFragment {
+
+    public static final String TAG = "SyncServerDialogFragment";
+
+    private static final String ARG_SERVER_URL = "com.actinarium.nagbox.arg.SERVER_URL";
+
+    private Host mHost;
+    private SyncServerDialogBinding mBinding;
+
+    /**
+     * Create a new instance of the dialog fragment
+     *
+     * @param serverUrl URL of the server the app syncs with now, or <code>null</code> if sync is off
+     * @return dialog fragment instance
+     */
+    public static SyncServerDialogFragment newInstance(@Nullable String serverUrl) {
+        SyncServerDialogFragment fragment = new SyncServerDialogFragment();
+        Bundle args = new Bundle(1);
+        args.putString(ARG_SERVER_URL, serverUrl);
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    @Override
+    public void onAttach(Context context) {
+        super.onAttach(context);
+        try {
+            mHost = (Host) context;
+        } catch (ClassCastException e) {
+            throw new RuntimeException("Activity " + context + " must implement SyncServerDialogFragment.Host", e);
+        }
+    }
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        final String serverUrl = getArguments().getString(ARG_SERVER_URL);
+
+        mBinding = SyncServerDialogBinding.inflate(LayoutInflater.from(getContext()), null, false);
+        if (savedInstanceState == null) {
+            // Otherwise the edit text restores what was typed on its own
+            mBinding.serverUrlInput.getEditText().setText(serverUrl);
+        }
+
+        final AlertDialog.Builder builder = new AlertDialog.Builder(getContext())
+                .setTitle(R.string.dialog_sync_server)
+                .setView(mBinding.getRoot())
+                .setPositiveButton(R.string.dialog_save, null)
+                .setNegativeButton(R.string.dialog_cancel, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialogInterface, int i) {
+                        dialogInterface.cancel();
+                    }
+                });
+        if (serverUrl != null) {
+            builder.setNeutralButton(R.string.dialog_sync_off, new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialogInterface, int i) {
+                    mHost.setSyncServer(null);
+                }
+            });
+        }
+        final AlertDialog dialog = builder.create();
+
+        dialog.setOnShowListener(new DialogInterface.OnShowListener() {
+            @Override
+            public void onShow(DialogInterface di) {
+                dialog.getButton(DialogInterface.BUTTON_POSITIVE).setOnClickListener(new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        final String url = mBinding.serverUrlInput.getEditText().getText().toString().trim();
+                        if (validateForm(url)) {
+                            mHost.setSyncServer(url);
+                            dismiss();
+                        }
+                    }
+                });
+            }
+        });
+
+        return dialog;
+    }
+
+    /**
+     * Perform validation when save is clicked. Show validation errors if needed.
+     *
+     * @param url URL as entered
+     * @return true if validation passed, false if not
+     */
+    private boolean validateForm(String url) {
+        final boolean isError = !URLUtil.isNetworkUrl(url);
+        if (isError) {
+            mBinding.serverUrlInput.setError(getString(R.string.dialog_invalid_sync_server_url));
+        }
+        mBinding.serverUrlInput.setErrorEnabled(isError);
+        return !isError;
+    }
+
+    /**
+     * Callbacks to the controller (i.e. activity)
+     */
+    public interface Host {
+        /**
+         * @param serverUrl URL of the server to sync with, or <code>null</code> to turn sync off
+         */
+        void setSyncServer(@Nullable String serverUrl);
+    }
+}
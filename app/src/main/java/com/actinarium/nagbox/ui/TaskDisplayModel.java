@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.ui;
+
+import android.content.Context;
+import android.support.v4.util.LongSparseArray;
+import android.text.format.DateUtils;
+import android.util.SparseArray;
+import com.actinarium.nagbox.R;
+import com.actinarium.nagbox.model.Task;
+
+/**
+ * Immutable representation of a task row with all texts already formatted, so that binding a list item only assigns
+ * them. Built off the main thread by {@link TasksLoader}.
+ *
+ * @author Paul Danyliuk
+ */
+public final class TaskDisplayModel {
+
+    public final long id;
+    public final long groupId;
+    public final int displayOrder;
+    public final String title;
+    public final boolean isActive;
+    public final long nextFireAt;
+    public final long lastStartedAt;
+    public final String statusText;
+    public final String intervalText;
+
+    // Never given away, only its copies
+    private final Task mTask;
+
+    private TaskDisplayModel(Task task, String statusText, String intervalText) {
+        this.id = task.id;
+        this.groupId = task.groupId;
+        this.displayOrder = task.displayOrder;
+        this.title = task.title;
+        this.isActive = task.isActive();
+        this.nextFireAt = task.nextFireAt;
+        this.lastStartedAt = task.lastStartedAt;
+        this.statusText = statusText;
+        this.intervalText = intervalText;
+        mTask = task;
+    }
+
+    /**
+     * Get the task this model was made of
+     *
+     * @return a new copy of the task, free to modify
+     */
+    public Task getTask() {
+        return new Task(mTask);
+    }
+
+    /**
+     * Makes display models for a batch of tasks. Many tasks share the same interval or were started at the same minute
+     * (e.g. with their group), so formatted texts are cached for the lifetime of the factory. Not thread safe.
+     */
+    static final class Factory {
+
+        private final Context mContext;
+        private final String mIdleText;
+        private final SparseArray<String> mIntervalTexts = new SparseArray<>();
+        // Keyed by minute, since that's the finest unit the start time is shown with
+        private final LongSparseArray<String> mStartTimeTexts = new LongSparseArray<>();
+
+        Factory(Context context) {
+            mContext = context;
+            mIdleText = context.getString(R.string.status_idle);
+        }
+
+        /**
+         * Make a display model for given task
+         *
+         * @param task task to make a model of. Must not be modified afterwards.
+         * @return display model
+         */
+        TaskDisplayModel create(Task task) {
+            String intervalText = mIntervalTexts.get(task.interval);
+            if (intervalText == null) {
+                intervalText = mContext.getResources()
+                        .getQuantityString(R.plurals.nag_minutes, task.interval, task.interval);
+                mIntervalTexts.put(task.interval, intervalText);
+            }
+
+            String statusText = mIdleText;
+            if (task.isActive()) {
+                final long minute = task.lastStartedAt / DateUtils.MINUTE_IN_MILLIS;
+                statusText = mStartTimeTexts.get(minute);
+                if (statusText == null) {
+                    statusText = com.actinarium.nagbox.common.DateUtils.prettyPrintStartTime(mContext, task.lastStartedAt);
+                    mStartTimeTexts.put(minute, statusText);
+                }
+            }
+
+            return new TaskDisplayModel(task, statusText, intervalText);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.ui;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.v7.widget.RecyclerView;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.PopupMenu;
+import com.actinarium.nagbox.R;
+import com.actinarium.nagbox.database.Projection;
+import com.actinarium.nagbox.databinding.TaskGroupItemBinding;
+import com.actinarium.nagbox.model.TaskGroup;
+
+/**
+ * View holder for a task group header, which starts the section with the tasks of that group
+ *
+ * @author Paul Danyliuk
+ */
+public class TaskGroupItemHolder extends RecyclerView.ViewHolder implements PopupMenu.OnMenuItemClickListener {
+
+    private final TaskGroupItemBinding mBinding;
+    private final TaskGroup mGroup;
+    private final Context mContext;
+    private final Host mHost;
+
+    public TaskGroupItemHolder(TaskGroupItemBinding binding, Host host) {
+        super(binding.getRoot());
+        mBinding = binding;
+        mContext = binding.getRoot().getContext();
+        mBinding.setController(this);
+        mHost = host;
+
+        // Same as with tasks, mutate one object instead of creating new ones on each bind
+        mGroup = new TaskGroup();
+    }
+
+    /**
+     * Bind this view holder to the data from the cursor at given position using provided projection mapping.
+     *
+     * @param cursor     Cursor to bind data from
+     * @param projection Projection object to map the cursor to the model object
+     */
+    public void bind(Cursor cursor, Projection<TaskGroup> projection) {
+        projection.mapCursorToModel(cursor, mGroup);
+        mBinding.setGroup(mGroup);
+        mBinding.executePendingBindings();
+    }
+
+    @SuppressWarnings("unused")
+    public void onMenuClick(View actionMenuBtn) {
+        PopupMenu menu = new PopupMenu(mContext, actionMenuBtn);
+        menu.inflate(R.menu.menu_group_actions);
+        menu.setOnMenuItemClickListener(this);
+        menu.show();
+    }
+
+    @Override
+    public boolean onMenuItemClick(MenuItem menuItem) {
+        switch (menuItem.getItemId()) {
+            case R.id.action_start_all:
+                mHost.onSetTaskGroupStatus(mGroup.id, true);
+                return true;
+            case R.id.action_stop_all:
+                mHost.onSetTaskGroupStatus(mGroup.id, false);
+                return true;
+            case R.id.action_edit:
+                mHost.onEditTaskGroup(new TaskGroup(mGroup));
+                return true;
+            case R.id.action_ungroup:
+                mHost.onDeleteTaskGroup(new TaskGroup(mGroup));
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Callbacks to the host (i.e. activity) to handle things triggered from this view item
+     */
+    public interface Host {
+        void onSetTaskGroupStatus(long groupId, boolean isActive);
+        void onEditTaskGroup(TaskGroup group);
+        void onDeleteTaskGroup(TaskGroup group);
+    }
+}
@@ -17,13 +17,12 @@
 package com.actinarium.nagbox.ui;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.PopupMenu;
 import com.actinarium.nagbox.R;
-import com.actinarium.nagbox.database.Projection;
 import com.actinarium.nagbox.databinding.TaskItemBinding;
 import com.actinarium.nagbox.model.Task;
 
@@ -35,9 +34,11 @@ import com.actinarium.nagbox.model.Task;
 public class TaskItemHolder extends RecyclerView.ViewHolder implements PopupMenu.OnMenuItemClickListener {
 
     private final TaskItemBinding mBinding;
-    private final Task mTask;
+    private TaskDisplayModel mModel;
     private final Context mContext;
     private final Host mHost;
+    // Live status goes to the view through this buffer, so that rebinding it each minute doesn't allocate
+    private char[] mLiveStatusChars = new char[64];
 
     public TaskItemHolder(TaskItemBinding binding, Host host) {
         super(binding.getRoot());
@@ -45,22 +46,42 @@ public class TaskItemHolder extends RecyclerView.ViewHolder implements PopupMenu
         mContext = binding.getRoot().getContext();
         mBinding.setController(this);
         mHost = host;
-
-        // Instead of creating new instances of Tasks each time, we will mutate one object
-        mTask = new Task();
     }
 
     /**
-     * Bind this view holder to the data from the cursor at given position using provided projection mapping.
+     * Bind this view holder to the task. All texts are already formatted, so this only assigns them, except for the
+     * live status.
      *
-     * @param cursor     Cursor to bind data from
-     * @param projection Projection object to map the cursor to the model object
+     * @param model     display model of the task
+     * @param formatter formatter for the live status
+     * @param now       current time
      */
-    public void bind(Cursor cursor, Projection<Task> projection) {
-        projection.mapCursorToModel(cursor, mTask);
-        mBinding.setTask(mTask);
+    public void bind(TaskDisplayModel model, LiveStatusFormatter formatter, long now) {
+        mModel = model;
+        mBinding.setModel(model);
         // Don't wait till the next frame. Without this you'll see switch animation when the app is started.
         mBinding.executePendingBindings();
+        bindLiveStatus(formatter, now);
+    }
+
+    /**
+     * Update only the live status (time to the next nag and how long the task runs) of the bound task, if it's active
+     *
+     * @param formatter formatter for the live status
+     * @param now       current time
+     */
+    public void bindLiveStatus(LiveStatusFormatter formatter, long now) {
+        if (!mModel.isActive) {
+            return;
+        }
+        final CharSequence text = formatter.format(mModel.nextFireAt, mModel.lastStartedAt, now);
+        final int length = text.length();
+        if (mLiveStatusChars.length < length) {
+            mLiveStatusChars = new char[length];
+        }
+        TextUtils.getChars(text, 0, length, mLiveStatusChars, 0);
+        // Unlike setText(CharSequence), this one doesn't copy the text into a new string
+        mBinding.liveStatus.setText(mLiveStatusChars, 0, length);
     }
 
     @SuppressWarnings("unused")
@@ -72,7 +93,7 @@ public class TaskItemHolder extends RecyclerView.ViewHolder implements PopupMenu
     @SuppressWarnings("unused")
     public void onTaskStatusChanged(boolean isActive) {
         // Tell the controller to set task status (idle/running) and schedule it for alarm
-        mHost.onSetTaskStatus(new Task(mTask), isActive);
+        mHost.onSetTaskStatus(mModel.getTask(), isActive);
     }
 
     @SuppressWarnings("unused")
@@ -88,12 +109,14 @@ public class TaskItemHolder extends RecyclerView.ViewHolder implements PopupMenu
     public boolean onMenuItemClick(MenuItem menuItem) {
         switch (menuItem.getItemId()) {
             case R.id.action_edit:
-                // Passing the copy of this mutable task to be on the safe side
-                mHost.onEditTask(new Task(mTask));
+                mHost.onEditTask(mModel.getTask());
+                return true;
+            case R.id.action_move_to_group:
+                mHost.onMoveTaskToGroup(mModel.getTask());
                 return true;
             case R.id.action_delete:
                 // Since we have a Context here, we could call the service directly. But let's keep things consistent.
-                mHost.onDeleteTask(new Task(mTask));
+                mHost.onDeleteTask(mModel.getTask());
                 return true;
         }
         return false;
@@ -105,6 +128,7 @@ public class TaskItemHolder extends RecyclerView.ViewHolder implements PopupMenu
     public interface Host {
         void onSetTaskStatus(Task task, boolean isActive);
         void onEditTask(Task task);
+        void onMoveTaskToGroup(Task task);
         void onDeleteTask(Task task);
     }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.ui;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.support.v7.widget.RecyclerView;
+import com.actinarium.nagbox.R;
+import com.actinarium.nagbox.common.DateUtils;
+import com.actinarium.nagbox.database.Projection;
+import com.actinarium.nagbox.databinding.TaskStatsItemBinding;
+import com.actinarium.nagbox.model.TaskStats;
+
+/**
+ * View holder for the statistics of a single task
+ *
+ * @author Paul Danyliuk
+ */
+public class TaskStatsItemHolder extends RecyclerView.ViewHolder {
+
+    private final TaskStatsItemBinding mBinding;
+    private final TaskStats mStats;
+    private final Context mContext;
+
+    public TaskStatsItemHolder(TaskStatsItemBinding binding) {
+        super(binding.getRoot());
+        mBinding = binding;
+        mContext = binding.getRoot().getContext();
+
+        // Same as with groups, mutate one object instead of creating new ones on each bind
+        mStats = new TaskStats();
+    }
+
+    /**
+     * Bind this view holder to the data from the cursor at given position using provided projection mapping.
+     *
+     * @param cursor     Cursor to bind data from
+     * @param projection Projection object to map the cursor to the model object
+     * @param now        Current time, to account for the running session
+     * @param today      Current local day, to tell whether the streak is still alive
+     */
+    public void bind(Cursor cursor, Projection<TaskStats> projection, long now, long today) {
+        projection.mapCursorToModel(cursor, mStats);
+        final Resources res = mContext.getResources();
+
+        mBinding.setTitle(mStats.title);
+        mBinding.setNagCountText(mStats.nagCount == 0
+                ? res.getString(R.string.stats_no_nags)
+                : res.getQuantityString(R.plurals.stats_nag_count, mStats.nagCount, mStats.nagCount));
+        mBinding.setActiveTimeText(res.getString(
+                R.string.stats_active_time, DateUtils.prettyPrintDuration(mContext, mStats.getActiveTime(now))
+        ));
+        final long averageResponseTime = mStats.getAverageDismissTime();
+        mBinding.setResponseTimeText(averageResponseTime == -1
+                ? res.getString(R.string.stats_no_responses)
+                : res.getString(R.string.stats_average_response_time,
+                        DateUtils.prettyPrintDuration(mContext, averageResponseTime)));
+        final int currentStreak = mStats.getCurrentStreak(today);
+        mBinding.setStreakText(res.getQuantityString(
+                R.plurals.stats_streak, currentStreak, currentStreak, mStats.bestStreak
+        ));
+        mBinding.executePendingBindings();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.ui;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+import com.actinarium.nagbox.common.Clock;
+import com.actinarium.nagbox.database.Projection;
+import com.actinarium.nagbox.databinding.TaskStatsItemBinding;
+import com.actinarium.nagbox.model.TaskStats;
+
+import java.util.TimeZone;
+
+/**
+ * A recycler view adapter for the list of task statistics, backed by a cursor of precomputed rollups
+ *
+ * @author Paul Danyliuk
+ */
+public class TaskStatsRVAdapter extends RecyclerView.Adapter<TaskStatsItemHolder> {
+
+    private LayoutInflater mInflater;
+    private Cursor mCursor;
+    private Projection<TaskStats> mProjection;
+
+    /**
+     * Time the data was loaded at, so that all items are consistent with each other
+     */
+    private long mNow;
+    private long mToday;
+
+    public TaskStatsRVAdapter(Context context) {
+        mInflater = LayoutInflater.from(context);
+        setHasStableIds(true);
+    }
+
+    @Override
+    public TaskStatsItemHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        TaskStatsItemBinding binding = TaskStatsItemBinding.inflate(mInflater, parent, false);
+        return new TaskStatsItemHolder(binding);
+    }
+
+    @Override
+    public void onBindViewHolder(TaskStatsItemHolder holder, int position) {
+        mCursor.moveToPosition(position);
+        holder.bind(mCursor, mProjection, mNow, mToday);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mCursor != null ? mCursor.getCount() : 0;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        mCursor.moveToPosition(position);
+        return mProjection.getId(mCursor);
+    }
+
+    /**
+     * Swap in a new cursor of task stats and a projection that maps this cursor to the {@link TaskStats} model. Returns
+     * the old cursor. The returned old cursor is <b>not closed.</b>
+     *
+     * @param newCursor  The new cursor to be used.
+     * @param projection The projection object that maps this new cursor to the model.
+     * @return Returns the previously set cursor, or null if there wasn't one or it's the same.
+     */
+    public Cursor swapCursor(Cursor newCursor, Projection<TaskStats> projection) {
+        if (newCursor != null && projection == null) {
+            throw new IllegalArgumentException("Cannot provide projection=null when newCursor is not null");
+        }
+        if (newCursor == mCursor) {
+            return null;
+        }
+        mProjection = projection;
+        Cursor oldCursor = mCursor;
+        mCursor = newCursor;
+        mNow = Clock.getInstance().currentTimeMillis();
+        mToday = TaskStats.getLocalDay(mNow, TimeZone.getDefault());
+        notifyDataSetChanged();
+        return oldCursor;
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.ui;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.content.AsyncTaskLoader;
+import android.support.v4.os.OperationCanceledException;
+import android.support.v4.util.LongSparseArray;
+import com.actinarium.nagbox.database.NagboxContract;
+import com.actinarium.nagbox.database.NagboxContract.BuildingBlocks;
+import com.actinarium.nagbox.database.NagboxContract.TasksTable;
+import com.actinarium.nagbox.model.Task;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Loads all tasks for the list in the order {@link TasksRVAdapter} expects, and while still in the background, makes a
+ * {@link TaskDisplayModel} for each of them.
+ * <p/>
+ * Unlike a plain {@link android.support.v4.content.CursorLoader}, doesn't re-query everything on every change:
+ * <ul>
+ * <li>reloads are throttled, so a burst of notifications (e.g. when an alarm fires or a group is toggled) results in
+ * at most one reload per {@link #UPDATE_THROTTLE}, and changes that arrive while a load is pending are folded into
+ * it;</li>
+ * <li>if all changes since the last load came for individual task URIs, only those tasks are queried and patched into
+ * the previous result, as long as they stay in place.</li>
+ * </ul>
+ *
+ * @author Paul Danyliuk
+ */
+public class TasksLoader extends AsyncTaskLoader<TaskDisplayModel[]> {
+
+    /**
+     * Minimum time (ms) between two loads
+     */
+    private static final long UPDATE_THROTTLE = 300;
+    /**
+     * Patching more rows than this isn't much cheaper than loading everything. Also used by the widget.
+     */
+    static final int MAX_PATCHED_TASKS = 32;
+
+    private final ContentObserver mObserver;
+    private boolean mIsObserverRegistered;
+
+    /**
+     * Last delivered result
+     */
+    private TaskDisplayModel[] mTasks;
+
+    // Guarded by this. Result of the last completed load, even if it wasn't delivered, and what changed since
+    private TaskDisplayModel[] mLastLoaded;
+    private final LongSparseArray<Boolean> mChangedIds = new LongSparseArray<>();
+    private boolean mIsFullReloadNeeded = true;
+
+    public TasksLoader(Context context) {
+        super(context);
+        setUpdateThrottle(UPDATE_THROTTLE);
+        mObserver = new ContentObserver(new Handler(Looper.getMainLooper())) {
+            @Override
+            public void onChange(boolean selfChange) {
+                onChange(selfChange, null);
+            }
+
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                onTasksChanged(uri);
+            }
+        };
+    }
+
+    @Override
+    public TaskDisplayModel[] loadInBackground() {
+        final TaskDisplayModel[] base;
+        final long[] changedIds;
+        synchronized (this) {
+            if (mIsFullReloadNeeded || mLastLoaded == null || mChangedIds.size() > MAX_PATCHED_TASKS) {
+                base = null;
+                changedIds = null;
+            } else {
+                base = mLastLoaded;
+                changedIds = new long[mChangedIds.size()];
+                for (int i = 0; i < changedIds.length; i++) {
+                    changedIds[i] = mChangedIds.keyAt(i);
+                }
+            }
+            mIsFullReloadNeeded = false;
+            mChangedIds.clear();
+        }
+
+        TaskDisplayModel[] result = base != null ? patch(base, changedIds) : null;
+        if (result == null) {
+            try {
+                result = loadAll();
+            } catch (OperationCanceledException e) {
+                // Whatever changed is still unaccounted for
+                synchronized (this) {
+                    mIsFullReloadNeeded = true;
+                }
+                throw e;
+            }
+        }
+
+        synchronized (this) {
+            mLastLoaded = result;
+        }
+        return result;
+    }
+
+    @Override
+    public void deliverResult(TaskDisplayModel[] tasks) {
+        if (isReset()) {
+            return;
+        }
+        mTasks = tasks;
+        if (isStarted()) {
+            super.deliverResult(tasks);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mIsObserverRegistered) {
+            getContext().getContentResolver().registerContentObserver(TasksTable.CONTENT_URI, true, mObserver);
+            mIsObserverRegistered = true;
+        }
+        if (mTasks != null) {
+            deliverResult(mTasks);
+        }
+        if (takeContentChanged() || mTasks == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mIsObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mIsObserverRegistered = false;
+        }
+        mTasks = null;
+        synchronized (this) {
+            mLastLoaded = null;
+            mIsFullReloadNeeded = true;
+            mChangedIds.clear();
+        }
+    }
+
+    /**
+     * Remember what has changed and request a reload. Called on the main thread.
+     *
+     * @param uri URI that was notified, or <code>null</code> if not known
+     */
+    private void onTasksChanged(Uri uri) {
+        synchronized (this) {
+            if (isTaskItemUri(uri)) {
+                mChangedIds.put(ContentUris.parseId(uri), Boolean.TRUE);
+            } else {
+                mIsFullReloadNeeded = true;
+            }
+        }
+        onContentChanged();
+    }
+
+    /**
+     * @return whether the URI is the one from {@link TasksTable#getUriForItem(long)}
+     */
+    private static boolean isTaskItemUri(Uri uri) {
+        if (uri == null || !NagboxContract.CONTENT_AUTHORITY.equals(uri.getAuthority())) {
+            return false;
+        }
+        final List<String> segments = uri.getPathSegments();
+        return segments.size() == 2 && NagboxContract.PATH_TASKS.equals(segments.get(0));
+    }
+
+    private TaskDisplayModel[] loadAll() {
+        final Cursor cursor = getContext().getContentResolver().query(
+                TasksTable.CONTENT_URI,
+                NagboxContract.TASK_FULL_PROJECTION.getColumns(),
+                null, null,
+                BuildingBlocks.ORDER_BY_GROUP_AND_DISPLAY_ORDER_ASC
+        );
+        if (cursor == null) {
+            return new TaskDisplayModel[0];
+        }
+
+        try {
+            final TaskDisplayModel.Factory factory = new TaskDisplayModel.Factory(getContext());
+            final TaskDisplayModel[] models = new TaskDisplayModel[cursor.getCount()];
+            while (cursor.moveToNext()) {
+                if (isLoadInBackgroundCanceled()) {
+                    throw new OperationCanceledException();
+                }
+                models[cursor.getPosition()] = factory.create(
+                        NagboxContract.TASK_FULL_PROJECTION.mapCursorToModel(cursor, null)
+                );
+            }
+            return models;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Query only the changed tasks and put them into a copy of the previous result
+     *
+     * @param base       previous result
+     * @param changedIds IDs of the tasks that were changed or deleted
+     * @return patched result, or <code>null</code> if some tasks can't be patched in place (created, or moved within the
+     * list) and everything needs to be loaded anew
+     */
+    private TaskDisplayModel[] patch(TaskDisplayModel[] base, long[] changedIds) {
+        final LongSparseArray<Integer> positions = new LongSparseArray<>(changedIds.length);
+        for (int i = 0; i < base.length; i++) {
+            if (Arrays.binarySearch(changedIds, base[i].id) >= 0) {
+                positions.put(base[i].id, i);
+            }
+        }
+
+        final String[] args = new String[changedIds.length];
+        final StringBuilder selection = new StringBuilder(TasksTable._ID).append(" IN (");
+        for (int i = 0; i < changedIds.length; i++) {
+            args[i] = Long.toString(changedIds[i]);
+            selection.append(i == 0 ? "?" : ", ?");
+        }
+        selection.append(')');
+        final Cursor cursor = getContext().getContentResolver().query(
+                TasksTable.CONTENT_URI,
+                NagboxContract.TASK_FULL_PROJECTION.getColumns(),
+                selection.toString(), args,
+                null
+        );
+        if (cursor == null) {
+            return null;
+        }
+
+        final TaskDisplayModel[] result = Arrays.copyOf(base, base.length);
+        final TaskDisplayModel.Factory factory = new TaskDisplayModel.Factory(getContext());
+        try {
+            while (cursor.moveToNext()) {
+                final Task task = NagboxContract.TASK_FULL_PROJECTION.mapCursorToModel(cursor, null);
+                final Integer position = positions.get(task.id);
+                if (position == null || !isInPlace(result[position], task)) {
+                    return null;
+                }
+                result[position] = factory.create(task);
+                positions.remove(task.id);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (positions.size() == 0) {
+            return result;
+        }
+        // What's left was deleted
+        final TaskDisplayModel[] trimmed = new TaskDisplayModel[result.length - positions.size()];
+        int i = 0;
+        for (TaskDisplayModel model : result) {
+            if (positions.get(model.id) == null) {
+                trimmed[i++] = model;
+            }
+        }
+        return trimmed;
+    }
+
+    /**
+     * Check that the task would still be at the same position if the whole list was re-queried, i.e. it's still in the
+     * same group and has the same order
+     */
+    private static boolean isInPlace(TaskDisplayModel old, Task task) {
+        return old.groupId == task.groupId && old.displayOrder == task.displayOrder;
+    }
+}
@@ -14,80 +14,332 @@
  * limitations under the License.
  */
 
+
 package com.actinarium.nagbox.ui;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.support.v4.util.LongSparseArray;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
+import com.actinarium.nagbox.common.Clock;
 import com.actinarium.nagbox.database.Projection;
+import com.actinarium.nagbox.databinding.TaskGroupItemBinding;
 import com.actinarium.nagbox.databinding.TaskItemBinding;
 import com.actinarium.nagbox.model.Task;
+import com.actinarium.nagbox.model.TaskGroup;
+
+import java.util.List;
 
 /**
- * A recycler view adapter for a list of tasks
+ * A recycler view adapter for a list of tasks. Ungrouped tasks go first, then each group makes a section with a header
+ * followed by its tasks. For that, the tasks must be sorted by group and the groups cursor by ID. Tasks are bound from
+ * display models precomputed by {@link TasksLoader}, so binding doesn't format anything.
+ * <p/>
+ * Status changes are shown optimistically: a pending change is overlaid on top of the loaded task until the loaded
+ * task shows it or a later status change, or until saving it fails, in which case the loaded status is shown again. A
+ * load that started before the change was saved still shows the old status, so the overlay stays.
+ * <p/>
+ * Live statuses of active tasks are refreshed with {@link #notifyLiveStatusChanged(int, int, long)}, which rebinds only
+ * the live status of the given rows rather than whole items.
  *
  * @author Paul Danyliuk
  */
-public class TasksRVAdapter extends RecyclerView.Adapter<TaskItemHolder> {
+public class TasksRVAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+    private static final int VIEW_TYPE_TASK = 0;
+    private static final int VIEW_TYPE_GROUP = 1;
+
+    /**
+     * Payload for partial binds that only update the live status
+     */
+    private static final Object PAYLOAD_LIVE_STATUS = new Object();
 
+    private Context mContext;
     private LayoutInflater mInflater;
     private TaskItemHolder.Host mHost;
-    private Cursor mCursor;
-    private Projection<Task> mTaskProjection;
+    private TaskGroupItemHolder.Host mGroupHost;
+    private TaskDisplayModel[] mTasks;
+    private Cursor mGroupsCursor;
+    private Projection<TaskGroup> mGroupProjection;
+    private final LiveStatusFormatter mLiveStatusFormatter;
+    /**
+     * Time of the last live status refresh, for the partial binds it triggered
+     */
+    private long mLiveStatusTime;
+
+    /**
+     * Maps adapter positions to the data: non-negative values are positions in the tasks array, and negative
+     * values <code>v</code> stand for group headers at position <code>-1 - v</code> in the groups cursor
+     */
+    private int[] mRows = new int[0];
+    private int mRowCount;
 
-    public TasksRVAdapter(Context context, TaskItemHolder.Host host) {
+    /**
+     * Status changes that are shown but not yet confirmed by the loaded data, keyed by task ID
+     */
+    private final LongSparseArray<PendingStatus> mPendingStatuses = new LongSparseArray<>();
+
+    public TasksRVAdapter(Context context, TaskItemHolder.Host host, TaskGroupItemHolder.Host groupHost) {
+        mContext = context;
         mInflater = LayoutInflater.from(context);
         mHost = host;
+        mGroupHost = groupHost;
+        mLiveStatusFormatter = new LiveStatusFormatter(context);
         setHasStableIds(true);
     }
 
     @Override
-    public TaskItemHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+    public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        if (viewType == VIEW_TYPE_GROUP) {
+            TaskGroupItemBinding binding = TaskGroupItemBinding.inflate(mInflater, parent, false);
+            return new TaskGroupItemHolder(binding, mGroupHost);
+        }
         TaskItemBinding binding = TaskItemBinding.inflate(mInflater, parent, false);
         return new TaskItemHolder(binding, mHost);
     }
 
     @Override
-    public void onBindViewHolder(TaskItemHolder holder, int position) {
-        mCursor.moveToPosition(position);
-        holder.bind(mCursor, mTaskProjection);
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        final int row = mRows[position];
+        if (row < 0) {
+            mGroupsCursor.moveToPosition(-1 - row);
+            ((TaskGroupItemHolder) holder).bind(mGroupsCursor, mGroupProjection);
+        } else {
+            final long now = Clock.getInstance().currentTimeMillis();
+            ((TaskItemHolder) holder).bind(getTaskModel(row), mLiveStatusFormatter, now);
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position, List<Object> payloads) {
+        // Payloads only ever hold the live status marker, so any other change means a full bind
+        if (payloads.isEmpty() || mRows[position] < 0 || !isLiveStatusOnly(payloads)) {
+            onBindViewHolder(holder, position);
+        } else {
+            ((TaskItemHolder) holder).bindLiveStatus(mLiveStatusFormatter, mLiveStatusTime);
+        }
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return mRows[position] < 0 ? VIEW_TYPE_GROUP : VIEW_TYPE_TASK;
     }
 
     @Override
     public int getItemCount() {
-        return mCursor == null ? 0 : mCursor.getCount();
+        return mRowCount;
     }
 
     @Override
     public long getItemId(int position) {
-        // No need to check for cursor nullity, as this will never be called when there are 0 items
-        mCursor.moveToPosition(position);
-        return mTaskProjection.getId(mCursor);
+        final int row = mRows[position];
+        if (row < 0) {
+            // Task IDs are positive, so negative IDs (below RecyclerView.NO_ID) won't collide with them
+            mGroupsCursor.moveToPosition(-1 - row);
+            return -1 - mGroupProjection.getId(mGroupsCursor);
+        }
+        return mTasks[row].id;
     }
 
     /**
-     * Swap in a new cursor and a projection that maps this cursor to the {@link Task} model. Returns the old cursor.
-     * The returned old cursor is <b>not closed.</b>
+     * Get all groups currently displayed in the list
+     *
+     * @return array of groups, can be empty
+     */
+    public TaskGroup[] getGroups() {
+        final int count = mGroupsCursor == null ? 0 : mGroupsCursor.getCount();
+        TaskGroup[] groups = new TaskGroup[count];
+        for (int i = 0; i < count; i++) {
+            mGroupsCursor.moveToPosition(i);
+            groups[i] = mGroupProjection.mapCursorToModel(mGroupsCursor, null);
+        }
+        return groups;
+    }
+
+    /**
+     * Set new tasks to display, as loaded by {@link TasksLoader}. Pending status changes that the new data already
+     * reflects or has overridden are dropped.
+     *
+     * @param tasks display models of the tasks, or <code>null</code> if there are none yet
+     */
+    public void setTasks(TaskDisplayModel[] tasks) {
+        if (tasks == mTasks) {
+            return;
+        }
+        mTasks = tasks;
+        reconcilePendingStatuses();
+        buildRows();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Show the new status of the task right away, without waiting for it to be saved and loaded back
+     *
+     * @param task task with the new status, as it's going to be saved
+     */
+    public void setPendingStatus(Task task) {
+        final TaskDisplayModel model = new TaskDisplayModel.Factory(mContext).create(new Task(task));
+        mPendingStatuses.put(task.id, new PendingStatus(model));
+        notifyTaskChanged(task.id);
+    }
+
+    /**
+     * Process the outcome of saving a pending status change. If saved, the change is kept until the loaded data catches
+     * up; otherwise it's rolled back.
+     *
+     * @param taskId    ID of the task
+     * @param isSuccess whether the status was saved
+     */
+    public void onPendingStatusResult(long taskId, boolean isSuccess) {
+        if (isSuccess || mPendingStatuses.get(taskId) == null) {
+            return;
+        }
+        mPendingStatuses.remove(taskId);
+        notifyTaskChanged(taskId);
+    }
+
+    /**
+     * Refresh the live status of active tasks in given range of positions, e.g. those currently visible. Other rows
+     * will show the new time once bound anyway.
+     *
+     * @param fromPosition first adapter position, inclusive
+     * @param toPosition   last adapter position, inclusive
+     * @param now          current time
+     */
+    public void notifyLiveStatusChanged(int fromPosition, int toPosition, long now) {
+        mLiveStatusTime = now;
+        final int end = Math.min(toPosition, mRowCount - 1);
+        for (int position = Math.max(fromPosition, 0); position <= end; position++) {
+            final int row = mRows[position];
+            if (row >= 0 && getTaskModel(row).isActive) {
+                notifyItemChanged(position, PAYLOAD_LIVE_STATUS);
+            }
+        }
+    }
+
+    private static boolean isLiveStatusOnly(List<Object> payloads) {
+        for (int i = 0, size = payloads.size(); i < size; i++) {
+            if (payloads.get(i) != PAYLOAD_LIVE_STATUS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private TaskDisplayModel getTaskModel(int row) {
+        final TaskDisplayModel loaded = mTasks[row];
+        final PendingStatus pending = mPendingStatuses.get(loaded.id);
+        return pending != null ? pending.model : loaded;
+    }
+
+    /**
+     * Drop pending changes that loaded tasks already show, or that are no longer relevant: the task is gone, or its
+     * status has changed again since then (e.g. stopped from the notification). Anything else was loaded before the
+     * change was saved, so it's kept even if the change is saved by now.
+     */
+    private void reconcilePendingStatuses() {
+        if (mPendingStatuses.size() == 0) {
+            return;
+        }
+        final LongSparseArray<TaskDisplayModel> loaded = new LongSparseArray<>(mTasks == null ? 0 : mTasks.length);
+        if (mTasks != null) {
+            for (TaskDisplayModel model : mTasks) {
+                loaded.put(model.id, model);
+            }
+        }
+        for (int i = mPendingStatuses.size() - 1; i >= 0; i--) {
+            final PendingStatus pending = mPendingStatuses.valueAt(i);
+            final TaskDisplayModel model = loaded.get(pending.model.id);
+            if (model == null || pending.isShownBy(model) || pending.isOverriddenBy(model)) {
+                mPendingStatuses.removeAt(i);
+            }
+        }
+    }
+
+    private void notifyTaskChanged(long taskId) {
+        for (int position = 0; position < mRowCount; position++) {
+            final int row = mRows[position];
+            if (row >= 0 && mTasks[row].id == taskId) {
+                notifyItemChanged(position);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Swap in a new cursor of task groups and a projection that maps this cursor to the {@link TaskGroup} model. Returns
+     * the old cursor. The returned old cursor is <b>not closed.</b>
      *
      * @param newCursor  The new cursor to be used.
      * @param projection The projection object that maps this new cursor to the model.
-     * @return Returns the previously set cursor, or null if there wasn't one. If the given new cursor is the same
-     * instance is the previously set cursor, null is also returned.
+     * @return Returns the previously set cursor, or null if there wasn't one or it's the same.
      */
-    public Cursor swapCursor(Cursor newCursor, Projection<Task> projection) {
+    public Cursor swapGroupsCursor(Cursor newCursor, Projection<TaskGroup> projection) {
         if (newCursor != null && projection == null) {
             throw new IllegalArgumentException("Cannot provide projection=null when newCursor is not null");
         }
-        if (newCursor == mCursor) {
+        if (newCursor == mGroupsCursor) {
             return null;
         }
-        // Normally you wouldn't supply a new projection with an old cursor, right? For simplicity, not checking this.
-        mTaskProjection = projection;
-        Cursor oldCursor = mCursor;
-        mCursor = newCursor;
+        mGroupProjection = projection;
+        Cursor oldCursor = mGroupsCursor;
+        mGroupsCursor = newCursor;
+        buildRows();
         notifyDataSetChanged();
         return oldCursor;
     }
+
+    /**
+     * Lay out sections by walking both cursors once. Tasks and groups are loaded separately, so there may briefly be
+     * tasks whose group hasn't loaded yet &mdash; these are shown in the preceding section rather than dropped.
+     */
+    private void buildRows() {
+        final int taskCount = mTasks == null ? 0 : mTasks.length;
+        final int groupCount = mGroupsCursor == null ? 0 : mGroupsCursor.getCount();
+        if (mRows.length < taskCount + groupCount) {
+            mRows = new int[taskCount + groupCount];
+        }
+
+        int row = 0;
+        int task = 0;
+        for (int group = -1; group < groupCount; group++) {
+            long groupId = TaskGroup.NO_ID;
+            if (group >= 0) {
+                mGroupsCursor.moveToPosition(group);
+                groupId = mGroupProjection.getId(mGroupsCursor);
+                mRows[row++] = -1 - group;
+            }
+            while (task < taskCount && mTasks[task].groupId <= groupId) {
+                mRows[row++] = task++;
+            }
+        }
+        // Whatever's left belongs to groups that aren't loaded yet
+        while (task < taskCount) {
+            mRows[row++] = task++;
+        }
+        mRowCount = row;
+    }
+
+    private static final class PendingStatus {
+        final TaskDisplayModel model;
+
+        PendingStatus(TaskDisplayModel model) {
+            this.model = model;
+        }
+
+        boolean isShownBy(TaskDisplayModel loaded) {
+            return loaded.isActive == model.isActive && loaded.statusText.equals(model.statusText);
+        }
+
+        /**
+         * Starting a task sets its start time and stopping keeps it, so the loaded task has changed after this one if
+         * it was started later, or if it was stopped after this start was saved
+         */
+        boolean isOverriddenBy(TaskDisplayModel loaded) {
+            return loaded.lastStartedAt > model.lastStartedAt
+                    || model.isActive && loaded.lastStartedAt == model.lastStartedAt;
+        }
+    }
 }
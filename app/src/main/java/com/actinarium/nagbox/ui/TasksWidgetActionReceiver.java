@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.ui;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import com.actinarium.nagbox.common.Clock;
+import com.actinarium.nagbox.database.NagboxContract;
+import com.actinarium.nagbox.database.NagboxContract.TasksTable;
+import com.actinarium.nagbox.model.ActiveWindow;
+import com.actinarium.nagbox.model.Task;
+import com.actinarium.nagbox.service.NagboxService;
+
+/**
+ * Handles the home screen widget's own broadcasts: start/stop button presses and the minute tick. Kept apart from
+ * {@link TasksWidgetProvider} and not exported, since the provider must be reachable by the system, while these
+ * actions must only come from the widget's pending intents.
+ *
+ * @author Paul Danyliuk
+ */
+public class TasksWidgetActionReceiver extends BroadcastReceiver {
+
+    public static final String ACTION_TICK = "com.actinarium.nagbox.intent.action.WIDGET_TICK";
+    public static final String ACTION_TOGGLE_TASK = "com.actinarium.nagbox.intent.action.WIDGET_TOGGLE_TASK";
+
+    public static final String EXTRA_TASK_ID = "com.actinarium.nagbox.extra.TASK_ID";
+    public static final String EXTRA_IS_ACTIVE = "com.actinarium.nagbox.extra.IS_ACTIVE";
+
+    public TasksWidgetActionReceiver() {}
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        final String action = intent.getAction();
+        if (ACTION_TICK.equals(action)) {
+            TasksWidgetProvider.notifyDataChanged(context);
+            TasksWidgetProvider.scheduleTick(context);
+        } else if (ACTION_TOGGLE_TASK.equals(action)) {
+            toggleTask(context, intent.getLongExtra(EXTRA_TASK_ID, Task.NO_ID),
+                    intent.getBooleanExtra(EXTRA_IS_ACTIVE, false));
+        }
+    }
+
+    /**
+     * Start or stop the task the same way the app does. The task is read anew, since the row the user pressed may be
+     * out of date, e.g. if the task has just been deleted.
+     */
+    private static void toggleTask(Context context, long taskId, boolean isActive) {
+        final Cursor cursor = context.getContentResolver().query(
+                TasksTable.getUriForItem(taskId),
+                NagboxContract.TASK_FULL_PROJECTION.getColumns(),
+                null, null, null
+        );
+        if (cursor == null) {
+            return;
+        }
+        final Task task;
+        try {
+            task = cursor.moveToFirst() ? NagboxContract.TASK_FULL_PROJECTION.mapCursorToModel(cursor, null) : null;
+        } finally {
+            cursor.close();
+        }
+        if (task == null || task.isActive() == isActive) {
+            return;
+        }
+
+        task.setStatus(isActive, Clock.getInstance().currentTimeMillis(), ActiveWindow.getEffective(context, task));
+        NagboxService.updateTaskStatus(context, task);
+    }
+}
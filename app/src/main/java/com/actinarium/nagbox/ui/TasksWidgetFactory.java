@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.ui;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LongSparseArray;
+import android.text.format.DateUtils;
+import android.util.SparseArray;
+import android.widget.RemoteViews;
+import android.widget.RemoteViewsService;
+import com.actinarium.nagbox.R;
+import com.actinarium.nagbox.common.Clock;
+import com.actinarium.nagbox.database.NagboxContract;
+import com.actinarium.nagbox.database.NagboxContract.BuildingBlocks;
+import com.actinarium.nagbox.database.NagboxContract.TaskChangesTable;
+import com.actinarium.nagbox.database.NagboxContract.TasksTable;
+import com.actinarium.nagbox.model.Task;
+import com.actinarium.nagbox.model.TaskChange;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Makes the rows of the {@link TasksWidgetProvider tasks widget}. Rows are formatted once and kept along with their
+ * {@link RemoteViews}, so that the launcher scrolling the list doesn't rebuild anything:
+ * <ul>
+ * <li>on data set changes, only the tasks that changed since the last time are read, as told by the task change log.
+ * Unlike content notifications, the log doesn't miss anything while the factory isn't around;</li>
+ * <li>time to the next nag is the only text that changes by itself. On minute ticks only the rows where it's
+ * different are rebuilt.</li>
+ * </ul>
+ * The framework calls the factory methods one at a time, so it doesn't need to be thread safe.
+ *
+ * @author Paul Danyliuk
+ */
+class TasksWidgetFactory implements RemoteViewsService.RemoteViewsFactory {
+
+    /**
+     * How long (ms) to wait for more notifications before refreshing the widget, since they come in bursts
+     */
+    private static final long DATA_CHANGE_DELAY = 300;
+    private static final long NOT_LOADED = -1;
+    private static final int NO_MINUTES_LEFT = Integer.MIN_VALUE;
+
+    /**
+     * Same order as {@link BuildingBlocks#ORDER_BY_GROUP_AND_DISPLAY_ORDER_ASC}, ungrouped tasks having the lowest ID
+     */
+    private static final Comparator<Row> ROW_ORDER = new Comparator<Row>() {
+        @Override
+        public int compare(Row lhs, Row rhs) {
+            if (lhs.groupId != rhs.groupId) {
+                return lhs.groupId < rhs.groupId ? -1 : 1;
+            }
+            return lhs.displayOrder < rhs.displayOrder ? -1 : (lhs.displayOrder == rhs.displayOrder ? 0 : 1);
+        }
+    };
+
+    private final Context mContext;
+    private final ContentResolver mContentResolver;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ContentObserver mObserver;
+    private final Runnable mNotifyDataChanged = new Runnable() {
+        @Override
+        public void run() {
+            TasksWidgetProvider.notifyDataChanged(mContext);
+        }
+    };
+
+    private final String mIdleText;
+    private final String mStartText;
+    private final String mStopText;
+    // Keyed by whole minutes left, the finest unit the time to the next nag is shown with
+    private final SparseArray<String> mTimeToNagTexts = new SparseArray<>();
+
+    // Rows in the order they are shown, and the same rows by task ID
+    private final List<Row> mRows = new ArrayList<>();
+    private final LongSparseArray<Row> mRowsById = new LongSparseArray<>();
+    /**
+     * Sequence number of the last task change the rows reflect
+     */
+    private long mLastSeq = NOT_LOADED;
+
+    TasksWidgetFactory(Context context) {
+        mContext = context;
+        mContentResolver = context.getContentResolver();
+        mIdleText = context.getString(R.string.status_idle);
+        mStartText = context.getString(R.string.widget_start);
+        mStopText = context.getString(R.string.widget_stop);
+        mObserver = new ContentObserver(mHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                // Which tasks changed is learned from the log anyway, so only coalesce the notifications
+                mHandler.removeCallbacks(mNotifyDataChanged);
+                mHandler.postDelayed(mNotifyDataChanged, DATA_CHANGE_DELAY);
+            }
+        };
+    }
+
+    @Override
+    public void onCreate() {
+        mContentResolver.registerContentObserver(TasksTable.CONTENT_URI, true, mObserver);
+    }
+
+    @Override
+    public void onDestroy() {
+        mContentResolver.unregisterContentObserver(mObserver);
+        mHandler.removeCallbacks(mNotifyDataChanged);
+    }
+
+    @Override
+    public void onDataSetChanged() {
+        if (mLastSeq == NOT_LOADED || !patch()) {
+            loadAll();
+        }
+        updateTimeToNag(Clock.getInstance().currentTimeMillis());
+    }
+
+    @Override
+    public int getCount() {
+        return mRows.size();
+    }
+
+    @Override
+    public RemoteViews getViewAt(int position) {
+        if (position >= mRows.size()) {
+            // The list may ask for a row that's gone before it learns the new count
+            return null;
+        }
+        final Row row = mRows.get(position);
+        if (row.views == null) {
+            final RemoteViews views = new RemoteViews(mContext.getPackageName(), R.layout.widget_task_item);
+            views.setTextViewText(R.id.widget_task_title, row.title);
+            views.setTextViewText(R.id.widget_task_status, row.statusText);
+            views.setTextViewText(R.id.widget_task_toggle, row.isActive ? mStopText : mStartText);
+            views.setOnClickFillInIntent(
+                    R.id.widget_task_toggle, TasksWidgetProvider.getToggleFillInIntent(row.id, !row.isActive)
+            );
+            row.views = views;
+        }
+        return row.views;
+    }
+
+    @Override
+    public RemoteViews getLoadingView() {
+        return null;
+    }
+
+    @Override
+    public int getViewTypeCount() {
+        return 1;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mRows.get(position).id;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    private void loadAll() {
+        // Read the watermark first: whatever changes in between will be read again next time, which is harmless
+        mLastSeq = queryLastSeq();
+        mRows.clear();
+        mRowsById.clear();
+
+        final Cursor cursor = mContentResolver.query(
+                TasksTable.CONTENT_URI,
+                NagboxContract.TASK_FULL_PROJECTION.getColumns(),
+                null, null,
+                BuildingBlocks.ORDER_BY_GROUP_AND_DISPLAY_ORDER_ASC
+        );
+        if (cursor == null) {
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                final Row row = new Row(NagboxContract.TASK_FULL_PROJECTION.mapCursorToModel(cursor, null));
+                mRows.add(row);
+                mRowsById.put(row.id, row);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long queryLastSeq() {
+        final Cursor cursor = mContentResolver.query(
+                TaskChangesTable.getUriForChangesSince(0),
+                new String[]{BuildingBlocks.AGGR_COL_MAX_SEQ},
+                null, null, null
+        );
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Read the tasks that changed since the last time, and update, add, or remove their rows
+     *
+     * @return <code>false</code> if it's cheaper or necessary to load everything anew
+     */
+    private boolean patch() {
+        final Cursor changes = mContentResolver.query(
+                TaskChangesTable.getUriForChangesSince(mLastSeq),
+                NagboxContract.TASK_CHANGE_PROJECTION.getColumns(),
+                null, null, null
+        );
+        if (changes == null) {
+            return false;
+        }
+
+        final TaskChange change = new TaskChange();
+        final LongSparseArray<Row> changedRows = new LongSparseArray<>(changes.getCount());
+        long lastSeq = mLastSeq;
+        try {
+            if (changes.getCount() > TasksLoader.MAX_PATCHED_TASKS) {
+                return false;
+            }
+            while (changes.moveToNext()) {
+                NagboxContract.TASK_CHANGE_PROJECTION.mapCursorToModel(changes, change);
+                if (change.type == TaskChange.TYPE_TRUNCATED) {
+                    return false;
+                }
+                changedRows.put(change.taskId, mRowsById.get(change.taskId));
+                lastSeq = Math.max(lastSeq, change.seq);
+            }
+        } finally {
+            changes.close();
+        }
+        if (changedRows.size() == 0) {
+            return true;
+        }
+
+        final String[] args = new String[changedRows.size()];
+        final StringBuilder selection = new StringBuilder(TasksTable._ID).append(" IN (");
+        for (int i = 0; i < args.length; i++) {
+            args[i] = Long.toString(changedRows.keyAt(i));
+            selection.append(i == 0 ? "?" : ", ?");
+        }
+        selection.append(')');
+        final Cursor cursor = mContentResolver.query(
+                TasksTable.CONTENT_URI,
+                NagboxContract.TASK_FULL_PROJECTION.getColumns(),
+                selection.toString(), args,
+                null
+        );
+        if (cursor == null) {
+            return false;
+        }
+
+        boolean isOrderChanged = false;
+        try {
+            while (cursor.moveToNext()) {
+                final Task task = NagboxContract.TASK_FULL_PROJECTION.mapCursorToModel(cursor, null);
+                final Row row = new Row(task);
+                final Row oldRow = changedRows.get(task.id);
+                if (oldRow == null) {
+                    mRows.add(row);
+                    isOrderChanged = true;
+                } else {
+                    mRows.set(mRows.indexOf(oldRow), row);
+                    isOrderChanged |= ROW_ORDER.compare(oldRow, row) != 0;
+                }
+                mRowsById.put(task.id, row);
+                changedRows.remove(task.id);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // What's left was deleted
+        for (int i = 0; i < changedRows.size(); i++) {
+            final Row deletedRow = changedRows.valueAt(i);
+            if (deletedRow != null) {
+                mRows.remove(deletedRow);
+                mRowsById.remove(deletedRow.id);
+            }
+        }
+        if (isOrderChanged) {
+            Collections.sort(mRows, ROW_ORDER);
+        }
+        mLastSeq = lastSeq;
+        return true;
+    }
+
+    /**
+     * Set the status text of every row whose time to the next nag is now different, and drop its views
+     */
+    private void updateTimeToNag(long now) {
+        for (int i = 0, size = mRows.size(); i < size; i++) {
+            final Row row = mRows.get(i);
+            final int minutesLeft = row.isActive
+                    ? (int) ((row.nextFireAt - now + DateUtils.MINUTE_IN_MILLIS - 1) / DateUtils.MINUTE_IN_MILLIS)
+                    : NO_MINUTES_LEFT;
+            if (minutesLeft == row.minutesLeft && row.statusText != null) {
+                continue;
+            }
+            row.minutesLeft = minutesLeft;
+            if (!row.isActive) {
+                row.statusText = mIdleText;
+            } else {
+                final int key = Math.max(minutesLeft, 0);
+                String text = mTimeToNagTexts.get(key);
+                if (text == null) {
+                    text = com.actinarium.nagbox.common.DateUtils.prettyPrintTimeToNag(mContext, key);
+                    mTimeToNagTexts.put(key, text);
+                }
+                row.statusText = text;
+            }
+            row.views = null;
+        }
+    }
+
+    /**
+     * A formatted row, with its views built on demand
+     */
+    private static final class Row {
+        final long id;
+        final long groupId;
+        final int displayOrder;
+        final String title;
+        final boolean isActive;
+        final long nextFireAt;
+
+        int minutesLeft = NO_MINUTES_LEFT;
+        String statusText;
+        RemoteViews views;
+
+        Row(Task task) {
+            id = task.id;
+            groupId = task.groupId;
+            displayOrder = task.displayOrder;
+            title = task.title;
+            isActive = task.isActive();
+            nextFireAt = task.nextFireAt;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.ui;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.text.format.DateUtils;
+import android.widget.RemoteViews;
+import com.actinarium.nagbox.R;
+import com.actinarium.nagbox.common.Clock;
+
+/**
+ * Home screen widget listing the tasks, with a button to start or stop each one. Rows are made by
+ * {@link TasksWidgetFactory}. The widget is refreshed when the tasks change, and otherwise once a minute, right after
+ * the minute turns, so that the time to the next nag stays current. The minute tick doesn't wake the device up: nobody
+ * looks at the home screen while it's asleep. Both the button presses and the tick are handled by
+ * {@link TasksWidgetActionReceiver}, which other apps can't send broadcasts to.
+ *
+ * @author Paul Danyliuk
+ */
+public class TasksWidgetProvider extends AppWidgetProvider {
+
+    public TasksWidgetProvider() {}
+
+    /**
+     * Make the widgets reload their rows, if there are any widgets
+     *
+     * @param context context
+     */
+    public static void notifyDataChanged(Context context) {
+        final AppWidgetManager manager = AppWidgetManager.getInstance(context);
+        final int[] ids = manager.getAppWidgetIds(new ComponentName(context, TasksWidgetProvider.class));
+        if (ids.length != 0) {
+            manager.notifyAppWidgetViewDataChanged(ids, R.id.widget_task_list);
+        }
+    }
+
+    /**
+     * Get the intent to fill the toggle button's pending intent template with
+     *
+     * @param taskId   ID of the task the button is for
+     * @param isActive whether pressing the button should start or stop the task
+     * @return fill-in intent for the row
+     */
+    static Intent getToggleFillInIntent(long taskId, boolean isActive) {
+        return new Intent()
+                .putExtra(TasksWidgetActionReceiver.EXTRA_TASK_ID, taskId)
+                .putExtra(TasksWidgetActionReceiver.EXTRA_IS_ACTIVE, isActive);
+    }
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        final RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_tasks);
+        views.setRemoteAdapter(R.id.widget_task_list, new Intent(context, TasksWidgetService.class));
+        views.setEmptyView(R.id.widget_task_list, R.id.widget_empty);
+
+        final Intent toggleIntent = new Intent(context, TasksWidgetActionReceiver.class)
+                .setAction(TasksWidgetActionReceiver.ACTION_TOGGLE_TASK);
+        views.setPendingIntentTemplate(
+                R.id.widget_task_list,
+                PendingIntent.getBroadcast(context, 0, toggleIntent, PendingIntent.FLAG_UPDATE_CURRENT)
+        );
+        views.setOnClickPendingIntent(
+                R.id.widget_header,
+                PendingIntent.getActivity(context, 0, new Intent(context, MainActivity.class), 0)
+        );
+
+        for (int appWidgetId : appWidgetIds) {
+            appWidgetManager.updateAppWidget(appWidgetId, views);
+        }
+        scheduleTick(context);
+    }
+
+    @Override
+    public void onDisabled(Context context) {
+        final PendingIntent pendingIntent = getTickIntent(context, PendingIntent.FLAG_NO_CREATE);
+        if (pendingIntent != null) {
+            ((AlarmManager) context.getSystemService(Context.ALARM_SERVICE)).cancel(pendingIntent);
+            pendingIntent.cancel();
+        }
+    }
+
+    /**
+     * Set the alarm for the next refresh right after the minute turns. Its intent is the same every time, so this
+     * replaces the previous alarm if there's one.
+     */
+    static void scheduleTick(Context context) {
+        final long now = Clock.getInstance().currentTimeMillis();
+        final long nextMinute = (now / DateUtils.MINUTE_IN_MILLIS + 1) * DateUtils.MINUTE_IN_MILLIS;
+        final AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        final PendingIntent pendingIntent = getTickIntent(context, PendingIntent.FLAG_UPDATE_CURRENT);
+        if (Build.VERSION.SDK_INT >= 19) {
+            alarmManager.setExact(AlarmManager.RTC, nextMinute, pendingIntent);
+        } else {
+            alarmManager.set(AlarmManager.RTC, nextMinute, pendingIntent);
+        }
+    }
+
+    private static PendingIntent getTickIntent(Context context, int flags) {
+        final Intent intent = new Intent(context, TasksWidgetActionReceiver.class)
+                .setAction(TasksWidgetActionReceiver.ACTION_TICK);
+        return PendingIntent.getBroadcast(context, 0, intent, flags);
+    }
+}
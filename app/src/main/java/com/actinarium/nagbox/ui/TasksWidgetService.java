@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.ui;
+
+import android.content.Intent;
+import android.widget.RemoteViewsService;
+
+/**
+ * Serves the rows of the {@link TasksWidgetProvider tasks widget}. All widgets bind with the same intent, so the
+ * framework keeps one factory for them, along with its cached rows.
+ *
+ * @author Paul Danyliuk
+ */
+public class TasksWidgetService extends RemoteViewsService {
+
+    @Override
+    public RemoteViewsFactory onGetViewFactory(Intent intent) {
+        return new TasksWidgetFactory(getApplicationContext());
+    }
+}
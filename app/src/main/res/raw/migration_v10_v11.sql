@@ -0,0 +1,9 @@
+CREATE TABLE task_changes (
+    "seq" INTEGER PRIMARY KEY AUTOINCREMENT,
+    "task_id" INTEGER,
+    "type" INTEGER NOT NULL);
+
+CREATE INDEX task_changes_task_id ON task_changes ("task_id", "seq");
+
+INSERT INTO task_changes ("task_id", "type")
+SELECT _id, 0 FROM tasks WHERE deleted_at IS NULL ORDER BY _id
\ No newline at end of file
@@ -0,0 +1,13 @@
+ALTER TABLE tasks ADD COLUMN "sync_id" TEXT;
+ALTER TABLE tasks ADD COLUMN "description_changed_at" INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE tasks ADD COLUMN "status_changed_at" INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE tasks ADD COLUMN "deletion_changed_at" INTEGER NOT NULL DEFAULT 0;
+
+UPDATE tasks SET sync_id = lower(hex(randomblob(16))), deletion_changed_at = COALESCE(deleted_at, 0);
+
+CREATE UNIQUE INDEX tasks_sync_id ON tasks ("sync_id");
+
+CREATE TABLE sync_peers (
+    "peer" TEXT PRIMARY KEY NOT NULL,
+    "sent_seq" INTEGER NOT NULL DEFAULT 0,
+    "received_seq" INTEGER NOT NULL DEFAULT 0)
\ No newline at end of file
@@ -0,0 +1 @@
+CREATE INDEX tasks_flags_next_fire_at ON tasks ("flags", "next_fire_at")
\ No newline at end of file
@@ -0,0 +1,5 @@
+CREATE TABLE alarm_lateness (
+    "task_id" INTEGER NOT NULL,
+    "bucket" INTEGER NOT NULL,
+    "count" INTEGER NOT NULL,
+    PRIMARY KEY ("task_id", "bucket"))
@@ -0,0 +1,8 @@
+ALTER TABLE tasks
+ADD COLUMN "active_from" INTEGER;
+
+ALTER TABLE tasks
+ADD COLUMN "active_to" INTEGER;
+
+ALTER TABLE tasks
+ADD COLUMN "active_days" INTEGER
\ No newline at end of file
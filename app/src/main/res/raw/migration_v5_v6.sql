@@ -0,0 +1,8 @@
+ALTER TABLE tasks
+ADD COLUMN "escalation_step" INTEGER;
+
+ALTER TABLE tasks
+ADD COLUMN "min_interval" INTEGER;
+
+ALTER TABLE tasks
+ADD COLUMN "jitter" INTEGER
\ No newline at end of file
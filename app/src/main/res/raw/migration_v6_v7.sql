@@ -0,0 +1,8 @@
+CREATE TABLE task_groups (
+    "_id" INTEGER PRIMARY KEY,
+    "title" TEXT NOT NULL);
+
+ALTER TABLE tasks
+ADD COLUMN "group_id" INTEGER;
+
+CREATE INDEX tasks_group_id ON tasks ("group_id")
\ No newline at end of file
@@ -0,0 +1,4 @@
+ALTER TABLE tasks
+ADD COLUMN "deleted_at" INTEGER;
+
+CREATE INDEX tasks_deleted_at ON tasks ("deleted_at", "group_id", "display_order")
\ No newline at end of file
@@ -0,0 +1,14 @@
+CREATE TABLE nag_events (
+    "_id" INTEGER PRIMARY KEY,
+    "task_id" INTEGER NOT NULL,
+    "type" INTEGER NOT NULL,
+    "timestamp" INTEGER NOT NULL);
+
+CREATE INDEX nag_events_timestamp ON nag_events ("timestamp");
+
+CREATE TABLE nag_daily_stats (
+    "task_id" INTEGER NOT NULL,
+    "day" INTEGER NOT NULL,
+    "type" INTEGER NOT NULL,
+    "count" INTEGER NOT NULL,
+    PRIMARY KEY ("task_id", "day", "type"))
\ No newline at end of file
@@ -0,0 +1,16 @@
+CREATE TABLE task_stats (
+    "task_id" INTEGER PRIMARY KEY,
+    "nag_count" INTEGER NOT NULL DEFAULT 0,
+    "active_time" INTEGER NOT NULL DEFAULT 0,
+    "dismiss_count" INTEGER NOT NULL DEFAULT 0,
+    "dismiss_time" INTEGER NOT NULL DEFAULT 0,
+    "unseen_since" INTEGER,
+    "current_streak" INTEGER NOT NULL DEFAULT 0,
+    "best_streak" INTEGER NOT NULL DEFAULT 0,
+    "last_nag_day" INTEGER);
+
+INSERT INTO task_stats ("task_id", "nag_count")
+SELECT t._id,
+    (SELECT COUNT(*) FROM nag_events e WHERE e.task_id = t._id AND e.type = 0)
+    + (SELECT COALESCE(SUM(s.count), 0) FROM nag_daily_stats s WHERE s.task_id = t._id AND s.type = 0)
+FROM tasks t
\ No newline at end of file
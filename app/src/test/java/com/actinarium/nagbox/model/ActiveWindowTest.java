@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.model;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ActiveWindow} time arithmetic. All dates are in New York time: in 2016 the clocks there jumped from
+ * 2:00 to 3:00 on Sunday, March 13, and went back from 2:00 to 1:00 on Sunday, November 6.
+ *
+ * @author Paul Danyliuk
+ */
+public class ActiveWindowTest {
+
+    private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private static final ActiveWindow DAYTIME = new ActiveWindow(9 * 60, 17 * 60, ActiveWindow.ALL_DAYS);
+    private static final ActiveWindow NIGHTTIME = new ActiveWindow(22 * 60, 2 * 60, ActiveWindow.ALL_DAYS);
+    private static final ActiveWindow WEEKDAY_NIGHTS = new ActiveWindow(22 * 60, 2 * 60, ActiveWindow.WEEKDAYS);
+    private static final ActiveWindow WEEKDAYS = new ActiveWindow(0, ActiveWindow.MINUTES_IN_DAY, ActiveWindow.WEEKDAYS);
+
+    @Test
+    public void nextActiveTime_withinWindow_isSameTime() throws Exception {
+        final long time = at("2016-10-12 10:30");
+        assertEquals(time, DAYTIME.getNextActiveTime(time, NEW_YORK));
+        assertEquals(time, ActiveWindow.ALWAYS.getNextActiveTime(time, NEW_YORK));
+    }
+
+    @Test
+    public void nextQuietTime_outsideWindow_isSameTime() throws Exception {
+        final long time = at("2016-10-12 20:00");
+        assertEquals(time, DAYTIME.getNextQuietTime(time, NEW_YORK));
+    }
+
+    @Test
+    public void nextQuietTime_alwaysActive_isNever() throws Exception {
+        assertEquals(Long.MAX_VALUE, ActiveWindow.ALWAYS.getNextQuietTime(at("2016-10-12 10:30"), NEW_YORK));
+    }
+
+    @Test
+    public void nextActiveTime_springForward_keepsWallClockTime() throws Exception {
+        final long evening = at("2016-03-12 18:00");
+        final long next = DAYTIME.getNextActiveTime(evening, NEW_YORK);
+        assertEquals(at("2016-03-13 09:00"), next);
+        // 15 hours on the wall clock, but the night was an hour shorter
+        assertEquals(14 * HOUR, next - evening);
+    }
+
+    @Test
+    public void nextActiveTime_fallBack_keepsWallClockTime() throws Exception {
+        final long evening = at("2016-11-05 18:00");
+        final long next = DAYTIME.getNextActiveTime(evening, NEW_YORK);
+        assertEquals(at("2016-11-06 09:00"), next);
+        assertEquals(16 * HOUR, next - evening);
+    }
+
+    @Test
+    public void nextActiveTime_springForward_opensInGap_movesPastGap() throws Exception {
+        // 2:30 doesn't exist on that day, so the window opens an hour later on the wall clock, but at the same instant
+        final ActiveWindow window = new ActiveWindow(2 * 60 + 30, 10 * 60, ActiveWindow.ALL_DAYS);
+        final long next = window.getNextActiveTime(at("2016-03-13 00:00"), NEW_YORK);
+        assertEquals(at("2016-03-13 03:30"), next);
+        assertEquals(at("2016-03-13 01:30") + HOUR, next);
+    }
+
+    @Test
+    public void nextQuietTime_springForward_wrappingWindow_closesAtWallClockTime() throws Exception {
+        final long lateEvening = at("2016-03-12 23:00");
+        final long quietAt = NIGHTTIME.getNextQuietTime(lateEvening, NEW_YORK);
+        assertEquals(at("2016-03-13 03:00"), quietAt);
+        // 2:00 is skipped, and the window closes the moment clocks jump to 3:00
+        assertEquals(3 * HOUR, quietAt - lateEvening);
+    }
+
+    @Test
+    public void nextQuietTime_fallBack_wrappingWindow_includesRepeatedHour() throws Exception {
+        final long lateEvening = at("2016-11-05 23:00");
+        final long quietAt = NIGHTTIME.getNextQuietTime(lateEvening, NEW_YORK);
+        assertEquals(at("2016-11-06 02:00"), quietAt);
+        assertEquals(4 * HOUR, quietAt - lateEvening);
+    }
+
+    @Test
+    public void wrappingWindow_afterMidnight_belongsToPreviousDay() throws Exception {
+        assertTrue(NIGHTTIME.isActiveAt(at("2016-10-12 23:00"), NEW_YORK));
+        assertTrue(NIGHTTIME.isActiveAt(at("2016-10-13 01:59"), NEW_YORK));
+        assertFalse(NIGHTTIME.isActiveAt(at("2016-10-13 02:00"), NEW_YORK));
+        assertFalse(NIGHTTIME.isActiveAt(at("2016-10-13 21:59"), NEW_YORK));
+
+        assertEquals(at("2016-10-13 22:00"), NIGHTTIME.getNextActiveTime(at("2016-10-13 03:00"), NEW_YORK));
+        assertEquals(at("2016-10-13 02:00"), NIGHTTIME.getNextQuietTime(at("2016-10-12 23:00"), NEW_YORK));
+        assertEquals(at("2016-10-13 02:00"), NIGHTTIME.getNextQuietTime(at("2016-10-13 01:00"), NEW_YORK));
+    }
+
+    @Test
+    public void wrappingWindow_weekdaysOnly_spillsIntoSaturdayOnly() throws Exception {
+        // Friday night's window runs into Saturday, but there's no window opening on Saturday or Sunday night
+        assertTrue(WEEKDAY_NIGHTS.isActiveAt(at("2016-10-14 23:00"), NEW_YORK));
+        assertTrue(WEEKDAY_NIGHTS.isActiveAt(at("2016-10-15 01:00"), NEW_YORK));
+        assertFalse(WEEKDAY_NIGHTS.isActiveAt(at("2016-10-15 23:00"), NEW_YORK));
+        assertFalse(WEEKDAY_NIGHTS.isActiveAt(at("2016-10-16 01:00"), NEW_YORK));
+        // Sunday night doesn't open, but Monday's window spilling into Tuesday does count
+        assertTrue(WEEKDAY_NIGHTS.isActiveAt(at("2016-10-18 01:00"), NEW_YORK));
+
+        assertEquals(at("2016-10-17 22:00"), WEEKDAY_NIGHTS.getNextActiveTime(at("2016-10-15 03:00"), NEW_YORK));
+        assertEquals(at("2016-10-15 02:00"), WEEKDAY_NIGHTS.getNextQuietTime(at("2016-10-14 23:00"), NEW_YORK));
+    }
+
+    @Test
+    public void weekdaysOnly_skipsWeekend() throws Exception {
+        assertEquals(at("2016-10-17 00:00"), WEEKDAYS.getNextActiveTime(at("2016-10-15 10:00"), NEW_YORK));
+        // Monday through Friday windows touch each other, so quiet hours only start on Saturday
+        assertEquals(at("2016-10-15 00:00"), WEEKDAYS.getNextQuietTime(at("2016-10-10 10:00"), NEW_YORK));
+    }
+
+    @Test
+    public void weekdaysOnly_acrossSpringForward() throws Exception {
+        // Quiet from Saturday midnight (EST) to Monday midnight (EDT), which is 47 hours
+        final long quietAt = WEEKDAYS.getNextQuietTime(at("2016-03-11 12:00"), NEW_YORK);
+        final long activeAt = WEEKDAYS.getNextActiveTime(quietAt, NEW_YORK);
+        assertEquals(at("2016-03-12 00:00"), quietAt);
+        assertEquals(at("2016-03-14 00:00"), activeAt);
+        assertEquals(47 * HOUR, activeAt - quietAt);
+    }
+
+    private static long at(String localTime) throws ParseException {
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.US);
+        format.setTimeZone(NEW_YORK);
+        return format.parse(localTime).getTime();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link Recurrence}. The closed form is checked against fire times built by adding up the gaps one by one:
+ * shrinking by the escalation step while escalating, then equal to the shortest gap on the plateau.
+ *
+ * @author Paul Danyliuk
+ */
+public class RecurrenceTest {
+
+    private static final long MINUTE = 60 * 1000;
+    private static final long STARTED_AT = 1476280800000L;
+    private static final long SEED = 42;
+
+    /**
+     * 60, 55, ..., 10, then 5 minutes: the last escalating gap lands exactly on the minimum
+     */
+    private static final Recurrence EVEN_ESCALATION = new Recurrence(5, 5, 0);
+    /**
+     * 10, 7, 4, then 2 minutes: the step doesn't divide the difference, so the last step is shorter
+     */
+    private static final Recurrence UNEVEN_ESCALATION = new Recurrence(3, 2, 0);
+    private static final Recurrence NO_ESCALATION = new Recurrence(0, 1, 0);
+
+    @Test
+    public void nextFireTime_evenEscalation_matchesGaps() {
+        assertMatchesGaps(EVEN_ESCALATION, 60, 30);
+    }
+
+    @Test
+    public void nextFireTime_unevenEscalation_matchesGaps() {
+        assertMatchesGaps(UNEVEN_ESCALATION, 10, 30);
+    }
+
+    @Test
+    public void nextFireTime_noEscalation_isFixedInterval() {
+        assertMatchesGaps(NO_ESCALATION, 7, 30);
+        assertEquals(STARTED_AT + 7 * MINUTE, NO_ESCALATION.getNextFireTime(7, STARTED_AT, STARTED_AT, SEED));
+        assertEquals(STARTED_AT + 700 * MINUTE,
+                NO_ESCALATION.getNextFireTime(7, STARTED_AT, STARTED_AT + 699 * MINUTE, SEED));
+    }
+
+    @Test
+    public void nextFireTime_intervalBelowMinimum_neverEscalates() {
+        final Recurrence recurrence = new Recurrence(5, 10, 0);
+        final List<Long> times = getFireTimes(recurrence, 3, 20);
+        for (int i = 1; i < times.size(); i++) {
+            assertEquals(3 * MINUTE, times.get(i) - times.get(i - 1));
+        }
+        assertMatchesGaps(recurrence, 3, 20);
+    }
+
+    @Test
+    public void nextFireTime_beforeStart_isFirstFireTime() {
+        assertEquals(STARTED_AT + 60 * MINUTE,
+                EVEN_ESCALATION.getNextFireTime(60, STARTED_AT, STARTED_AT - 5 * MINUTE, SEED));
+    }
+
+    @Test
+    public void nextFireTime_longAfterStart_isOnPlateau() {
+        // A year of 5 minute gaps after the escalation ends at 60 + 55 + ... + 10 = 385 minutes
+        final long escalationEnd = STARTED_AT + 385 * MINUTE;
+        final long after = escalationEnd + 365 * 24 * 60 * MINUTE + 2 * MINUTE;
+        assertEquals(after + 3 * MINUTE, EVEN_ESCALATION.getNextFireTime(60, STARTED_AT, after, SEED));
+    }
+
+    @Test
+    public void nextFireTime_jitter_staysWithinBoundAndInOrder() {
+        for (int jitterPercent : new int[]{10, Recurrence.MAX_JITTER_PERCENT}) {
+            final Recurrence recurrence = new Recurrence(3, 2, jitterPercent);
+            final long jitterBound = 2 * MINUTE * jitterPercent / 100;
+            final List<Long> times = getFireTimes(recurrence, 10, 30);
+
+            // Chain the fire times as the app does when rescheduling right after each fire
+            long previous = STARTED_AT;
+            boolean isAnyShifted = false;
+            for (long expected : times) {
+                final long next = recurrence.getNextFireTime(10, STARTED_AT, previous, SEED);
+                assertTrue("Fire time " + next + " is out of order", next > previous);
+                assertTrue("Fire time " + next + " is too far from " + expected,
+                        Math.abs(next - expected) <= jitterBound);
+                isAnyShifted |= next != expected;
+                previous = next;
+            }
+            assertTrue("Jitter of " + jitterPercent + "% didn't shift anything", isAnyShifted);
+        }
+    }
+
+    @Test
+    public void nextFireTime_jitter_matchesChainedFireTimes() {
+        final Recurrence recurrence = new Recurrence(5, 5, Recurrence.MAX_JITTER_PERCENT);
+        final List<Long> times = new ArrayList<>();
+        long previous = STARTED_AT;
+        for (int i = 0; i < 30; i++) {
+            previous = recurrence.getNextFireTime(60, STARTED_AT, previous, SEED);
+            times.add(previous);
+        }
+
+        // Whatever the time asked about, the answer must be the first chained fire time after it
+        for (long after = STARTED_AT; after < times.get(times.size() - 1); after += MINUTE / 4) {
+            assertEquals("After " + (after - STARTED_AT) + "ms", (long) getFirstAfter(times, after),
+                    recurrence.getNextFireTime(60, STARTED_AT, after, SEED));
+        }
+        for (long time : times) {
+            assertEquals(time, recurrence.getNextFireTime(60, STARTED_AT, time - 1, SEED));
+        }
+    }
+
+    @Test
+    public void nextFireTime_jitter_isSameEveryTime() {
+        final Recurrence recurrence = new Recurrence(5, 5, 25);
+        final long after = STARTED_AT + 1000 * MINUTE;
+        assertEquals(recurrence.getNextFireTime(60, STARTED_AT, after, SEED),
+                recurrence.getNextFireTime(60, STARTED_AT, after, SEED));
+    }
+
+    /**
+     * Check the next fire time after each of the first <code>count</code> fire times, right before and after them, and
+     * in between
+     */
+    private static void assertMatchesGaps(Recurrence recurrence, int interval, int count) {
+        final List<Long> times = getFireTimes(recurrence, interval, count);
+        for (int i = 0; i < times.size() - 1; i++) {
+            final long time = times.get(i);
+            final long next = times.get(i + 1);
+            assertEquals("At fire #" + (i + 1), next, recurrence.getNextFireTime(interval, STARTED_AT, time, SEED));
+            assertEquals("Before fire #" + (i + 1), time,
+                    recurrence.getNextFireTime(interval, STARTED_AT, time - 1, SEED));
+            assertEquals("After fire #" + (i + 1), next,
+                    recurrence.getNextFireTime(interval, STARTED_AT, time + 1, SEED));
+            assertEquals("Between fires #" + (i + 1) + " and #" + (i + 2), next,
+                    recurrence.getNextFireTime(interval, STARTED_AT, (time + next) / 2, SEED));
+        }
+    }
+
+    /**
+     * @return first <code>count</code> fire times without jitter, adding up the gaps one by one
+     */
+    private static List<Long> getFireTimes(Recurrence recurrence, int interval, int count) {
+        final int shortestGap = recurrence.escalationStep == 0 ? interval : Math.min(recurrence.minInterval, interval);
+        final List<Long> times = new ArrayList<>(count);
+        long time = STARTED_AT;
+        for (int i = 0; i < count; i++) {
+            time += Math.max(shortestGap, interval - i * recurrence.escalationStep) * MINUTE;
+            times.add(time);
+        }
+        return times;
+    }
+
+    private static Long getFirstAfter(List<Long> times, long after) {
+        for (Long time : times) {
+            if (time > after) {
+                return time;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.service;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.Intent;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import com.actinarium.nagbox.BuildConfig;
+import com.actinarium.nagbox.R;
+import com.actinarium.nagbox.common.Clock;
+import com.actinarium.nagbox.database.NagboxContract;
+import com.actinarium.nagbox.database.NagboxContract.BuildingBlocks;
+import com.actinarium.nagbox.database.NagboxContract.TasksTable;
+import com.actinarium.nagbox.database.NagboxDbHelper;
+import com.actinarium.nagbox.database.NagboxDbOps;
+import com.actinarium.nagbox.model.ActiveWindow;
+import com.actinarium.nagbox.model.Task;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowApplication;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Soak test of {@link NagboxService}: a seeded mix of intents is sent through the service's own helpers and handled
+ * against a real SQLite database file, then throughput, handler latency, database file growth and heap growth are
+ * checked against the thresholds from <code>soak_*</code> resources. Runs with the rest of the unit tests, so a
+ * regression fails the build. {@link SoakTestService} does the same on a device, if you need the real numbers.
+ *
+ * @author Paul Danyliuk
+ */
+@RunWith(RobolectricTestRunner.class)
+// Plain application, so that the development flavor doesn't start Stetho here
+@Config(constants = BuildConfig.class, sdk = 23, application = Application.class)
+public class NagboxServiceSoakTest {
+
+    private static final int WARM_UP_INTENTS = 300;
+    private static final int SOAK_INTENTS = 3000;
+    private static final int REFRESH_INTERVAL = 100;
+
+    private static final int OP_CREATE = 0;
+    private static final int OP_STATUS = 1;
+    private static final int OP_DELETE = 2;
+    private static final int OP_RESTORE = 3;
+    private static final int OP_ALARM = 4;
+    private static final int OP_DISMISS = 5;
+    // Same as the default mix of SoakTestService
+    private static final int[] MIX = {2, 6, 1, 1, 1, 1};
+
+    private Context mContext;
+    private NagboxService mService;
+    private SQLiteDatabase mDatabase;
+    private Random mRandom;
+    private final List<Long> mTaskIds = new ArrayList<>();
+    private final List<Long> mDeletedTaskIds = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mService = Robolectric.buildService(NagboxService.class).create().get();
+        mDatabase = NagboxDbHelper.getInstance(mContext).getReadableDatabase();
+        mRandom = new Random(42);
+    }
+
+    @Test
+    public void defaultMix_staysWithinThresholds() throws Exception {
+        final ServiceMetrics metrics = ServiceMetrics.getInstance();
+        final File databaseFile = new File(mDatabase.getPath());
+
+        // Warm up first, so that class loading and the first queries don't end up in p99
+        runIntents(WARM_UP_INTENTS);
+        metrics.reset();
+        final long startDatabaseSize = getDatabaseSize(databaseFile);
+        final long startHeap = getUsedHeap();
+
+        final long startedAt = System.nanoTime();
+        runIntents(SOAK_INTENTS);
+        final long elapsed = Math.max(1, (System.nanoTime() - startedAt) / 1000000);
+
+        final double throughput = metrics.getHandledCount() * 1000.0 / elapsed;
+        final double p99 = metrics.getHandlerTimeAtPercentile(99) / 1000.0;
+        final long databaseGrowth = getDatabaseSize(databaseFile) - startDatabaseSize;
+        final long heapGrowth = getUsedHeap() - startHeap;
+
+        final Resources res = mContext.getResources();
+        assertEquals("Some intents weren't handled", 0, metrics.getPendingIntents());
+        assertTrue(String.format(Locale.US, "Throughput is %.1f intents/s", throughput),
+                throughput >= res.getInteger(R.integer.soak_min_throughput));
+        assertTrue(String.format(Locale.US, "Handler p99 is %.2fms", p99),
+                p99 <= res.getInteger(R.integer.soak_max_handler_p99_ms));
+        assertTrue("Database grew by " + databaseGrowth / 1024 + "KB",
+                databaseGrowth / 1024 <= res.getInteger(R.integer.soak_max_db_growth_kb));
+        assertTrue("Heap grew by " + heapGrowth / 1024 + "KB",
+                heapGrowth / 1024 <= res.getInteger(R.integer.soak_max_heap_growth_kb));
+    }
+
+    private void runIntents(int count) {
+        for (int i = 0; i < count; i++) {
+            if (i % REFRESH_INTERVAL == 0) {
+                refreshTaskIds();
+            }
+            sendIntent(pickOperation());
+            handleStartedIntents();
+        }
+    }
+
+    /**
+     * Handle the intents sent to the service, including the ones it sends to itself. Same as the service does in
+     * {@link NagboxService#onStartCommand}, except that they are handled right away and not on the worker thread.
+     */
+    private void handleStartedIntents() {
+        final ShadowApplication application = ShadowApplication.getInstance();
+        Intent intent;
+        while ((intent = application.getNextStartedService()) != null) {
+            if (intent.getComponent() != null
+                    && NagboxService.class.getName().equals(intent.getComponent().getClassName())) {
+                ServiceMetrics.getInstance().onIntentQueued();
+                mService.onHandleIntent(intent);
+            }
+        }
+    }
+
+    private void sendIntent(int operation) {
+        switch (operation) {
+            case OP_CREATE: {
+                Task task = new Task();
+                task.title = "Soak #" + mRandom.nextInt(1000000);
+                task.interval = 1 + mRandom.nextInt(60);
+                NagboxService.createTask(mContext, task);
+                break;
+            }
+            case OP_STATUS: {
+                Task task = getRandomTask();
+                if (task != null) {
+                    // Same as MainActivity#onSetTaskStatus
+                    task.setStatus(!task.isActive(), Clock.getInstance().currentTimeMillis(),
+                            ActiveWindow.getEffective(mContext, task));
+                    NagboxService.updateTaskStatus(mContext, task);
+                }
+                break;
+            }
+            case OP_DELETE: {
+                Task task = getRandomTask();
+                if (task != null) {
+                    mTaskIds.remove(task.id);
+                    mDeletedTaskIds.add(task.id);
+                    NagboxService.deleteTask(mContext, task.id);
+                }
+                break;
+            }
+            case OP_RESTORE: {
+                if (!mDeletedTaskIds.isEmpty()) {
+                    final long id = mDeletedTaskIds.remove(mDeletedTaskIds.size() - 1);
+                    mTaskIds.add(id);
+                    NagboxService.restoreTask(mContext, id);
+                }
+                break;
+            }
+            case OP_ALARM: {
+                Intent intent = new Intent(mContext, NagboxService.class);
+                intent.setAction(NagboxService.ACTION_ON_ALARM_FIRED);
+                mContext.startService(intent);
+                break;
+            }
+            case OP_DISMISS: {
+                Intent intent = new Intent(mContext, NagboxService.class);
+                intent.setAction(NagboxService.ACTION_ON_NOTIFICATION_DISMISSED);
+                intent.putExtra(NagboxService.EXTRA_TASK_ID, Task.NO_ID);
+                mContext.startService(intent);
+                break;
+            }
+        }
+    }
+
+    private Task getRandomTask() {
+        if (mTaskIds.isEmpty()) {
+            return null;
+        }
+        final long id = mTaskIds.get(mRandom.nextInt(mTaskIds.size()));
+        return NagboxDbOps.getTaskStatusById(mDatabase, id, NagboxContract.TASK_FULL_PROJECTION);
+    }
+
+    private void refreshTaskIds() {
+        mTaskIds.clear();
+        Cursor cursor = mDatabase.query(
+                TasksTable.TABLE_NAME, new String[]{TasksTable._ID}, BuildingBlocks.SELECTION_TASK_NOT_DELETED,
+                null, null, null, null
+        );
+        while (cursor.moveToNext()) {
+            mTaskIds.add(cursor.getLong(0));
+        }
+        cursor.close();
+    }
+
+    private int pickOperation() {
+        int total = 0;
+        for (int weight : MIX) {
+            total += weight;
+        }
+        int value = mRandom.nextInt(total);
+        for (int i = 0; i < MIX.length; i++) {
+            value -= MIX[i];
+            if (value < 0) {
+                return i;
+            }
+        }
+        return OP_CREATE;
+    }
+
+    private static long getDatabaseSize(File databaseFile) {
+        // Include the rollback journal or write-ahead log, whichever is there
+        final File journal = new File(databaseFile.getPath() + "-journal");
+        final File wal = new File(databaseFile.getPath() + "-wal");
+        return databaseFile.length() + journal.length() + wal.length();
+    }
+
+    private static long getUsedHeap() throws InterruptedException {
+        // Unlike the device, the test JVM has plenty of heap and rarely collects, so the raw number means little
+        final Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        Thread.sleep(100);
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.benchmark;
+
+import android.database.sqlite.SQLiteDatabase;
+import com.actinarium.nagbox.database.NagboxDbOps;
+import com.actinarium.nagbox.jvm.AppDatabase;
+import com.actinarium.nagbox.model.Recurrence;
+import com.actinarium.nagbox.model.Task;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the catch-up part of the "alarm fired" handler: moving the next fire time of all due tasks into the future
+ * and marking them as not seen. Runs {@link NagboxDbOps.Transaction#rescheduleDueTasks(long)} against an in-memory
+ * app database built from the app's schema and migrations, so indices and the change log trigger are included. Each
+ * invocation is rolled back so that every run starts with all tasks due.
+ *
+ * @author Paul Danyliuk
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CatchUpBenchmark {
+
+    private static final long MINUTE = 60 * 1000;
+
+    @Param({"10", "1000", "100000"})
+    public int taskCount;
+
+    private SQLiteDatabase mDatabase;
+    private long mNow;
+
+    @Setup
+    public void setUp() {
+        mDatabase = AppDatabase.createInMemory();
+
+        // All tasks are active and overdue by 0 to ~16 hours, like after the device was turned off overnight. Every
+        // tenth task escalates, so it's rescheduled one by one rather than by the bulk statement
+        mNow = System.currentTimeMillis();
+        final Recurrence escalation = new Recurrence(2, 5, 10);
+        final NagboxDbOps.Transaction transaction = NagboxDbOps.startTransaction(mDatabase);
+        for (int i = 0; i < taskCount; i++) {
+            final Task task = new Task();
+            task.title = "Task #" + i;
+            task.interval = 1 + i % 15;
+            task.setIsActive(true);
+            task.nextFireAt = mNow - (i % 1000) * MINUTE;
+            task.lastStartedAt = mNow - 1000 * MINUTE;
+            task.displayOrder = i + 1;
+            task.recurrence = i % 10 == 0 ? escalation : null;
+            transaction.createTask(task, "task" + i);
+        }
+        if (!transaction.commit()) {
+            throw new IllegalStateException("Couldn't create tasks");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    @Benchmark
+    public int rescheduleDueTasks() {
+        final NagboxDbOps.Transaction transaction = NagboxDbOps.startTransaction(mDatabase)
+                .rescheduleDueTasks(mNow);
+        final int rowsAffected = transaction.getRowsAffected();
+        transaction.rollback();
+        return rowsAffected;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.benchmark;
+
+import com.actinarium.nagbox.common.CursorReaderUtils;
+import com.actinarium.nagbox.database.NagboxContract;
+import com.actinarium.nagbox.database.NagboxContract.TasksTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading task rows by column names with {@link CursorReaderUtils}, to compare with reading by known index
+ * in {@link NagboxContract.TaskFullProjection} (see {@link ProjectionBenchmark}).
+ *
+ * @author Paul Danyliuk
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CursorReaderUtilsBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int taskCount;
+
+    private SyntheticTaskCursor mCursor;
+
+    @Setup
+    public void setUp() {
+        mCursor = new SyntheticTaskCursor(taskCount, System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public void readAllColumnsByName(Blackhole blackhole) {
+        mCursor.moveToPosition(-1);
+        while (mCursor.moveToNext()) {
+            blackhole.consume(CursorReaderUtils.getId(mCursor, TasksTable.TABLE_NAME));
+            blackhole.consume(CursorReaderUtils.getString(mCursor, TasksTable.COL_TITLE));
+            blackhole.consume(CursorReaderUtils.getInt(mCursor, TasksTable.COL_INTERVAL));
+            blackhole.consume(CursorReaderUtils.getInt(mCursor, TasksTable.COL_FLAGS));
+            blackhole.consume(CursorReaderUtils.getLong(mCursor, TasksTable.COL_NEXT_FIRE_AT));
+            blackhole.consume(CursorReaderUtils.getLong(mCursor, TasksTable.COL_LAST_STARTED_AT));
+            blackhole.consume(CursorReaderUtils.getInt(mCursor, TasksTable.COL_DISPLAY_ORDER));
+        }
+    }
+
+    @Benchmark
+    public void readNullableColumnsByName(Blackhole blackhole) {
+        mCursor.moveToPosition(-1);
+        while (mCursor.moveToNext()) {
+            blackhole.consume(CursorReaderUtils.getNullableLong(mCursor, TasksTable.COL_NEXT_FIRE_AT));
+            blackhole.consume(CursorReaderUtils.getNullableInt(mCursor, TasksTable.COL_INTERVAL));
+        }
+    }
+}
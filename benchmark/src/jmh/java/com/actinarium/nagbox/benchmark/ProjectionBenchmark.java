@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.benchmark;
+
+import com.actinarium.nagbox.database.NagboxContract;
+import com.actinarium.nagbox.database.Projection;
+import com.actinarium.nagbox.model.Task;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Projection#mapCursorToModel} over the whole cursor, both the way the list does it (mutating one
+ * reusable model) and the way the service does it (new model per row).
+ *
+ * @author Paul Danyliuk
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProjectionBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int taskCount;
+
+    private SyntheticTaskCursor mCursor;
+    private Projection<Task> mFullProjection;
+    private Task mReusableTask;
+
+    @Setup
+    public void setUp() {
+        mCursor = new SyntheticTaskCursor(taskCount, System.currentTimeMillis());
+        mFullProjection = new NagboxContract.TaskFullProjection();
+        mReusableTask = new Task();
+    }
+
+    @Benchmark
+    public void mapFullReusingModel(Blackhole blackhole) {
+        mCursor.moveToPosition(-1);
+        while (mCursor.moveToNext()) {
+            blackhole.consume(mFullProjection.mapCursorToModel(mCursor, mReusableTask));
+        }
+    }
+
+    @Benchmark
+    public void mapFullNewModel(Blackhole blackhole) {
+        mCursor.moveToPosition(-1);
+        while (mCursor.moveToNext()) {
+            blackhole.consume(mFullProjection.mapCursorToModel(mCursor, null));
+        }
+    }
+}
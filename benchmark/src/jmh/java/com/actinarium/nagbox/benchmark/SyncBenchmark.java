@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.benchmark;
+
+import com.actinarium.nagbox.model.ActiveWindow;
+import com.actinarium.nagbox.model.Recurrence;
+import com.actinarium.nagbox.model.SyncRecord;
+import com.actinarium.nagbox.sync.HttpSyncTransport;
+import com.actinarium.nagbox.sync.SyncCodec;
+import com.actinarium.nagbox.sync.SyncEngine;
+import com.actinarium.nagbox.sync.SyncMessage;
+import com.actinarium.nagbox.synctest.InMemorySyncStore;
+import com.actinarium.nagbox.synctest.StandInSyncServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures sync throughput: encoding and decoding a batch of changed tasks, and a full sync of all of them from one
+ * device to another through the stand-in server over loopback HTTP, in batches of the app's default size.
+ *
+ * @author Paul Danyliuk
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SyncBenchmark {
+
+    @Param({"1000", "100000"})
+    public int rowCount;
+
+    private List<SyncRecord> mRecords;
+    private SyncMessage mMessage;
+    private byte[] mEncoded;
+
+    private StandInSyncServer mServer;
+    private InMemorySyncStore mSource;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Tasks with a mix of optional fields, changed at different times, like after a while of real use
+        final Random random = new Random(42);
+        final long now = System.currentTimeMillis();
+        mRecords = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            final SyncRecord record = new SyncRecord();
+            record.syncId = String.format(Locale.US, "%016x%016x", random.nextLong(), random.nextLong());
+            record.title = "Task #" + i;
+            record.interval = 1 + random.nextInt(120);
+            if (random.nextInt(4) == 0) {
+                record.activeWindow = new ActiveWindow(9 * 60, 18 * 60, ActiveWindow.WEEKDAYS);
+            }
+            if (random.nextInt(4) == 0) {
+                record.recurrence = new Recurrence(1, 1, random.nextInt(Recurrence.MAX_JITTER_PERCENT + 1));
+            }
+            record.descriptionChangedAt = now - random.nextInt(Integer.MAX_VALUE);
+            record.isActive = random.nextBoolean();
+            record.lastStartedAt = now - random.nextInt(Integer.MAX_VALUE);
+            record.nextFireAt = record.lastStartedAt + record.interval * 60000L;
+            record.statusChangedAt = record.lastStartedAt;
+            mRecords.add(record);
+        }
+        mMessage = new SyncMessage("device", rowCount, false, mRecords);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SyncCodec.write(mMessage, out);
+        mEncoded = out.toByteArray();
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpSync() throws IOException {
+        mServer = new StandInSyncServer(SyncEngine.DEFAULT_BATCH_SIZE);
+        mServer.start();
+        mSource = new InMemorySyncStore();
+        for (SyncRecord record : mRecords) {
+            mSource.put(record);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownSync() {
+        mServer.stop();
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(mEncoded.length);
+        SyncCodec.write(mMessage, out);
+        return out.size();
+    }
+
+    @Benchmark
+    public SyncMessage decode() throws IOException {
+        return SyncCodec.read(new ByteArrayInputStream(mEncoded));
+    }
+
+    @Benchmark
+    public int pushAndPull() throws IOException {
+        new SyncEngine(mSource, new HttpSyncTransport(mServer.getUrl()), "server", "source",
+                SyncEngine.DEFAULT_BATCH_SIZE).sync();
+        final InMemorySyncStore target = new InMemorySyncStore();
+        new SyncEngine(target, new HttpSyncTransport(mServer.getUrl()), "server", "target",
+                SyncEngine.DEFAULT_BATCH_SIZE).sync();
+        return target.size();
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.benchmark;
+
+import android.content.ContentResolver;
+import android.database.CharArrayBuffer;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DataSetObserver;
+import android.net.Uri;
+import android.os.Bundle;
+import com.actinarium.nagbox.database.NagboxContract;
+import com.actinarium.nagbox.model.Task;
+
+/**
+ * An in-memory {@link Cursor} over generated task rows, laid out according to {@link
+ * NagboxContract#TASK_FULL_PROJECTION}. Since the SDK jar only has stubs, we can't use MatrixCursor and friends on the
+ * JVM, hence this class.
+ *
+ * @author Paul Danyliuk
+ */
+public class SyntheticTaskCursor implements Cursor {
+
+    private static final String[] COLUMNS = NagboxContract.TASK_FULL_PROJECTION.getColumns();
+
+    private final int mCount;
+    private final long[] mIds;
+    private final String[] mTitles;
+    private final int[] mIntervals;
+    private final int[] mFlags;
+    private final long[] mNextFireAts;
+    private final long[] mLastStartedAts;
+    private final int[] mDisplayOrders;
+
+    private int mPosition = -1;
+    private boolean mIsClosed;
+
+    public SyntheticTaskCursor(int count, long now) {
+        mCount = count;
+        mIds = new long[count];
+        mTitles = new String[count];
+        mIntervals = new int[count];
+        mFlags = new int[count];
+        mNextFireAts = new long[count];
+        mLastStartedAts = new long[count];
+        mDisplayOrders = new int[count];
+        for (int i = 0; i < count; i++) {
+            mIds[i] = i + 1;
+            mTitles[i] = "Wasting time in some other way #" + i;
+            mIntervals[i] = 1 + i % 15;
+            mFlags[i] = i % 3 == 0 ? Task.FLAG_ACTIVE | Task.FLAG_NOT_SEEN : Task.FLAG_ACTIVE;
+            mNextFireAts[i] = now + (i % 60) * 1000L;
+            mLastStartedAts[i] = now - (i % 600) * 60000L;
+            mDisplayOrders[i] = i + 1;
+        }
+    }
+
+    private Object getValue(int column) {
+        switch (column) {
+            case 0:
+                return mIds[mPosition];
+            case 1:
+                return mTitles[mPosition];
+            case 2:
+                return mIntervals[mPosition];
+            case 3:
+                return mFlags[mPosition];
+            case 4:
+                return mNextFireAts[mPosition];
+            case 5:
+                return mLastStartedAts[mPosition];
+            case 6:
+                return mDisplayOrders[mPosition];
+            case 7:
+            case 8:
+            case 9:
+                // Synthetic tasks follow the global active window
+            case 10:
+            case 11:
+            case 12:
+                // ...and fixed intervals
+            case 13:
+                // ...and aren't grouped
+                return null;
+            default:
+                throw new IllegalArgumentException("No column with index " + column);
+        }
+    }
+
+    private long getNumber(int column) {
+        switch (column) {
+            case 0:
+                return mIds[mPosition];
+            case 2:
+                return mIntervals[mPosition];
+            case 3:
+                return mFlags[mPosition];
+            case 4:
+                return mNextFireAts[mPosition];
+            case 5:
+                return mLastStartedAts[mPosition];
+            case 6:
+                return mDisplayOrders[mPosition];
+            case 7:
+            case 8:
+            case 9:
+            case 10:
+            case 11:
+            case 12:
+            case 13:
+                return 0;
+            default:
+                throw new IllegalArgumentException("Column " + column + " is not numeric");
+        }
+    }
+
+    // Navigation ---------------------------------------------------------
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public int getPosition() {
+        return mPosition;
+    }
+
+    @Override
+    public boolean move(int offset) {
+        return moveToPosition(mPosition + offset);
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        if (position < 0) {
+            mPosition = -1;
+            return false;
+        }
+        if (position >= mCount) {
+            mPosition = mCount;
+            return false;
+        }
+        mPosition = position;
+        return true;
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToLast() {
+        return moveToPosition(mCount - 1);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(mPosition + 1);
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return moveToPosition(mPosition - 1);
+    }
+
+    @Override
+    public boolean isFirst() {
+        return mPosition == 0 && mCount != 0;
+    }
+
+    @Override
+    public boolean isLast() {
+        return mPosition == mCount - 1 && mCount != 0;
+    }
+
+    @Override
+    public boolean isBeforeFirst() {
+        return mCount == 0 || mPosition == -1;
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return mCount == 0 || mPosition == mCount;
+    }
+
+    // Columns ------------------------------------------------------------
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String columnName) throws IllegalArgumentException {
+        final int index = getColumnIndex(columnName);
+        if (index == -1) {
+            throw new IllegalArgumentException("Column " + columnName + " does not exist");
+        }
+        return index;
+    }
+
+    @Override
+    public String getColumnName(int columnIndex) {
+        return COLUMNS[columnIndex];
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return COLUMNS;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    // Values -------------------------------------------------------------
+
+    @Override
+    public byte[] getBlob(int columnIndex) {
+        throw new UnsupportedOperationException("Task rows have no blobs");
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        return String.valueOf(getValue(columnIndex));
+    }
+
+    @Override
+    public void copyStringToBuffer(int columnIndex, CharArrayBuffer buffer) {
+        final String value = getString(columnIndex);
+        buffer.data = value.toCharArray();
+        buffer.sizeCopied = value.length();
+    }
+
+    @Override
+    public short getShort(int columnIndex) {
+        return (short) getNumber(columnIndex);
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        return (int) getNumber(columnIndex);
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        return getNumber(columnIndex);
+    }
+
+    @Override
+    public float getFloat(int columnIndex) {
+        return getNumber(columnIndex);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        return getNumber(columnIndex);
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+        if (columnIndex == 1) {
+            return FIELD_TYPE_STRING;
+        }
+        return isNull(columnIndex) ? FIELD_TYPE_NULL : FIELD_TYPE_INTEGER;
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        return getValue(columnIndex) == null;
+    }
+
+    // Lifecycle and observers - irrelevant here --------------------------
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void deactivate() {}
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public boolean requery() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        mIsClosed = true;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return mIsClosed;
+    }
+
+    @Override
+    public void registerContentObserver(ContentObserver observer) {}
+
+    @Override
+    public void unregisterContentObserver(ContentObserver observer) {}
+
+    @Override
+    public void registerDataSetObserver(DataSetObserver observer) {}
+
+    @Override
+    public void unregisterDataSetObserver(DataSetObserver observer) {}
+
+    @Override
+    public void setNotificationUri(ContentResolver cr, Uri uri) {}
+
+    @Override
+    public Uri getNotificationUri() {
+        return null;
+    }
+
+    @Override
+    public boolean getWantsAllOnMoveCalls() {
+        return false;
+    }
+
+    @Override
+    public void setExtras(Bundle extras) {}
+
+    @Override
+    public Bundle getExtras() {
+        return null;
+    }
+
+    @Override
+    public Bundle respond(Bundle extras) {
+        return null;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.nagbox.database;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import com.actinarium.nagbox.database.NagboxContract.TasksTable;
+import com.actinarium.nagbox.jvm.AppDatabase;
+import com.actinarium.nagbox.model.ActiveWindow;
+import com.actinarium.nagbox.model.Task;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures importing tasks through the content provider: one <code>insert()</code> per task, each a batch of its own,
+ * versus a single <code>bulkInsert()</code> (or <code>applyBatch()</code>) for all of them. Both run the provider's own
+ * {@link TaskBatch} on the values a client would send, against a file-backed app database built from the app's schema
+ * and migrations, triggers included, with Android's default journal settings, since the cost of a commit is what's
+ * being compared. Change notifications and alarm reschedules, which the provider also does once per batch instead of
+ * once per task, can't be measured off the device.
+ * <p/>
+ * Lives in the provider's package, since the batch is package-private.
+ *
+ * @author Paul Danyliuk
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ImportBenchmark {
+
+    @Param({"10000"})
+    public int taskCount;
+
+    private File mFile;
+    private SQLiteDatabase mDatabase;
+    private ContentValues[] mValues;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("nagbox-import", ".db");
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+        mDatabase = AppDatabase.createAt(mFile);
+        // Android's defaults unless WAL is enabled, which the app doesn't do
+        mDatabase.execSQL("PRAGMA journal_mode = TRUNCATE");
+        mDatabase.execSQL("PRAGMA synchronous = FULL");
+
+        // Every third task comes in active, like when moving tasks over from another device
+        final long now = System.currentTimeMillis();
+        mValues = new ContentValues[taskCount];
+        for (int i = 0; i < taskCount; i++) {
+            final boolean isActive = i % 3 == 0;
+            final ContentValues values = new ContentValues(5);
+            values.put(TasksTable.COL_TITLE, "Task #" + i);
+            values.put(TasksTable.COL_INTERVAL, 1 + i % 120);
+            values.put(TasksTable.COL_FLAGS, isActive ? Task.FLAG_ACTIVE : 0);
+            if (isActive) {
+                values.put(TasksTable.COL_LAST_STARTED_AT, now);
+            }
+            mValues[i] = values;
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        mDatabase.close();
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @Benchmark
+    public int importInsertPerTask() {
+        int imported = 0;
+        for (ContentValues values : mValues) {
+            final TaskBatch batch = new TaskBatch(mDatabase);
+            batch.insertTask(values);
+            if (batch.commit(ActiveWindow.ALWAYS)) {
+                imported++;
+            }
+            batch.rollback();
+        }
+        return imported;
+    }
+
+    @Benchmark
+    public int importBulkInsert() {
+        final TaskBatch batch = new TaskBatch(mDatabase);
+        for (ContentValues values : mValues) {
+            batch.insertTask(values);
+        }
+        final int imported = batch.commit(ActiveWindow.ALWAYS) ? mValues.length : 0;
+        batch.rollback();
+        return imported;
+    }
+}
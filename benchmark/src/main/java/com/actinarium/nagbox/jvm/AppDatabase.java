@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.jvm;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+import com.actinarium.nagbox.common.ReaderUtils;
+import com.actinarium.nagbox.database.NagboxContract.TaskChangesTable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Creates the app database on the JVM the same way <code>NagboxDbHelper</code> does on the device: the base schema
+ * from the app's raw resources, then every migration after it in order, with the task change triggers right after the
+ * migration that adds the change log. Nothing is copied from the app, so benchmarks and checks always run against the
+ * current schema, indices and triggers.
+ * <p/>
+ * The raw resources are read from <code>../app/src/main/res/raw</code> unless the <code>nagbox.rawDir</code> system
+ * property points elsewhere.
+ *
+ * @author Paul Danyliuk
+ */
+public final class AppDatabase {
+
+    private static final String BASE_SCHEMA = "schema_v3";
+    private static final int BASE_VERSION = 3;
+    private static final int CHANGE_LOG_VERSION = 11;
+
+    private AppDatabase() {}
+
+    /**
+     * @return new in-memory database with the current schema and no rows
+     */
+    public static SQLiteDatabase createInMemory() {
+        final SQLiteDatabase db = SQLiteDatabase.create(null);
+        createSchema(db);
+        return db;
+    }
+
+    /**
+     * @param file database file to create, must not exist yet
+     * @return new database with the current schema and no rows, backed by given file
+     */
+    public static SQLiteDatabase createAt(File file) {
+        if (file.exists()) {
+            throw new IllegalArgumentException("Database file " + file + " already exists");
+        }
+        final SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file.getPath(), null);
+        createSchema(db);
+        return db;
+    }
+
+    /**
+     * @return version of the schema created by this class, i.e. the latest migration found
+     */
+    public static int getVersion() {
+        int version = BASE_VERSION;
+        while (getMigrationFile(version).exists()) {
+            version++;
+        }
+        return version;
+    }
+
+    private static void createSchema(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            execFile(db, getRawFile(BASE_SCHEMA));
+            for (int version = BASE_VERSION; getMigrationFile(version).exists(); version++) {
+                execFile(db, getMigrationFile(version));
+                if (version + 1 == CHANGE_LOG_VERSION) {
+                    for (String trigger : TaskChangesTable.TRIGGERS) {
+                        db.execSQL(trigger);
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Same splitting as in <code>NagboxDbHelper</code>: lines are joined and the result is split by semicolons
+     */
+    private static void execFile(SQLiteDatabase db, File file) {
+        final InputStream inputStream;
+        try {
+            inputStream = new FileInputStream(file);
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't read " + file.getAbsolutePath(), e);
+        }
+        try {
+            for (String query : TextUtils.join(" ", ReaderUtils.readLines(inputStream)).split(";")) {
+                db.execSQL(query);
+            }
+        } finally {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                // Fail quietly
+            }
+        }
+    }
+
+    private static File getMigrationFile(int fromVersion) {
+        return getRawFile("migration_v" + fromVersion + "_v" + (fromVersion + 1));
+    }
+
+    private static File getRawFile(String name) {
+        return new File(System.getProperty("nagbox.rawDir", "../app/src/main/res/raw"), name + ".sql");
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.simulator;
+
+import com.actinarium.nagbox.model.ActiveWindow;
+import com.actinarium.nagbox.model.LatenessHistogram;
+import com.actinarium.nagbox.model.Recurrence;
+
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Offline, deterministic simulator of the nag scheduler. Creates a bunch of tasks, then replays days of the user
+ * starting and stopping them and dismissing notifications, with alarms delivered the way a phone would deliver them:
+ * a bit late when awake, and rate-limited in Doze at night. Reports what it cost: wakeups, database writes,
+ * notifications, and how late the nags were.
+ * <p>
+ * Run with <code>./gradlew :benchmark:simulate -PsimArgs="tasks=5000 days=14"</code>. Parameters (all optional) are
+ * passed as <code>name=value</code>; see {@link Config} for the list and defaults. Same parameters and seed produce
+ * the same results.
+ *
+ * @author Paul Danyliuk
+ */
+public class SchedulerSimulator implements SimulatedScheduler.AlarmSetter {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    // Wed, 1 Jun 2016 00:00 UTC. Simulated time of day is UTC, which is as good as any other time zone
+    private static final long SIMULATION_EPOCH = 1464739200000L;
+
+    private static final int EVENT_ALARM = 0;
+    private static final int EVENT_TOGGLE = 1;
+    private static final int EVENT_DISMISS = 2;
+
+    /**
+     * Simulation parameters
+     */
+    static class Config {
+        int tasks = 1000;
+        int days = 2;
+        long seed = 42;
+        /** Share of tasks started at the beginning */
+        double activeShare = 0.3;
+        /** Task intervals are picked uniformly from this range, minutes */
+        int minInterval = 1;
+        int maxInterval = 60;
+        /** Share of tasks with escalating recurrence instead of a fixed interval */
+        double escalatingShare = 0;
+        /** Global active window, hours of the day. The default is the app's: always active */
+        int activeFrom = 0;
+        int activeTo = 24;
+        /** How many times per hour the user starts or stops a random task while awake */
+        double togglesPerHour = 6;
+        /** How soon the user dismisses the notification while awake, minutes */
+        int dismissAfter = 10;
+        /** When the user wakes up and goes to sleep (screen off), hour of the day */
+        int wakeHour = 8;
+        int sleepHour = 23;
+        /** How long the screen must be off before the device enters Doze, minutes */
+        int dozeAfter = 30;
+        /** Minimum gap between while-idle alarms in Doze, minutes */
+        int idleAlarmGap = 9;
+        /** Maximum extra delay of alarm delivery, msec, picked uniformly */
+        long deliveryDelay = 2000;
+
+        static Config parse(String[] args) {
+            Config config = new Config();
+            for (String arg : args) {
+                final int separator = arg.indexOf('=');
+                if (separator < 0) {
+                    throw new IllegalArgumentException("Expected name=value, got " + arg);
+                }
+                final String name = arg.substring(0, separator);
+                final String value = arg.substring(separator + 1);
+                switch (name) {
+                    case "tasks": config.tasks = Integer.parseInt(value); break;
+                    case "days": config.days = Integer.parseInt(value); break;
+                    case "seed": config.seed = Long.parseLong(value); break;
+                    case "activeShare": config.activeShare = Double.parseDouble(value); break;
+                    case "minInterval": config.minInterval = Integer.parseInt(value); break;
+                    case "maxInterval": config.maxInterval = Integer.parseInt(value); break;
+                    case "escalatingShare": config.escalatingShare = Double.parseDouble(value); break;
+                    case "activeFrom": config.activeFrom = Integer.parseInt(value); break;
+                    case "activeTo": config.activeTo = Integer.parseInt(value); break;
+                    case "togglesPerHour": config.togglesPerHour = Double.parseDouble(value); break;
+                    case "dismissAfter": config.dismissAfter = Integer.parseInt(value); break;
+                    case "wakeHour": config.wakeHour = Integer.parseInt(value); break;
+                    case "sleepHour": config.sleepHour = Integer.parseInt(value); break;
+                    case "dozeAfter": config.dozeAfter = Integer.parseInt(value); break;
+                    case "idleAlarmGap": config.idleAlarmGap = Integer.parseInt(value); break;
+                    case "deliveryDelay": config.deliveryDelay = Long.parseLong(value); break;
+                    default: throw new IllegalArgumentException("Unknown parameter " + name);
+                }
+            }
+            return config;
+        }
+    }
+
+    private static class Event implements Comparable<Event> {
+        final long time;
+        final int type;
+        final long sequence;
+        final int generation;
+
+        Event(long time, int type, long sequence, int generation) {
+            this.time = time;
+            this.type = type;
+            this.sequence = sequence;
+            this.generation = generation;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (time != other.time) {
+                return time < other.time ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    private final Config mConfig;
+    private final Random mRandom;
+    private final SimulatedClock mClock;
+    private final SimulatedScheduler mScheduler;
+    private final PriorityQueue<Event> mEvents = new PriorityQueue<>();
+    private long mEventSequence;
+
+    // Known to the UI, so the user knows which task to start or stop
+    private long[] mTaskIds;
+    private boolean[] mTaskIsActive;
+
+    // Only the latest alarm is valid, same as with a single pending intent
+    private int mAlarmGeneration;
+    private long mLastIdleAlarmAt = Long.MIN_VALUE / 2;
+    private boolean mIsDismissPending;
+
+    private int mWakeups;
+    private int mIdleWakeups;
+    private int mToggles;
+    private int mDismissals;
+
+    public static void main(String[] args) {
+        final Config config = Config.parse(args);
+        // Active windows and daily stats are in local time, and simulated time of day is UTC
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        final long startedAt = System.nanoTime();
+        SchedulerSimulator simulator = new SchedulerSimulator(config);
+        simulator.run();
+        simulator.printReport((System.nanoTime() - startedAt) / 1000000);
+        simulator.close();
+    }
+
+    SchedulerSimulator(Config config) {
+        mConfig = config;
+        mRandom = new Random(config.seed);
+        mClock = new SimulatedClock(SIMULATION_EPOCH);
+        final ActiveWindow globalWindow = config.activeFrom == 0 && config.activeTo == 24
+                ? ActiveWindow.ALWAYS
+                : new ActiveWindow(config.activeFrom * 60, config.activeTo * 60, ActiveWindow.ALL_DAYS);
+        mScheduler = new SimulatedScheduler(mClock, this, globalWindow);
+    }
+
+    void run() {
+        // The user creates all tasks in the morning of day one and starts some of them
+        mClock.advanceTo(SIMULATION_EPOCH + mConfig.wakeHour * HOUR);
+        mTaskIds = new long[mConfig.tasks];
+        mTaskIsActive = new boolean[mConfig.tasks];
+        for (int i = 0; i < mConfig.tasks; i++) {
+            final int interval = mConfig.minInterval + mRandom.nextInt(mConfig.maxInterval - mConfig.minInterval + 1);
+            // Escalate by a tenth of the first gap each time, down to a third of it
+            final Recurrence recurrence = mRandom.nextDouble() < mConfig.escalatingShare
+                    ? new Recurrence(Math.max(interval / 10, 1), Math.max(interval / 3, 1), 10)
+                    : null;
+            mTaskIds[i] = mScheduler.createTask("Task #" + i, interval, recurrence);
+        }
+        for (int i = 0; i < mConfig.tasks; i++) {
+            if (mRandom.nextDouble() < mConfig.activeShare) {
+                toggleTask(i);
+            }
+        }
+        scheduleNextToggle();
+
+        final long endAt = SIMULATION_EPOCH + mConfig.days * DAY;
+        Event event;
+        while ((event = mEvents.poll()) != null && event.time < endAt) {
+            mClock.advanceTo(event.time);
+            switch (event.type) {
+                case EVENT_ALARM:
+                    if (event.generation == mAlarmGeneration) {
+                        onAlarmDelivered();
+                    }
+                    break;
+                case EVENT_TOGGLE:
+                    toggleTask(mRandom.nextInt(mConfig.tasks));
+                    scheduleNextToggle();
+                    break;
+                case EVENT_DISMISS:
+                    mIsDismissPending = false;
+                    mDismissals++;
+                    mScheduler.onNotificationDismissed();
+                    break;
+            }
+        }
+    }
+
+    void close() {
+        mScheduler.close();
+    }
+
+    /**
+     * Model of the alarm manager with <code>setAndAllowWhileIdle()</code>: delivered slightly late when the device is
+     * awake, and no more often than once per idle alarm gap in Doze
+     */
+    @Override
+    public void setAlarm(long timestamp) {
+        mAlarmGeneration++;
+        if (timestamp == 0) {
+            return;
+        }
+        long deliverAt = Math.max(timestamp, mClock.currentTimeMillis());
+        if (isDozing(deliverAt)) {
+            deliverAt = Math.max(deliverAt, mLastIdleAlarmAt + mConfig.idleAlarmGap * MINUTE);
+        }
+        if (mConfig.deliveryDelay > 0) {
+            deliverAt += (long) (mRandom.nextDouble() * mConfig.deliveryDelay);
+        }
+        addEvent(deliverAt, EVENT_ALARM);
+    }
+
+    private void onAlarmDelivered() {
+        final long now = mClock.currentTimeMillis();
+        mWakeups++;
+        if (isDozing(now)) {
+            mIdleWakeups++;
+            mLastIdleAlarmAt = now;
+        }
+        if (mScheduler.onAlarmFired() && !mIsDismissPending) {
+            mIsDismissPending = true;
+            addEvent(nextAwakeTime(now) + mConfig.dismissAfter * MINUTE, EVENT_DISMISS);
+        }
+    }
+
+    private void toggleTask(int index) {
+        mToggles++;
+        mTaskIsActive[index] = !mTaskIsActive[index];
+        mScheduler.setTaskStatus(mTaskIds[index], mTaskIsActive[index]);
+    }
+
+    private void scheduleNextToggle() {
+        if (mConfig.togglesPerHour <= 0) {
+            return;
+        }
+        // Poisson process while awake: exponentially distributed gaps, and nothing happens while the user sleeps
+        final long gap = (long) (-Math.log(1 - mRandom.nextDouble()) / mConfig.togglesPerHour * HOUR);
+        addEvent(nextAwakeTime(mClock.currentTimeMillis() + gap), EVENT_TOGGLE);
+    }
+
+    private void addEvent(long time, int type) {
+        mEvents.add(new Event(time, type, mEventSequence++, mAlarmGeneration));
+    }
+
+    private boolean isScreenOn(long timestamp) {
+        final long timeOfDay = (timestamp - SIMULATION_EPOCH) % DAY;
+        return timeOfDay >= mConfig.wakeHour * HOUR && timeOfDay < mConfig.sleepHour * HOUR;
+    }
+
+    private boolean isDozing(long timestamp) {
+        if (isScreenOn(timestamp)) {
+            return false;
+        }
+        final long timeOfDay = (timestamp - SIMULATION_EPOCH) % DAY;
+        final long screenOffFor = (timeOfDay - mConfig.sleepHour * HOUR + DAY) % DAY;
+        return screenOffFor >= mConfig.dozeAfter * MINUTE;
+    }
+
+    /**
+     * @return given time if the user is awake then, otherwise the time when they wake up
+     */
+    private long nextAwakeTime(long timestamp) {
+        if (isScreenOn(timestamp)) {
+            return timestamp;
+        }
+        final long dayStart = timestamp - (timestamp - SIMULATION_EPOCH) % DAY;
+        final long wakeUpToday = dayStart + mConfig.wakeHour * HOUR;
+        return timestamp < wakeUpToday ? wakeUpToday : wakeUpToday + DAY;
+    }
+
+    void printReport(long wallTimeMillis) {
+        final double hours = mConfig.days * 24.0;
+        final LatenessHistogram lateness = mScheduler.getLateness();
+        System.out.println(String.format(Locale.US, "Simulated %d days with %d tasks in %d ms (seed %d)",
+                mConfig.days, mConfig.tasks, wallTimeMillis, mConfig.seed));
+        System.out.println(String.format(Locale.US, "Wakeups:             %d (%.1f per hour), %d in Doze",
+                mWakeups, mWakeups / hours, mIdleWakeups));
+        System.out.println(String.format(Locale.US, "Empty alarms:        %d", mScheduler.getEmptyAlarms()));
+        System.out.println(String.format(Locale.US, "Notifications:       %d", mScheduler.getNotificationsPosted()));
+        System.out.println(String.format(Locale.US, "Nags fired:          %d", mScheduler.getNagsFired()));
+        System.out.println(String.format(Locale.US, "DB rows written:     %d (%.1f per wakeup)",
+                mScheduler.getRowsWritten(), mWakeups == 0 ? 0.0 : (double) mScheduler.getRowsWritten() / mWakeups));
+        System.out.println(String.format(Locale.US, "Toggles, dismissals: %d, %d", mToggles, mDismissals));
+        System.out.println(String.format(Locale.US, "Lateness:            n=%d, p50 %s, p95 %s, p99 %s, max %s",
+                lateness.getTotalCount(),
+                formatBound(lateness.getValueAtPercentile(50)),
+                formatBound(lateness.getValueAtPercentile(95)),
+                formatBound(lateness.getValueAtPercentile(99)),
+                formatDuration(mScheduler.getMaxLateness())));
+    }
+
+    private static String formatBound(long bound) {
+        final long lastBound = LatenessHistogram.BUCKET_UPPER_BOUNDS[LatenessHistogram.BUCKET_UPPER_BOUNDS.length - 1];
+        return bound == Long.MAX_VALUE ? ">" + formatDuration(lastBound) : "<" + formatDuration(bound);
+    }
+
+    private static String formatDuration(long millis) {
+        if (millis < MINUTE) {
+            return String.format(Locale.US, "%.1fs", millis / 1000.0);
+        } else if (millis < HOUR) {
+            return String.format(Locale.US, "%.1fm", (double) millis / MINUTE);
+        } else {
+            return String.format(Locale.US, "%.1fh", (double) millis / HOUR);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.simulator;
+
+import com.actinarium.nagbox.common.Clock;
+
+/**
+ * A clock that only moves when told to. Elapsed realtime starts at zero, as if the device had just booted.
+ *
+ * @author Paul Danyliuk
+ */
+class SimulatedClock extends Clock {
+
+    private final long mBootTime;
+    private long mNow;
+
+    SimulatedClock(long bootTime) {
+        mBootTime = bootTime;
+        mNow = bootTime;
+    }
+
+    /**
+     * Move the clock to given time. Time never goes back.
+     *
+     * @param timestamp wall clock time to move to
+     */
+    void advanceTo(long timestamp) {
+        if (timestamp > mNow) {
+            mNow = timestamp;
+        }
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return mNow;
+    }
+
+    @Override
+    public long elapsedRealtime() {
+        return mNow - mBootTime;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.nagbox.simulator;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import com.actinarium.nagbox.common.Clock;
+import com.actinarium.nagbox.database.NagboxContract;
+import com.actinarium.nagbox.database.NagboxContract.BuildingBlocks;
+import com.actinarium.nagbox.database.NagboxContract.TasksTable;
+import com.actinarium.nagbox.database.NagboxDbOps;
+import com.actinarium.nagbox.jvm.AppDatabase;
+import com.actinarium.nagbox.model.ActiveWindow;
+import com.actinarium.nagbox.model.LatenessHistogram;
+import com.actinarium.nagbox.model.NagEvent;
+import com.actinarium.nagbox.model.Recurrence;
+import com.actinarium.nagbox.model.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays what NagboxService does when a task is created, started or stopped, when the alarm fires, and when the
+ * notification is dismissed, with the app's own {@link NagboxDbOps} against the app database built from its own schema
+ * and migrations, and counts what it costs. Android-bound parts (notifications, alarm manager) are replaced with
+ * counters and an {@link AlarmSetter}.
+ * <p>
+ * The database work is the service's, so only the order of calls here must be kept in sync with NagboxService.
+ *
+ * @author Paul Danyliuk
+ */
+class SimulatedScheduler {
+
+    // Same as NotificationHelper.MAX_DISPLAYED_TASKS
+    private static final int MAX_DISPLAYED_TASKS = 5;
+
+    private static final String SELECT_LATENESS_SQL = "SELECT ? - " + TasksTable.COL_NEXT_FIRE_AT
+            + " FROM " + TasksTable.TABLE_NAME + " WHERE " + BuildingBlocks.SELECTION_TASK_DUE;
+
+    /**
+     * Stand-in for the alarm manager
+     */
+    interface AlarmSetter {
+        /**
+         * @param timestamp wall clock time when the alarm must fire, or 0 to cancel it
+         */
+        void setAlarm(long timestamp);
+    }
+
+    private final Clock mClock;
+    private final AlarmSetter mAlarmSetter;
+    private final ActiveWindow mGlobalWindow;
+    private final SQLiteDatabase mDatabase;
+    private final List<NagEvent> mPendingEvents = new ArrayList<>();
+
+    private final LatenessHistogram mLateness = new LatenessHistogram();
+    private long mMaxLateness;
+    private long mRowsWritten;
+    private int mNotificationsPosted;
+    private int mEmptyAlarms;
+
+    SimulatedScheduler(Clock clock, AlarmSetter alarmSetter, ActiveWindow globalWindow) {
+        mClock = clock;
+        mAlarmSetter = alarmSetter;
+        mGlobalWindow = globalWindow;
+        mDatabase = AppDatabase.createInMemory();
+    }
+
+    void close() {
+        mDatabase.close();
+    }
+
+    /**
+     * Same as NagboxService#handleCreateTask
+     *
+     * @param title      task title
+     * @param interval   task interval, minutes
+     * @param recurrence how the task recurs, or <code>null</code> for a fixed interval
+     * @return ID of the created task
+     */
+    long createTask(String title, int interval, Recurrence recurrence) {
+        final Task task = new Task();
+        task.title = title;
+        task.interval = interval;
+        task.recurrence = recurrence;
+        task.displayOrder = NagboxDbOps.getMaxTaskOrder(mDatabase) + 1;
+        commit(NagboxDbOps.startTransaction(mDatabase)
+                .createTask(task)
+        );
+        return task.id;
+    }
+
+    /**
+     * Same as MainActivity#onSetTaskStatus followed by NagboxService#handleUpdateTaskStatus
+     *
+     * @param taskId   task ID
+     * @param isActive whether to start or stop the task
+     */
+    void setTaskStatus(long taskId, boolean isActive) {
+        final long now = mClock.currentTimeMillis();
+        // The UI has the task as the list loaded it
+        final Task task = NagboxDbOps.getTaskStatusById(mDatabase, taskId, NagboxContract.TASK_FULL_PROJECTION);
+        task.setStatus(isActive, now, task.activeWindow != null ? task.activeWindow : mGlobalWindow);
+
+        if (!task.isActive()) {
+            mPendingEvents.add(new NagEvent(task.id, NagEvent.TYPE_STOPPED, now));
+        }
+        if (commit(NagboxDbOps.startTransaction(mDatabase)
+                .updateTaskStatus(task, now)
+        )) {
+            rescheduleAlarm();
+        }
+    }
+
+    /**
+     * Same as NagboxService#handleOnAlarmFired
+     *
+     * @return whether a notification was posted
+     */
+    boolean onAlarmFired() {
+        final long now = mClock.currentTimeMillis();
+
+        final int tasksToRemindCount = NagboxDbOps.countTasksToRemind(mDatabase, now);
+        if (tasksToRemindCount == 0) {
+            mEmptyAlarms++;
+            rescheduleAlarm();
+            return false;
+        }
+        // Only reading the rows, like the service does to build the notification
+        NagboxDbOps.getTasksToRemind(mDatabase, now, MAX_DISPLAYED_TASKS);
+        mNotificationsPosted++;
+
+        // The service keeps decaying histograms in the database, here all lateness is kept, along with the exact maximum
+        measureLateness(now);
+
+        commit(NagboxDbOps.startTransaction(mDatabase)
+                .fireDueTasks(mGlobalWindow, now)
+        );
+
+        rescheduleAlarm();
+        return true;
+    }
+
+    /**
+     * Same as NagboxService#handleOnNotificationDismissed for the summary notification: every not seen task is updated
+     * separately
+     */
+    void onNotificationDismissed() {
+        final Task[] tasksToDismiss = NagboxDbOps.getTasksToDismiss(mDatabase, Task.NO_ID);
+        if (tasksToDismiss.length == 0) {
+            return;
+        }
+
+        final long now = mClock.currentTimeMillis();
+        NagboxDbOps.Transaction transaction = NagboxDbOps.startTransaction(mDatabase);
+        for (Task task : tasksToDismiss) {
+            task.setIsSeen(true);
+            transaction.updateTaskStatus(task, now);
+            mPendingEvents.add(new NagEvent(task.id, NagEvent.TYPE_DISMISSED, now));
+        }
+        commit(transaction);
+    }
+
+    /**
+     * Same as NagboxService#commit
+     */
+    private boolean commit(NagboxDbOps.Transaction transaction) {
+        transaction.appendNagEvents(mPendingEvents);
+        mPendingEvents.clear();
+        final int rowsAffected = transaction.getRowsAffected();
+        boolean isSuccess = transaction.commit();
+        if (isSuccess) {
+            mRowsWritten += rowsAffected;
+        }
+        return isSuccess;
+    }
+
+    /**
+     * Same as NagboxService#rescheduleAlarm
+     */
+    private void rescheduleAlarm() {
+        mAlarmSetter.setAlarm(NagboxDbOps.getClosestNagTimestamp(mDatabase));
+    }
+
+    private void measureLateness(long now) {
+        final String timestamp = Long.toString(now);
+        final Cursor cursor = mDatabase.rawQuery(SELECT_LATENESS_SQL, new String[]{timestamp, timestamp});
+        while (cursor.moveToNext()) {
+            final long lateness = cursor.getLong(0);
+            if (lateness > mMaxLateness) {
+                mMaxLateness = lateness;
+            }
+            int bucket = 0;
+            while (bucket < LatenessHistogram.BUCKET_UPPER_BOUNDS.length
+                    && lateness >= LatenessHistogram.BUCKET_UPPER_BOUNDS[bucket]) {
+                bucket++;
+            }
+            mLateness.counts[bucket]++;
+        }
+        cursor.close();
+    }
+
+    LatenessHistogram getLateness() {
+        return mLateness;
+    }
+
+    long getMaxLateness() {
+        return mMaxLateness;
+    }
+
+    long getRowsWritten() {
+        return mRowsWritten;
+    }
+
+    int getNotificationsPosted() {
+        return mNotificationsPosted;
+    }
+
+    int getEmptyAlarms() {
+        return mEmptyAlarms;
+    }
+
+    /**
+     * @return number of nags recorded in the history, same as the app's statistics would show
+     */
+    long getNagsFired() {
+        final Cursor cursor = mDatabase.rawQuery("SELECT COUNT(*) FROM " + NagboxContract.NagEventsTable.TABLE_NAME
+                + " WHERE " + NagboxContract.NagEventsTable.COL_TYPE + " = " + NagEvent.TYPE_FIRED, null);
+        final long count = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        cursor.close();
+        return count;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.content;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JVM stand-in for the framework class of the same name, see {@link android.database.sqlite.SQLiteDatabase}. Keeps
+ * the order the values were put in, so that generated statements are easy to read.
+ *
+ * @author Paul Danyliuk
+ */
+public final class ContentValues {
+
+    private final Map<String, Object> mValues;
+
+    public ContentValues() {
+        mValues = new LinkedHashMap<>();
+    }
+
+    public ContentValues(int size) {
+        mValues = new LinkedHashMap<>(size * 2);
+    }
+
+    public ContentValues(ContentValues from) {
+        mValues = new LinkedHashMap<>(from.mValues);
+    }
+
+    public void put(String key, String value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Byte value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Short value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Integer value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Long value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Float value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Double value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, Boolean value) {
+        mValues.put(key, value);
+    }
+
+    public void put(String key, byte[] value) {
+        mValues.put(key, value);
+    }
+
+    public void putAll(ContentValues other) {
+        mValues.putAll(other.mValues);
+    }
+
+    public void putNull(String key) {
+        mValues.put(key, null);
+    }
+
+    public int size() {
+        return mValues.size();
+    }
+
+    public boolean containsKey(String key) {
+        return mValues.containsKey(key);
+    }
+
+    public Object get(String key) {
+        return mValues.get(key);
+    }
+
+    public String getAsString(String key) {
+        final Object value = mValues.get(key);
+        return value == null ? null : value.toString();
+    }
+
+    public Long getAsLong(String key) {
+        final Object value = mValues.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return value == null ? null : Long.valueOf(value.toString());
+    }
+
+    public Integer getAsInteger(String key) {
+        final Long value = getAsLong(key);
+        return value == null ? null : value.intValue();
+    }
+
+    public Boolean getAsBoolean(String key) {
+        final Object value = mValues.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).intValue() != 0;
+        }
+        return value == null ? null : Boolean.valueOf(value.toString());
+    }
+
+    public void remove(String key) {
+        mValues.remove(key);
+    }
+
+    public void clear() {
+        mValues.clear();
+    }
+
+    public Set<Map.Entry<String, Object>> valueSet() {
+        return mValues.entrySet();
+    }
+
+    public Set<String> keySet() {
+        return mValues.keySet();
+    }
+
+    @Override
+    public String toString() {
+        return mValues.toString();
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.database.sqlite;
+
+import android.content.ContentResolver;
+import android.database.CharArrayBuffer;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DataSetObserver;
+import android.net.Uri;
+import android.os.Bundle;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link Cursor} returned by the stand-in {@link SQLiteDatabase}. Reads the whole result set up front, the same way
+ * the framework fills a cursor window, and converts values between types the way SQLite does.
+ *
+ * @author Paul Danyliuk
+ */
+final class JdbcCursor implements Cursor {
+
+    private final String[] mColumns;
+    private final List<Object[]> mRows = new ArrayList<>();
+
+    private int mPosition = -1;
+    private boolean mIsClosed;
+
+    JdbcCursor(ResultSet resultSet) throws SQLException {
+        final ResultSetMetaData metaData = resultSet.getMetaData();
+        mColumns = new String[metaData.getColumnCount()];
+        for (int i = 0; i < mColumns.length; i++) {
+            mColumns[i] = metaData.getColumnName(i + 1);
+        }
+        while (resultSet.next()) {
+            final Object[] row = new Object[mColumns.length];
+            for (int i = 0; i < row.length; i++) {
+                final Object value = resultSet.getObject(i + 1);
+                // Integers come as Integer or Long depending on magnitude, so make them all the same
+                row[i] = value instanceof Integer ? Long.valueOf((Integer) value) : value;
+            }
+            mRows.add(row);
+        }
+    }
+
+    private Object getValue(int column) {
+        if (mPosition < 0 || mPosition >= mRows.size()) {
+            throw new IllegalStateException("Cursor is at position " + mPosition + " of " + mRows.size());
+        }
+        return mRows.get(mPosition)[column];
+    }
+
+    private long getNumber(int column) {
+        final Object value = getValue(column);
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        try {
+            return Long.parseLong(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private double getReal(int column) {
+        final Object value = getValue(column);
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        try {
+            return Double.parseDouble(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Navigation ---------------------------------------------------------
+
+    @Override
+    public int getCount() {
+        return mRows.size();
+    }
+
+    @Override
+    public int getPosition() {
+        return mPosition;
+    }
+
+    @Override
+    public boolean move(int offset) {
+        return moveToPosition(mPosition + offset);
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        final int count = mRows.size();
+        if (position < 0) {
+            mPosition = -1;
+            return false;
+        }
+        if (position >= count) {
+            mPosition = count;
+            return false;
+        }
+        mPosition = position;
+        return true;
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToLast() {
+        return moveToPosition(mRows.size() - 1);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(mPosition + 1);
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return moveToPosition(mPosition - 1);
+    }
+
+    @Override
+    public boolean isFirst() {
+        return mPosition == 0 && !mRows.isEmpty();
+    }
+
+    @Override
+    public boolean isLast() {
+        return mPosition == mRows.size() - 1 && !mRows.isEmpty();
+    }
+
+    @Override
+    public boolean isBeforeFirst() {
+        return mRows.isEmpty() || mPosition == -1;
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return mRows.isEmpty() || mPosition == mRows.size();
+    }
+
+    // Columns ------------------------------------------------------------
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        // Same as the framework, "table.column" is looked up as "column"
+        final int dot = columnName.lastIndexOf('.');
+        final String name = dot == -1 ? columnName : columnName.substring(dot + 1);
+        for (int i = 0; i < mColumns.length; i++) {
+            if (mColumns[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String columnName) throws IllegalArgumentException {
+        final int index = getColumnIndex(columnName);
+        if (index == -1) {
+            throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+        }
+        return index;
+    }
+
+    @Override
+    public String getColumnName(int columnIndex) {
+        return mColumns[columnIndex];
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumns;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return mColumns.length;
+    }
+
+    // Values -------------------------------------------------------------
+
+    @Override
+    public byte[] getBlob(int columnIndex) {
+        final Object value = getValue(columnIndex);
+        if (value == null || value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        return value.toString().getBytes();
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        final Object value = getValue(columnIndex);
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public void copyStringToBuffer(int columnIndex, CharArrayBuffer buffer) {
+        final String value = getString(columnIndex);
+        buffer.data = value == null ? new char[0] : value.toCharArray();
+        buffer.sizeCopied = buffer.data.length;
+    }
+
+    @Override
+    public short getShort(int columnIndex) {
+        return (short) getNumber(columnIndex);
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        return (int) getNumber(columnIndex);
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        return getNumber(columnIndex);
+    }
+
+    @Override
+    public float getFloat(int columnIndex) {
+        return (float) getReal(columnIndex);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        return getReal(columnIndex);
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+        final Object value = getValue(columnIndex);
+        if (value == null) {
+            return FIELD_TYPE_NULL;
+        } else if (value instanceof Double || value instanceof Float) {
+            return FIELD_TYPE_FLOAT;
+        } else if (value instanceof Number) {
+            return FIELD_TYPE_INTEGER;
+        } else if (value instanceof byte[]) {
+            return FIELD_TYPE_BLOB;
+        }
+        return FIELD_TYPE_STRING;
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        return getValue(columnIndex) == null;
+    }
+
+    // Lifecycle and observers - irrelevant here --------------------------
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void deactivate() {}
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public boolean requery() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        mIsClosed = true;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return mIsClosed;
+    }
+
+    @Override
+    public void registerContentObserver(ContentObserver observer) {}
+
+    @Override
+    public void unregisterContentObserver(ContentObserver observer) {}
+
+    @Override
+    public void registerDataSetObserver(DataSetObserver observer) {}
+
+    @Override
+    public void unregisterDataSetObserver(DataSetObserver observer) {}
+
+    @Override
+    public void setNotificationUri(ContentResolver cr, Uri uri) {}
+
+    @Override
+    public Uri getNotificationUri() {
+        return null;
+    }
+
+    @Override
+    public boolean getWantsAllOnMoveCalls() {
+        return false;
+    }
+
+    @Override
+    public void setExtras(Bundle extras) {}
+
+    @Override
+    public Bundle getExtras() {
+        return null;
+    }
+
+    @Override
+    public Bundle respond(Bundle extras) {
+        return null;
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+/**
+ * JVM stand-in for the framework class of the same name, backed by desktop SQLite through sqlite-jdbc. The build
+ * removes the framework class from the SDK stub jar, so that the app's own database code (and the SQL in it) runs
+ * unchanged in benchmarks and tests. Only what the app uses is here, with the same semantics: selection arguments are bound as
+ * strings, transactions nest, and the outermost one commits only if all nested ones were marked successful.
+ *
+ * @author Paul Danyliuk
+ */
+public final class SQLiteDatabase {
+
+    private final Connection mConnection;
+    private final String mPath;
+
+    /**
+     * Not used, only here for the signatures to match the framework
+     */
+    public interface CursorFactory {}
+
+    private int mTransactionDepth;
+    private boolean mIsTransactionSuccessful;
+    private boolean mIsChildFailed;
+
+    private SQLiteDatabase(String path) {
+        mPath = path;
+        try {
+            mConnection = DriverManager.getConnection("jdbc:sqlite:" + path);
+        } catch (SQLException e) {
+            throw new SQLiteException("Couldn't open database " + path, e);
+        }
+    }
+
+    /**
+     * Create an in-memory database
+     *
+     * @param factory ignored, must be <code>null</code>
+     * @return database
+     */
+    public static SQLiteDatabase create(CursorFactory factory) {
+        return new SQLiteDatabase(":memory:");
+    }
+
+    /**
+     * Open or create a database file
+     *
+     * @param path    path to the file
+     * @param factory ignored, must be <code>null</code>
+     * @return database
+     */
+    public static SQLiteDatabase openOrCreateDatabase(String path, CursorFactory factory) {
+        return new SQLiteDatabase(path);
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+
+    public void close() {
+        try {
+            mConnection.close();
+        } catch (SQLException e) {
+            throw new SQLiteException("Couldn't close database", e);
+        }
+    }
+
+    // Transactions -------------------------------------------------------
+
+    public void beginTransaction() {
+        if (mTransactionDepth == 0) {
+            try {
+                mConnection.setAutoCommit(false);
+            } catch (SQLException e) {
+                throw new SQLiteException("Couldn't begin transaction", e);
+            }
+            mIsChildFailed = false;
+        }
+        mTransactionDepth++;
+        mIsTransactionSuccessful = false;
+    }
+
+    public void setTransactionSuccessful() {
+        if (mTransactionDepth == 0) {
+            throw new IllegalStateException("No transaction in progress");
+        }
+        mIsTransactionSuccessful = true;
+    }
+
+    public void endTransaction() {
+        if (mTransactionDepth == 0) {
+            throw new IllegalStateException("No transaction in progress");
+        }
+        if (!mIsTransactionSuccessful) {
+            mIsChildFailed = true;
+        }
+        mTransactionDepth--;
+        // The parent hasn't called setTransactionSuccessful() yet if the child just ended
+        mIsTransactionSuccessful = false;
+        if (mTransactionDepth != 0) {
+            return;
+        }
+        try {
+            if (mIsChildFailed) {
+                mConnection.rollback();
+            } else {
+                mConnection.commit();
+            }
+            mConnection.setAutoCommit(true);
+        } catch (SQLException e) {
+            throw new SQLiteException("Couldn't end transaction", e);
+        }
+    }
+
+    public boolean inTransaction() {
+        return mTransactionDepth != 0;
+    }
+
+    // Statements ---------------------------------------------------------
+
+    public void execSQL(String sql) {
+        if (sql.trim().isEmpty()) {
+            // The framework is fine with empty statements, e.g. after the last semicolon in a file
+            return;
+        }
+        try (Statement statement = mConnection.createStatement()) {
+            statement.execute(sql);
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage() + ", while executing: " + sql, e);
+        }
+    }
+
+    public void execSQL(String sql, Object[] bindArgs) {
+        final SQLiteStatement statement = compileStatement(sql);
+        try {
+            for (int i = 0; i < bindArgs.length; i++) {
+                statement.bindObject(i + 1, bindArgs[i]);
+            }
+            statement.execute();
+        } finally {
+            statement.close();
+        }
+    }
+
+    public SQLiteStatement compileStatement(String sql) {
+        return new SQLiteStatement(this, prepare(sql));
+    }
+
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        final PreparedStatement statement = prepare(sql);
+        try {
+            bindStrings(statement, selectionArgs);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return new JdbcCursor(resultSet);
+            }
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage() + ", while querying: " + sql, e);
+        } finally {
+            closeQuietly(statement);
+        }
+    }
+
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy,
+                        String having, String orderBy) {
+        return query(table, columns, selection, selectionArgs, groupBy, having, orderBy, null);
+    }
+
+    public Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy,
+                        String having, String orderBy, String limit) {
+        return query(false, table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+    }
+
+    public Cursor query(boolean distinct, String table, String[] columns, String selection, String[] selectionArgs,
+                        String groupBy, String having, String orderBy, String limit) {
+        final StringBuilder sql = new StringBuilder(distinct ? "SELECT DISTINCT " : "SELECT ");
+        if (columns == null) {
+            sql.append('*');
+        } else {
+            for (int i = 0; i < columns.length; i++) {
+                sql.append(i == 0 ? "" : ", ").append(columns[i]);
+            }
+        }
+        sql.append(" FROM ").append(table);
+        appendClause(sql, " WHERE ", selection);
+        appendClause(sql, " GROUP BY ", groupBy);
+        appendClause(sql, " HAVING ", having);
+        appendClause(sql, " ORDER BY ", orderBy);
+        appendClause(sql, " LIMIT ", limit);
+        return rawQuery(sql.toString(), selectionArgs);
+    }
+
+    public long insert(String table, String nullColumnHack, ContentValues values) {
+        final StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        final StringBuilder placeholders = new StringBuilder();
+        final Object[] args = new Object[values.size()];
+        int i = 0;
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            sql.append(i == 0 ? "" : ", ").append(entry.getKey());
+            placeholders.append(i == 0 ? "?" : ", ?");
+            args[i++] = entry.getValue();
+        }
+        if (i == 0) {
+            sql.append(nullColumnHack);
+            placeholders.append("NULL");
+        }
+        sql.append(") VALUES (").append(placeholders).append(')');
+
+        final SQLiteStatement statement = compileStatement(sql.toString());
+        try {
+            for (int j = 0; j < args.length; j++) {
+                statement.bindObject(j + 1, args[j]);
+            }
+            return statement.executeInsert();
+        } catch (SQLiteException e) {
+            // Same as the framework, a failed insert is reported with -1 rather than thrown
+            return -1;
+        } finally {
+            statement.close();
+        }
+    }
+
+    public int update(String table, ContentValues values, String whereClause, String[] whereArgs) {
+        final StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        final int valueCount = values.size();
+        final int argCount = whereArgs == null ? 0 : whereArgs.length;
+        final Object[] args = new Object[valueCount + argCount];
+        int i = 0;
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            sql.append(i == 0 ? "" : ", ").append(entry.getKey()).append(" = ?");
+            args[i++] = entry.getValue();
+        }
+        for (int j = 0; j < argCount; j++) {
+            args[valueCount + j] = whereArgs[j];
+        }
+        appendClause(sql, " WHERE ", whereClause);
+        return executeUpdateDelete(sql.toString(), args);
+    }
+
+    public int delete(String table, String whereClause, String[] whereArgs) {
+        final StringBuilder sql = new StringBuilder("DELETE FROM ").append(table);
+        appendClause(sql, " WHERE ", whereClause);
+        return executeUpdateDelete(sql.toString(), whereArgs == null ? new Object[0] : whereArgs);
+    }
+
+    private int executeUpdateDelete(String sql, Object[] args) {
+        final SQLiteStatement statement = compileStatement(sql);
+        try {
+            for (int i = 0; i < args.length; i++) {
+                statement.bindObject(i + 1, args[i]);
+            }
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    // Helpers ------------------------------------------------------------
+
+    PreparedStatement prepare(String sql) {
+        try {
+            return mConnection.prepareStatement(sql);
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage() + ", while compiling: " + sql, e);
+        }
+    }
+
+    long getLastInsertRowId() {
+        try (Statement statement = mConnection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT last_insert_rowid()")) {
+            return resultSet.getLong(1);
+        } catch (SQLException e) {
+            throw new SQLiteException("Couldn't read last row ID", e);
+        }
+    }
+
+    private static void bindStrings(PreparedStatement statement, String[] args) throws SQLException {
+        if (args == null) {
+            return;
+        }
+        for (int i = 0; i < args.length; i++) {
+            statement.setString(i + 1, args[i]);
+        }
+    }
+
+    private static void appendClause(StringBuilder sql, String name, String clause) {
+        if (clause != null && !clause.isEmpty()) {
+            sql.append(name).append(clause);
+        }
+    }
+
+    static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // Nothing we can do here
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.database.sqlite;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * JVM stand-in for the framework class of the same name, see {@link SQLiteDatabase}. Bindings are kept between
+ * executions, same as in the framework.
+ *
+ * @author Paul Danyliuk
+ */
+public final class SQLiteStatement {
+
+    private final SQLiteDatabase mDatabase;
+    private final PreparedStatement mStatement;
+
+    SQLiteStatement(SQLiteDatabase database, PreparedStatement statement) {
+        mDatabase = database;
+        mStatement = statement;
+    }
+
+    public void bindNull(int index) {
+        try {
+            mStatement.setNull(index, java.sql.Types.NULL);
+        } catch (SQLException e) {
+            throw new SQLiteException("Couldn't bind argument " + index, e);
+        }
+    }
+
+    public void bindLong(int index, long value) {
+        try {
+            mStatement.setLong(index, value);
+        } catch (SQLException e) {
+            throw new SQLiteException("Couldn't bind argument " + index, e);
+        }
+    }
+
+    public void bindDouble(int index, double value) {
+        try {
+            mStatement.setDouble(index, value);
+        } catch (SQLException e) {
+            throw new SQLiteException("Couldn't bind argument " + index, e);
+        }
+    }
+
+    public void bindString(int index, String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("the bind value at index " + index + " is null");
+        }
+        try {
+            mStatement.setString(index, value);
+        } catch (SQLException e) {
+            throw new SQLiteException("Couldn't bind argument " + index, e);
+        }
+    }
+
+    public void bindBlob(int index, byte[] value) {
+        if (value == null) {
+            throw new IllegalArgumentException("the bind value at index " + index + " is null");
+        }
+        try {
+            mStatement.setBytes(index, value);
+        } catch (SQLException e) {
+            throw new SQLiteException("Couldn't bind argument " + index, e);
+        }
+    }
+
+    public void clearBindings() {
+        try {
+            mStatement.clearParameters();
+        } catch (SQLException e) {
+            throw new SQLiteException("Couldn't clear bindings", e);
+        }
+    }
+
+    /**
+     * Bind a value the way the framework binds <code>ContentValues</code> and <code>Object[]</code> arguments
+     */
+    void bindObject(int index, Object value) {
+        if (value == null) {
+            bindNull(index);
+        } else if (value instanceof Double || value instanceof Float) {
+            bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            bindLong(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            bindBlob(index, (byte[]) value);
+        } else {
+            bindString(index, value.toString());
+        }
+    }
+
+    public void execute() {
+        try {
+            mStatement.execute();
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    public int executeUpdateDelete() {
+        try {
+            return mStatement.executeUpdate();
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    public long executeInsert() {
+        return executeUpdateDelete() > 0 ? mDatabase.getLastInsertRowId() : -1;
+    }
+
+    public long simpleQueryForLong() {
+        try (ResultSet resultSet = mStatement.executeQuery()) {
+            if (!resultSet.next()) {
+                throw new SQLiteDoneException();
+            }
+            return resultSet.getLong(1);
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    public String simpleQueryForString() {
+        try (ResultSet resultSet = mStatement.executeQuery()) {
+            if (!resultSet.next()) {
+                throw new SQLiteDoneException();
+            }
+            return resultSet.getString(1);
+        } catch (SQLException e) {
+            throw new SQLiteException(e.getMessage(), e);
+        }
+    }
+
+    public void close() {
+        SQLiteDatabase.closeQuietly(mStatement);
+    }
+}
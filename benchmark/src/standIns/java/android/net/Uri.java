@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.net;
+
+/**
+ * JVM stand-in for the framework class of the same name, just enough for the contract class to build its content URIs.
+ * Path segments and query parameters are expected to need no encoding.
+ *
+ * @author Paul Danyliuk
+ */
+public final class Uri {
+
+    private final String mString;
+
+    private Uri(String string) {
+        mString = string;
+    }
+
+    public static Uri parse(String uriString) {
+        return new Uri(uriString);
+    }
+
+    public Builder buildUpon() {
+        return new Builder(mString);
+    }
+
+    public String getLastPathSegment() {
+        final int queryStart = mString.indexOf('?');
+        final String path = queryStart == -1 ? mString : mString.substring(0, queryStart);
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Uri && mString.equals(((Uri) o).mString);
+    }
+
+    @Override
+    public int hashCode() {
+        return mString.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return mString;
+    }
+
+    public static final class Builder {
+
+        private final StringBuilder mPath;
+        private final StringBuilder mQuery = new StringBuilder();
+
+        Builder(String uriString) {
+            final int queryStart = uriString.indexOf('?');
+            mPath = new StringBuilder(queryStart == -1 ? uriString : uriString.substring(0, queryStart));
+            if (queryStart != -1) {
+                mQuery.append(uriString.substring(queryStart + 1));
+            }
+        }
+
+        public Builder appendPath(String newSegment) {
+            mPath.append('/').append(newSegment);
+            return this;
+        }
+
+        public Builder appendQueryParameter(String key, String value) {
+            mQuery.append(mQuery.length() == 0 ? "" : "&").append(key).append('=').append(value);
+            return this;
+        }
+
+        public Uri build() {
+            return new Uri(mQuery.length() == 0 ? mPath.toString() : mPath + "?" + mQuery);
+        }
+    }
+}
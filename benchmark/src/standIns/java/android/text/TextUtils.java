@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.text;
+
+import java.util.Iterator;
+
+/**
+ * JVM stand-in for the framework class of the same name, with only the methods the database code uses
+ *
+ * @author Paul Danyliuk
+ */
+public final class TextUtils {
+
+    private TextUtils() {}
+
+    public static boolean isEmpty(CharSequence str) {
+        return str == null || str.length() == 0;
+    }
+
+    public static String join(CharSequence delimiter, Object[] tokens) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < tokens.length; i++) {
+            if (i != 0) {
+                builder.append(delimiter);
+            }
+            builder.append(tokens[i]);
+        }
+        return builder.toString();
+    }
+
+    public static String join(CharSequence delimiter, Iterable tokens) {
+        final StringBuilder builder = new StringBuilder();
+        final Iterator iterator = tokens.iterator();
+        while (iterator.hasNext()) {
+            builder.append(iterator.next());
+            if (iterator.hasNext()) {
+                builder.append(delimiter);
+            }
+        }
+        return builder.toString();
+    }
+}
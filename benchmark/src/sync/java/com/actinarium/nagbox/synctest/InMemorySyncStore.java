@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.synctest;
+
+import com.actinarium.nagbox.model.SyncRecord;
+import com.actinarium.nagbox.sync.SyncMessage;
+import com.actinarium.nagbox.sync.SyncStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@link SyncStore} that keeps everything in memory, standing in for the app database the same way the app's
+ * <code>DbSyncStore</code> uses it: every change gets the next sequence number, and only the
+ * latest change of each task is kept in the log. Applied records are logged too, and the sent watermark skips them if
+ * everything before was sent already.
+ *
+ * @author Paul Danyliuk
+ */
+public class InMemorySyncStore implements SyncStore {
+
+    private final Map<String, SyncRecord> mRecords = new HashMap<>();
+    private final Map<String, Long> mLatestSeqs = new HashMap<>();
+    private final TreeMap<Long, String> mLog = new TreeMap<>();
+    private long mSeq;
+
+    private final Map<String, long[]> mWatermarks = new HashMap<>();
+
+    /**
+     * Save a change made on this device
+     *
+     * @param record task as it is after the change
+     */
+    public void put(SyncRecord record) {
+        mRecords.put(record.syncId, new SyncRecord(record));
+        log(record.syncId);
+    }
+
+    /**
+     * @param syncId sync ID of the task
+     * @return copy of the task, or <code>null</code> if there's no such task
+     */
+    public SyncRecord get(String syncId) {
+        final SyncRecord record = mRecords.get(syncId);
+        return record != null ? new SyncRecord(record) : null;
+    }
+
+    public int size() {
+        return mRecords.size();
+    }
+
+    @Override
+    public long getReceivedWatermark(String peer) {
+        return getWatermarks(peer)[1];
+    }
+
+    @Override
+    public SyncMessage getChangesToSend(String peer, String deviceId, int limit) {
+        final List<SyncRecord> records = new ArrayList<>(Math.min(limit, mLog.size()));
+        long watermark = getWatermarks(peer)[0];
+        final Iterator<Map.Entry<Long, String>> iterator = mLog.tailMap(watermark, false).entrySet().iterator();
+        while (iterator.hasNext() && records.size() < limit) {
+            final Map.Entry<Long, String> change = iterator.next();
+            watermark = change.getKey();
+            records.add(new SyncRecord(mRecords.get(change.getValue())));
+        }
+        return new SyncMessage(deviceId, watermark, iterator.hasNext(), records);
+    }
+
+    @Override
+    public int applyChanges(String peer, List<SyncRecord> records, long sentWatermark, long receivedWatermark) {
+        final boolean isAllSent = mSeq <= sentWatermark;
+        int applied = 0;
+        for (SyncRecord record : records) {
+            final SyncRecord local = mRecords.get(record.syncId);
+            if (local == null) {
+                if (record.isDeleted) {
+                    continue;
+                }
+                mRecords.put(record.syncId, new SyncRecord(record));
+            } else if (local.mergeFrom(record) == 0) {
+                continue;
+            }
+            log(record.syncId);
+            applied++;
+        }
+        mWatermarks.put(peer, new long[]{isAllSent ? mSeq : sentWatermark, receivedWatermark});
+        return applied;
+    }
+
+    private void log(String syncId) {
+        final Long previous = mLatestSeqs.put(syncId, ++mSeq);
+        if (previous != null) {
+            mLog.remove(previous);
+        }
+        mLog.put(mSeq, syncId);
+    }
+
+    private long[] getWatermarks(String peer) {
+        final long[] watermarks = mWatermarks.get(peer);
+        return watermarks != null ? watermarks : new long[2];
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.synctest;
+
+import com.actinarium.nagbox.model.SyncRecord;
+import com.actinarium.nagbox.sync.SyncCodec;
+import com.actinarium.nagbox.sync.SyncMessage;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-process stand-in for the sync server, good enough to test the app's side of the protocol end to end over real
+ * HTTP. Keeps the latest version of each task in memory, along with a log where each task sits at the sequence number
+ * of its latest change, so the changes after a watermark are read with a single range scan. Records are merged the
+ * same way the app does it, last writer wins per group of fields.
+ * <p/>
+ * A change is not sent back to the device it came from, unless merging it with what the server had produced something
+ * that device hasn't seen.
+ *
+ * @author Paul Danyliuk
+ */
+public class StandInSyncServer implements HttpHandler {
+
+    public static final String PATH = "/sync";
+
+    static {
+        // Otherwise small responses wait for delayed ACKs, and each exchange takes ~40 ms even on loopback
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer mServer;
+    private final int mBatchSize;
+
+    private final Map<String, Entry> mEntries = new HashMap<>();
+    private final TreeMap<Long, Entry> mLog = new TreeMap<>();
+    private long mSeq;
+
+    private long mBytesReceived;
+    private long mBytesSent;
+    private int mExchanges;
+
+    /**
+     * Create a server listening on a random loopback port. Call {@link #start()} to start serving.
+     *
+     * @param batchSize max number of records to send in one response
+     * @throws IOException if the server couldn't be bound
+     */
+    public StandInSyncServer(int batchSize) throws IOException {
+        mBatchSize = batchSize;
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+        mServer.createContext(PATH, this);
+    }
+
+    public void start() {
+        mServer.start();
+    }
+
+    public void stop() {
+        mServer.stop(0);
+    }
+
+    /**
+     * @return URL to point the app's transport to
+     * @throws IOException never, in fact
+     */
+    public URL getUrl() throws IOException {
+        return new URL("http", "127.0.0.1", mServer.getAddress().getPort(), PATH);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            final byte[] requestBody = readFully(exchange.getRequestBody());
+            final SyncMessage request;
+            try {
+                request = SyncCodec.read(new ByteArrayInputStream(requestBody));
+            } catch (IOException e) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            final ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+            SyncCodec.write(process(request), responseBody);
+            synchronized (this) {
+                mBytesReceived += requestBody.length;
+                mBytesSent += responseBody.size();
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", SyncCodec.CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, responseBody.size());
+            final OutputStream out = exchange.getResponseBody();
+            responseBody.writeTo(out);
+            out.close();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Merge the device's changes, then collect the changes it hasn't got yet
+     */
+    synchronized SyncMessage process(SyncMessage request) {
+        mExchanges++;
+        for (SyncRecord record : request.records) {
+            Entry entry = mEntries.get(record.syncId);
+            if (entry == null) {
+                entry = new Entry(new SyncRecord(record));
+                mEntries.put(record.syncId, entry);
+            } else if (entry.record.mergeFrom(record) != 0) {
+                mLog.remove(entry.seq);
+            } else {
+                continue;
+            }
+            // If the device's version didn't win outright, it must get the merged one back
+            entry.writtenBy = new SyncRecord(record).mergeFrom(entry.record) == 0 ? request.deviceId : null;
+            entry.seq = ++mSeq;
+            mLog.put(entry.seq, entry);
+        }
+
+        final List<SyncRecord> records = new ArrayList<>(Math.min(mBatchSize, mEntries.size()));
+        long watermark = request.watermark;
+        final Iterator<Entry> iterator = mLog.tailMap(request.watermark, false).values().iterator();
+        while (iterator.hasNext() && records.size() < mBatchSize) {
+            final Entry entry = iterator.next();
+            watermark = entry.seq;
+            if (!request.deviceId.equals(entry.writtenBy)) {
+                records.add(new SyncRecord(entry.record));
+            }
+        }
+        return new SyncMessage("", watermark, iterator.hasNext(), records);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    // Stats -------------------------------------------------------------
+
+    public synchronized SyncRecord getRecord(String syncId) {
+        final Entry entry = mEntries.get(syncId);
+        return entry != null ? new SyncRecord(entry.record) : null;
+    }
+
+    public synchronized int getRecordCount() {
+        return mEntries.size();
+    }
+
+    public synchronized long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    public synchronized long getBytesSent() {
+        return mBytesSent;
+    }
+
+    public synchronized int getExchanges() {
+        return mExchanges;
+    }
+
+    private static class Entry {
+        final SyncRecord record;
+        long seq;
+        /**
+         * Device that has this exact version already, or <code>null</code> if all devices need it
+         */
+        String writtenBy;
+
+        Entry(SyncRecord record) {
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.synctest;
+
+import com.actinarium.nagbox.model.SyncRecord;
+import com.actinarium.nagbox.sync.HttpSyncTransport;
+import com.actinarium.nagbox.sync.SyncEngine;
+import com.actinarium.nagbox.sync.SyncStore;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Measures sync throughput end to end: a large number of tasks is pushed from one device backed by an
+ * {@link InMemorySyncStore} to a {@link StandInSyncServer} over real HTTP using the app's own engine, codec and
+ * transport, and pulled to another. Convergence is checked by <code>SyncConvergenceTest</code>.
+ * <p>
+ * Run with <code>./gradlew :benchmark:syncThroughput -PsyncArgs="rows=100000 batch=1000"</code>. Exits with status 1
+ * if not all rows made it through.
+ *
+ * @author Paul Danyliuk
+ */
+public class SyncThroughput {
+
+    private final StandInSyncServer mServer;
+    private final int mBatchSize;
+
+    SyncThroughput(StandInSyncServer server, int batchSize) {
+        mServer = server;
+        mBatchSize = batchSize;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int rows = 100000;
+        int batchSize = SyncEngine.DEFAULT_BATCH_SIZE;
+        for (String arg : args) {
+            final String[] pair = arg.split("=", 2);
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected name=value, got " + arg);
+            } else if ("rows".equals(pair[0])) {
+                rows = Integer.parseInt(pair[1]);
+            } else if ("batch".equals(pair[0])) {
+                batchSize = Integer.parseInt(pair[1]);
+            } else {
+                throw new IllegalArgumentException("Unknown parameter " + pair[0]);
+            }
+        }
+
+        final StandInSyncServer server = new StandInSyncServer(batchSize);
+        server.start();
+        final boolean isSuccess;
+        try {
+            isSuccess = new SyncThroughput(server, batchSize).measureThroughput(rows);
+        } finally {
+            server.stop();
+        }
+        if (!isSuccess) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return whether all rows made it to the server and then to the other device
+     */
+    boolean measureThroughput(int rows) throws IOException {
+        final InMemorySyncStore source = new InMemorySyncStore();
+        for (int i = 0; i < rows; i++) {
+            source.put(newRecord(String.format(Locale.US, "%032x", i), "Task #" + i, 1000 + i));
+        }
+        final InMemorySyncStore target = new InMemorySyncStore();
+
+        long startedAt = System.nanoTime();
+        SyncEngine engine = sync(source, "source");
+        final long pushTime = System.nanoTime() - startedAt;
+        if (engine.getSentCount() != rows || mServer.getRecordCount() != rows) {
+            System.out.println("Server got " + mServer.getRecordCount() + " of " + rows + " rows");
+            return false;
+        }
+        final long pushBytes = mServer.getBytesReceived();
+
+        startedAt = System.nanoTime();
+        engine = sync(target, "target");
+        final long pullTime = System.nanoTime() - startedAt;
+        if (engine.getAppliedCount() != rows || target.size() != rows) {
+            System.out.println("Target got " + target.size() + " of " + rows + " rows");
+            return false;
+        }
+        final long pullBytes = mServer.getBytesSent();
+
+        System.out.println(String.format(Locale.US, "Synced %d rows in batches of %d over %d exchanges", rows,
+                mBatchSize, mServer.getExchanges()));
+        System.out.println(String.format(Locale.US, "Push: %d ms, %.0f rows/s, %.1f bytes/row", pushTime / 1000000,
+                rows * 1e9 / pushTime, (double) pushBytes / rows));
+        System.out.println(String.format(Locale.US, "Pull: %d ms, %.0f rows/s, %.1f bytes/row", pullTime / 1000000,
+                rows * 1e9 / pullTime, (double) pullBytes / rows));
+        return true;
+    }
+
+    private SyncEngine sync(SyncStore store, String deviceId) throws IOException {
+        final SyncEngine engine = new SyncEngine(store, new HttpSyncTransport(mServer.getUrl()),
+                mServer.getUrl().toString(), deviceId, mBatchSize);
+        if (!engine.sync()) {
+            throw new IOException("Sync of " + deviceId + " failed");
+        }
+        return engine;
+    }
+
+    private static SyncRecord newRecord(String syncId, String title, long createdAt) {
+        final SyncRecord record = new SyncRecord();
+        record.syncId = syncId;
+        record.title = title;
+        record.descriptionChangedAt = createdAt;
+        return record;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import com.actinarium.nagbox.database.NagboxContract.BuildingBlocks;
+import com.actinarium.nagbox.jvm.AppDatabase;
+import com.actinarium.nagbox.model.ActiveWindow;
+import com.actinarium.nagbox.model.Recurrence;
+import com.actinarium.nagbox.model.Task;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that schedule recovery after boot or app update fits into the alarm wake lock budget with 50k active tasks.
+ * Runs the same transaction as <code>NagboxService#handleRecoverSchedule</code> against the app database on disk,
+ * built from the app's own schema and migrations. The budget is read from the app's <code>config.xml</code>.
+ *
+ * @author Paul Danyliuk
+ */
+public class RecoveryBudgetTest {
+
+    private static final int TASK_COUNT = 50000;
+    private static final long MINUTE = 60 * 1000;
+    private static final Pattern WAKE_LOCK_BUDGET = Pattern.compile(
+            "<integer name=\"wake_lock_budget_ms\">(\\d+)</integer>"
+    );
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private SQLiteDatabase mDatabase;
+    private long mNow;
+
+    @Before
+    public void setUp() throws Exception {
+        mDatabase = AppDatabase.createAt(new File(mFolder.getRoot(), "nagbox.db"));
+        mNow = System.currentTimeMillis();
+
+        // Every task is active and overdue by up to 16 hours, like after the device was off overnight. Every tenth
+        // task escalates, every seventh has its own active window
+        final ActiveWindow officeHours = new ActiveWindow(9 * 60, 18 * 60, ActiveWindow.WEEKDAYS);
+        final Recurrence escalation = new Recurrence(2, 5, 10);
+        final NagboxDbOps.Transaction transaction = NagboxDbOps.startTransaction(mDatabase);
+        for (int i = 0; i < TASK_COUNT; i++) {
+            final Task task = new Task();
+            task.title = "Task #" + i;
+            task.interval = 1 + i % 120;
+            task.setIsActive(true);
+            task.lastStartedAt = mNow - 16 * 60 * MINUTE;
+            task.nextFireAt = mNow - (i % (16 * 60)) * MINUTE;
+            task.displayOrder = i + 1;
+            task.recurrence = i % 10 == 0 ? escalation : null;
+            task.activeWindow = i % 7 == 0 ? officeHours : null;
+            transaction.createTask(task, "task" + i);
+        }
+        assertTrue("Couldn't create tasks", transaction.commit());
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    @Test
+    public void recoverSchedule_50kActiveTasks_fitsWakeLockBudget() throws Exception {
+        final long budget = readWakeLockBudget();
+        final ActiveWindow globalWindow = new ActiveWindow(8 * 60, 22 * 60, ActiveWindow.ALL_DAYS);
+
+        final long startedAt = System.nanoTime();
+        final boolean isSuccess = NagboxDbOps.startTransaction(mDatabase)
+                .rescheduleDueTasks(mNow)
+                .postponeToActiveWindows(globalWindow, mNow)
+                .commit();
+        final long elapsed = (System.nanoTime() - startedAt) / 1000000;
+
+        assertTrue("Recovery transaction failed", isSuccess);
+        assertEquals("Active tasks still due after recovery", 0, countDueTasks());
+        assertTrue("Recovery of " + TASK_COUNT + " tasks took " + elapsed + "ms, over the budget of " + budget + "ms",
+                elapsed <= budget);
+    }
+
+    private long countDueTasks() {
+        final SQLiteStatement statement = mDatabase.compileStatement("SELECT COUNT(*) FROM "
+                + NagboxContract.TasksTable.TABLE_NAME + " WHERE " + BuildingBlocks.SELECTION_TASK_DUE);
+        statement.bindLong(1, mNow);
+        final long count = statement.simpleQueryForLong();
+        statement.close();
+        return count;
+    }
+
+    private static long readWakeLockBudget() throws IOException {
+        final File rawDir = new File(System.getProperty("nagbox.rawDir", "../app/src/main/res/raw"));
+        final InputStream in = new FileInputStream(new File(rawDir.getParentFile(), "values/config.xml"));
+        try {
+            final Matcher matcher = WAKE_LOCK_BUDGET.matcher(new Scanner(in, "UTF-8").useDelimiter("\\A").next());
+            assertTrue("wake_lock_budget_ms not found in config.xml", matcher.find());
+            return Long.parseLong(matcher.group(1));
+        } finally {
+            in.close();
+        }
+    }
+}
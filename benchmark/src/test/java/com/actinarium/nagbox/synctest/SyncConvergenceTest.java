@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.nagbox.synctest;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import com.actinarium.nagbox.common.Clock;
+import com.actinarium.nagbox.database.NagboxContract;
+import com.actinarium.nagbox.database.NagboxContract.BuildingBlocks;
+import com.actinarium.nagbox.database.NagboxContract.TasksTable;
+import com.actinarium.nagbox.database.NagboxDbOps;
+import com.actinarium.nagbox.jvm.AppDatabase;
+import com.actinarium.nagbox.model.ActiveWindow;
+import com.actinarium.nagbox.model.SyncRecord;
+import com.actinarium.nagbox.model.Task;
+import com.actinarium.nagbox.sync.DbSyncStore;
+import com.actinarium.nagbox.sync.HttpSyncTransport;
+import com.actinarium.nagbox.sync.SyncEngine;
+import com.actinarium.nagbox.sync.SyncStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * End-to-end checks of the sync protocol: devices sync through a {@link StandInSyncServer} over real HTTP using the
+ * app's own engine, codec and transport, and must converge. Conflicting edits are checked with devices backed by
+ * {@link InMemorySyncStore}s. Deletion is checked with devices backed by {@link DbSyncStore} over the app database,
+ * so that the app's own SQL, change log triggers and purge are covered too.
+ *
+ * @author Paul Danyliuk
+ */
+public class SyncConvergenceTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final int PURGE_BATCH_SIZE = 100;
+
+    private StandInSyncServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new StandInSyncServer(SyncEngine.DEFAULT_BATCH_SIZE);
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    /**
+     * Two devices edit the same tasks in different ways while offline, then sync in turns
+     */
+    @Test
+    public void conflictingEdits_converge() throws Exception {
+        final InMemorySyncStore a = new InMemorySyncStore();
+        final InMemorySyncStore b = new InMemorySyncStore();
+        a.put(newRecord("t1", "Stretch", 100));
+        a.put(newRecord("t2", "Drink water", 100));
+        a.put(newRecord("t3", "Check posture", 100));
+        sync(a, "a");
+        sync(b, "b");
+        assertEquals("B didn't get all tasks from A", 3, b.size());
+
+        // Renamed on both, later on B
+        edit(a, "t1", SyncRecord.FIELDS_DESCRIPTION, "Stretch legs", 200);
+        edit(b, "t1", SyncRecord.FIELDS_DESCRIPTION, "Stretch back", 300);
+        // Started on A, renamed on B: both must survive
+        edit(a, "t2", SyncRecord.FIELDS_STATUS, null, 400);
+        edit(b, "t2", SyncRecord.FIELDS_DESCRIPTION, "Drink more water", 350);
+        // Deleted on A after being renamed on B
+        edit(b, "t3", SyncRecord.FIELDS_DESCRIPTION, "Sit straight", 450);
+        edit(a, "t3", SyncRecord.FIELDS_DELETION, null, 500);
+
+        sync(a, "a");
+        sync(b, "b");
+        sync(a, "a");
+
+        for (String syncId : new String[]{"t1", "t2", "t3"}) {
+            assertSameRecord(syncId + " differs on A and B", a.get(syncId), b.get(syncId));
+            assertSameRecord(syncId + " differs on A and the server", a.get(syncId), mServer.getRecord(syncId));
+        }
+        assertEquals("Later rename must win", "Stretch back", a.get("t1").title);
+        // Rename and start of the same task must both survive
+        assertEquals("Drink more water", a.get("t2").title);
+        assertTrue(a.get("t2").isActive);
+        // Deletion must win over the earlier rename, which must be kept too
+        assertTrue(a.get("t3").isDeleted);
+        assertEquals("Sit straight", a.get("t3").title);
+
+        final SyncEngine engine = sync(a, "a");
+        assertEquals("Nothing must be sent once in sync", 0, engine.getSentCount());
+        assertEquals("Nothing must be received once in sync", 0, engine.getReceivedCount());
+    }
+
+    /**
+     * Two devices change the same task at the same millisecond: both must pick the same winner
+     */
+    @Test
+    public void simultaneousEdits_pickSameWinner() throws Exception {
+        final InMemorySyncStore a = new InMemorySyncStore();
+        final InMemorySyncStore b = new InMemorySyncStore();
+        a.put(newRecord("t4", "Walk", 100));
+        sync(a, "a");
+        sync(b, "b");
+
+        edit(a, "t4", SyncRecord.FIELDS_DESCRIPTION, "Walk around", 600);
+        edit(b, "t4", SyncRecord.FIELDS_DESCRIPTION, "Walk outside", 600);
+        sync(b, "b");
+        sync(a, "a");
+        sync(b, "b");
+
+        assertSameRecord("Tie is resolved differently on A and B", a.get("t4"), b.get("t4"));
+    }
+
+    /**
+     * A task deleted on a device that hasn't synced for longer than deleted tasks are kept, while another device
+     * renames it. The deletion must still reach the server, and the rename must not bring the task back.
+     */
+    @Test
+    public void deletionOfPurgeableTask_reachesEveryDevice() throws Exception {
+        final SettableClock clock = new SettableClock(1000);
+        final SQLiteDatabase a = AppDatabase.createInMemory();
+        final SQLiteDatabase b = AppDatabase.createInMemory();
+        final Task task = new Task();
+        task.title = "Feed the cat";
+        task.interval = 30;
+        assertTrue("Task created on A", NagboxDbOps.startTransaction(a).createTask(task, "t5").commit());
+        sync(new DbSyncStore(a, clock, ActiveWindow.ALWAYS), "a");
+        sync(new DbSyncStore(b, clock, ActiveWindow.ALWAYS), "b");
+        assertNotNull("B didn't get the task from A", getRecord(b, "t5"));
+
+        clock.set(2000);
+        NagboxDbOps.startTransaction(a).deleteTask(task.id, clock.currentTimeMillis()).commit();
+        clock.set(2000 + 2 * DAY);
+        purgeDeletedTasks(a, clock.currentTimeMillis());
+        assertNotNull("Deleted task must be kept until its deletion is sent", getRecord(a, "t5"));
+
+        final Task renamed = NagboxDbOps.getTaskStatusById(b, getTaskId(b, "t5"), NagboxContract.TASK_FULL_PROJECTION);
+        renamed.title = "Feed the cat twice";
+        NagboxDbOps.startTransaction(b).updateTask(renamed, clock.currentTimeMillis()).commit();
+        sync(new DbSyncStore(b, clock, ActiveWindow.ALWAYS), "b");
+        sync(new DbSyncStore(a, clock, ActiveWindow.ALWAYS), "a");
+        sync(new DbSyncStore(b, clock, ActiveWindow.ALWAYS), "b");
+
+        final SyncRecord onA = getRecord(a, "t5");
+        final SyncRecord onB = getRecord(b, "t5");
+        assertNotNull(onA);
+        assertTrue("Rename on B must not bring back the task deleted on A", onA.isDeleted);
+        assertEquals("Feed the cat twice", onA.title);
+        assertNotNull(onB);
+        assertTrue("B didn't get the deletion from A", onB.isDeleted);
+        assertTrue("Server didn't get the deletion from A", mServer.getRecord("t5").isDeleted);
+
+        purgeDeletedTasks(a, clock.currentTimeMillis());
+        purgeDeletedTasks(b, clock.currentTimeMillis());
+        assertNull("Deleted task must be purged on A once it's synced", getRecord(a, "t5"));
+        assertNull("Deleted task must be purged on B once it's synced", getRecord(b, "t5"));
+        sync(new DbSyncStore(a, clock, ActiveWindow.ALWAYS), "a");
+        sync(new DbSyncStore(b, clock, ActiveWindow.ALWAYS), "b");
+        assertNull("Purged task came back on A", getRecord(a, "t5"));
+        assertNull("Purged task came back on B", getRecord(b, "t5"));
+
+        a.close();
+        b.close();
+    }
+
+    private SyncEngine sync(SyncStore store, String deviceId) throws IOException {
+        final SyncEngine engine = new SyncEngine(store, new HttpSyncTransport(mServer.getUrl()),
+                mServer.getUrl().toString(), deviceId, SyncEngine.DEFAULT_BATCH_SIZE);
+        assertTrue("Sync of " + deviceId + " failed", engine.sync());
+        return engine;
+    }
+
+    /**
+     * Same as the service does daily, with sync on
+     */
+    private static void purgeDeletedTasks(SQLiteDatabase db, long now) {
+        int purged;
+        do {
+            final NagboxDbOps.Transaction transaction = NagboxDbOps.startTransaction(db)
+                    .purgeDeletedTasks(now - DAY, true, PURGE_BATCH_SIZE);
+            purged = transaction.getRowsAffected();
+            transaction.commit();
+        } while (purged == PURGE_BATCH_SIZE);
+    }
+
+    /**
+     * @return the task with given sync ID as the device would send it, or <code>null</code> if there's no such row
+     */
+    private static SyncRecord getRecord(SQLiteDatabase db, String syncId) {
+        final Cursor cursor = querySyncId(db, syncId);
+        final SyncRecord record = cursor.moveToFirst()
+                ? NagboxContract.SYNC_RECORD_PROJECTION.mapCursorToModel(cursor, null)
+                : null;
+        cursor.close();
+        return record;
+    }
+
+    private static long getTaskId(SQLiteDatabase db, String syncId) {
+        final Cursor cursor = querySyncId(db, syncId);
+        final long id = cursor.moveToFirst() ? NagboxContract.SYNC_RECORD_PROJECTION.getId(cursor) : -1;
+        cursor.close();
+        return id;
+    }
+
+    private static Cursor querySyncId(SQLiteDatabase db, String syncId) {
+        return db.query(
+                TasksTable.TABLE_NAME,
+                NagboxContract.SYNC_RECORD_PROJECTION.getColumns(),
+                BuildingBlocks.SELECTION_TASK_SYNC_ID,
+                new String[]{syncId},
+                null, null, null
+        );
+    }
+
+    private static SyncRecord newRecord(String syncId, String title, long createdAt) {
+        final SyncRecord record = new SyncRecord();
+        record.syncId = syncId;
+        record.title = title;
+        record.descriptionChangedAt = createdAt;
+        return record;
+    }
+
+    /**
+     * Make a local change of one group of fields: rename, start, or delete the task
+     */
+    private static void edit(InMemorySyncStore store, String syncId, int fields, String title, long timestamp) {
+        final SyncRecord record = store.get(syncId);
+        if (fields == SyncRecord.FIELDS_DESCRIPTION) {
+            record.title = title;
+            record.descriptionChangedAt = timestamp;
+        } else if (fields == SyncRecord.FIELDS_STATUS) {
+            record.isActive = true;
+            record.lastStartedAt = timestamp;
+            record.nextFireAt = timestamp + record.interval * 60000L;
+            record.statusChangedAt = timestamp;
+        } else {
+            record.isDeleted = true;
+            record.deletionChangedAt = timestamp;
+        }
+        store.put(record);
+    }
+
+    private static void assertSameRecord(String message, SyncRecord expected, SyncRecord actual) {
+        assertNotNull(message, expected);
+        assertNotNull(message, actual);
+        assertEquals(message, expected.toString(), actual.toString());
+    }
+
+    private static class SettableClock extends Clock {
+
+        private long mNow;
+
+        SettableClock(long now) {
+            mNow = now;
+        }
+
+        void set(long now) {
+            mNow = now;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+
+        @Override
+        public long elapsedRealtime() {
+            return mNow;
+        }
+    }
+}